@@ -155,6 +155,7 @@ CREATE TABLE referencia (
 	FOREIGN KEY (bibliografia_id)
 		REFERENCES bibliografia(id),
 	UNIQUE (document_id, bibliografia_id),
+	INDEX (bibliografia_id, document_id),
 	PRIMARY KEY (id)
 );
 
@@ -441,4 +442,40 @@ CREATE TABLE note (
 	PRIMARY KEY (id)
 );
 
-INSERT INTO bibliografia (referencia_curta) VALUES ("Desconegut");
\ No newline at end of file
+INSERT INTO bibliografia (referencia_curta) VALUES ("Desconegut");
+
+-- Manifest of the txt files imported by DeployDB, used to re-import
+-- only the files whose content changed since the last import.
+CREATE TABLE import_manifest (
+	file_name varchar(255) NOT NULL,
+	document_id bigint(20) NOT NULL,
+	content_hash char(64) NOT NULL,
+	imported_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (file_name)
+);
+
+-- Change log of the application: the DAOs append a row for every row
+-- they insert, update or delete. Its id is the version of the DB after
+-- the change, so clients read what changed since the version they saw
+-- with a range scan of the primary key. Ids are given on insert, not on
+-- commit, so clients also read again the ids they skipped for a while.
+CREATE TABLE change_log (
+	id bigint(20) NOT NULL AUTO_INCREMENT,
+	table_name varchar(64) NOT NULL,
+	row_id bigint(20) NOT NULL,
+	operation char(1) NOT NULL,
+	changed_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+	PRIMARY KEY (id)
+);
+
+-- Version of each table, i.e. the id of its last change in change_log.
+CREATE TABLE table_version (
+	table_name varchar(64) NOT NULL,
+	version bigint(20) NOT NULL,
+	PRIMARY KEY (table_name)
+);
+
+CREATE TRIGGER change_log_version AFTER INSERT ON change_log
+	FOR EACH ROW
+	INSERT INTO table_version (table_name, version) VALUES (NEW.table_name, NEW.id)
+		ON DUPLICATE KEY UPDATE version=GREATEST(version, NEW.id);
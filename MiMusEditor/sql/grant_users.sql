@@ -20,4 +20,6 @@ GRANT SELECT, INSERT, DELETE ON mimus.te_ofici TO mimus01@localhost, cvela@local
 GRANT SELECT, INSERT, DELETE ON mimus.te_casa TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
 GRANT SELECT, INSERT, DELETE ON mimus.serveix_a TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
 GRANT SELECT, INSERT, DELETE ON mimus.resideix_a TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
-GRANT SELECT, INSERT, DELETE ON mimus.moviment TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
\ No newline at end of file
+GRANT SELECT, INSERT, DELETE ON mimus.moviment TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
+GRANT SELECT, INSERT ON mimus.change_log TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
+GRANT SELECT ON mimus.table_version TO mimus01@localhost, cvela@localhost, smcingolani@localhost, afclot@localhost, aalberni@localhost, ssari@localhost;
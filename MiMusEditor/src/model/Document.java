@@ -1,7 +1,12 @@
 package model;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.IntStream;
 import org.eclipse.jface.resource.ImageDescriptor;
 import org.eclipse.ui.IEditorInput;
@@ -15,6 +20,15 @@ import org.eclipse.ui.IPersistableElement;
  * Document implements IEditorInput, which means it is a suitable
  * input for an Eclipse Editor such as MiMus Editor.
  * 
+ * Some parts of a Document can be left pending by the DAO that builds
+ * it, to be downloaded by a DocumentLoader on first access: e.g. a
+ * Document only referenced by annotations is a stub with just its ID,
+ * and lists of Documents don't carry their texts. The DB is queried
+ * without holding the lock of the Document, and if it fails, the getter
+ * throws a DocumentLoadException instead of returning empty fields.
+ * Setting any field of a part marks it as loaded, as whoever sets it,
+ * e.g. a DAO or the loader itself, sets the whole part.
+ * 
  * @author Javier Beltrán Jorba
  *
  */
@@ -31,6 +45,22 @@ public class Document extends Unit implements IEditorInput {
 	public final static String[] STATES_ANNOT = {"-", "En procés", "Per revisar"};
 	public final static String[] STATES_REV = {"-", "En procés", "Revisat"};
 	
+	/* Parts of a Document that can be loaded lazily, with its fields */
+	public enum Part {
+		SUMMARY,	// numbering, date, states
+		DETAILS,	// places, library identifiers, editions..., language
+		TEXTS,		// regest, transcription
+		NOTES,
+		SUBJECTS
+	}
+	
+	/* Parts not loaded yet, and who loads them on first access */
+	private final Set<Part> pending = EnumSet.noneOf(Part.class);
+	private DocumentLoader loader;
+	
+	/* Parts being loaded, by the thread loading them */
+	private final Map<Part, Thread> loading = new EnumMap<>(Part.class);
+	
 	/* Document attributes */
 	private String numbering;
 	private MiMusDate date;
@@ -69,6 +99,92 @@ public class Document extends Unit implements IEditorInput {
 		this.stateAnnotIdx = -1;
 	}
 	
+	/**
+	 * Leaves parts <parts> of this Document pending, to be loaded by
+	 * <loader> the first time any of their fields is accessed.
+	 */
+	public synchronized void setLazy(DocumentLoader loader, Part... parts) {
+		this.loader = loader;
+		for (Part part : parts) {
+			pending.add(part);
+		}
+	}
+	
+	/**
+	 * Returns true if part <part> has not been loaded yet.
+	 */
+	public synchronized boolean isPending(Part part) {
+		return pending.contains(part);
+	}
+	
+	/**
+	 * Loads part <part> if it is pending. The parts stored in the 
+	 * document table (SUMMARY, DETAILS, TEXTS) are all loaded together, 
+	 * as they come from the same row. The loader runs outside the lock,
+	 * and other threads accessing the parts wait until it is done. If 
+	 * loading fails, the parts stay pending and DocumentLoadException is 
+	 * thrown.
+	 */
+	private void load(Part part) {
+		Set<Part> parts = EnumSet.of(part);
+		DocumentLoader partLoader;
+		synchronized (this) {
+			while (loading.containsKey(part)) {
+				if (loading.get(part) == Thread.currentThread()) {
+					/* Accessed by the loader while filling it */
+					return;
+				}
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DocumentLoadException("Interrupted loading " 
+							+ part + " of " + this, e);
+				}
+			}
+			if (!pending.contains(part)) {
+				return;
+			}
+			if (part == Part.SUMMARY || part == Part.DETAILS || part == Part.TEXTS) {
+				for (Part rowPart : EnumSet.of(Part.SUMMARY, Part.DETAILS, Part.TEXTS)) {
+					if (pending.contains(rowPart) && !loading.containsKey(rowPart)) {
+						parts.add(rowPart);
+					}
+				}
+			}
+			pending.removeAll(parts);
+			for (Part loadingPart : parts) {
+				loading.put(loadingPart, Thread.currentThread());
+			}
+			partLoader = loader;
+		}
+		
+		boolean done = false;
+		try {
+			partLoader.load(this, parts);
+			done = true;
+		} catch (SQLException e) {
+			throw new DocumentLoadException("Could not load " + parts 
+					+ " of " + this, e);
+		} finally {
+			synchronized (this) {
+				loading.keySet().removeAll(parts);
+				if (!done) {
+					pending.addAll(parts);
+				}
+				notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Marks part <part> as loaded, as a setter of one of its fields was
+	 * called, instead of loading what is going to be replaced.
+	 */
+	private synchronized void loaded(Part part) {
+		pending.remove(part);
+	}
+	
 	/**
 	 * String representation of Document which reflects
 	 * its ID.
@@ -95,94 +211,123 @@ public class Document extends Unit implements IEditorInput {
 	}
 	
 	public String getNumbering() {
+		load(Part.SUMMARY);
 		return numbering;
 	}
 	public void setNumbering(String numbering) {
+		loaded(Part.SUMMARY);
 		this.numbering = numbering;
 	}
 	public MiMusDate getDate() {
+		load(Part.SUMMARY);
 		return date;
 	}
 	public void setDate(MiMusDate date) {
+		loaded(Part.SUMMARY);
 		this.date = date;
 	}
 	public String getPlace1() {
+		load(Part.DETAILS);
 		return place1;
 	}
 	public void setPlace1(String place1) {
+		loaded(Part.DETAILS);
 		this.place1 = place1;
 	}
 	public String getPlace2() {
+		load(Part.DETAILS);
 		return place2;
 	}
 	public void setPlace2(String place2) {
+		loaded(Part.DETAILS);
 		this.place2 = place2;
 	}
 	public MiMusText getRegest() {
+		load(Part.TEXTS);
 		return new MiMusText(regest);
 	}
 	public String getRegestText() {
+		load(Part.TEXTS);
 		return regest;
 	}
 	public void setRegestText(String regest) {
+		loaded(Part.TEXTS);
 		this.regest = regest;
 	}
 	
 	public MiMusLibraryIdentifier getLibrary() {
+		load(Part.DETAILS);
 		return library;
 	}
 	public void setLibrary(MiMusLibraryIdentifier library) {
+		loaded(Part.DETAILS);
 		this.library = library;
 	}
 	public MiMusLibraryIdentifier getLibrary2() {
+		load(Part.DETAILS);
 		return library2;
 	}
 	public void setLibrary2(MiMusLibraryIdentifier library2) {
+		loaded(Part.DETAILS);
 		this.library2 = library2;
 	}
 	public String getFullLibraryIdentifier() {
-		return library.toString() + "; " + library2.toString();
+		return getLibrary().toString() + "; " + getLibrary2().toString();
 	}
 	public String getEditions() {
+		load(Part.DETAILS);
 		return editions;
 	}
 	public void setEditions(String editions) {
+		loaded(Part.DETAILS);
 		this.editions = editions;
 	}
 	public String getRegisters() {
+		load(Part.DETAILS);
 		return registers;
 	}
 	public void setRegisters(String registers) {
+		loaded(Part.DETAILS);
 		this.registers = registers;
 	}
 	public String getCitations() {
+		load(Part.DETAILS);
 		return citations;
 	}
 	public void setCitations(String citations) {
+		loaded(Part.DETAILS);
 		this.citations = citations;
 	}
 	public MiMusText getTranscription() {
+		load(Part.TEXTS);
 		return new MiMusText(transcription);
 	}
 	public String getTranscriptionText() {
+		load(Part.TEXTS);
 		return transcription;
 	}
 	public void setTranscriptionText(String transcription) {
+		loaded(Part.TEXTS);
 		this.transcription = transcription;
 	}
 	public List<Note> getNotes() {
+		load(Part.NOTES);
 		return notes;
 	}
 	public void setNotes(List<Note> notes) {
+		loaded(Part.NOTES);
 		this.notes = notes;
 	}
 	public int getLanguage() {
+		load(Part.DETAILS);
 		return langIdx;
 	}
 	public String getLanguageStr() {
+		load(Part.DETAILS);
 		return LANGS[langIdx];
 	}
 	public void setLanguage(int langIdx) {
+		loaded(Part.DETAILS);
 		this.langIdx = langIdx;
 	}
 	public void setLanguage(String langName) {
@@ -194,30 +339,39 @@ public class Document extends Unit implements IEditorInput {
 		setLanguage(langIdx);
 	}
 	public List<Materia> getSubjects() {
+		load(Part.SUBJECTS);
 		return subjects;
 	}
 	public void setSubjects(List<Materia> subjects) {
+		loaded(Part.SUBJECTS);
 		this.subjects = subjects;
 	}
 	public void addSubject(Materia subject) {
+		load(Part.SUBJECTS);
 		this.subjects.add(subject);
 	}
 	public int getStateAnnotIdx() {
+		load(Part.SUMMARY);
 		return stateAnnotIdx;
 	}
 	public String getStateAnnotStr() {
+		load(Part.SUMMARY);
 		return STATES_ANNOT[stateAnnotIdx];
 	}
 	public void setStateAnnotIdx(int stateAnnotIdx) {
+		loaded(Part.SUMMARY);
 		this.stateAnnotIdx = stateAnnotIdx;
 	}
 	public int getStateRevIdx() {
+		load(Part.SUMMARY);
 		return stateRevIdx;
 	}
 	public String getStateRevStr() {
+		load(Part.SUMMARY);
 		return STATES_REV[stateRevIdx];
 	}
 	public void setStateRevIdx(int stateRevIdx) {
+		loaded(Part.SUMMARY);
 		this.stateRevIdx = stateRevIdx;
 	}
 	
@@ -0,0 +1,19 @@
+package model;
+
+/**
+ * Exception thrown when accessing a part of a Document that was left
+ * to be loaded lazily, and could not be loaded. The part stays pending,
+ * so the next access tries again.
+ * 
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class DocumentLoadException extends RuntimeException {
+
+	private static final long serialVersionUID = 4215093864407717820L;
+
+	public DocumentLoadException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,21 @@
+package model;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * A DocumentLoader downloads the parts of a Document that were left
+ * to be loaded lazily, the first time they are accessed.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public interface DocumentLoader {
+
+	/**
+	 * Fills parts <parts> of Document <doc> through its setters. Throws
+	 * SQLException if they could not be loaded, and then they are tried
+	 * again on the next access.
+	 */
+	void load(Document doc, Set<Document.Part> parts) throws SQLException;
+}
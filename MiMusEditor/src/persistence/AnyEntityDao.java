@@ -4,7 +4,14 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import model.Entity;
 
@@ -42,17 +49,87 @@ public class AnyEntityDao extends UnitDao<Entity> {
 	}
 	
 	public String selectType(int id) throws SQLException {
-		Statement selectStmt = getConnection().createStatement();
-		String sql = "SELECT entity_name FROM entity_types, entity " + 
-				"WHERE entity.id=" + id + " AND entity.entity_type_id=entity_types.id";
-		ResultSet rs = selectStmt.executeQuery(sql);
+		ResultSet rs = LocalReplica.select(getTable(), "id", 
+				Collections.singleton(id));
+		if (rs == null) {
+			Statement selectStmt = getConnection().createStatement();
+			String sql = "SELECT entity_type_id FROM entity WHERE id=" + id;
+			rs = selectStmt.executeQuery(sql);
+		}
 		
 		if (rs.next()) {
-			return rs.getString("entity_name");
+			String type = ReferenceData.get(getConnection()).getEntityTypes()
+					.getName(rs.getInt("entity_type_id"));
+			if (type != null) {
+				return type;
+			}
 		}
 		throw new SQLException();
 	}
 	
+	/**
+	 * Selects the entity with common ID <id>, whatever its type, through
+	 * the DAO specific to its type. If the entity is already in the
+	 * IdentityMap, the DB is not queried.
+	 */
+	@Override
+	public Entity selectOne(int id) throws SQLException {
+		Entity known = getIdentityMap().get(getTable(), id);
+		if (known != null) {
+			return known;
+		}
+		return getDao(selectType(id)).selectOne(id);
+	}
+	
+	/**
+	 * Selects all entities with common IDs in <entityIds>, whatever their
+	 * types. IDs are grouped by type in a single query, and then the
+	 * entities of each type are selected at once through their specific
+	 * DAO, so at most one query per type of entity is added. Entities
+	 * already in the IdentityMap are not queried. Returns the entities
+	 * keyed by their common ID.
+	 */
+	public Map<Integer, Entity> resolveAll(Collection<Integer> entityIds) 
+			throws SQLException {
+		Map<Integer, Entity> found = new HashMap<>();
+		Set<Integer> missing = new HashSet<>();
+		for (Integer id : entityIds) {
+			Entity known = getIdentityMap().get(getTable(), id);
+			if (known != null) {
+				found.put(id, known);
+			} else {
+				missing.add(id);
+			}
+		}
+		if (missing.isEmpty()) {
+			return found;
+		}
+		
+		ResultSet rs = LocalReplica.select(getTable(), "id", missing);
+		if (rs == null) {
+			String sql = "SELECT id, entity_type_id FROM entity WHERE id IN " 
+					+ toInList(missing);
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
+		ReferenceData.Lookup types = ReferenceData.get(getConnection())
+				.getEntityTypes();
+		Map<String, List<Integer>> typesToIds = new HashMap<>();
+		while (rs.next()) {
+			String type = types.getName(rs.getInt("entity_type_id"));
+			typesToIds.computeIfAbsent(type, k -> new ArrayList<>())
+					.add(rs.getInt("id"));
+		}
+		for (Map.Entry<String, List<Integer>> entry : typesToIds.entrySet()) {
+			EntityDao<? extends Entity> dao = getDao(entry.getKey());
+			if (dao == null) {
+				throw new SQLException("Unknown type of entity " + entry.getKey());
+			}
+			found.putAll(dao.selectIn(entry.getValue(), false));
+		}
+		return found;
+	}
+	
 	public EntityDao<? extends Entity> getDao(String type) {
 		HashMap<String, EntityDao<? extends Entity>> map = new HashMap<>();
 		map.put("artista", new ArtistaDao(getConnection()));
@@ -62,7 +139,7 @@ public class AnyEntityDao extends UnitDao<Entity> {
 		map.put("instrument", new InstrumentDao(getConnection()));
 		map.put("lloc", new LlocDao(getConnection()));
 		map.put("genere_literari", new GenereLiterariDao(getConnection()));
-		return map.get(type);
+		return shareIfFound(map.get(type));
 	}
 
 	public EntityDao<? extends Entity> getDaoByKey(String key) {
@@ -74,7 +151,11 @@ public class AnyEntityDao extends UnitDao<Entity> {
 		map.put("instrument_id", new InstrumentDao(getConnection()));
 		map.put("lloc_id", new LlocDao(getConnection()));
 		map.put("genere_id", new GenereLiterariDao(getConnection()));
-		return map.get(key);
+		return shareIfFound(map.get(key));
+	}
+	
+	private EntityDao<? extends Entity> shareIfFound(EntityDao<? extends Entity> dao) {
+		return dao == null ? null : share(dao);
 	}
 
 }
@@ -6,8 +6,13 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import model.Document;
 import model.Entity;
@@ -26,18 +31,156 @@ public class AnyRelationDao extends UnitDao<Relation> {
 		super(conn);
 	}
 	
+	/**
+	 * Selects the Relations of Document <doc> in a constant number of
+	 * queries: one for the relations, joined with all specific relation
+	 * tables (only the one of each row's type matches), and then one per
+	 * type of entity involved, to resolve all the entities at once.
+	 */
 	public List<Relation> select(Document doc) throws SQLException {
+		HashMap<Integer, RelationDao> typeToDao = getDaoDict();
+		ResultSet rs = selectJoinedLocally(doc, typeToDao);
+		if (rs == null) {
+			rs = selectJoined(doc, typeToDao);
+		}
+		
+		/* 
+		 * 1st pass: make the Relations without their entities, and collect
+		 * the IDs of the entities to resolve, by their foreign key column.
+		 * */
+		getIdentityMap().put("document", doc);
+		ReferenceData.Lookup types = ReferenceData.get(getConnection())
+				.getRelationTypes();
 		List<Relation> rels = new ArrayList<>();
-		String sql = "SELECT * FROM relation WHERE document_id=" + doc.getId();
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		List<String[]> relsToKeys = new ArrayList<>();
+		List<int[]> relsToEntIds = new ArrayList<>();
+		Map<String, Set<Integer>> keysToEntIds = new HashMap<>();
+		while (rs.next()) {
+			int id = rs.getInt("id");
+			int typeId = rs.getInt("relation_type_id");
+			String type = types.getName(typeId);
+			RelationDao dao = typeToDao.get(typeId);
+			if (type == null || dao == null) {
+				throw new SQLException("Unknown type of Relation " + id);
+			}
+			
+			/* Relations keep their first two entities only */
+			String[] keys = Arrays.copyOf(dao.getEntities(), 2);
+			int[] entIds = new int[keys.length];
+			for (int i=0; i<keys.length; i++) {
+				entIds[i] = rs.getInt(dao.getTable() + "_" + keys[i]);
+				if (entIds[i] == 0) {
+					throw new SQLException("Relation " + id 
+							+ " not found in " + dao.getTable());
+				}
+				keysToEntIds.computeIfAbsent(keys[i], k -> new HashSet<>())
+						.add(entIds[i]);
+			}
+			rels.add(new Relation(doc, null, null, type, id, 
+					rs.getInt("relation_id")));
+			relsToKeys.add(keys);
+			relsToEntIds.add(entIds);
+		}
 		
-		while(rs.next()) {
-			rels.add(make(rs));
+		/* 2nd pass: resolve all entities of each column at once */
+		AnyEntityDao anyDao = share(new AnyEntityDao(getConnection()));
+		Map<String, Map<Integer, ? extends Entity>> keysToEnts = new HashMap<>();
+		for (Map.Entry<String, Set<Integer>> entry : keysToEntIds.entrySet()) {
+			EntityDao<? extends Entity> dao = anyDao.getDaoByKey(entry.getKey());
+			if (dao != null) {
+				/* Foreign key is specific in rels */
+				keysToEnts.put(entry.getKey(), dao.selectIn(entry.getValue(), true));
+			} else {
+				/* Except in moviment's origin and destination, which are common */
+				keysToEnts.put(entry.getKey(), anyDao.resolveAll(entry.getValue()));
+			}
+		}
+		for (int i=0; i<rels.size(); i++) {
+			Relation rel = rels.get(i);
+			Entity ent1 = keysToEnts.get(relsToKeys.get(i)[0])
+					.get(relsToEntIds.get(i)[0]);
+			Entity ent2 = keysToEnts.get(relsToKeys.get(i)[1])
+					.get(relsToEntIds.get(i)[1]);
+			if (ent1 == null || ent2 == null) {
+				throw new SQLException("Entities of Relation " + rel.getId() 
+						+ " not found.");
+			}
+			rel.setItsEntity1(ent1);
+			rel.setItsEntity2(ent2);
+			getIdentityMap().put(getTable(), rel);
 		}
 		return rels;
 	}
 
+	/**
+	 * Returns the rows of the relations of Document <doc>, joined with all
+	 * specific relation tables in <typeToDao>: the columns of the entities
+	 * of each specific table are named <table>_<column>, and are null but
+	 * in the table of the type of the row.
+	 */
+	private ResultSet selectJoined(Document doc, 
+			Map<Integer, RelationDao> typeToDao) throws SQLException {
+		String sql = "SELECT relation.id, relation.relation_type_id, "
+				+ "relation.relation_id";
+		String joins = "";
+		for (RelationDao dao : typeToDao.values()) {
+			for (String key : dao.getEntities()) {
+				sql += ", " + dao.getTable() + "." + key 
+						+ " AS " + dao.getTable() + "_" + key;
+			}
+			joins += " LEFT JOIN " + dao.getTable() + " ON " 
+					+ dao.getTable() + ".relation_id=relation.id";
+		}
+		sql += " FROM relation" + joins 
+				+ " WHERE relation.document_id=" + doc.getId()
+				+ " ORDER BY relation.id";
+		Statement stmt = getConnection().createStatement();
+		return stmt.executeQuery(sql);
+	}
+	
+	/**
+	 * Returns the same rows as selectJoined(), joined in memory from the 
+	 * tables in the LocalReplica, or null if the DB must be queried.
+	 */
+	private ResultSet selectJoinedLocally(Document doc, 
+			Map<Integer, RelationDao> typeToDao) throws SQLException {
+		ResultSet relRS = selectLocally("document_id", 
+				Collections.singleton(doc.getId()));
+		if (relRS == null) {
+			return null;
+		}
+		List<String> columns = new ArrayList<>(
+				Arrays.asList("id", "relation_type_id", "relation_id"));
+		for (RelationDao dao : typeToDao.values()) {
+			for (String key : dao.getEntities()) {
+				columns.add(dao.getTable() + "_" + key);
+			}
+		}
+		Map<Integer, Object[]> rows = new LinkedHashMap<>();
+		while (relRS.next()) {
+			Object[] row = new Object[columns.size()];
+			row[0] = relRS.getObject("id");
+			row[1] = relRS.getObject("relation_type_id");
+			row[2] = relRS.getObject("relation_id");
+			rows.put(relRS.getInt("id"), row);
+		}
+		for (RelationDao dao : typeToDao.values()) {
+			ResultSet specRS = dao.selectLocally("relation_id", rows.keySet());
+			if (specRS == null) {
+				return null;
+			}
+			while (specRS.next()) {
+				Object[] row = rows.get(specRS.getInt("relation_id"));
+				for (String key : dao.getEntities()) {
+					row[columns.indexOf(dao.getTable() + "_" + key)] = 
+							specRS.getObject(key);
+				}
+			}
+		}
+		return LocalResultSet.of(columns.toArray(new String[0]), 
+				new ArrayList<>(rows.values()));
+	}
+
 	@Override
 	public int insert(Relation unit) throws DaoNotImplementedException {
 		throw new DaoNotImplementedException();
@@ -62,14 +205,11 @@ public class AnyRelationDao extends UnitDao<Relation> {
 		int id = rs.getInt("id");
 		int specId = rs.getInt("relation_id");
 		int typeId = rs.getInt("relation_type_id");
-		String sqlType = "SELECT * FROM relation_types WHERE id=" + typeId;
-		Statement stmtType = getConnection().createStatement();
-		ResultSet rsType = stmtType.executeQuery(sqlType);
-		if (rsType.next()) {
-			String type = rsType.getString("relation_name");
-			
+		String type = ReferenceData.get(getConnection()).getRelationTypes()
+				.getName(typeId);
+		if (type != null) {
 			int docId = rs.getInt("document_id");
-			Document doc = new DocumentDao(getConnection()).selectOne(docId);
+			Document doc = share(new DocumentDao(getConnection())).selectStub(docId);
 			
 			HashMap<Integer, RelationDao> typeToDao = getDaoDict();
 			RelationDao specificDao = typeToDao.get(typeId);
@@ -81,11 +221,11 @@ public class AnyRelationDao extends UnitDao<Relation> {
 	
 	private HashMap<Integer, RelationDao> getDaoDict() {
 		HashMap<Integer, RelationDao> dict = new HashMap<>();
-		dict.put(1, new TeOficiDao(getConnection()));
-		dict.put(2, new TeCasaDao(getConnection()));
-		dict.put(3, new ServeixADao(getConnection()));
-		dict.put(4, new ResideixADao(getConnection()));
-		dict.put(5, new MovimentDao(getConnection()));
+		dict.put(1, share(new TeOficiDao(getConnection())));
+		dict.put(2, share(new TeCasaDao(getConnection())));
+		dict.put(3, share(new ServeixADao(getConnection())));
+		dict.put(4, share(new ResideixADao(getConnection())));
+		dict.put(5, share(new MovimentDao(getConnection())));
 		return dict;
 	}
 
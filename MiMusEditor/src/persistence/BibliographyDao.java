@@ -65,7 +65,13 @@ public class BibliographyDao extends UnitDao<Bibliography> {
 		stmt.setString(19, unit.getPages());
 		stmt.setString(20, unit.getShortReference());
 		
-		return executeGetId(stmt);
+		int id = executeGetId(stmt);
+		if (id > 0) {
+			unit.setId(id);
+			recordChange(id, ChangeLog.Operation.INSERT);
+			UnitCatalog.saved(getTable(), unit);
+		}
+		return id;
 	}
 	
 	protected Bibliography make(ResultSet rs) throws SQLException {
@@ -158,6 +164,8 @@ public class BibliographyDao extends UnitDao<Bibliography> {
 
 		int result = stmt.executeUpdate();
 		if (result>0) {
+			recordChange(unit.getId(), ChangeLog.Operation.UPDATE);
+			UnitCatalog.saved(getTable(), unit);
 			System.out.println("Update performed successfully.");
 		} else {
 			System.out.println("Could not execute update.");
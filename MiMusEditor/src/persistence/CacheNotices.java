@@ -0,0 +1,56 @@
+package persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notices of the changes made by the DAOs to the caches of the session
+ * that must know about them, i.e. the UsageIndex and the UnitCatalogs.
+ *
+ * Notices are given at once, unless the thread is making a batch of
+ * writes in a transaction begun with collect(): then they are kept, and
+ * the caller gives them with take() once the transaction is committed,
+ * or drops them if it is rolled back. So the caches never see a change
+ * that may not be there, nor read again the DB before it is committed.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class CacheNotices {
+
+	/* Notices kept for the batch of each thread, if it is collecting */
+	private static final ThreadLocal<List<Runnable>> collected = 
+			new ThreadLocal<>();
+
+	private CacheNotices() {}
+
+	/**
+	 * Keeps the notices given by this thread from now on, until take().
+	 */
+	public static void collect() {
+		collected.set(new ArrayList<>());
+	}
+
+	/**
+	 * Returns the notices kept since collect(), and gives the following
+	 * ones at once again.
+	 */
+	public static List<Runnable> take() {
+		List<Runnable> notices = collected.get();
+		collected.remove();
+		return notices == null ? Collections.emptyList() : notices;
+	}
+
+	/**
+	 * Gives <notice>, or keeps it if this thread is collecting them.
+	 */
+	static void post(Runnable notice) {
+		List<Runnable> notices = collected.get();
+		if (notices == null) {
+			notice.run();
+		} else {
+			notices.add(notice);
+		}
+	}
+}
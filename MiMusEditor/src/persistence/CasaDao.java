@@ -79,6 +79,8 @@ public class CasaDao extends EntityDao<Casa> {
 		
 		int result = stmt.executeUpdate();
 		if (result>0) {
+			recordChange(unit.getSpecificId(), ChangeLog.Operation.UPDATE);
+			UnitCatalog.saved(getTable(), unit);
 			System.out.println("Update performed successfully.");
 		} else {
 			System.out.println("Could not execute update.");
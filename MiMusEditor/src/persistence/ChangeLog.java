@@ -0,0 +1,437 @@
+package persistence;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import util.DBUtils;
+
+/**
+ * Change log of the DB: the DAOs append a row to table change_log for
+ * every row they insert, update or delete, in the same transaction when
+ * they write in one. The ID of a change is the version of the DB after
+ * it, and the version of a table is the ID of its last change, which a
+ * trigger keeps in table table_version.
+ *
+ * Caches and views learn what other users changed by polling: poll()
+ * reads the changes made since the last version seen, with a single
+ * query on the primary key of change_log, and tells them only about
+ * those. Changes made in this session are skipped, as the DAOs already
+ * apply them to the caches and the views that make them.
+ *
+ * IDs are given when a change is logged, not when its transaction is
+ * committed, so a change may become visible after others with a higher
+ * ID were read. The Cursor of a reader keeps the IDs skipped below the
+ * highest one read, and reads them again with the next changes until
+ * they show up, or until GAP_TIMEOUT passes, as those of transactions
+ * rolled back never do.
+ *
+ * Rows are identified as in their DAOs: by the specific ID for Entities
+ * and Relations, by their ID for the rest.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ChangeLog {
+
+	/* Operations logged, stored by their initial */
+	public enum Operation {
+		INSERT,
+		UPDATE,
+		DELETE;
+
+		private String getCode() {
+			return name().substring(0, 1);
+		}
+
+		private static Operation of(String code) {
+			for (Operation op : values()) {
+				if (op.getCode().equals(code)) {
+					return op;
+				}
+			}
+			return UPDATE;
+		}
+	}
+
+	/* Milliseconds that an ID skipped is read again, waiting for its commit */
+	private static final long GAP_TIMEOUT = 2 * 60 * 1000;
+	
+	/* IDs skipped kept at most, the lowest are given up first */
+	private static final int MAX_GAPS = 1000;
+	
+	/* Log state of the session, guarded by ChangeLog.class */
+	private static Cursor cursor = null;	/* null until the first poll */
+	private static final Map<String, Long> tableVersions = new HashMap<>();
+	private static final Set<Long> ownChanges = new HashSet<>();
+	private static final List<Consumer<List<Change>>> listeners =
+			new ArrayList<>();
+
+	private ChangeLog() {}
+
+	/**
+	 * Appends to the log that the row with ID <rowId> of table <table>
+	 * was changed by <op>, with Connection <conn>, so within its current
+	 * transaction. The change is not made to fail if it can't be logged,
+	 * e.g. in a DB without change_log: others just don't see it until
+	 * they refresh.
+	 */
+	static void record(Connection conn, String table, int rowId,
+			Operation op) {
+		String sql = "INSERT INTO change_log (table_name, row_id, operation) "
+				+ "VALUES (?,?,?)";
+		try {
+			PreparedStatement stmt = conn.prepareStatement(sql,
+					Statement.RETURN_GENERATED_KEYS);
+			stmt.setString(1, table);
+			stmt.setInt(2, rowId);
+			stmt.setString(3, op.getCode());
+			stmt.executeUpdate();
+
+			/* The generated key comes with the result, no extra round trip */
+			ResultSet keys = stmt.getGeneratedKeys();
+			if (keys.next()) {
+				synchronized (ChangeLog.class) {
+					ownChanges.add(keys.getLong(1));
+				}
+				LocalReplica.written(keys.getLong(1));
+			}
+		} catch (SQLException e) {
+			System.out.println("Could not log change of " + table + " "
+					+ rowId + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Appends to the log that the rows with IDs <rowIds> of table <table>
+	 * were changed by <op>, as record() does, with a single JDBC batch.
+	 * Used by bulk writes, e.g. imports, which are not made by the views,
+	 * so the changes are not skipped by the next poll.
+	 */
+	static void recordAll(Connection conn, String table,
+			Collection<Integer> rowIds, Operation op) {
+		if (rowIds.isEmpty()) {
+			return;
+		}
+		String sql = "INSERT INTO change_log (table_name, row_id, operation) "
+				+ "VALUES (?,?,?)";
+		try {
+			PreparedStatement stmt = conn.prepareStatement(sql);
+			for (Integer rowId : rowIds) {
+				stmt.setString(1, table);
+				stmt.setInt(2, rowId);
+				stmt.setString(3, op.getCode());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} catch (SQLException e) {
+			System.out.println("Could not log changes of " + rowIds.size()
+					+ " rows of " + table + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the changes made by other users since the last poll, in
+	 * order, and tells the caches and the listeners about them. The
+	 * first poll of a session only reads the current versions.
+	 */
+	public static List<Change> poll() throws SQLException {
+		Cursor since;
+		synchronized (ChangeLog.class) {
+			since = cursor;
+		}
+		List<Change> changes = new ArrayList<>();
+		Map<String, Long> versions = new HashMap<>();
+		Cursor next;
+		try (Connection conn = DBUtils.connectUnmonitored()) {
+			if (since == null) {
+				Statement stmt = conn.createStatement();
+				ResultSet rs = stmt.executeQuery(
+						"SELECT table_name, version FROM table_version");
+				while (rs.next()) {
+					versions.put(rs.getString(1), rs.getLong(2));
+				}
+				next = Cursor.start(conn);
+			} else {
+				next = since.read(conn, changes);
+				for (Change change : changes) {
+					versions.merge(change.getTable(), change.getVersion(), Math::max);
+				}
+			}
+		}
+
+		List<Consumer<List<Change>>> toNotify;
+		synchronized (ChangeLog.class) {
+			if (cursor != since) {
+				/* Polled meanwhile, or the session changed */
+				return Collections.emptyList();
+			}
+			for (Map.Entry<String, Long> v : versions.entrySet()) {
+				tableVersions.merge(v.getKey(), v.getValue(), Math::max);
+			}
+			cursor = next;
+			List<Change> others = new ArrayList<>();
+			for (Change change : changes) {
+				if (!ownChanges.contains(change.getVersion())) {
+					others.add(change);
+				}
+			}
+			changes = others;
+			
+			/* Own changes not committed yet are still skipped when read */
+			Cursor seen = next;
+			ownChanges.removeIf(v -> v <= seen.getVersion() && !seen.isMissing(v));
+			toNotify = new ArrayList<>(listeners);
+		}
+		if (changes.isEmpty()) {
+			return changes;
+		}
+
+		changes = Collections.unmodifiableList(changes);
+		for (Change change : changes) {
+			UnitCatalog.invalidate(change.getTable());
+			if (change.getTable().equals("entity_instance")) {
+				UsageIndex.invalidate(UsageIndex.Kind.ENTITY);
+			} else if (change.getTable().equals("referencia")) {
+				UsageIndex.invalidate(UsageIndex.Kind.BIBLIOGRAPHY);
+			}
+		}
+		for (Consumer<List<Change>> listener : toNotify) {
+			listener.accept(changes);
+		}
+		return changes;
+	}
+
+	/**
+	 * Returns the version of the DB seen by the last poll, or -1 if it
+	 * was not polled yet in this session.
+	 */
+	public static synchronized long getVersion() {
+		return cursor == null ? -1 : cursor.getVersion();
+	}
+	
+	/**
+	 * Returns the Cursor of the last poll, or null if it was not polled
+	 * yet in this session.
+	 */
+	static synchronized Cursor getCursor() {
+		return cursor;
+	}
+
+	/**
+	 * Returns the version of table <table> seen by the last poll, or 0
+	 * if it has not changed since it is logged.
+	 */
+	public static synchronized long getVersion(String table) {
+		Long tableVersion = tableVersions.get(table);
+		return tableVersion == null ? 0 : tableVersion;
+	}
+
+	/**
+	 * Forgets the versions seen, e.g. when the session changes.
+	 */
+	public static synchronized void invalidate() {
+		cursor = null;
+		tableVersions.clear();
+		ownChanges.clear();
+	}
+
+	/**
+	 * Registers <listener> to be given the changes of other users read
+	 * by each poll, from the thread that polls.
+	 */
+	public static synchronized void addListener(
+			Consumer<List<Change>> listener) {
+		listeners.add(listener);
+	}
+
+	public static synchronized void removeListener(
+			Consumer<List<Change>> listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Position of a reader of the log: the highest ID read, its version,
+	 * and the IDs below it not read yet, with the time they were first
+	 * skipped. Cursors are immutable: reading gives a new one.
+	 */
+	static final class Cursor {
+
+		private final long version;
+		private final TreeMap<Long, Long> gaps;
+
+		private Cursor(long version, TreeMap<Long, Long> gaps) {
+			this.version = version;
+			this.gaps = gaps;
+		}
+
+		/**
+		 * Returns the Cursor at version <version> that still has to read
+		 * the IDs <gaps>, e.g. as saved by a reader.
+		 */
+		static Cursor of(long version, Collection<Long> gaps) {
+			TreeMap<Long, Long> missing = new TreeMap<>();
+			long now = System.currentTimeMillis();
+			for (Long id : gaps) {
+				missing.put(id, now);
+			}
+			return new Cursor(version, missing);
+		}
+
+		/**
+		 * Returns the Cursor at the last change of the log, read through
+		 * <conn>. The IDs missing just below it are taken as skipped, as
+		 * their transactions may not be committed yet.
+		 */
+		static Cursor start(Connection conn) throws SQLException {
+			Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery(
+					"SELECT COALESCE(MAX(id), 0) FROM change_log");
+			long last = rs.next() ? rs.getLong(1) : 0;
+			Cursor start = new Cursor(Math.max(0, last - MAX_GAPS),
+					new TreeMap<>());
+			return start.read(conn, new ArrayList<>(), last);
+		}
+
+		long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Returns the IDs below the version not read yet.
+		 */
+		Set<Long> getGaps() {
+			return Collections.unmodifiableSet(gaps.keySet());
+		}
+
+		/**
+		 * Returns true if change <id> may still be read by this Cursor:
+		 * it is above its version, or skipped.
+		 */
+		boolean isMissing(long id) {
+			return id > version || gaps.containsKey(id);
+		}
+
+		/**
+		 * Returns true if this Cursor read all the changes read by
+		 * <other>.
+		 */
+		boolean covers(Cursor other) {
+			if (other.version > version) {
+				return false;
+			}
+			for (Long id : gaps.headMap(other.version, true).keySet()) {
+				if (!other.isMissing(id)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Reads through <conn> the changes after this Cursor, including
+		 * those skipped before, in order of ID, into <changes>, and
+		 * returns the Cursor after them.
+		 */
+		Cursor read(Connection conn, List<Change> changes) throws SQLException {
+			return read(conn, changes, Long.MAX_VALUE);
+		}
+
+		/**
+		 * Like read(), but only up to ID <to>.
+		 */
+		private Cursor read(Connection conn, List<Change> changes, long to)
+				throws SQLException {
+			String where = "id>" + version;
+			if (to < Long.MAX_VALUE) {
+				where += " AND id<=" + to;
+			}
+			if (!gaps.isEmpty()) {
+				where = "(" + where + ") OR id IN "
+						+ UnitDao.toInList(gaps.keySet());
+			}
+			Statement stmt = conn.createStatement();
+			ResultSet rs = stmt.executeQuery("SELECT id, table_name, "
+					+ "row_id, operation FROM change_log WHERE " + where
+					+ " ORDER BY id");
+			long now = System.currentTimeMillis();
+			TreeMap<Long, Long> missing = new TreeMap<>(gaps);
+			long last = version;
+			while (rs.next()) {
+				long id = rs.getLong(1);
+				changes.add(new Change(id, rs.getString(2), rs.getInt(3),
+						Operation.of(rs.getString(4))));
+				if (id > last) {
+					for (long skipped = Math.max(last, id - MAX_GAPS) + 1;
+							skipped < id; skipped++) {
+						missing.put(skipped, now);
+					}
+					last = id;
+				} else {
+					missing.remove(id);
+				}
+			}
+			if (to < Long.MAX_VALUE) {
+				for (long skipped = Math.max(last, to - MAX_GAPS) + 1;
+						skipped <= to; skipped++) {
+					missing.put(skipped, now);
+				}
+				last = Math.max(last, to);
+			}
+
+			/* Give up on those not committed in time, i.e. rolled back */
+			missing.values().removeIf(since -> now - since > GAP_TIMEOUT);
+			while (missing.size() > MAX_GAPS) {
+				missing.pollFirstEntry();
+			}
+			return new Cursor(last, missing);
+		}
+	}
+
+	/**
+	 * A change of a row of the DB.
+	 */
+	public static class Change {
+
+		private final long version;
+		private final String table;
+		private final int rowId;
+		private final Operation operation;
+
+		private Change(long version, String table, int rowId,
+				Operation operation) {
+			this.version = version;
+			this.table = table;
+			this.rowId = rowId;
+			this.operation = operation;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		public int getRowId() {
+			return rowId;
+		}
+
+		public Operation getOperation() {
+			return operation;
+		}
+	}
+}
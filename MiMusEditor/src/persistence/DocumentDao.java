@@ -6,12 +6,20 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.Map;
+import java.util.Set;
 
 import com.jcraft.jsch.JSchException;
 
 import model.Document;
+import model.Document.Part;
+import model.DocumentLoader;
 import model.Materia;
 import model.MiMusDate;
 import model.MiMusLibraryIdentifier;
@@ -25,6 +33,40 @@ import model.Note;
  *
  */
 public class DocumentDao extends UnitDao<Document> {
+	
+	/* Columns written on insert, in the order of setInsertParameters() */
+	private static final String[] INSERT_COLUMNS = {"id", "numeracio", "any1", 
+			"any2", "mes1", "mes2", "dia1", "dia2", "h_any1", "h_any2", "h_mes1", "h_mes2", "h_dia1",
+			"h_dia2","d_any1", "d_any2", "d_mes1", "d_mes2", "d_dia1",
+			"d_dia2", "lloc1", "lloc2","regest", "lib1_arxiu", "lib1_serie", 
+			"lib1_subserie", "lib1_subserie2","lib1_numero", "lib1_pagina", 
+			"lib2_arxiu", "lib2_serie", "lib2_subserie", "lib2_subserie2", 
+			"lib2_numero", "lib2_pagina", "edicions", "registres",
+			"citacions", "transcripcio", "llengua_id", "state_annot", 
+			"state_rev"};
+	
+	/* 
+	 * Columns of a Document summary: enough to list it, but without the
+	 * texts nor the related tables.
+	 */
+	private static final String SUMMARY_COLUMNS = "id, numeracio, any1, any2, "
+			+ "mes1, mes2, dia1, dia2, h_any1, h_any2, h_mes1, h_mes2, h_dia1, "
+			+ "h_dia2, d_any1, d_any2, d_mes1, d_mes2, d_dia1, d_dia2, "
+			+ "state_annot, state_rev";
+	
+	/* All columns but the texts, which lists of Documents load lazily */
+	private static final String LIST_COLUMNS = SUMMARY_COLUMNS + ", lloc1, "
+			+ "lloc2, lib1_arxiu, lib1_serie, lib1_subserie, lib1_subserie2, "
+			+ "lib1_numero, lib1_pagina, lib2_arxiu, lib2_serie, lib2_subserie, "
+			+ "lib2_subserie2, lib2_numero, lib2_pagina, edicions, registres, "
+			+ "citacions, llengua_id";
+	
+	/* Loads the parts of Documents left pending by this DAO */
+	private static final DocumentLoader LOADER = DocumentDao::loadLazily;
+	
+	/* Columns kept on upsert: edited in MiMus, not coming from the txt */
+	private static final List<String> ANNOTATED_COLUMNS = 
+			Arrays.asList("id", "llengua_id", "state_annot", "state_rev");
 
 	public DocumentDao() throws SQLException {
 		super();
@@ -36,25 +78,105 @@ public class DocumentDao extends UnitDao<Document> {
 
 	@Override
 	public int insert(Document unit) throws SQLException {
-		String[] insertColumns = {"id", "numeracio", "any1", "any2", "mes1", "mes2",
-				"dia1", "dia2", "h_any1", "h_any2", "h_mes1", "h_mes2", "h_dia1",
-				"h_dia2","d_any1", "d_any2", "d_mes1", "d_mes2", "d_dia1",
-				"d_dia2", "lloc1", "lloc2","regest", "lib1_arxiu", "lib1_serie", 
-				"lib1_subserie", "lib1_subserie2","lib1_numero", "lib1_pagina", 
-				"lib2_arxiu", "lib2_serie", "lib2_subserie", "lib2_subserie2", 
-				"lib2_numero", "lib2_pagina", "edicions", "registres",
-				"citacions", "transcripcio", "llengua_id", "state_annot", 
-				"state_rev"};
+		PreparedStatement stmt = getConnection().prepareStatement(getInsertSql());
+		setInsertParameters(stmt, unit);
+		
+		int docResult = stmt.executeUpdate();
+		if (docResult>0) {
+			boolean notesOk = true;
+			for (Note note : unit.getNotes()) {
+				int noteResult = new NoteDao(getConnection()).insert(note);
+				if (noteResult<1) {
+					notesOk = false;
+					break;
+				}
+			}
+			if (notesOk) {
+				recordChange(unit.getId(), ChangeLog.Operation.INSERT);
+				return docResult;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Inserts all Documents in <docs> and their Notes with one JDBC batch
+	 * per table, instead of a round trip per row. It doesn't commit: the
+	 * caller decides the transaction the batch belongs to. Returns the
+	 * number of Documents inserted. They are logged in the ChangeLog too.
+	 */
+	public int insertBatch(List<Document> docs) throws SQLException {
+		PreparedStatement stmt = getConnection().prepareStatement(getInsertSql());
+		List<Note> notes = new ArrayList<>();
+		for (Document doc : docs) {
+			setInsertParameters(stmt, doc);
+			stmt.addBatch();
+			notes.addAll(doc.getNotes());
+		}
+		int inserted = 0;
+		for (int result : stmt.executeBatch()) {
+			if (result > 0 || result == Statement.SUCCESS_NO_INFO) {
+				inserted++;
+			}
+		}
+		new NoteDao(getConnection()).insertBatch(notes);
+		ChangeLog.recordAll(getConnection(), getTable(), idsOf(docs), 
+				ChangeLog.Operation.INSERT);
+		return inserted;
+	}
+	
+	/**
+	 * Inserts all Documents in <docs> and their Notes, or updates them if
+	 * they already exist, with one JDBC batch per table. On update, only
+	 * the fields coming from the txt are changed, and Notes are synced
+	 * with NoteDao.syncBatch(). Annotations made in MiMus (Llengua,
+	 * Materies, states, entities...) are kept. It doesn't commit: the
+	 * caller decides the transaction the batch belongs to. They are logged
+	 * in the ChangeLog too.
+	 */
+	public void upsertBatch(List<Document> docs) throws SQLException {
+		String sql = getInsertSql() + " ON DUPLICATE KEY UPDATE ";
+		boolean first = true;
+		for (String column : INSERT_COLUMNS) {
+			if (!ANNOTATED_COLUMNS.contains(column)) {
+				sql += (first ? "" : ", ") + column + "=VALUES(" + column + ")";
+				first = false;
+			}
+		}
+		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		for (Document doc : docs) {
+			setInsertParameters(stmt, doc);
+			stmt.addBatch();
+		}
+		stmt.executeBatch();
+		new NoteDao(getConnection()).syncBatch(docs);
+		ChangeLog.recordAll(getConnection(), getTable(), idsOf(docs), 
+				ChangeLog.Operation.UPDATE);
+	}
+	
+	private static List<Integer> idsOf(List<Document> docs) {
+		List<Integer> ids = new ArrayList<>(docs.size());
+		for (Document doc : docs) {
+			ids.add(doc.getId());
+		}
+		return ids;
+	}
+	
+	private String getInsertSql() {
 		String sql = "INSERT INTO " + getTable() + " (";
-		for (int i=0; i<insertColumns.length-1; i++) {
-			sql += insertColumns[i] + ", ";
+		for (int i=0; i<INSERT_COLUMNS.length-1; i++) {
+			sql += INSERT_COLUMNS[i] + ", ";
 		}
-		sql += insertColumns[insertColumns.length-1] + ") VALUES (";
-		for (int i=0; i<insertColumns.length-1; i++) {
+		sql += INSERT_COLUMNS[INSERT_COLUMNS.length-1] + ") VALUES (";
+		for (int i=0; i<INSERT_COLUMNS.length-1; i++) {
 			sql += "?, ";
 		}
 		sql += "?)";
-		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		return sql;
+	}
+	
+	private void setInsertParameters(PreparedStatement stmt, Document unit) 
+			throws SQLException {
 		stmt.setInt(1, unit.getId());
 		stmt.setString(2, unit.getNumbering());
 		stmt.setInt(3, unit.getDate().getYear1());
@@ -97,27 +219,281 @@ public class DocumentDao extends UnitDao<Document> {
 		stmt.setInt(40, unit.getLanguage());
 		stmt.setInt(41, unit.getStateAnnotIdx());
 		stmt.setInt(42, unit.getStateRevIdx());
+	}
+
+	@Override
+	public List<Document> selectAll() throws SQLException {
+		return selectGraphs(selectLocally("id", null), 
+				"SELECT " + LIST_COLUMNS + " FROM " + getTable(), true);
+	}
+
+	/**
+	 * Builds a single Document with its full graph. Used by selectOne(),
+	 * the batched queries of this DAO go through selectGraphs() instead.
+	 */
+	@Override
+	protected Document make(ResultSet rs) throws SQLException {
+		Map<Integer, Integer> docsToLlengues = new HashMap<>();
+		List<Document> docs = new ArrayList<>();
+		docs.add(makeDocument(rs, docsToLlengues, true));
+		completeGraphs(docs, docsToLlengues, false);
+		return docs.get(0);
+	}
+	
+	/**
+	 * Executes query <sql> on the document table, unless its rows are 
+	 * given in <local>, read from the LocalReplica, and returns the 
+	 * Documents selected with their whole graph (Llengua, Materies and 
+	 * Notes). Instead of querying the related tables for every row, each
+	 * of them is queried once for all the Documents and the results are
+	 * stitched in memory, so the number of round trips does not grow
+	 * with the number of rows. Their texts are left to be loaded on 
+	 * first access.
+	 * If <all> is true, the query selects the whole document table and the
+	 * related tables are read whole too, without an IN list of IDs.
+	 */
+	private List<Document> selectGraphs(ResultSet local, String sql, boolean all) 
+			throws SQLException {
+		ResultSet rs = local;
+		if (rs == null) {
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
-		int docResult = stmt.executeUpdate();
-		if (docResult>0) {
-			boolean notesOk = true;
-			for (Note note : unit.getNotes()) {
-				int noteResult = new NoteDao(getConnection()).insert(note);
-				if (noteResult<1) {
-					notesOk = false;
-					break;
+		Map<Integer, Integer> docsToLlengues = new HashMap<>();
+		List<Document> docs = new ArrayList<>();
+		while (rs.next()) {
+			docs.add(makeDocument(rs, docsToLlengues, false));
+		}
+		completeGraphs(docs, docsToLlengues, all);
+		return docs;
+	}
+	
+	/**
+	 * Fills Llengua, Materies and Notes of Documents <docs>, given the
+	 * llengua_id of each Document in <docsToLlengues>. It performs one
+	 * query per related table, regardless of the number of Documents.
+	 */
+	private void completeGraphs(List<Document> docs, 
+			Map<Integer, Integer> docsToLlengues, boolean all) throws SQLException {
+		if (docs.isEmpty()) {
+			return;
+		}
+		Map<Integer, Document> idsToDocs = new LinkedHashMap<>();
+		for (Document doc : docs) {
+			idsToDocs.put(doc.getId(), doc);
+		}
+		
+		/* Llengua and Materia names come from the lookup registry */
+		ReferenceData refs = ReferenceData.get(getConnection());
+		for (Document doc : docs) {
+			String llengua = refs.getLlengues().getName(
+					docsToLlengues.get(doc.getId()));
+			if (llengua == null) {
+				throw new SQLException("Llengua not found for Document " 
+						+ doc.getIdStr());
+			}
+			doc.setLanguage(llengua);
+		}
+		
+		/* Materies of all documents */
+		ResultSet materiaRS = LocalReplica.select("has_materia", "document_id", 
+				all ? null : idsToDocs.keySet());
+		if (materiaRS == null) {
+			String sql = "SELECT document_id, materia_id FROM has_materia";
+			if (!all) {
+				sql += " WHERE document_id IN " + toInList(idsToDocs.keySet());
+			}
+			Statement stmt = getConnection().createStatement();
+			materiaRS = stmt.executeQuery(sql);
+		}
+		while (materiaRS.next()) {
+			Document doc = idsToDocs.get(materiaRS.getInt("document_id"));
+			int materiaId = materiaRS.getInt("materia_id");
+			String materiaName = refs.getMateries().getName(materiaId);
+			if (doc != null && materiaName != null) {
+				Materia mat = new Materia(materiaName);
+				mat.setId(materiaId);
+				doc.addSubject(mat);
+			}
+		}
+		
+		/* Notes of all documents */
+		new NoteDao(getConnection()).select(idsToDocs, all);
+	}
+	
+	/**
+	 * Transforms the current row of <rs> into a Document with the fields
+	 * stored in the document table only. Its llengua_id is saved in
+	 * <docsToLlengues>, keyed by Document ID, to be resolved afterwards.
+	 * If <texts> is false, <rs> doesn't have the regest and transcription,
+	 * and they are left to be loaded on first access.
+	 */
+	private Document makeDocument(ResultSet rs, 
+			Map<Integer, Integer> docsToLlengues, boolean texts) 
+			throws SQLException {
+		Document doc = new Document();
+		doc.setId(rs.getInt("id"));
+		fillSummary(doc, rs);
+		fillDetails(doc, rs);
+		docsToLlengues.put(doc.getId(), rs.getInt("llengua_id"));
+		if (texts) {
+			fillTexts(doc, rs);
+		} else {
+			doc.setLazy(LOADER, Part.TEXTS);
+		}
+		return doc;
+	}
+	
+	/**
+	 * Sets the SUMMARY part of <doc> from the current row of <rs>.
+	 */
+	private void fillSummary(Document doc, ResultSet rs) throws SQLException {
+		doc.setNumbering(rs.getString("numeracio"));
+		doc.setDate(makeDate(rs));
+		doc.setStateAnnotIdx(rs.getInt("state_annot"));
+		doc.setStateRevIdx(rs.getInt("state_rev"));
+	}
+	
+	/**
+	 * Sets the DETAILS part of <doc> from the current row of <rs>, except
+	 * its Llengua, which must be resolved from its llengua_id.
+	 */
+	private void fillDetails(Document doc, ResultSet rs) throws SQLException {
+		doc.setPlace1(rs.getString("lloc1"));
+		doc.setPlace2(rs.getString("lloc2"));
+		
+		MiMusLibraryIdentifier library = new MiMusLibraryIdentifier();
+		library.setArchive(rs.getString("lib1_arxiu"));
+		library.setSeries(rs.getString("lib1_serie"));
+		library.setSubseries1(rs.getString("lib1_subserie"));
+		library.setSubseries2(rs.getString("lib1_subserie2"));
+		library.setNumber(rs.getString("lib1_numero"));
+		library.setPage(rs.getString("lib1_pagina"));
+		
+		MiMusLibraryIdentifier library2 = new MiMusLibraryIdentifier();
+		library2.setArchive(rs.getString("lib2_arxiu"));
+		library2.setSeries(rs.getString("lib2_serie"));
+		library2.setSubseries1(rs.getString("lib2_subserie"));
+		library2.setSubseries2(rs.getString("lib2_subserie2"));
+		library2.setNumber(rs.getString("lib2_numero"));
+		library2.setPage(rs.getString("lib2_pagina"));
+		
+		doc.setLibrary(library);
+		doc.setLibrary2(library2);
+		doc.setEditions(rs.getString("edicions"));
+		doc.setRegisters(rs.getString("registres"));
+		doc.setCitations(rs.getString("citacions"));
+	}
+	
+	/**
+	 * Sets the TEXTS part of <doc> from the current row of <rs>.
+	 */
+	private void fillTexts(Document doc, ResultSet rs) throws SQLException {
+		doc.setRegestText(rs.getString("regest"));
+		doc.setTranscriptionText(rs.getString("transcripcio"));
+	}
+	
+	/**
+	 * Returns the Document with ID <id> as a stub: only its ID is set, and
+	 * the rest of it is loaded on first access. Used to resolve references
+	 * to Documents from annotations, which only need their identity. If 
+	 * the Document is already in the IdentityMap, it is returned instead.
+	 */
+	public Document selectStub(int id) {
+		Document known = getIdentityMap().get(getTable(), id);
+		if (known != null) {
+			return known;
+		}
+		Document doc = new Document();
+		doc.setId(id);
+		doc.setLazy(LOADER, Part.values());
+		getIdentityMap().put(getTable(), doc);
+		return doc;
+	}
+	
+	/**
+	 * Loads parts <parts> of <doc>, left pending by this DAO, with a
+	 * Connection borrowed from the session pool: the one used to build 
+	 * <doc> may have been given back by then.
+	 */
+	private static void loadLazily(Document doc, Set<Part> parts) 
+			throws SQLException {
+		try (DocumentDao dao = new DocumentDao()) {
+			dao.fill(doc, parts);
+		} catch (SQLException e) {
+			System.out.println("SQLException: could not load " + parts 
+					+ " of Document " + doc.getIdStr());
+			throw e;
+		}
+	}
+	
+	/**
+	 * Downloads parts <parts> of <doc> and sets them. The parts stored in
+	 * the document table are read in a single query.
+	 */
+	private void fill(Document doc, Set<Part> parts) throws SQLException {
+		ReferenceData refs = ReferenceData.get(getConnection());
+		if (parts.contains(Part.SUMMARY) || parts.contains(Part.DETAILS) 
+				|| parts.contains(Part.TEXTS)) {
+			ResultSet rs = selectLocally("id", Collections.singleton(doc.getId()));
+			if (rs == null) {
+				String sql = "SELECT * FROM " + getTable() + " WHERE id=?";
+				PreparedStatement stmt = getConnection().prepareStatement(sql);
+				stmt.setInt(1, doc.getId());
+				rs = stmt.executeQuery();
+			}
+			if (!rs.next()) {
+				throw new SQLException("Document " + doc.getIdStr() + " not found.");
+			}
+			if (parts.contains(Part.SUMMARY)) {
+				fillSummary(doc, rs);
+			}
+			if (parts.contains(Part.DETAILS)) {
+				fillDetails(doc, rs);
+				String llengua = refs.getLlengues().getName(rs.getInt("llengua_id"));
+				if (llengua == null) {
+					throw new SQLException("Llengua not found for Document " 
+							+ doc.getIdStr());
 				}
+				doc.setLanguage(llengua);
 			}
-			if (notesOk) {
-				return docResult;
+			if (parts.contains(Part.TEXTS)) {
+				fillTexts(doc, rs);
 			}
 		}
-		return -1;
+		if (parts.contains(Part.SUBJECTS)) {
+			ResultSet rs = LocalReplica.select("has_materia", "document_id", 
+					Collections.singleton(doc.getId()));
+			if (rs == null) {
+				String sql = "SELECT materia_id FROM has_materia WHERE document_id=?";
+				PreparedStatement stmt = getConnection().prepareStatement(sql);
+				stmt.setInt(1, doc.getId());
+				rs = stmt.executeQuery();
+			}
+			List<Materia> subjects = new ArrayList<>();
+			while (rs.next()) {
+				int materiaId = rs.getInt("materia_id");
+				String materiaName = refs.getMateries().getName(materiaId);
+				if (materiaName != null) {
+					Materia mat = new Materia(materiaName);
+					mat.setId(materiaId);
+					subjects.add(mat);
+				}
+			}
+			doc.setSubjects(subjects);
+		}
+		if (parts.contains(Part.NOTES)) {
+			List<Note> notes = new NoteDao(getConnection()).select(doc);
+			doc.setNotes(notes);
+		}
 	}
-
-	protected Document make(ResultSet rs) throws SQLException {
-		int id = rs.getInt("id");
-		String numeracio = rs.getString("numeracio");
+	
+	/**
+	 * Transforms the date columns of the current row of <rs> into a 
+	 * MiMusDate.
+	 */
+	private MiMusDate makeDate(ResultSet rs) throws SQLException {
 		int any = rs.getInt("any1");
 		int any2 = rs.getInt("any2");
 		int mes = rs.getInt("mes1");
@@ -136,121 +512,143 @@ public class DocumentDao extends UnitDao<Document> {
 		boolean dmes2 = rs.getBoolean("d_mes2");
 		boolean ddia = rs.getBoolean("d_dia1");
 		boolean ddia2 = rs.getBoolean("d_dia2");
-		String lloc = rs.getString("lloc1");
-		String lloc2 = rs.getString("lloc2");
-		String regest = rs.getString("regest");
-		String lib1Arxiu = rs.getString("lib1_arxiu");
-		String lib1Serie = rs.getString("lib1_serie");
-		String lib1Subserie = rs.getString("lib1_subserie");
-		String lib1Subserie2 = rs.getString("lib1_subserie2");
-		String lib1Numero = rs.getString("lib1_numero");
-		String lib1Pagina = rs.getString("lib1_pagina");
-		String lib2Arxiu = rs.getString("lib2_arxiu");
-		String lib2Serie = rs.getString("lib2_serie");
-		String lib2Subserie = rs.getString("lib2_subserie");
-		String lib2Subserie2 = rs.getString("lib2_subserie2");
-		String lib2Numero = rs.getString("lib2_numero");
-		String lib2Pagina = rs.getString("lib2_pagina");
-		String edicions = rs.getString("edicions");
-		String registres = rs.getString("registres");
-		String citacions = rs.getString("citacions");
-		String transcripcio = rs.getString("transcripcio");
-		int llenguaId = rs.getInt("llengua_id");
-		int stateAnnot = rs.getInt("state_annot");
-		int stateRev = rs.getInt("state_rev");
-		System.out.println("Llengua ID:" + llenguaId);
-		/* Query to Llengua table to get it from ID */
-		String sql = "SELECT llengua_name FROM llengua WHERE id=" + llenguaId;
+		
+		MiMusDate date = new MiMusDate();
+		date.setInterval(any2>0 || mes2>0 || dia2>0);
+		date.setYear1(any);
+		date.setMonth1(mes);
+		date.setDay1(dia);
+		date.setYear2(any2);
+		date.setMonth2(mes2);
+		date.setDay2(dia2);
+		date.sethYear1(hany);
+		date.sethMonth1(hmes);
+		date.sethDay1(hdia);
+		date.sethYear2(hany2);
+		date.sethMonth2(hmes2);
+		date.sethDay2(hdia2);
+		date.setuYear1(dany);
+		date.setuMonth1(dmes);
+		date.setuDay1(ddia);
+		date.setuYear2(dany2);
+		date.setuMonth2(dmes2);
+		date.setuDay2(ddia2);
+		return date;
+	}
+	
+	/**
+	 * Returns the number of Documents in the DB.
+	 */
+	public int count() throws SQLException {
+		List<Integer> ids = LocalReplica.selectIds(getTable());
+		if (ids != null) {
+			return ids.size();
+		}
 		Statement stmt = getConnection().createStatement();
-		ResultSet llenguaRS = stmt.executeQuery(sql);
-		if (llenguaRS.next()) {
-			String llengua = llenguaRS.getString("llengua_name");
-			
-			/* Query to Materia and HasMateria tables */
-			MateriaDao matDao = new MateriaDao(getConnection());
-			TreeMap<Integer,String> idsToMateries = matDao.selectAllAsIdsToNames();
-			System.out.println("TreeMap size: " + idsToMateries.size());
-			
-			sql = "SELECT materia_id FROM has_materia WHERE document_id=" + id;
-			stmt = getConnection().createStatement();
-			ResultSet hasMateriaRS = stmt.executeQuery(sql);
-			
-			List<Materia> materies = new ArrayList<>();
-			while (hasMateriaRS.next()) {
-				int materiaId = hasMateriaRS.getInt("materia_id");
-				Materia newMat = new Materia(idsToMateries.get(materiaId));
-				newMat.setId(materiaId);
-				materies.add(newMat);
-				System.out.println("Materia: " + materiaId);
-			}
-			
-			
-			/* Make Document from its parts */
+		ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + getTable());
+		return rs.next() ? rs.getInt(1) : 0;
+	}
+	
+	/**
+	 * Selects the summaries of, at most, the first <limit> Documents with 
+	 * ID greater than <afterId>, in order of ID. A summary is a Document 
+	 * with only its ID, numbering, date and states, which is enough to 
+	 * list it and to open it in the Editor. The rest of it is loaded on
+	 * first access. Paging by the last ID seen, 
+	 * instead of an OFFSET, makes the DB seek each page in the primary 
+	 * key without scanning the preceding rows.
+	 */
+	public List<Document> selectSummaries(int afterId, int limit) 
+			throws SQLException {
+		ResultSet rs = LocalReplica.selectAfter(getTable(), afterId, limit);
+		if (rs == null) {
+			String sql = "SELECT " + SUMMARY_COLUMNS + " FROM " + getTable() 
+					+ " WHERE id>? ORDER BY id LIMIT ?";
+			PreparedStatement stmt = getConnection().prepareStatement(sql);
+			stmt.setInt(1, afterId);
+			stmt.setInt(2, limit);
+			rs = stmt.executeQuery();
+		}
+		
+		List<Document> docs = new ArrayList<>();
+		while (rs.next()) {
 			Document doc = new Document();
-			doc.setId(id);
-			doc.setNumbering(numeracio);
-			
-			/* Query to Note table */
-			List<Note> notes = new NoteDao(getConnection()).select(doc);
-			
-			MiMusDate date = new MiMusDate();
-			date.setInterval(any2>0 || mes2>0 || dia2>0);
-			System.out.println(date.isInterval() + " " + any2 + " " + mes2 + " " + dia2);
-			date.setYear1(any);
-			date.setMonth1(mes);
-			date.setDay1(dia);
-			date.setYear2(any2);
-			date.setMonth2(mes2);
-			date.setDay2(dia2);
-			date.sethYear1(hany);
-			date.sethMonth1(hmes);
-			date.sethDay1(hdia);
-			date.sethYear2(hany2);
-			date.sethMonth2(hmes2);
-			date.sethDay2(hdia2);
-			date.setuYear1(dany);
-			date.setuMonth1(dmes);
-			date.setuDay1(ddia);
-			date.setuYear2(dany2);
-			date.setuMonth2(dmes2);
-			date.setuDay2(ddia2);
-			
-			doc.setDate(date);
-			doc.setPlace1(lloc);
-			doc.setPlace2(lloc2);
-			doc.setRegestText(regest);
-			
-			MiMusLibraryIdentifier library = new MiMusLibraryIdentifier();
-			library.setArchive(lib1Arxiu);
-			library.setSeries(lib1Serie);
-			library.setSubseries1(lib1Subserie);
-			library.setSubseries2(lib1Subserie2);
-			library.setNumber(lib1Numero);
-			library.setPage(lib1Pagina);
-			
-			MiMusLibraryIdentifier library2 = new MiMusLibraryIdentifier();
-			library2.setArchive(lib2Arxiu);
-			library2.setSeries(lib2Serie);
-			library2.setSubseries1(lib2Subserie);
-			library2.setSubseries2(lib2Subserie2);
-			library2.setNumber(lib2Numero);
-			library2.setPage(lib2Pagina);
-			
-			doc.setLibrary(library);
-			doc.setLibrary2(library2);
-			doc.setEditions(edicions);
-			doc.setRegisters(registres);
-			doc.setCitations(citacions);
-			doc.setTranscriptionText(transcripcio);
-			doc.setNotes(notes);
-			doc.setLanguage(llengua);
-			doc.setSubjects(materies);
-			doc.setStateAnnotIdx(stateAnnot);
-			doc.setStateRevIdx(stateRev);
-			System.out.println("Materies: " + doc.getSubjects().size());
-			return doc;
+			doc.setId(rs.getInt("id"));
+			fillSummary(doc, rs);
+			doc.setLazy(LOADER, Part.DETAILS, Part.TEXTS, Part.NOTES, Part.SUBJECTS);
+			docs.add(doc);
+		}
+		return docs;
+	}
+	
+	/**
+	 * Returns the ID of the Document at position <offset> in order of ID,
+	 * counting from 0, or -1 if there are not so many. It reads the primary
+	 * key only, and lets selectSummaries() start at any position.
+	 */
+	public int selectIdAt(int offset) throws SQLException {
+		List<Integer> ids = LocalReplica.selectIds(getTable());
+		if (ids != null) {
+			return offset >= 0 && offset < ids.size() ? ids.get(offset) : -1;
+		}
+		String sql = "SELECT id FROM " + getTable() + " ORDER BY id LIMIT 1 OFFSET ?";
+		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		stmt.setInt(1, offset);
+		ResultSet rs = stmt.executeQuery();
+		return rs.next() ? rs.getInt("id") : -1;
+	}
+	
+	/**
+	 * Returns a fingerprint of the texts of every Document, keyed by its
+	 * ID: its regest, transcription and Notes. It is computed by the DB, 
+	 * so the texts are not downloaded, and changes whenever any of them
+	 * is edited, which lets a local copy of the texts be updated with 
+	 * only the Documents that changed.
+	 */
+	public Map<Integer, Long> selectTextFingerprints() throws SQLException {
+		String sql = "SELECT d.id, CRC32(CONCAT_WS('|', d.regest, d.transcripcio)) AS texts, "
+				+ "(SELECT COALESCE(SUM(CRC32(CONCAT(n.id, ':', n.note_text))), 0) "
+				+ "FROM note n WHERE n.document_id=d.id) AS notes "
+				+ "FROM " + getTable() + " d";
+		Statement stmt = getConnection().createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		
+		Map<Integer, Long> fingerprints = new HashMap<>();
+		while (rs.next()) {
+			fingerprints.put(rs.getInt("id"), 
+					rs.getLong("texts") * 31 + rs.getLong("notes"));
+		}
+		return fingerprints;
+	}
+	
+	/**
+	 * Selects the regest, transcription and Notes of the Documents with
+	 * IDs in <ids>, in two queries. The rest of each Document is loaded
+	 * on first access.
+	 */
+	public List<Document> selectTexts(Collection<Integer> ids) 
+			throws SQLException {
+		List<Document> docs = new ArrayList<>();
+		if (ids.isEmpty()) {
+			return docs;
+		}
+		String sql = "SELECT id, regest, transcripcio FROM " + getTable() 
+				+ " WHERE id IN " + toInList(ids) + " ORDER BY id";
+		Statement stmt = getConnection().createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		
+		Map<Integer, Document> idsToDocs = new LinkedHashMap<>();
+		while (rs.next()) {
+			Document doc = new Document();
+			doc.setId(rs.getInt("id"));
+			fillTexts(doc, rs);
+			doc.setNotes(new ArrayList<>());
+			doc.setLazy(LOADER, Part.SUMMARY, Part.DETAILS, Part.SUBJECTS);
+			idsToDocs.put(doc.getId(), doc);
+			docs.add(doc);
 		}
-		throw new SQLException();
+		new NoteDao(getConnection()).select(idsToDocs, false);
+		return docs;
 	}
 	
 	@Override
@@ -270,13 +668,9 @@ public class DocumentDao extends UnitDao<Document> {
 		boolean ok = false;
 		if (stateRS > 0) {
 			/* Get llengua_id from Llengua String */
-			sql = "SELECT id FROM llengua WHERE llengua_name=?";
-			PreparedStatement llenguaStmt = getConnection().prepareStatement(sql);
-			llenguaStmt.setString(1, unit.getLanguageStr());
-			ResultSet llenguaRS = llenguaStmt.executeQuery();
-			if (llenguaRS.next()) {
-				int llenguaId = llenguaRS.getInt("id");
-				
+			int llenguaId = ReferenceData.get(getConnection()).getLlengues()
+					.getId(unit.getLanguageStr());
+			if (llenguaId > 0) {
 				sql = "UPDATE document SET llengua_id=? WHERE id=?";
 				PreparedStatement stmt1 = getConnection().prepareStatement(sql);
 				stmt1.setInt(1, llenguaId);
@@ -298,6 +692,7 @@ public class DocumentDao extends UnitDao<Document> {
 						result2 += stmt3.executeUpdate();
 					}
 					if (result2 == unit.getSubjects().size()) {
+						recordChange(unit.getId(), ChangeLog.Operation.UPDATE);
 						getConnection().commit();
 						System.out.println("Document updated correctly.");
 						ok = true;
@@ -320,32 +715,34 @@ public class DocumentDao extends UnitDao<Document> {
 		getConnection().setAutoCommit(true);
 	}
 	
+	/**
+	 * Selects the Documents where the Entity with common ID <id> is
+	 * annotated. The annotations are read with a semi-join on their
+	 * index, so no DISTINCT is needed.
+	 */
 	public List<Document> selectWhereEntity(int id) throws SQLException {
-		String sql = "SELECT DISTINCT document.* "
-				+ "FROM document, entity_instance, entity "
-				+ "WHERE document.id=entity_instance.document_id "
-				+ "AND entity_instance.entity_id="+id;
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
-		List<Document> docs = new ArrayList<>();
-		while (rs.next()) {
-			docs.add(make(rs));
-		}
-		return docs;
+		String sql = "SELECT " + LIST_COLUMNS + " FROM " + getTable()
+				+ " WHERE id IN (SELECT document_id FROM entity_instance "
+				+ "WHERE entity_id=" + id + ")";
+		Set<Integer> docIds = LocalReplica.selectValues("entity_instance", 
+				"document_id", "entity_id", Collections.singleton(id));
+		return selectGraphs(docIds == null ? null : selectLocally("id", docIds), 
+				sql, false);
 	}
 	
+	/**
+	 * Selects the Documents where the Bibliography entry with ID <id> is
+	 * referenced. The references are read with a semi-join on their index,
+	 * so no DISTINCT is needed.
+	 */
 	public List<Document> selectWhereBiblio(int id) throws SQLException {
-		String sql = "SELECT DISTINCT document.* "
-				+ "FROM document, referencia, bibliografia "
-				+ "WHERE document.id=referencia.document_id "
-				+ "AND referencia.bibliografia_id=" + id;
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
-		List<Document> docs = new ArrayList<>();
-		while (rs.next()) {
-			docs.add(make(rs));
-		}
-		return docs;
+		String sql = "SELECT " + LIST_COLUMNS + " FROM " + getTable()
+				+ " WHERE id IN (SELECT document_id FROM referencia "
+				+ "WHERE bibliografia_id=" + id + ")";
+		Set<Integer> docIds = LocalReplica.selectValues("referencia", 
+				"document_id", "bibliografia_id", Collections.singleton(id));
+		return selectGraphs(docIds == null ? null : selectLocally("id", docIds), 
+				sql, false);
 	}
 	
 	@Override
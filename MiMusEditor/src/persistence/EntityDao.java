@@ -5,6 +5,12 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import com.jcraft.jsch.JSchException;
 
@@ -38,20 +44,78 @@ public abstract class EntityDao<E extends Entity> extends UnitDao<E> {
 	/**
 	 * Entities are hierarchical units which have two IDs, the common
 	 * and the specific one. Boolean parameter <specific> defines
-	 * where to look parameter <id> from.
+	 * where to look parameter <id> from. If the entity is already in
+	 * the IdentityMap, the DB is not queried.
 	 */
 	public E selectOne(int id, boolean specific) throws SQLException {
 		String key = specific ? "id" : "entity_id";
-		String sql = "SELECT * FROM " + getTable() + " WHERE " + key + "=" + id;
-		System.out.println("SQL: " + sql);
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		E known = getIdentityMap().get(getTable(), key, id);
+		if (known != null) {
+			return known;
+		}
+		ResultSet rs = selectLocally(key, Collections.singleton(id));
+		if (rs == null) {
+			String sql = getSelectFrom() + " WHERE " + getTable() + "." + key 
+					+ "=" + id;
+			System.out.println("SQL: " + sql);
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		if (rs.next()) {
-			return make(rs);
+			E entity = make(rs);
+			register(entity);
+			return entity;
 		}
 		throw new SQLException();
 	}
 	
+	/**
+	 * Selects the entities whose ID is in <ids> with a single query, the
+	 * specific or the common one depending on <specific>, as in
+	 * selectOne(). Entities already in the IdentityMap are not queried.
+	 * Returns them keyed by the ID they were looked up by.
+	 */
+	public Map<Integer, E> selectIn(Collection<Integer> ids, boolean specific) 
+			throws SQLException {
+		String key = specific ? "id" : "entity_id";
+		Map<Integer, E> found = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (Integer id : ids) {
+			E known = getIdentityMap().get(getTable(), key, id);
+			if (known != null) {
+				found.put(id, known);
+			} else {
+				missing.add(id);
+			}
+		}
+		if (!missing.isEmpty()) {
+			ResultSet rs = selectLocally(key, missing);
+			if (rs == null) {
+				String sql = getSelectFrom() + " WHERE " + getTable() + "." + key 
+						+ " IN " + toInList(missing);
+				Statement stmt = getConnection().createStatement();
+				rs = stmt.executeQuery(sql);
+			}
+			while (rs.next()) {
+				E entity = make(rs);
+				register(entity);
+				found.put(specific ? entity.getSpecificId() : entity.getId(), entity);
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Registers <entity> in the IdentityMap by its specific and common
+	 * IDs, so it is found whichever of them it is looked up by.
+	 */
+	protected void register(E entity) {
+		IdentityMap identityMap = getIdentityMap();
+		identityMap.put(getTable(), "id", entity.getSpecificId(), entity);
+		identityMap.put(getTable(), "entity_id", entity.getId(), entity);
+		identityMap.put("entity", entity);
+	}
+	
 	/**
 	 * Inserts an Entity. This requires making an insertion in the
 	 * common Entity table and in the specific E table. To avoid
@@ -71,8 +135,12 @@ public abstract class EntityDao<E extends Entity> extends UnitDao<E> {
 			int result = updateCommonEntity(commonId, specId);
 			if (result>0) {
 				/* If insert succeeded, commit and leave transactional mode */
+				recordChange(specId, ChangeLog.Operation.INSERT);
 				getConnection().commit();
 				getConnection().setAutoCommit(true);
+				entity.setId(commonId);
+				entity.setSpecificId(specId);
+				UnitCatalog.saved(getTable(), entity);
 				return result;
 			}
 		}
@@ -98,15 +166,11 @@ public abstract class EntityDao<E extends Entity> extends UnitDao<E> {
 	 * of a certain table.
 	 */
 	public int insertCommonEntity(E entity) throws SQLException {
-		String sql = "SELECT id from entity_types WHERE entity_name=?";
-		PreparedStatement stmt = getConnection().prepareStatement(sql);
-		stmt.setString(1, getTable());
-		ResultSet typeRS = stmt.executeQuery();
-		if (typeRS.next()) {
-			int typeId = typeRS.getInt(1);
-			
-			sql = "INSERT INTO entity (entity_type_id, entity_id) VALUES (?,?)";
-			stmt = getConnection().prepareStatement(sql);
+		int typeId = ReferenceData.get(getConnection()).getEntityTypes()
+				.getId(getTable());
+		if (typeId > 0) {
+			String sql = "INSERT INTO entity (entity_type_id, entity_id) VALUES (?,?)";
+			PreparedStatement stmt = getConnection().prepareStatement(sql);
 			stmt.setInt(1, typeId);
 			stmt.setInt(2, 0);	// Don't know entity_id yet, set it to 0
 			return executeGetId(stmt);
@@ -149,7 +213,9 @@ public abstract class EntityDao<E extends Entity> extends UnitDao<E> {
 			String sql2 = "DELETE FROM entity WHERE id=" + entity.getId();
 			stmt2.executeUpdate(sql2);
 			
+			recordChange(entity.getSpecificId(), ChangeLog.Operation.DELETE);
 			getConnection().commit();
+			UnitCatalog.deleted(getTable(), entity);
 		} catch (SQLException e) {
 			/* If any step fails, rollback and throw exception to UI */
 			getConnection().rollback();
@@ -0,0 +1,70 @@
+package persistence;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import model.Unit;
+
+/**
+ * An IdentityMap keeps the Units already materialized during a unit of
+ * work (e.g. the load of an Editor), keyed by table, key column and ID.
+ * DAOs sharing an IdentityMap consult it before querying the DB, so each
+ * Document, Entity or EntityInstance is built at most once and all the
+ * objects that reference it share the same instance.
+ *
+ * Units are registered under the key columns they can be looked up by:
+ * "id" for primary keys, and also "entity_id" for the common ID of
+ * Entities in their specific tables.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class IdentityMap {
+
+	private final Map<String, Map<Integer, Unit>> units;
+
+	public IdentityMap() {
+		units = new HashMap<>();
+	}
+
+	/**
+	 * Returns the Unit of table <table> with primary key <id>, or null if
+	 * it has not been materialized yet.
+	 */
+	public <U extends Unit> U get(String table, int id) {
+		return get(table, "id", id);
+	}
+
+	/**
+	 * Returns the Unit of table <table> whose column <column> is <id>, or
+	 * null if it has not been materialized yet.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <U extends Unit> U get(String table, String column, int id) {
+		Map<Integer, Unit> byId = units.get(table + "." + column);
+		return byId == null ? null : (U) byId.get(id);
+	}
+
+	/**
+	 * Registers Unit <unit> of table <table> by its primary key.
+	 */
+	public void put(String table, Unit unit) {
+		put(table, "id", unit.getId(), unit);
+	}
+
+	/**
+	 * Registers Unit <unit> of table <table> as the one whose column
+	 * <column> is <id>.
+	 */
+	public synchronized void put(String table, String column, int id, Unit unit) {
+		units.computeIfAbsent(table + "." + column, k -> new HashMap<>())
+				.put(id, unit);
+	}
+
+	/**
+	 * Forgets all Units, so they are read again from the DB.
+	 */
+	public synchronized void clear() {
+		units.clear();
+	}
+}
@@ -6,7 +6,10 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import model.Document;
 import model.Entity;
@@ -31,7 +34,18 @@ public class InstanceDao extends UnitDao<EntityInstance> {
 		PreparedStatement stmt = getConnection().prepareStatement(sql);
 		stmt.setInt(1, unit.getItsEntity().getId());
 		stmt.setInt(2, unit.getItsDocument().getId());
-		return executeGetId(stmt);
+		int id = executeGetId(stmt);
+		if (id > 0) {
+			recordChange(id, ChangeLog.Operation.INSERT);
+		}
+		CacheNotices.post(() -> UsageIndex.invalidate(UsageIndex.Kind.ENTITY));
+		return id;
+	}
+	
+	@Override
+	public void delete(EntityInstance unit) throws SQLException {
+		super.delete(unit);
+		CacheNotices.post(() -> UsageIndex.invalidate(UsageIndex.Kind.ENTITY));
 	}
 
 	@Override
@@ -45,16 +59,11 @@ public class InstanceDao extends UnitDao<EntityInstance> {
 		int entityId = rs.getInt("entity_id");
 		int documentId = rs.getInt("document_id");
 		
-		/* To access appropriate DAO we first need to get the type of entity */
-		AnyEntityDao anyDao = new AnyEntityDao(getConnection());
-		String typeName = anyDao.selectType(entityId);
-		System.out.println("Type: " + typeName);
-		EntityDao<? extends Entity> specificDao = anyDao.getDao(typeName);
-		Entity ent = specificDao.selectOne(entityId);
-		
-		Document doc = new DocumentDao(getConnection()).selectOne(documentId);
-		System.out.println("Recovered instance with type: " + typeName + 
-				" Inst ID: " + id + " Doc ID: " + doc.getId() + " Ent ID: " + ent.getId());
+		/* Entity and Document are shared by all instances pointing to them */
+		Entity ent = share(new AnyEntityDao(getConnection())).selectOne(entityId);
+		Document doc = share(new DocumentDao(getConnection())).selectStub(documentId);
+		System.out.println("Recovered instance Inst ID: " + id + " Doc ID: " 
+				+ doc.getId() + " Ent ID: " + ent.getId());
 		return new EntityInstance(ent, doc, id);
 	}
 
@@ -63,16 +72,78 @@ public class InstanceDao extends UnitDao<EntityInstance> {
 		return "entity_instance";
 	}
 	
+	/**
+	 * Selects the EntityInstances of Document <doc>. Their entities are
+	 * resolved all at once, with one query per type of entity.
+	 */
 	public List<EntityInstance> select(Document doc) throws SQLException {
 		List<EntityInstance> insts = new ArrayList<>();
-		String sql = "SELECT * FROM entity_instance WHERE document_id=" + doc.getId();
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		ResultSet rs = selectLocally("document_id", 
+				Collections.singleton(doc.getId()));
+		if (rs == null) {
+			String sql = "SELECT * FROM entity_instance WHERE document_id=" 
+					+ doc.getId();
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
+		List<Integer> ids = new ArrayList<>();
+		List<Integer> entityIds = new ArrayList<>();
 		while(rs.next()) {
-			insts.add(make(rs));
+			ids.add(rs.getInt("id"));
+			entityIds.add(rs.getInt("entity_id"));
+		}
+		Map<Integer, Entity> ents = share(new AnyEntityDao(getConnection()))
+				.resolveAll(entityIds);
+		
+		/* Instances point to <doc>, do not download it again */
+		getIdentityMap().put("document", doc);
+		for (int i=0; i<ids.size(); i++) {
+			Entity ent = ents.get(entityIds.get(i));
+			if (ent == null) {
+				throw new SQLException("Entity " + entityIds.get(i) + " not found.");
+			}
+			EntityInstance inst = new EntityInstance(ent, doc, ids.get(i));
+			getIdentityMap().put(getTable(), inst);
+			insts.add(inst);
 		}
 		return insts;
 	}
-
+	
+	/**
+	 * Returns the number of Documents where each Entity is annotated, 
+	 * keyed by the common ID of the Entity, with a single GROUP BY. 
+	 * Entities not annotated are not in it.
+	 */
+	public Map<Integer, Integer> countDocumentsPerEntity() throws SQLException {
+		String sql = "SELECT entity_id, COUNT(DISTINCT document_id) AS n "
+				+ "FROM entity_instance GROUP BY entity_id";
+		Statement stmt = getConnection().createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		
+		Map<Integer, Integer> counts = new HashMap<>();
+		while (rs.next()) {
+			counts.put(rs.getInt("entity_id"), rs.getInt("n"));
+		}
+		return counts;
+	}
+	
+	/**
+	 * Returns the IDs of the Documents where the Entity with common ID 
+	 * <entityId> is annotated, in order. It reads the index on 
+	 * (entity_id, document_id) only.
+	 */
+	public List<Integer> selectDocumentIds(int entityId) throws SQLException {
+		String sql = "SELECT DISTINCT document_id FROM entity_instance "
+				+ "WHERE entity_id=? ORDER BY document_id";
+		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		stmt.setInt(1, entityId);
+		ResultSet rs = stmt.executeQuery();
+		
+		List<Integer> ids = new ArrayList<>();
+		while (rs.next()) {
+			ids.add(rs.getInt("document_id"));
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,832 @@
+package persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import util.DBUtils;
+
+/**
+ * Local mirror of the tables of the DB read by the Editor and the views:
+ * Documents with their Materies and Notes, Entities, EntityInstances,
+ * Relations, Transcriptions, References and Bibliography. When it is
+ * enabled (property replica.enabled of config.properties), the DAOs read
+ * these tables from it, in memory, instead of querying the DB, so the
+ * latency of the link to the host is only paid by writes.
+ *
+ * The mirror is saved to a local file, by default replica.dat in the
+ * MiMusCorpus project (property replica.file), so it is not downloaded
+ * again in every session. The file is read by the first update(), in the
+ * background, and only the classes a mirror is made of are accepted from
+ * it. It is written again at most every SAVE_INTERVAL, from a snapshot
+ * of the tables that costs nothing to take: a table changed after it is
+ * copied then. update(), called periodically while a session
+ * is open, brings it up to date with an incremental pull: it reads the
+ * ChangeLog from the Cursor of the mirror, so changes committed late are
+ * read too, and downloads only the rows changed, with one query per
+ * table. The first time, the tables are downloaded whole.
+ *
+ * Writes still go to the DB only. They are applied to the mirror by the
+ * next pull. Until then, reads are not served by the mirror but by the
+ * DB: after a write logged in the ChangeLog in this session, until it is
+ * pulled or PENDING_TIMEOUT passes (it was rolled back), and after a
+ * poll of the ChangeLog read changes the mirror has not. Reads never
+ * pull themselves, as they may run in the UI thread. Until a first pull
+ * succeeds, and while it is disabled, all reads go to the DB.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class LocalReplica {
+
+	/* Tables mirrored */
+	private static final List<String> TABLES = Arrays.asList("document",
+			"has_materia", "note", "bibliografia", "referencia", "entity",
+			"artista", "casa", "genere_literari", "instrument", "lloc", "ofici",
+			"promotor", "entity_instance", "transcription", "relation",
+			"te_ofici", "te_casa", "serveix_a", "resideix_a", "moviment");
+
+	/* Common table of each specific table, and the column pointing to it */
+	private static final Map<String, String[]> COMMON = new HashMap<>();
+	static {
+		for (String table : Arrays.asList("artista", "casa", "genere_literari",
+				"instrument", "lloc", "ofici", "promotor")) {
+			COMMON.put(table, new String[] {"entity", "entity_id"});
+		}
+		for (String table : Arrays.asList("te_ofici", "te_casa", "serveix_a",
+				"resideix_a", "moviment")) {
+			COMMON.put(table, new String[] {"relation", "relation_id"});
+		}
+	}
+
+	/* Tables written along with their Document, which are logged as it */
+	private static final List<String> DOCUMENT_PARTS =
+			Arrays.asList("has_materia", "note");
+
+	/* Format of the replica file */
+	private static final int MAGIC = 0x4D4D5250;
+	private static final int VERSION = 2;
+
+	/* IDs in the IN list of a query, at most */
+	private static final int FETCH_CHUNK = 500;
+
+	/* Milliseconds that an own write may take to be committed */
+	private static final long PENDING_TIMEOUT = 60 * 1000;
+
+	/* Milliseconds between saves of the replica file, at least */
+	private static final long SAVE_INTERVAL = 5 * 60 * 1000;
+
+	/* Classes that the replica file may contain */
+	private static final Set<String> SAVED_CLASSES = new HashSet<>(
+			Arrays.asList(HashMap.class.getName(), ArrayList.class.getName(),
+			TreeMap.class.getName(), Table.class.getName(),
+			Number.class.getName(), Long.class.getName(),
+			Integer.class.getName(), Short.class.getName(),
+			Byte.class.getName(), Double.class.getName(),
+			Float.class.getName(), Boolean.class.getName(),
+			java.math.BigDecimal.class.getName(),
+			java.math.BigInteger.class.getName(),
+			java.util.Date.class.getName(), java.sql.Date.class.getName(),
+			java.sql.Time.class.getName(), java.sql.Timestamp.class.getName(),
+			"java.time.Ser", Object[].class.getName(),
+			String[].class.getName(), byte[].class.getName()));
+
+	/* Replica of the session, null if disabled, guarded by LocalReplica.class */
+	private static LocalReplica instance;
+	private static boolean initialized = false;
+
+	/* Mirror state, guarded by this */
+	private final Map<String, Table> tables = new HashMap<>();
+	private ChangeLog.Cursor cursor = null;	/* null until the first pull */
+	/* Changes written in this session not pulled yet, and when */
+	private final TreeMap<Long, Long> pending = new TreeMap<>();
+	private boolean dirty = false;
+
+	/* Held while reading the file or pulling, so only one runs at a time */
+	private final Object pullLock = new Object();
+	private boolean read = false;	/* guarded by pullLock */
+	private long lastSaved = 0;		/* guarded by pullLock */
+
+	private final File file;
+	private final String host;
+
+	private LocalReplica(File file, String host) {
+		this.file = file;
+		this.host = host;
+	}
+
+	/**
+	 * Returns the replica of the DB of the session, or null if it is not
+	 * enabled. Its file is not read here, as this may run in the UI
+	 * thread, but by the first update().
+	 */
+	public static synchronized LocalReplica get() {
+		if (!initialized) {
+			initialized = true;
+			try {
+				Properties prop = DBUtils.readProperties();
+				if (Boolean.parseBoolean(prop.getProperty("replica.enabled"))) {
+					instance = new LocalReplica(new File(DBUtils.getCorpusFilePath(
+							prop.getProperty("replica.file", "replica.dat"))),
+							String.valueOf(prop.getProperty("host.name")));
+				}
+			} catch (IOException e) {
+				System.out.println("IOException: could not read config.properties, "
+						+ "local replica disabled.");
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Forgets the replica, e.g. when the session changes, so it is read
+	 * again for the host of the next one.
+	 */
+	public static synchronized void invalidate() {
+		initialized = false;
+		instance = null;
+	}
+
+	/**
+	 * Brings the replica up to date with the DB, if it is enabled, and
+	 * saves it to its file if anything changed and it was not saved in
+	 * SAVE_INTERVAL. The first time, the replica is read from its file
+	 * before, so the DB serves reads until then.
+	 */
+	public static void update() throws SQLException {
+		LocalReplica replica = get();
+		if (replica != null) {
+			replica.loadOnce();
+			try (Connection conn = DBUtils.connectUnmonitored()) {
+				replica.pull(conn);
+			}
+			replica.saveThrottled();
+		}
+	}
+
+	/**
+	 * Tells the replica that change <changeId> of the ChangeLog was made
+	 * in this session, so the mirror does not serve reads until it pulls
+	 * it.
+	 */
+	static void written(long changeId) {
+		LocalReplica replica;
+		synchronized (LocalReplica.class) {
+			replica = instance;
+		}
+		if (replica != null) {
+			synchronized (replica) {
+				replica.pending.put(changeId, System.currentTimeMillis());
+			}
+		}
+	}
+
+	/**
+	 * Returns the rows of table <table> whose column <column> is in
+	 * <values>, or all its rows if <values> is null, in order of ID. All
+	 * columns are selected. Returns null if the DB must be queried: the
+	 * replica is disabled or not up to date.
+	 */
+	static ResultSet select(String table, String column,
+			Collection<Integer> values) {
+		LocalReplica replica = serving();
+		return replica == null ? null : replica.rows(table, column, values);
+	}
+
+	/**
+	 * Returns the rows of table <table> with ID greater than <afterId>, in
+	 * order of ID, at most <limit>, or null if the DB must be queried.
+	 */
+	static ResultSet selectAfter(String table, int afterId, int limit) {
+		LocalReplica replica = serving();
+		if (replica == null) {
+			return null;
+		}
+		synchronized (replica) {
+			Table t = replica.tables.get(table);
+			if (t == null) {
+				return null;
+			}
+			List<Object[]> rows = new ArrayList<>();
+			for (Object[] row : t.rows.tailMap(afterId, false).values()) {
+				if (rows.size() >= limit) {
+					break;
+				}
+				rows.add(row);
+			}
+			return LocalResultSet.of(t.columns, rows);
+		}
+	}
+
+	/**
+	 * Returns the distinct values of column <column> of the rows of table
+	 * <table> whose column <where> is in <values>, in order, or null if
+	 * the DB must be queried.
+	 */
+	static Set<Integer> selectValues(String table, String column, String where,
+			Collection<Integer> values) {
+		LocalReplica replica = serving();
+		if (replica == null) {
+			return null;
+		}
+		synchronized (replica) {
+			Table t = replica.tables.get(table);
+			if (t == null) {
+				return null;
+			}
+			int idx = t.indexOf(column);
+			Set<Integer> found = new TreeSet<>();
+			for (Integer id : t.lookup(where, values)) {
+				Object value = t.rows.get(id)[idx];
+				if (value instanceof Number) {
+					found.add(((Number) value).intValue());
+				}
+			}
+			return found;
+		}
+	}
+
+	/**
+	 * Returns the IDs of all rows of table <table>, in order, or null if
+	 * the DB must be queried.
+	 */
+	static List<Integer> selectIds(String table) {
+		LocalReplica replica = serving();
+		if (replica == null) {
+			return null;
+		}
+		synchronized (replica) {
+			Table t = replica.tables.get(table);
+			return t == null ? null : new ArrayList<>(t.rows.keySet());
+		}
+	}
+
+	/**
+	 * Returns the replica if it can serve reads, or null. It is not
+	 * pulled here: that is left to update(), and the DB serves reads
+	 * meanwhile.
+	 */
+	private static LocalReplica serving() {
+		LocalReplica replica = get();
+		if (replica == null) {
+			return null;
+		}
+		synchronized (replica) {
+			return replica.isFresh() ? replica : null;
+		}
+	}
+
+	/**
+	 * Returns true if the mirror has the changes read by the last poll of
+	 * the ChangeLog, which caches and views may be refreshing from, and
+	 * those written in this session, unless they were not committed in
+	 * PENDING_TIMEOUT, i.e. rolled back.
+	 */
+	private boolean isFresh() {
+		if (cursor == null) {
+			return false;
+		}
+		ChangeLog.Cursor polled = ChangeLog.getCursor();
+		if (polled != null && !cursor.covers(polled)) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		pending.entrySet().removeIf(written -> !cursor.isMissing(written.getKey())
+				|| now - written.getValue() > PENDING_TIMEOUT);
+		return pending.isEmpty();
+	}
+
+	private synchronized ResultSet rows(String table, String column,
+			Collection<Integer> values) {
+		Table t = tables.get(table);
+		if (t == null) {
+			return null;
+		}
+		List<Object[]> rows = new ArrayList<>();
+		if (values == null) {
+			rows.addAll(t.rows.values());
+		} else {
+			for (Integer id : t.lookup(column, values)) {
+				rows.add(t.rows.get(id));
+			}
+		}
+		return LocalResultSet.of(t.columns, rows);
+	}
+
+	/**
+	 * Pulls the changes of the DB after the Cursor of the mirror, through
+	 * <conn>, or all tables if nothing is mirrored yet. Reads go on while
+	 * it downloads, and see the changes when all are downloaded.
+	 */
+	private void pull(Connection conn) throws SQLException {
+		synchronized (pullLock) {
+			ChangeLog.Cursor since;
+			synchronized (this) {
+				since = cursor;
+			}
+			if (since == null) {
+				pullAll(conn);
+			} else {
+				pullChanges(conn, since);
+			}
+		}
+	}
+
+	/**
+	 * Downloads all tables. The Cursor is read first: changes made while
+	 * downloading are pulled again by the next pull, which is harmless.
+	 */
+	private void pullAll(Connection conn) throws SQLException {
+		long start = System.currentTimeMillis();
+		ChangeLog.Cursor to = ChangeLog.Cursor.start(conn);
+
+		Map<String, Table> pulled = new HashMap<>();
+		for (String table : TABLES) {
+			pulled.put(table, fetch(conn, table, ""));
+		}
+		synchronized (this) {
+			tables.clear();
+			tables.putAll(pulled);
+			cursor = to;
+			dirty = true;
+		}
+		System.out.println("Local replica downloaded in "
+				+ (System.currentTimeMillis() - start) + " ms.");
+	}
+
+	/**
+	 * Downloads the rows changed after Cursor <since>, and the rows
+	 * written along with them: the common rows of Entities and Relations,
+	 * and the Materies and Notes of Documents. Rows are downloaded as
+	 * they are now, so changes read late, out of order, are harmless.
+	 */
+	private void pullChanges(Connection conn, ChangeLog.Cursor since)
+			throws SQLException {
+		List<ChangeLog.Change> changes = new ArrayList<>();
+		ChangeLog.Cursor to = since.read(conn, changes);
+		Map<String, Set<Integer>> toFetch = new HashMap<>();
+		Map<String, Set<Integer>> toDelete = new HashMap<>();
+		for (ChangeLog.Change change : changes) {
+			String table = change.getTable();
+			int rowId = change.getRowId();
+			if (!TABLES.contains(table)) {
+				continue;
+			}
+			if (change.getOperation() == ChangeLog.Operation.DELETE) {
+				toFetch.getOrDefault(table, new HashSet<>()).remove(rowId);
+				toDelete.computeIfAbsent(table, k -> new HashSet<>()).add(rowId);
+			} else {
+				toDelete.getOrDefault(table, new HashSet<>()).remove(rowId);
+				toFetch.computeIfAbsent(table, k -> new HashSet<>()).add(rowId);
+			}
+		}
+
+		/* Changed rows, and those written along with them */
+		Map<String, Table> fetched = new HashMap<>();
+		for (Map.Entry<String, Set<Integer>> entry : toFetch.entrySet()) {
+			String table = entry.getKey();
+			if (entry.getValue().isEmpty()) {
+				continue;
+			}
+			Table rows = fetchIn(conn, table, "id", entry.getValue());
+			merge(fetched, table, rows);
+			String[] common = COMMON.get(table);
+			if (common != null) {
+				Set<Integer> commonIds = new HashSet<>();
+				int idx = rows.indexOf(common[1]);
+				for (Object[] row : rows.rows.values()) {
+					commonIds.add(((Number) row[idx]).intValue());
+				}
+				if (!commonIds.isEmpty()) {
+					merge(fetched, common[0], fetchIn(conn, common[0], "id", commonIds));
+				}
+			}
+		}
+		Set<Integer> docs = new HashSet<>();
+		docs.addAll(toFetch.getOrDefault("document", Collections.emptySet()));
+		docs.addAll(toDelete.getOrDefault("document", Collections.emptySet()));
+		for (String part : DOCUMENT_PARTS) {
+			if (!docs.isEmpty()) {
+				merge(fetched, part, fetchIn(conn, part, "document_id", docs));
+			}
+		}
+
+		synchronized (this) {
+			if (cursor != since) {
+				/* Pulled meanwhile */
+				return;
+			}
+			for (Table rows : fetched.values()) {
+				Table t = tables.get(rows.name);
+				if (t != null && !Arrays.equals(t.columns, rows.columns)) {
+					/* Columns changed, download all again */
+					System.out.println("Columns of " + rows.name + " changed, "
+							+ "the local replica will be downloaded again.");
+					cursor = null;
+					return;
+				}
+			}
+			for (Map.Entry<String, Set<Integer>> entry : toDelete.entrySet()) {
+				Table t = tables.get(entry.getKey());
+				String[] common = COMMON.get(entry.getKey());
+				for (Integer id : entry.getValue()) {
+					Object[] row = t.remove(id);
+					if (row != null && common != null) {
+						Object commonId = row[t.indexOf(common[1])];
+						if (commonId instanceof Number) {
+							tables.get(common[0]).remove(
+									((Number) commonId).intValue());
+						}
+					}
+				}
+			}
+			for (String part : DOCUMENT_PARTS) {
+				Table t = tables.get(part);
+				for (Integer id : t.lookup("document_id", docs)) {
+					t.remove(id);
+				}
+			}
+			for (Table rows : fetched.values()) {
+				Table t = tables.get(rows.name);
+				for (Object[] row : rows.rows.values()) {
+					t.put(row);
+				}
+			}
+			cursor = to;
+			dirty = dirty || !changes.isEmpty();
+		}
+	}
+
+	private static void merge(Map<String, Table> fetched, String table,
+			Table rows) {
+		Table known = fetched.get(table);
+		if (known == null) {
+			fetched.put(table, rows);
+		} else {
+			for (Object[] row : rows.rows.values()) {
+				known.put(row);
+			}
+		}
+	}
+
+	/**
+	 * Downloads the rows of table <table> whose column <column> is in
+	 * <values>, in chunks of FETCH_CHUNK values.
+	 */
+	private static Table fetchIn(Connection conn, String table, String column,
+			Collection<Integer> values) throws SQLException {
+		List<Integer> list = new ArrayList<>(values);
+		Table rows = null;
+		for (int i=0; i<list.size(); i+=FETCH_CHUNK) {
+			Table chunk = fetch(conn, table, " WHERE " + column + " IN "
+					+ UnitDao.toInList(list.subList(i,
+					Math.min(i + FETCH_CHUNK, list.size()))));
+			if (rows == null) {
+				rows = chunk;
+			} else {
+				for (Object[] row : chunk.rows.values()) {
+					rows.put(row);
+				}
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Downloads the rows of table <table> selected by WHERE clause <where>,
+	 * which may be empty.
+	 */
+	private static Table fetch(Connection conn, String table, String where)
+			throws SQLException {
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + where);
+		ResultSetMetaData meta = rs.getMetaData();
+		String[] columns = new String[meta.getColumnCount()];
+		for (int i=0; i<columns.length; i++) {
+			columns[i] = meta.getColumnLabel(i+1).toLowerCase(Locale.ROOT);
+		}
+		Table rows = new Table(table, columns);
+		while (rs.next()) {
+			Object[] row = new Object[columns.length];
+			for (int i=0; i<columns.length; i++) {
+				row[i] = rs.getObject(i+1);
+			}
+			rows.put(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * Saves the replica to its file, as save() does, unless it was saved
+	 * less than SAVE_INTERVAL ago.
+	 */
+	private void saveThrottled() {
+		synchronized (pullLock) {
+			long now = System.currentTimeMillis();
+			if (now - lastSaved < SAVE_INTERVAL) {
+				return;
+			}
+			if (save()) {
+				lastSaved = now;
+			}
+		}
+	}
+
+	/**
+	 * Saves the replica to its file, if it changed since it was read or
+	 * saved. Returns whether it was written. The lock is only held to 
+	 * take a snapshot of the tables, which shares their rows until they
+	 * are changed, so reads and pulls go on while writing.
+	 */
+	public boolean save() {
+		Map<String, Table> copy = new HashMap<>();
+		ChangeLog.Cursor saved;
+		synchronized (this) {
+			if (!dirty || cursor == null) {
+				return false;
+			}
+			for (Table t : tables.values()) {
+				copy.put(t.name, t.snapshot());
+			}
+			saved = cursor;
+			dirty = false;
+		}
+		File tmp = new File(file.getPath() + ".tmp");
+		try (ObjectOutputStream out = new ObjectOutputStream(new GZIPOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(host);
+			out.writeLong(saved.getVersion());
+			out.writeObject(new ArrayList<>(saved.getGaps()));
+			out.writeObject(copy);
+		} catch (IOException e) {
+			System.out.println("IOException: could not save local replica to "
+					+ tmp + ".");
+			e.printStackTrace();
+			synchronized (this) {
+				dirty = true;
+			}
+			return false;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("IOException: could not replace local replica "
+					+ file + ".");
+			e.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the replica from its file the first time it is called, if it
+	 * exists and mirrors the DB of the current host. Otherwise it is 
+	 * downloaded by the first pull. The file is read without holding the
+	 * lock of the mirror, so reads are served by the DB meanwhile.
+	 */
+	@SuppressWarnings("unchecked")
+	private void loadOnce() {
+		synchronized (pullLock) {
+			if (read) {
+				return;
+			}
+			read = true;
+			if (!file.exists()) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			long loadedVersion;
+			List<Long> loadedGaps;
+			Map<String, Table> loaded;
+			try (ObjectInputStream in = new ReplicaInputStream(new GZIPInputStream(
+					new BufferedInputStream(new FileInputStream(file))))) {
+				if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+					System.out.println("Local replica " + file
+							+ " has an old format, it will be downloaded again.");
+					return;
+				}
+				if (!in.readUTF().equals(host)) {
+					System.out.println("Local replica " + file + " is from "
+							+ "another host, it will be downloaded again.");
+					return;
+				}
+				loadedVersion = in.readLong();
+				loadedGaps = (List<Long>) in.readObject();
+				loaded = (Map<String, Table>) in.readObject();
+				if (!loaded.keySet().containsAll(TABLES)) {
+					System.out.println("Local replica " + file
+							+ " lacks tables, it will be downloaded again.");
+					return;
+				}
+			} catch (IOException | ClassNotFoundException | RuntimeException e) {
+				System.out.println("Could not read local replica " + file
+						+ ", it will be downloaded again.");
+				e.printStackTrace();
+				return;
+			}
+			synchronized (this) {
+				if (cursor == null) {
+					tables.putAll(loaded);
+					cursor = ChangeLog.Cursor.of(loadedVersion, loadedGaps);
+				}
+			}
+			System.out.println("Local replica read in "
+					+ (System.currentTimeMillis() - start) + " ms.");
+		}
+	}
+
+	/**
+	 * ObjectInputStream of the replica file, which only accepts the 
+	 * classes in SAVED_CLASSES, so a file replaced by someone else can't
+	 * make anything else be deserialized.
+	 */
+	private static class ReplicaInputStream extends ObjectInputStream {
+
+		private ReplicaInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException {
+			if (!SAVED_CLASSES.contains(desc.getName())) {
+				throw new InvalidClassException(desc.getName(),
+						"not allowed in the local replica");
+			}
+			return super.resolveClass(desc);
+		}
+	}
+
+	/**
+	 * The rows of a table, keyed by their ID, with their values in the
+	 * order of its columns. Rows are never modified, only replaced, so
+	 * they can be read without copying them. Columns other than the ID
+	 * are indexed when they are first looked up by. Once a snapshot is
+	 * taken, the map of rows is shared with it, and copied by the next 
+	 * change.
+	 */
+	private static class Table implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final String[] columns;
+		private TreeMap<Integer, Object[]> rows = new TreeMap<>();
+		private final int idColumn;
+		private transient Map<Integer, Map<Long, Set<Integer>>> indexes;
+		private transient boolean shared = false;
+
+		private Table(String name, String[] columns) {
+			this.name = name.toLowerCase(Locale.ROOT);
+			this.columns = columns;
+			this.idColumn = Arrays.asList(columns).indexOf("id");
+		}
+
+		/**
+		 * Returns a Table with the rows of this one, sharing them until
+		 * this one is changed.
+		 */
+		private Table snapshot() {
+			Table snapshot = new Table(name, columns);
+			snapshot.rows = rows;
+			shared = true;
+			return snapshot;
+		}
+
+		/* Copies the rows before a change, if a snapshot shares them */
+		private void unshare() {
+			if (shared) {
+				rows = new TreeMap<>(rows);
+				shared = false;
+			}
+		}
+
+		private int indexOf(String column) {
+			int idx = Arrays.asList(columns).indexOf(column);
+			if (idx < 0) {
+				throw new IllegalArgumentException("Column " + column
+						+ " not found in " + name);
+			}
+			return idx;
+		}
+
+		private void put(Object[] row) {
+			unshare();
+			int id = ((Number) row[idColumn]).intValue();
+			Object[] old = rows.put(id, row);
+			if (indexes != null) {
+				for (Map.Entry<Integer, Map<Long, Set<Integer>>> index
+						: indexes.entrySet()) {
+					if (old != null) {
+						unindex(index.getValue(), old[index.getKey()], id);
+					}
+					index(index.getValue(), row[index.getKey()], id);
+				}
+			}
+		}
+
+		private Object[] remove(int id) {
+			unshare();
+			Object[] old = rows.remove(id);
+			if (old != null && indexes != null) {
+				for (Map.Entry<Integer, Map<Long, Set<Integer>>> index
+						: indexes.entrySet()) {
+					unindex(index.getValue(), old[index.getKey()], id);
+				}
+			}
+			return old;
+		}
+
+		/**
+		 * Returns the IDs of the rows whose column <column> is in
+		 * <values>, in order.
+		 */
+		private Set<Integer> lookup(String column, Collection<Integer> values) {
+			Set<Integer> found = new TreeSet<>();
+			if (column.equals("id")) {
+				for (Integer id : values) {
+					if (rows.containsKey(id)) {
+						found.add(id);
+					}
+				}
+				return found;
+			}
+			Map<Long, Set<Integer>> index = getIndex(indexOf(column));
+			for (Integer value : values) {
+				found.addAll(index.getOrDefault(value.longValue(),
+						Collections.emptySet()));
+			}
+			return found;
+		}
+
+		private Map<Long, Set<Integer>> getIndex(int column) {
+			if (indexes == null) {
+				indexes = new HashMap<>();
+			}
+			Map<Long, Set<Integer>> index = indexes.get(column);
+			if (index == null) {
+				index = new HashMap<>();
+				for (Map.Entry<Integer, Object[]> row : rows.entrySet()) {
+					index(index, row.getValue()[column], row.getKey());
+				}
+				indexes.put(column, index);
+			}
+			return index;
+		}
+
+		private static void index(Map<Long, Set<Integer>> index, Object value,
+				int id) {
+			if (value instanceof Number) {
+				index.computeIfAbsent(((Number) value).longValue(),
+						k -> new HashSet<>()).add(id);
+			}
+		}
+
+		private static void unindex(Map<Long, Set<Integer>> index, Object value,
+				int id) {
+			if (value instanceof Number) {
+				Set<Integer> ids = index.get(((Number) value).longValue());
+				if (ids != null) {
+					ids.remove(id);
+					if (ids.isEmpty()) {
+						index.remove(((Number) value).longValue());
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ResultSet over rows held in memory, e.g. by the LocalReplica, so the
+ * make() methods of the DAOs read them as if they came from the DB. It
+ * supports what the DAOs use: moving forward with next() and getting
+ * columns by label or index as int, long, boolean, String or Object.
+ * Labels are case insensitive, as in the DB.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+class LocalResultSet implements InvocationHandler {
+
+	private final Map<String, Integer> labels = new HashMap<>();
+	private final List<Object[]> rows;
+	private int position = -1;
+	private boolean wasNull = false;
+	private boolean closed = false;
+
+	private LocalResultSet(String[] columns, List<Object[]> rows) {
+		for (int i=0; i<columns.length; i++) {
+			labels.putIfAbsent(columns[i].toLowerCase(Locale.ROOT), i);
+		}
+		this.rows = rows;
+	}
+
+	/**
+	 * Returns a ResultSet over <rows>, in order, whose values are in the
+	 * order of <columns>.
+	 */
+	static ResultSet of(String[] columns, List<Object[]> rows) {
+		return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+				new LocalResultSet(columns, rows));
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+		switch (method.getName()) {
+		case "next":
+			if (position < rows.size()) {
+				position++;
+			}
+			return position < rows.size();
+		case "close":
+			closed = true;
+			return null;
+		case "isClosed":
+			return closed;
+		case "wasNull":
+			return wasNull;
+		case "findColumn":
+			return column(args[0]) + 1;
+		case "getObject":
+			if (args.length == 1) {
+				return value(args[0]);
+			}
+			break;
+		case "getString":
+			return toString(value(args[0]));
+		case "getInt":
+			return (int) toLong(value(args[0]));
+		case "getLong":
+			return toLong(value(args[0]));
+		case "getBoolean":
+			return toLong(value(args[0])) != 0;
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		case "toString":
+			return "LocalResultSet of " + rows.size() + " rows";
+		default:
+			break;
+		}
+		throw new SQLFeatureNotSupportedException(method.getName()
+				+ " is not supported on local rows.");
+	}
+
+	/**
+	 * Returns the position of column <column>, given by its label or by
+	 * its index, starting at 1.
+	 */
+	private int column(Object column) throws SQLException {
+		if (column instanceof Integer) {
+			int idx = (Integer) column - 1;
+			if (idx >= 0 && idx < labels.size()) {
+				return idx;
+			}
+		} else {
+			Integer idx = labels.get(((String) column).toLowerCase(Locale.ROOT));
+			if (idx != null) {
+				return idx;
+			}
+		}
+		throw new SQLException("Column " + column + " not found.");
+	}
+
+	/**
+	 * Returns the value of column <column> in the current row.
+	 */
+	private Object value(Object column) throws SQLException {
+		if (closed) {
+			throw new SQLException("ResultSet closed.");
+		}
+		if (position < 0 || position >= rows.size()) {
+			throw new SQLException("No current row.");
+		}
+		Object value = rows.get(position)[column(column)];
+		wasNull = value == null;
+		return value;
+	}
+
+	private static String toString(Object value) {
+		if (value == null) {
+			return null;
+		}
+		if (value instanceof byte[]) {
+			return new String((byte[]) value, StandardCharsets.UTF_8);
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Converts <value> to a number as the driver does: null is 0, and so
+	 * is false.
+	 */
+	private static long toLong(Object value) throws SQLException {
+		if (value == null) {
+			return 0;
+		}
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		}
+		if (value instanceof Boolean) {
+			return (Boolean) value ? 1 : 0;
+		}
+		String str = toString(value).trim();
+		if (str.equalsIgnoreCase("true")) {
+			return 1;
+		}
+		if (str.equalsIgnoreCase("false")) {
+			return 0;
+		}
+		try {
+			return (long) Double.parseDouble(str);
+		} catch (NumberFormatException e) {
+			throw new SQLException("Not a number: " + str);
+		}
+	}
+}
@@ -5,8 +5,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import model.Document;
 import model.Note;
@@ -32,22 +39,121 @@ public class NoteDao extends UnitDao<Note> {
 		stmt.setInt(1, unit.getDoc().getId());
 		
 		/* Translate type text to type id */
-		String typeSQL = "SELECT id FROM note_types WHERE note_name=?";
-		PreparedStatement typeStmt = getConnection().prepareStatement(typeSQL);
-		typeStmt.setString(1, unit.getType());
-		ResultSet typeRS = typeStmt.executeQuery();
-		if (typeRS.next()) {
-			stmt.setInt(2, typeRS.getInt(1));
+		int typeId = ReferenceData.get(getConnection()).getNoteTypes()
+				.getId(unit.getType());
+		if (typeId > 0) {
+			stmt.setInt(2, typeId);
 			stmt.setString(3, unit.getText());
 			return executeGetId(stmt);
 		}
 		return -1;
 	}
 	
-	public List<Note> select(Document doc) throws SQLException {
-		String sql = "SELECT * FROM note WHERE document_id=" + doc.getId();
+	/**
+	 * Inserts all Notes in <notes> with a single JDBC batch. Their IDs are
+	 * not read back, so it saves the LAST_INSERT_ID round trip of insert()
+	 * too. It doesn't commit: the caller decides the transaction.
+	 */
+	public void insertBatch(List<Note> notes) throws SQLException {
+		if (notes.isEmpty()) {
+			return;
+		}
+		String sql = "INSERT INTO note(document_id, note_type_id, note_text) "
+				+ "VALUES (?,?,?)";
+		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		ReferenceData.Lookup types = ReferenceData.get(getConnection()).getNoteTypes();
+		for (Note note : notes) {
+			int typeId = types.getId(note.getType());
+			if (typeId < 0) {
+				throw new SQLException("Unknown type of Note: " + note.getType());
+			}
+			stmt.setInt(1, note.getDoc().getId());
+			stmt.setInt(2, typeId);
+			stmt.setString(3, note.getText());
+			stmt.addBatch();
+		}
+		stmt.executeBatch();
+	}
+	
+	/**
+	 * Makes the Notes stored for each Document in <docs> match the Notes
+	 * of the Document, comparing them by type and text: missing Notes are
+	 * inserted and those no longer present are deleted, unless a reference
+	 * points to them. Unchanged Notes keep their ID. It doesn't commit:
+	 * the caller decides the transaction.
+	 */
+	public void syncBatch(List<Document> docs) throws SQLException {
+		if (docs.isEmpty()) {
+			return;
+		}
+		Map<Integer, Document> idsToDocs = new HashMap<>();
+		for (Document doc : docs) {
+			idsToDocs.put(doc.getId(), doc);
+		}
+		
+		/* Stored Notes by document and by type and text */
+		ReferenceData.Lookup types = ReferenceData.get(getConnection()).getNoteTypes();
+		String sql = "SELECT note.id, note.document_id, note.note_type_id, "
+				+ "note.note_text, COUNT(referencia.id) AS refs "
+				+ "FROM note LEFT JOIN referencia ON referencia.note_id=note.id "
+				+ "WHERE note.document_id IN " + toInList(idsToDocs.keySet())
+				+ " GROUP BY note.id, note.document_id, note.note_type_id, note.note_text";
 		Statement stmt = getConnection().createStatement();
 		ResultSet rs = stmt.executeQuery(sql);
+		Map<String, Deque<Integer>> stored = new HashMap<>();
+		Set<Integer> referenced = new HashSet<>();
+		while (rs.next()) {
+			String key = rs.getInt("document_id") + ":" 
+					+ types.getName(rs.getInt("note_type_id")) + ":" 
+					+ rs.getString("note_text");
+			stored.computeIfAbsent(key, k -> new ArrayDeque<>()).add(rs.getInt("id"));
+			if (rs.getInt("refs") > 0) {
+				referenced.add(rs.getInt("id"));
+			}
+		}
+		
+		/* Notes in both sides are kept, the rest inserted or deleted */
+		List<Note> toInsert = new ArrayList<>();
+		for (Document doc : docs) {
+			for (Note note : doc.getNotes()) {
+				Deque<Integer> ids = stored.get(doc.getId() + ":" + note.getType() 
+						+ ":" + note.getText());
+				if (ids != null && !ids.isEmpty()) {
+					note.setId(ids.poll());
+				} else {
+					toInsert.add(note);
+				}
+			}
+		}
+		PreparedStatement deleteStmt = getConnection().prepareStatement(
+				"DELETE FROM note WHERE id=?");
+		boolean deletes = false;
+		for (Deque<Integer> ids : stored.values()) {
+			for (Integer id : ids) {
+				if (referenced.contains(id)) {
+					System.out.println("Note " + id + " is no longer in its txt, "
+							+ "but it is kept because a reference points to it.");
+				} else {
+					deleteStmt.setInt(1, id);
+					deleteStmt.addBatch();
+					deletes = true;
+				}
+			}
+		}
+		if (deletes) {
+			deleteStmt.executeBatch();
+		}
+		insertBatch(toInsert);
+	}
+	
+	public List<Note> select(Document doc) throws SQLException {
+		ResultSet rs = selectLocally("document_id", 
+				Collections.singleton(doc.getId()));
+		if (rs == null) {
+			String sql = "SELECT * FROM note WHERE document_id=" + doc.getId();
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
 		List<Note> notes = new ArrayList<>();
 		while (rs.next()) {
@@ -58,18 +164,50 @@ public class NoteDao extends UnitDao<Note> {
 		return notes;
 	}
 
+	/**
+	 * Selects the Notes of all Documents in <idsToDocs>, keyed by their ID,
+	 * in a single query, and adds each Note to its Document. If <all> is
+	 * true, the whole note table is read instead of filtering by the IDs.
+	 */
+	public List<Note> select(Map<Integer, Document> idsToDocs, boolean all) 
+			throws SQLException {
+		ReferenceData.Lookup types = ReferenceData.get(getConnection()).getNoteTypes();
+		ResultSet rs = selectLocally("document_id", 
+				all ? null : idsToDocs.keySet());
+		if (rs == null) {
+			String sql = "SELECT * FROM note";
+			if (!all) {
+				sql += " WHERE document_id IN " + toInList(idsToDocs.keySet());
+			}
+			sql += " ORDER BY id";
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
+		
+		List<Note> notes = new ArrayList<>();
+		while (rs.next()) {
+			Document doc = idsToDocs.get(rs.getInt("document_id"));
+			String type = types.getName(rs.getInt("note_type_id"));
+			if (doc != null && type != null) {
+				Note n = new Note(rs.getInt("id"), type, rs.getString("note_text"), 
+						doc);
+				doc.getNotes().add(n);
+				notes.add(n);
+			}
+		}
+		return notes;
+	}
+
 	@Override
 	protected Note make(ResultSet rs) throws SQLException {
 		/* Get type name from ID */
-		int id = rs.getInt(1);
-		int typeId = rs.getInt(3);
-		String sql = "SELECT note_name FROM note_types WHERE id=" + typeId;
-		Statement stmt = getConnection().createStatement();
-		ResultSet typeRS = stmt.executeQuery(sql);
+		int id = rs.getInt("id");
+		int typeId = rs.getInt("note_type_id");
+		String type = ReferenceData.get(getConnection()).getNoteTypes()
+				.getName(typeId);
 		
-		if (typeRS.next()) {
-			String type = typeRS.getString(1);
-			String text = rs.getString(4);
+		if (type != null) {
+			String text = rs.getString("note_text");
 			return new Note(id, type, text, null);
 		}
 		throw new SQLException();
@@ -56,6 +56,23 @@ public class OficiDao extends EntityDao<Ofici> {
 		return executeGetId(stmt);
 	}
 
+	/**
+	 * Oficis are selected together with their Instrument, if any, whose
+	 * columns are prefixed with "instrument_".
+	 */
+	@Override
+	protected String getSelectFrom() {
+		return "SELECT ofici.*, "
+				+ "instrument.id AS instrument_spec_id, "
+				+ "instrument.entity_id AS instrument_entity_id, "
+				+ "instrument.nom AS instrument_nom, "
+				+ "instrument.familia AS instrument_familia, "
+				+ "instrument.classe AS instrument_classe, "
+				+ "instrument.part AS instrument_part "
+				+ "FROM ofici LEFT JOIN instrument "
+				+ "ON ofici.instrument_id=instrument.id";
+	}
+
 	@Override
 	protected Ofici make(ResultSet rs) throws SQLException {
 		int id = rs.getInt("entity_id");
@@ -71,7 +88,15 @@ public class OficiDao extends EntityDao<Ofici> {
 		 * */
 		Instrument inst = null;
 		if (instrumentId>0) {
-			inst = new InstrumentDao(getConnection()).selectOne(instrumentId, true);
+			inst = getIdentityMap().get("instrument", instrumentId);
+			if (inst == null) {
+				inst = new Instrument(rs.getInt("instrument_entity_id"), 
+						instrumentId, rs.getString("instrument_nom"), 
+						rs.getInt("instrument_familia"), 
+						rs.getInt("instrument_classe"), 
+						rs.getString("instrument_part"));
+				share(new InstrumentDao(getConnection())).register(inst);
+			}
 		}
 		return new Ofici(id, specId, nomComplet, terme, especialitat, inst);
 	}
@@ -104,6 +129,8 @@ public class OficiDao extends EntityDao<Ofici> {
 
 		int result = stmt.executeUpdate();
 		if (result>0) {
+			recordChange(unit.getSpecificId(), ChangeLog.Operation.UPDATE);
+			UnitCatalog.saved(getTable(), unit);
 			System.out.println("Update performed successfully.");
 		} else {
 			System.out.println("Could not execute update.");
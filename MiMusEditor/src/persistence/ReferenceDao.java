@@ -7,7 +7,10 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import model.Bibliography;
 import model.Document;
@@ -45,7 +48,20 @@ public class ReferenceDao extends UnitDao<MiMusReference> {
 		} else {
 			stmt.setInt(6, unit.getItsNote().getId());
 		}
-		return executeGetId(stmt);
+		int id = executeGetId(stmt);
+		if (id > 0) {
+			recordChange(id, ChangeLog.Operation.INSERT);
+		}
+		CacheNotices.post(() -> 
+				UsageIndex.invalidate(UsageIndex.Kind.BIBLIOGRAPHY));
+		return id;
+	}
+	
+	@Override
+	public void delete(MiMusReference unit) throws SQLException {
+		super.delete(unit);
+		CacheNotices.post(() -> 
+				UsageIndex.invalidate(UsageIndex.Kind.BIBLIOGRAPHY));
 	}
 
 	@Override
@@ -59,15 +75,15 @@ public class ReferenceDao extends UnitDao<MiMusReference> {
 		int type = rs.getInt("ref_type");
 		String pages = rs.getString("pages");
 		int biblioId = rs.getInt("bibliografia_id");
-		Bibliography biblio = new BibliographyDao(getConnection())
+		Bibliography biblio = share(new BibliographyDao(getConnection()))
 				.selectOne(biblioId);
 		int docId = rs.getInt("document_id");
-		Document doc = new DocumentDao(getConnection()).selectOne(docId);
+		Document doc = share(new DocumentDao(getConnection())).selectStub(docId);
 		int noteId = rs.getInt("note_id");
 		Note note = null;
 		if (noteId>0) {
 			/* rs.getInt() returns 0 if field is null */
-			note = new NoteDao(getConnection()).selectOne(noteId);
+			note = share(new NoteDao(getConnection())).selectOne(noteId);
 		}
 		return new MiMusReference(biblio, doc, note, pages, type, id);
 	}
@@ -79,14 +95,59 @@ public class ReferenceDao extends UnitDao<MiMusReference> {
 
 	public List<MiMusReference> select(Document doc) throws SQLException {
 		List<MiMusReference> references = new ArrayList<>();
-		String sql = "SELECT * FROM referencia WHERE document_id=" + doc.getId();
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		ResultSet rs = selectLocally("document_id", 
+				Collections.singleton(doc.getId()));
+		if (rs == null) {
+			String sql = "SELECT * FROM referencia WHERE document_id=" + doc.getId();
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
+		/* References point to <doc> and its Notes, already loaded */
+		getIdentityMap().put("document", doc);
+		for (Note note : doc.getNotes()) {
+			getIdentityMap().put("note", note);
+		}
 		while(rs.next()) {
 			references.add(make(rs));
 		}
 		return references;
 	}
-
+	
+	/**
+	 * Returns the number of Documents where each Bibliography entry is 
+	 * referenced, keyed by its ID, with a single GROUP BY. Entries not
+	 * referenced are not in it.
+	 */
+	public Map<Integer, Integer> countDocumentsPerBiblio() throws SQLException {
+		String sql = "SELECT bibliografia_id, COUNT(DISTINCT document_id) AS n "
+				+ "FROM referencia GROUP BY bibliografia_id";
+		Statement stmt = getConnection().createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		
+		Map<Integer, Integer> counts = new HashMap<>();
+		while (rs.next()) {
+			counts.put(rs.getInt("bibliografia_id"), rs.getInt("n"));
+		}
+		return counts;
+	}
+	
+	/**
+	 * Returns the IDs of the Documents where the Bibliography entry with 
+	 * ID <biblioId> is referenced, in order. It reads the index on 
+	 * (bibliografia_id, document_id) only.
+	 */
+	public List<Integer> selectDocumentIds(int biblioId) throws SQLException {
+		String sql = "SELECT DISTINCT document_id FROM referencia "
+				+ "WHERE bibliografia_id=? ORDER BY document_id";
+		PreparedStatement stmt = getConnection().prepareStatement(sql);
+		stmt.setInt(1, biblioId);
+		ResultSet rs = stmt.executeQuery();
+		
+		List<Integer> ids = new ArrayList<>();
+		while (rs.next()) {
+			ids.add(rs.getInt("document_id"));
+		}
+		return ids;
+	}
 }
@@ -0,0 +1,152 @@
+package persistence;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registry of the small lookup tables of the DB (llengua, materia,
+ * note_types, entity_types and relation_types), which are almost static.
+ * They are read once per session in a single query and kept in memory as
+ * id-to-name and name-to-id maps, so DAOs can translate types without a
+ * round trip to the DB per row.
+ *
+ * The registry must be invalidated when the lookup tables change or the
+ * session changes, so it is read again on next use.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ReferenceData {
+
+	/* Lookup tables and the column holding their names */
+	private static final String[][] TABLES = {
+			{"llengua", "llengua_name"},
+			{"materia", "materia_name"},
+			{"note_types", "note_name"},
+			{"entity_types", "entity_name"},
+			{"relation_types", "relation_name"}};
+
+	/* Registry of the current session, null until first used */
+	private static ReferenceData instance = null;
+
+	private final Map<String, Lookup> lookups;
+
+	private ReferenceData(Map<String, Lookup> lookups) {
+		this.lookups = lookups;
+	}
+
+	/**
+	 * Returns the registry of the current session, reading it with
+	 * Connection <conn> if it is not loaded yet.
+	 */
+	public static ReferenceData get(Connection conn) throws SQLException {
+		synchronized (ReferenceData.class) {
+			if (instance != null) {
+				return instance;
+			}
+		}
+		ReferenceData loaded = load(conn);
+		synchronized (ReferenceData.class) {
+			if (instance == null) {
+				instance = loaded;
+			}
+			return instance;
+		}
+	}
+
+	/**
+	 * Discards the registry, so it is read again from the DB on next use.
+	 */
+	public static synchronized void invalidate() {
+		instance = null;
+	}
+
+	/**
+	 * Reads all lookup tables with a single query.
+	 */
+	private static ReferenceData load(Connection conn) throws SQLException {
+		Map<String, Lookup> lookups = new HashMap<>();
+		String sql = "";
+		for (int i=0; i<TABLES.length; i++) {
+			lookups.put(TABLES[i][0], new Lookup());
+			if (i > 0) {
+				sql += " UNION ALL ";
+			}
+			sql += "SELECT '" + TABLES[i][0] + "' AS lookup, id, "
+					+ TABLES[i][1] + " AS name FROM " + TABLES[i][0];
+		}
+		sql += " ORDER BY lookup, id";
+
+		Statement stmt = conn.createStatement();
+		ResultSet rs = stmt.executeQuery(sql);
+		while (rs.next()) {
+			lookups.get(rs.getString("lookup")).put(rs.getInt("id"),
+					rs.getString("name"));
+		}
+		return new ReferenceData(lookups);
+	}
+
+	public Lookup getLlengues() {
+		return lookups.get("llengua");
+	}
+
+	public Lookup getMateries() {
+		return lookups.get("materia");
+	}
+
+	public Lookup getNoteTypes() {
+		return lookups.get("note_types");
+	}
+
+	public Lookup getEntityTypes() {
+		return lookups.get("entity_types");
+	}
+
+	public Lookup getRelationTypes() {
+		return lookups.get("relation_types");
+	}
+
+	/**
+	 * Id-to-name and name-to-id maps of one lookup table.
+	 */
+	public static class Lookup {
+
+		private final Map<Integer, String> idsToNames = new LinkedHashMap<>();
+		private final Map<String, Integer> namesToIds = new HashMap<>();
+
+		private void put(int id, String name) {
+			idsToNames.put(id, name);
+			namesToIds.put(name, id);
+		}
+
+		/**
+		 * Returns the name of the entry with ID <id>, or null if there
+		 * is none.
+		 */
+		public String getName(int id) {
+			return idsToNames.get(id);
+		}
+
+		/**
+		 * Returns the ID of the entry named <name>, or -1 if there is none.
+		 */
+		public int getId(String name) {
+			Integer id = namesToIds.get(name);
+			return id == null ? -1 : id;
+		}
+
+		/**
+		 * Returns all entries as an unmodifiable map from IDs to names,
+		 * in order of ID.
+		 */
+		public Map<Integer, String> getIdsToNames() {
+			return Collections.unmodifiableMap(idsToNames);
+		}
+	}
+}
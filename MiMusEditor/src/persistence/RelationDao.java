@@ -6,7 +6,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import model.Entity;
 import model.Relation;
@@ -29,11 +31,17 @@ public abstract class RelationDao extends UnitDao<Relation> {
 	 * the common and the specific table, which is why it's done in
 	 * auto-commit mode. This means that, if something fails in between,
 	 * state is recovered to how it was before this method was executed.
+	 * If the Connection is already in a transaction, the insertion joins
+	 * it instead, and the caller commits or rolls back. On success, both
+	 * IDs are set in <unit>.
 	 */
 	@Override
 	public int insert(Relation unit) throws SQLException {
-		/* Insert is 2-step, make it transactional */
-		getConnection().setAutoCommit(false);
+		/* Insert is 2-step, make it transactional unless it already is */
+		boolean own = getConnection().getAutoCommit();
+		if (own) {
+			getConnection().setAutoCommit(false);
+		}
 		
 		try {
 			int commonId = insertCommonRelation(unit);
@@ -42,36 +50,41 @@ public abstract class RelationDao extends UnitDao<Relation> {
 				int result = updateCommonRelation(commonId, specId);
 				if (result > 0) {
 					/* If insert succeeded, commit and leave transactional mode */
-					getConnection().commit();
-					getConnection().setAutoCommit(true);
+					recordChange(specId, ChangeLog.Operation.INSERT);
+					if (own) {
+						getConnection().commit();
+						getConnection().setAutoCommit(true);
+					}
+					unit.setId(commonId);
+					unit.setSpecificId(specId);
 					return result;
 				}
 			}
 			/* If anything failed, rollback and leave transactional mode */
 			System.out.println("rolling back relation insertion");
-			getConnection().rollback();
-			getConnection().setAutoCommit(true);
+			if (own) {
+				getConnection().rollback();
+				getConnection().setAutoCommit(true);
+			}
 			return -1;
 		} catch (SQLException e)  {
 			System.out.println("rolling back relation insertion after catch");
-			getConnection().rollback();
-			getConnection().setAutoCommit(true);
+			if (own) {
+				getConnection().rollback();
+				getConnection().setAutoCommit(true);
+			}
 			
 			throw e;
 		}
 	}
 
 	private int insertCommonRelation(Relation unit) throws SQLException {
-		String sql = "SELECT id from relation_types WHERE relation_name=?";
-		PreparedStatement stmt = getConnection().prepareStatement(sql);
-		stmt.setString(1, getTable());
-		ResultSet typeRS = stmt.executeQuery();
-		if (typeRS.next()) {
-			int typeId = typeRS.getInt(1);
-			
-			sql = "INSERT INTO relation "
+		int typeId = ReferenceData.get(getConnection()).getRelationTypes()
+				.getId(getTable());
+		if (typeId > 0) {
+			String sql = "INSERT INTO relation "
 					+ "(relation_type_id, relation_id, document_id) VALUES (?,?,?)";
-			stmt = getConnection().prepareStatement(sql);
+			PreparedStatement stmt = getConnection().prepareStatement(sql);
 			stmt.setInt(1, typeId);
 			stmt.setInt(2, 0);	// Don't know relation_id yet, set it to 0
 			stmt.setInt(3, unit.getDoc().getId());
@@ -101,10 +114,18 @@ public abstract class RelationDao extends UnitDao<Relation> {
 		return null;
 	}
 	
+	/**
+	 * Deletes a relation from the common and the specific table, in a
+	 * transaction of its own, or in the one of the Connection if it is
+	 * already in one, which the caller commits or rolls back.
+	 */
 	@Override
 	public void delete(Relation relation) throws SQLException {
 		/* Delete is a two-step operation, we do it in transactional mode */
-		getConnection().setAutoCommit(false);
+		boolean own = getConnection().getAutoCommit();
+		if (own) {
+			getConnection().setAutoCommit(false);
+		}
 		
 		try {
 			/* 1st delete from specific table */
@@ -120,47 +141,70 @@ public abstract class RelationDao extends UnitDao<Relation> {
 			stmt2.executeUpdate(sql2);
 			System.out.println("DelRel: SQL Common: " + sql2);
 			
-			getConnection().commit();
-			System.out.println("commited.");
-			
-			/* Finish transactional mode */
-			getConnection().setAutoCommit(true);
+			recordChange(relation.getSpecificId(), ChangeLog.Operation.DELETE);
+			if (own) {
+				getConnection().commit();
+				System.out.println("commited.");
+				
+				/* Finish transactional mode */
+				getConnection().setAutoCommit(true);
+			}
 		} catch (SQLException e) {
 			/* If any step fails, rollback and throw exception to UI */
-			getConnection().rollback();
-			System.out.println("rollbacked.");
-			
-			/* Finish transactional mode */
-			getConnection().setAutoCommit(true);
+			if (own) {
+				getConnection().rollback();
+				System.out.println("rollbacked.");
+				
+				/* Finish transactional mode */
+				getConnection().setAutoCommit(true);
+			}
 			throw e;
 		}
-		
-		
 	}
 
 	@Override
 	public abstract String getTable();
 	
 	public Entity getEntity(int i, int id) throws SQLException {
+		return getEntities(id).get(i-1);
+	}
+
+	/**
+	 * Selects the entities of the relation with common ID <id>, reading
+	 * its row once. Foreign keys are specific in rels, except in those
+	 * columns without a DAO of their own (moviment's origin and
+	 * destination), which hold common IDs and are resolved together.
+	 */
+	public List<Entity> getEntities(int id) throws SQLException {
 		String sql = "SELECT * FROM " + getTable() + " WHERE relation_id=" + id;
 		Statement stmt = getConnection().createStatement();
 		ResultSet rs = stmt.executeQuery(sql);
-		if (rs.next()) {
-			int entId = rs.getInt(getEntities()[i-1]);
-			
-			EntityDao<? extends Entity> dao = 
-					new AnyEntityDao(getConnection()).getDaoByKey(getEntities()[i-1]);
-			return dao.selectOne(entId, true);	/* Foreign key is specific in rels */
+		if (!rs.next()) {
+			throw new SQLException();
 		}
-		throw new SQLException();
-	}
-
-	public List<Entity> getEntities(int id) throws SQLException {
-		List<Entity> out = new ArrayList<>();
-		for (int i=0; i<countEntities(); i++) {
-			out.add(getEntity(i+1,id));
+		
+		AnyEntityDao anyDao = share(new AnyEntityDao(getConnection()));
+		String[] keys = getEntities();
+		Entity[] ents = new Entity[countEntities()];
+		List<Integer> commonIds = new ArrayList<>();
+		for (int i=0; i<ents.length; i++) {
+			int entId = rs.getInt(keys[i]);
+			EntityDao<? extends Entity> dao = anyDao.getDaoByKey(keys[i]);
+			if (dao != null) {
+				ents[i] = dao.selectOne(entId, true);
+			} else {
+				commonIds.add(entId);
+			}
+		}
+		if (!commonIds.isEmpty()) {
+			Map<Integer, Entity> resolved = anyDao.resolveAll(commonIds);
+			for (int i=0; i<ents.length; i++) {
+				if (ents[i] == null) {
+					ents[i] = resolved.get(rs.getInt(keys[i]));
+				}
+			}
 		}
-		return out;
+		return new ArrayList<>(Arrays.asList(ents));
 	}
 	
 	public abstract int countEntities();
@@ -6,7 +6,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import org.eclipse.swt.graphics.Point;
 
@@ -38,7 +40,11 @@ public class TranscriptionDao extends UnitDao<Transcription> {
 		stmt.setString(3, unit.getForm());
 		stmt.setInt(4, unit.getCoords().x);
 		stmt.setInt(5, unit.getCoords().y);
-		return executeGetId(stmt);
+		int id = executeGetId(stmt);
+		if (id > 0) {
+			recordChange(id, ChangeLog.Operation.INSERT);
+		}
+		return id;
 	}
 
 	@Override
@@ -56,7 +62,7 @@ public class TranscriptionDao extends UnitDao<Transcription> {
 		Point coords = new Point(rs.getInt("coords_from"), rs.getInt("coords_to"));
 		
 		EntityInstance instance = 
-				new InstanceDao(getConnection()).selectOne(instanceID);
+				share(new InstanceDao(getConnection())).selectOne(instanceID);
 		return new Transcription(instance, selectedText, form, coords, id);
 	}
 
@@ -67,12 +73,21 @@ public class TranscriptionDao extends UnitDao<Transcription> {
 
 	public List<Transcription> select(Document doc) throws SQLException {
 		List<Transcription> transcriptions = new ArrayList<>();
-		String sql = "SELECT * FROM transcription, entity_instance "
-				+ "WHERE transcription.entity_instance_id=entity_instance.id "
-				+ "AND entity_instance.document_id=" + doc.getId();
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		ResultSet rs = null;
+		Set<Integer> instanceIds = LocalReplica.selectValues("entity_instance", 
+				"id", "document_id", Collections.singleton(doc.getId()));
+		if (instanceIds != null) {
+			rs = selectLocally("entity_instance_id", instanceIds);
+		}
+		if (rs == null) {
+			String sql = "SELECT * FROM transcription, entity_instance "
+					+ "WHERE transcription.entity_instance_id=entity_instance.id "
+					+ "AND entity_instance.document_id=" + doc.getId();
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
+		getIdentityMap().put("document", doc);
 		while(rs.next()) {
 			transcriptions.add(make(rs));
 		}
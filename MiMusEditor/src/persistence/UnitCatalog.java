@@ -0,0 +1,367 @@
+package persistence;
+
+import java.sql.SQLException;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import model.HierarchicalUnit;
+import model.Unit;
+import search.TextTokenizer;
+import search.TextTokenizer.Token;
+
+/**
+ * Catalog of Units to pick from, e.g. the Entities of a type offered by
+ * the dialogs of the Editor, indexed to find them as the user types.
+ *
+ * Units are shown by their toString(), in the order of a Catalan
+ * Collator. Each word of their names is indexed, normalized like the
+ * texts of the search (see TextTokenizer), in a sorted prefix index: a
+ * Unit is found when every word typed starts a word of its name, so
+ * "joh" finds "Johan" and "Pere Johan", and "ioh" finds them too. Words
+ * typed of INFIX_MIN characters or more are also found within the words
+ * of the names, through an index of the trigrams of those words, so
+ * "han" finds "Johan" too. Units found that way come after those found
+ * by prefix.
+ *
+ * The catalogs of Entities and Bibliography are kept per table for the
+ * session: each is read once with get(), and then kept current by the
+ * DAOs, which tell it about the Units they insert, update and delete.
+ * Other catalogs can be made from any list of Units, e.g. the Entities
+ * annotated in a Document.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ * @param <U> the type of Unit in the catalog
+ */
+public class UnitCatalog<U extends Unit> {
+
+	/* Catalogs of the session, keyed by table, guarded by UnitCatalog.class */
+	private static final Map<String, UnitCatalog<?>> catalogs = new HashMap<>();
+
+	/* 
+	 * Number of changes told about each table, and about all of them, so
+	 * a catalog read while the table changed is not kept. Guarded by 
+	 * UnitCatalog.class.
+	 */
+	private static final Map<String, Integer> generations = new HashMap<>();
+	private static int sessionGeneration = 0;
+
+	private static final Collator COLLATOR = Collator.getInstance(
+			new Locale("ca"));
+
+	/* Characters of a word typed, at least, to find it within words */
+	private static final int INFIX_MIN = 3;
+
+	/* Catalog state, guarded by this */
+	private final List<Entry<U>> sorted = new ArrayList<>();
+	private final Map<Integer, Entry<U>> byKey = new HashMap<>();
+	private final TreeMap<String, Set<Entry<U>>> words = new TreeMap<>();
+	private final Map<String, Set<String>> trigrams = new HashMap<>();
+
+	/**
+	 * Makes a catalog of <units>, which is not kept current.
+	 */
+	public UnitCatalog(Collection<U> units) {
+		for (U unit : units) {
+			add(unit);
+		}
+	}
+
+	/**
+	 * Returns the catalog of the session of the Units of the table of
+	 * <dao>, reading them with <dao> if it is not loaded yet. The DB is
+	 * read without holding the lock, so if the table is invalidated or
+	 * changed meanwhile, what was read is returned but not kept, and the
+	 * next call reads it again.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <U extends Unit> UnitCatalog<U> get(UnitDao<U> dao)
+			throws SQLException {
+		String table = dao.getTable();
+		int session;
+		int generation;
+		synchronized (UnitCatalog.class) {
+			if (catalogs.containsKey(table)) {
+				return (UnitCatalog<U>) catalogs.get(table);
+			}
+			session = sessionGeneration;
+			generation = generations.getOrDefault(table, 0);
+		}
+		UnitCatalog<U> loaded = new UnitCatalog<>(dao.selectAll());
+		synchronized (UnitCatalog.class) {
+			if (session != sessionGeneration 
+					|| generation != generations.getOrDefault(table, 0)) {
+				return loaded;
+			}
+			return (UnitCatalog<U>) catalogs.computeIfAbsent(table, t -> loaded);
+		}
+	}
+
+	/**
+	 * Discards the catalogs of the session, e.g. when the session changes.
+	 */
+	public static synchronized void invalidate() {
+		catalogs.clear();
+		sessionGeneration++;
+	}
+
+	/**
+	 * Discards the catalog of <table>, if it is loaded, e.g. when other
+	 * users change the table.
+	 */
+	public static synchronized void invalidate(String table) {
+		catalogs.remove(table);
+		changed(table);
+	}
+
+	/* Counts a change of <table>, so a catalog being read is not kept */
+	private static void changed(String table) {
+		generations.merge(table, 1, Integer::sum);
+	}
+
+	/**
+	 * Tells the catalog of <table>, if it is loaded, that <unit> was
+	 * inserted or updated in the DB, once committed (see CacheNotices).
+	 */
+	static void saved(String table, Unit unit) {
+		CacheNotices.post(() -> put(table, unit));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void put(String table, Unit unit) {
+		UnitCatalog<Unit> catalog;
+		synchronized (UnitCatalog.class) {
+			catalog = (UnitCatalog<Unit>) catalogs.get(table);
+			changed(table);
+		}
+		if (catalog != null) {
+			catalog.put(unit);
+		}
+	}
+
+	/**
+	 * Tells the catalog of <table>, if it is loaded, that <unit> was
+	 * deleted from the DB, once committed (see CacheNotices).
+	 */
+	static void deleted(String table, Unit unit) {
+		CacheNotices.post(() -> remove(table, unit));
+	}
+
+	private static void remove(String table, Unit unit) {
+		UnitCatalog<?> catalog;
+		synchronized (UnitCatalog.class) {
+			catalog = catalogs.get(table);
+			changed(table);
+		}
+		if (catalog != null) {
+			catalog.remove(unit);
+		}
+	}
+
+	/**
+	 * Returns the ID that identifies <unit> in its table: the specific
+	 * one for Entities, which is the one their DAOs update by.
+	 */
+	private static int keyOf(Unit unit) {
+		if (unit instanceof HierarchicalUnit) {
+			return ((HierarchicalUnit) unit).getSpecificId();
+		}
+		return unit.getId();
+	}
+
+	public synchronized int size() {
+		return sorted.size();
+	}
+
+	/**
+	 * Returns all Units, in order.
+	 */
+	public synchronized List<U> getAll() {
+		List<U> units = new ArrayList<>(sorted.size());
+		for (Entry<U> entry : sorted) {
+			units.add(entry.unit);
+		}
+		return units;
+	}
+
+	/**
+	 * Returns the first <limit> Units found by <text>: those whose name
+	 * starts with it, then those with a word starting with each word of
+	 * <text>, and then those with a word containing each, in order within
+	 * each group. Returns the first <limit> Units if <text> has no words.
+	 */
+	public synchronized List<U> find(String text, int limit) {
+		List<Token> tokens = TextTokenizer.tokenize(text);
+		List<Entry<U>> found = new ArrayList<>();
+		if (tokens.isEmpty()) {
+			found.addAll(sorted.subList(0, Math.min(limit, sorted.size())));
+		} else {
+			Set<Entry<U>> matching = null;
+			Set<Entry<U>> byPrefix = null;
+			for (Token token : tokens) {
+				Set<Entry<U>> withPrefix = new HashSet<>();
+				String prefix = token.getTerm();
+				for (Set<Entry<U>> entries : words.subMap(prefix,
+						prefix + Character.MAX_VALUE).values()) {
+					withPrefix.addAll(entries);
+				}
+				Set<Entry<U>> withWord = new HashSet<>(withPrefix);
+				for (String word : wordsContaining(prefix)) {
+					withWord.addAll(words.get(word));
+				}
+				if (matching == null) {
+					matching = withWord;
+					byPrefix = withPrefix;
+				} else {
+					matching.retainAll(withWord);
+					byPrefix.retainAll(withPrefix);
+				}
+			}
+			String first = tokens.get(0).getTerm();
+			Set<Entry<U>> prefixed = byPrefix;
+			found.addAll(matching);
+			found.sort(Comparator.<Entry<U>, Boolean>comparing(
+					e -> !e.firstWord.startsWith(first))
+					.thenComparing(e -> !prefixed.contains(e))
+					.thenComparing(e -> e.collationKey));
+			if (found.size() > limit) {
+				found = found.subList(0, limit);
+			}
+		}
+		List<U> units = new ArrayList<>(found.size());
+		for (Entry<U> entry : found) {
+			units.add(entry.unit);
+		}
+		return units;
+	}
+
+	/**
+	 * Returns the words of the names that contain <term>, if it has 
+	 * INFIX_MIN characters or more: those with all of its trigrams, 
+	 * checked.
+	 */
+	private Set<String> wordsContaining(String term) {
+		Set<String> found = new HashSet<>();
+		if (term.length() < INFIX_MIN) {
+			return found;
+		}
+		Set<String> candidates = null;
+		for (int i=0; i+3<=term.length(); i++) {
+			Set<String> withTrigram = trigrams.get(term.substring(i, i + 3));
+			if (withTrigram == null) {
+				return found;
+			}
+			if (candidates == null) {
+				candidates = new HashSet<>(withTrigram);
+			} else {
+				candidates.retainAll(withTrigram);
+			}
+		}
+		for (String word : candidates) {
+			if (word.contains(term)) {
+				found.add(word);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Adds <unit>, or replaces the Unit with its ID.
+	 */
+	public synchronized void put(U unit) {
+		Entry<U> old = byKey.get(keyOf(unit));
+		if (old != null) {
+			/* Updates of Entities don't know their common ID */
+			if (unit.getId() == 0) {
+				unit.setId(old.unit.getId());
+			}
+			remove(old);
+		}
+		add(unit);
+	}
+
+	/**
+	 * Removes the Unit with the ID of <unit>.
+	 */
+	public synchronized void remove(Unit unit) {
+		Entry<U> old = byKey.get(keyOf(unit));
+		if (old != null) {
+			remove(old);
+		}
+	}
+
+	private void add(U unit) {
+		Entry<U> entry = new Entry<>(unit);
+		int pos = Collections.binarySearch(sorted, entry,
+				Comparator.comparing(e -> e.collationKey));
+		sorted.add(pos < 0 ? -pos - 1 : pos, entry);
+		byKey.put(keyOf(unit), entry);
+		for (Token token : TextTokenizer.tokenize(entry.label)) {
+			String word = token.getTerm();
+			if (!words.containsKey(word)) {
+				for (int i=0; i+3<=word.length(); i++) {
+					trigrams.computeIfAbsent(word.substring(i, i + 3), 
+							t -> new HashSet<>()).add(word);
+				}
+			}
+			words.computeIfAbsent(word, w -> new HashSet<>()).add(entry);
+		}
+	}
+
+	private void remove(Entry<U> entry) {
+		sorted.remove(entry);
+		byKey.remove(keyOf(entry.unit));
+		for (Token token : TextTokenizer.tokenize(entry.label)) {
+			Set<Entry<U>> entries = words.get(token.getTerm());
+			if (entries != null) {
+				entries.remove(entry);
+				if (entries.isEmpty()) {
+					String word = token.getTerm();
+					words.remove(word);
+					for (int i=0; i+3<=word.length(); i++) {
+						Set<String> withTrigram = trigrams.get(
+								word.substring(i, i + 3));
+						if (withTrigram != null) {
+							withTrigram.remove(word);
+							if (withTrigram.isEmpty()) {
+								trigrams.remove(word.substring(i, i + 3));
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * A Unit of the catalog with its name, as shown and as sorted.
+	 */
+	private static class Entry<U> {
+
+		private final U unit;
+		private final String label;
+		private final CollationKey collationKey;
+		private final String firstWord;
+
+		private Entry(U unit) {
+			this.unit = unit;
+			this.label = String.valueOf(unit);
+			synchronized (COLLATOR) {
+				this.collationKey = COLLATOR.getCollationKey(label);
+			}
+			List<Token> tokens = TextTokenizer.tokenize(label);
+			this.firstWord = tokens.isEmpty() ? "" : tokens.get(0).getTerm();
+		}
+	}
+}
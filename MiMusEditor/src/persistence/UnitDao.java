@@ -6,6 +6,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.jcraft.jsch.JSchException;
@@ -23,17 +25,48 @@ import util.DBUtils;
  *
  * @param <U> the specific Unit
  */
-public abstract class UnitDao<U extends Unit> {
+public abstract class UnitDao<U extends Unit> implements AutoCloseable {
 	
 	/* DAO requires a Connection to DB to perform queries and changes */
 	private Connection conn;
 	
+	/* True if conn was borrowed from the session pool by this DAO */
+	private boolean borrowed;
+	
+	/* Units already materialized in the unit of work of this DAO */
+	private IdentityMap identityMap;
+	
+	/**
+	 * Creates a DAO with a Connection borrowed from the session pool.
+	 * The DAO must be closed to give the Connection back.
+	 */
 	public UnitDao() throws SQLException {
 		setConnection(DBUtils.connect());
+		borrowed = true;
 	}
 	
+	/**
+	 * Creates a DAO on a Connection owned by the caller, which is left
+	 * open when the DAO is closed.
+	 */
 	public UnitDao(Connection conn) {
 		setConnection(conn);
+		borrowed = false;
+	}
+	
+	/**
+	 * Returns the Connection to the session pool if this DAO borrowed it.
+	 */
+	@Override
+	public void close() {
+		if (borrowed) {
+			borrowed = false;
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 	
 	public Connection getConnection() {
@@ -43,14 +76,69 @@ public abstract class UnitDao<U extends Unit> {
 	public void setConnection(Connection conn) {
 		this.conn = conn;
 	}
+	
+	/**
+	 * Returns the IdentityMap this DAO consults before querying the DB.
+	 * Unless one is set, each DAO has its own, empty when created.
+	 */
+	public IdentityMap getIdentityMap() {
+		if (identityMap == null) {
+			identityMap = new IdentityMap();
+		}
+		return identityMap;
+	}
+	
+	/**
+	 * Makes this DAO share IdentityMap <identityMap> with other DAOs, so
+	 * Units materialized by any of them are not read again.
+	 */
+	public void setIdentityMap(IdentityMap identityMap) {
+		this.identityMap = identityMap;
+	}
+	
+	/**
+	 * Makes <dao>, used by this DAO to resolve related Units, share the
+	 * unit of work of this DAO, i.e. its IdentityMap. Returns <dao>.
+	 */
+	protected <D extends UnitDao<?>> D share(D dao) {
+		dao.setIdentityMap(getIdentityMap());
+		return dao;
+	}
+
+	/**
+	 * Returns the SELECT and FROM clauses of the queries of this DAO.
+	 * By default all columns of its table are selected, but DAOs can
+	 * override it to join related tables, so make() receives their
+	 * columns too. Filters must then qualify columns with getTable().
+	 */
+	protected String getSelectFrom() {
+		return "SELECT * FROM " + getTable();
+	}
+
+	/**
+	 * Returns the rows of the table of this DAO whose column <column> is
+	 * in <values>, or all of them if <values> is null, read from the
+	 * LocalReplica. Returns null if the DB must be queried instead: the
+	 * replica is not serving, or this DAO overrides getSelectFrom() to
+	 * join other tables, which the replica does not.
+	 */
+	protected ResultSet selectLocally(String column, Collection<Integer> values) {
+		if (!getSelectFrom().equals("SELECT * FROM " + getTable())) {
+			return null;
+		}
+		return LocalReplica.select(getTable(), column, values);
+	}
 
 	/**
 	 * Selects all DB entries in table associated to class U.
 	 */
 	public List<U> selectAll() throws SQLException {
-		String sql = "SELECT * FROM " + getTable();
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		ResultSet rs = selectLocally("id", null);
+		if (rs == null) {
+			String sql = getSelectFrom();
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		
 		List<U> elems = new ArrayList<>();
 		while (rs.next()) {
@@ -64,7 +152,7 @@ public abstract class UnitDao<U extends Unit> {
 	 * arbitrarily.
 	 */
 	public U selectOne() throws SQLException {
-		String sql = "SELECT * FROM " + getTable();
+		String sql = getSelectFrom();
 		Statement stmt = getConnection().createStatement();
 		ResultSet rs = stmt.executeQuery(sql);
 		if (rs.next()) {
@@ -75,15 +163,27 @@ public abstract class UnitDao<U extends Unit> {
 	
 	/**
 	 * Selects the DB entry in the table associated to class U
-	 * that has ID <id>, or null if none has.
+	 * that has ID <id>, or null if none has. If the entry is already
+	 * in the IdentityMap, the DB is not queried.
 	 */
 	public U selectOne(int id) throws SQLException {
-		String sql = "SELECT * FROM " + getTable() + " WHERE id=" + id;
-		System.out.println("SQL: " + sql);
-		Statement stmt = getConnection().createStatement();
-		ResultSet rs = stmt.executeQuery(sql);
+		U known = getIdentityMap().get(getTable(), id);
+		if (known != null) {
+			return known;
+		}
+		ResultSet rs = selectLocally("id", Collections.singleton(id));
+		if (rs == null) {
+			String sql = getSelectFrom() + " WHERE " + getTable() + ".id=" + id;
+			System.out.println("SQL: " + sql);
+			Statement stmt = getConnection().createStatement();
+			rs = stmt.executeQuery(sql);
+		}
 		if (rs.next()) {
-			return make(rs);
+			U unit = make(rs);
+			if (unit != null) {
+				getIdentityMap().put(getTable(), unit);
+			}
+			return unit;
 		}
 		return null;
 	}
@@ -114,6 +214,21 @@ public abstract class UnitDao<U extends Unit> {
 		return -1;
 	}
 	
+	/**
+	 * Returns the IDs in <ids> as a SQL list, e.g. "(1,2,3)", to be
+	 * used in IN clauses. IDs are integers, so they need no escaping.
+	 */
+	protected static String toInList(Collection<? extends Number> ids) {
+		StringBuilder sb = new StringBuilder("(");
+		for (Number id : ids) {
+			if (sb.length() > 1) {
+				sb.append(',');
+			}
+			sb.append(id);
+		}
+		return sb.append(')').toString();
+	}
+	
 	/**
 	 * Deletes unit <unit> from the table based on its ID.
 	 */
@@ -122,6 +237,16 @@ public abstract class UnitDao<U extends Unit> {
 		String sql = "DELETE FROM " + getTable() + 
 				" WHERE id=" + unit.getId();
 		stmt.executeUpdate(sql);
+		recordChange(unit.getId(), ChangeLog.Operation.DELETE);
+		UnitCatalog.deleted(getTable(), unit);
+	}
+	
+	/**
+	 * Appends to the ChangeLog that the row with ID <rowId> of the table
+	 * of this DAO was changed by <op>.
+	 */
+	protected void recordChange(int rowId, ChangeLog.Operation op) {
+		ChangeLog.record(getConnection(), getTable(), rowId, op);
 	}
 	
 	/**
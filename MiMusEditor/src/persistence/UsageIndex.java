@@ -0,0 +1,229 @@
+package persistence;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import model.Bibliography;
+import model.Entity;
+import model.Unit;
+import util.DBUtils;
+
+/**
+ * Index of the Documents where each Entity and Bibliography entry is
+ * used, i.e. annotated as an EntityInstance or a Reference.
+ *
+ * It keeps, per kind, the number of Documents using every Unit, read
+ * for all of them with a single GROUP BY in a Job, so they can be shown
+ * from the UI thread without waiting for the DB, and the IDs of the Documents
+ * using the Units asked for, read with a query on the index of the
+ * annotation table. Both are kept in memory until an annotation of that
+ * kind is inserted or deleted, when InstanceDao and ReferenceDao
+ * invalidate them, or the session changes.
+ *
+ * If the counts could not be read, that is kept too, so they are not
+ * read again for every Unit shown, until the index is invalidated.
+ *
+ * Listeners can be registered to know when the index is invalidated or
+ * the counts are read, e.g. to redraw the counts shown.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class UsageIndex {
+
+	/* Kinds of Units whose usage is indexed */
+	public enum Kind {
+		ENTITY,
+		BIBLIOGRAPHY
+	}
+
+	/* Values of getCount() that are not a number of Documents */
+	public static final int NOT_INDEXED = -1;
+	public static final int LOADING = -2;
+	public static final int FAILED = -3;
+
+	/* Index state, guarded by UsageIndex.class */
+	private static final Map<Kind, Map<Integer, Integer>> counts =
+			new EnumMap<>(Kind.class);
+	private static final Map<Kind, Job> loading = new EnumMap<>(Kind.class);
+	private static final Set<Kind> failed = EnumSet.noneOf(Kind.class);
+	private static final Map<Kind, Map<Integer, List<Integer>>> documents =
+			new EnumMap<>(Kind.class);
+	private static final List<Runnable> listeners = new ArrayList<>();
+
+	private UsageIndex() {}
+
+	/**
+	 * Returns the kind of <unit>, or null if its usage is not indexed.
+	 */
+	public static Kind kindOf(Unit unit) {
+		if (unit instanceof Entity) {
+			return Kind.ENTITY;
+		} else if (unit instanceof Bibliography) {
+			return Kind.BIBLIOGRAPHY;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of Documents where <unit> is used, if the counts
+	 * of its kind are already read. It never waits for the DB: otherwise
+	 * it starts reading them in a Job, which tells the listeners when it
+	 * is done, and returns LOADING, or FAILED if the last read failed.
+	 * Returns NOT_INDEXED if the usage of <unit> is not indexed.
+	 */
+	public static int getCount(Unit unit) {
+		Kind kind = kindOf(unit);
+		if (kind == null) {
+			return NOT_INDEXED;
+		}
+		Map<Integer, Integer> kindCounts;
+		synchronized (UsageIndex.class) {
+			kindCounts = counts.get(kind);
+			if (kindCounts == null) {
+				if (failed.contains(kind)) {
+					return FAILED;
+				}
+				if (!loading.containsKey(kind)) {
+					Job job = new CountJob(kind);
+					loading.put(kind, job);
+					job.schedule();
+				}
+				return LOADING;
+			}
+		}
+		/* The ID of an Entity is its common ID, used by the annotations */
+		Integer count = kindCounts.get(unit.getId());
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the IDs of the Documents where <unit> is used, in order.
+	 */
+	public static List<Integer> getDocumentIds(Unit unit) throws SQLException {
+		Kind kind = kindOf(unit);
+		if (kind == null) {
+			return new ArrayList<>();
+		}
+		int key = unit.getId();
+		synchronized (UsageIndex.class) {
+			Map<Integer, List<Integer>> kindDocs = documents.get(kind);
+			if (kindDocs != null && kindDocs.containsKey(key)) {
+				return kindDocs.get(key);
+			}
+		}
+		List<Integer> ids;
+		try (Connection conn = DBUtils.connect()) {
+			ids = Collections.unmodifiableList(kind == Kind.ENTITY
+					? new InstanceDao(conn).selectDocumentIds(key)
+					: new ReferenceDao(conn).selectDocumentIds(key));
+		}
+		synchronized (UsageIndex.class) {
+			documents.computeIfAbsent(kind, k -> new HashMap<>()).put(key, ids);
+		}
+		return ids;
+	}
+
+	/**
+	 * Discards what is known about the usage of Units of kind <kind>, so
+	 * it is read again from the DB on next use, and tells the listeners.
+	 */
+	public static void invalidate(Kind kind) {
+		List<Runnable> toNotify;
+		synchronized (UsageIndex.class) {
+			counts.remove(kind);
+			documents.remove(kind);
+			failed.remove(kind);
+			Job job = loading.remove(kind);
+			if (job != null) {
+				/* What it reads may be out of date already */
+				job.cancel();
+			}
+			toNotify = new ArrayList<>(listeners);
+		}
+		for (Runnable listener : toNotify) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Discards the whole index, e.g. when the session changes.
+	 */
+	public static void invalidate() {
+		for (Kind kind : Kind.values()) {
+			invalidate(kind);
+		}
+	}
+
+	/**
+	 * Registers <listener> to be run whenever the index is invalidated,
+	 * from the thread that invalidates it, or the counts of a kind are
+	 * read or fail, from the thread of the Job.
+	 */
+	public static synchronized void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	public static synchronized void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Job reading the counts of Units of kind <kind>. If the index is
+	 * invalidated meanwhile, what it reads is discarded.
+	 */
+	private static class CountJob extends Job {
+
+		private final Kind kind;
+
+		private CountJob(Kind kind) {
+			super("Counting usage of " + kind);
+			this.kind = kind;
+			setSystem(true);
+		}
+
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			Map<Integer, Integer> kindCounts = null;
+			try (Connection conn = DBUtils.connect()) {
+				kindCounts = Collections.unmodifiableMap(kind == Kind.ENTITY
+						? new InstanceDao(conn).countDocumentsPerEntity()
+						: new ReferenceDao(conn).countDocumentsPerBiblio());
+			} catch (SQLException e) {
+				System.out.println("SQLException: could not count usage of "
+						+ kind + ".");
+				e.printStackTrace();
+			}
+			List<Runnable> toNotify;
+			synchronized (UsageIndex.class) {
+				if (loading.get(kind) != this) {
+					return Status.CANCEL_STATUS;
+				}
+				loading.remove(kind);
+				if (kindCounts != null) {
+					counts.put(kind, kindCounts);
+				} else {
+					failed.add(kind);
+				}
+				toNotify = new ArrayList<>(listeners);
+			}
+			for (Runnable listener : toNotify) {
+				listener.run();
+			}
+			return Status.OK_STATUS;
+		}
+	}
+}
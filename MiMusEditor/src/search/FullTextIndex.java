@@ -0,0 +1,569 @@
+package search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import model.Document;
+import model.Note;
+import persistence.DocumentDao;
+import search.TextTokenizer.Token;
+import util.DBUtils;
+
+/**
+ * Inverted index of the texts of all Documents of the corpus: their
+ * regests, transcriptions and Notes. Each term (see TextTokenizer) maps
+ * to the Documents where it appears, and each indexed text keeps its
+ * terms in order with their offsets, so phrases can be checked and
+ * matches shown where they are without going to the DB.
+ *
+ * The index lives in memory and is saved to a local file, by default
+ * search.idx in the MiMusCorpus project (property search.index_file of
+ * config.properties), so it is not built from scratch in every session.
+ * update() brings it up to date with the DB: it compares a fingerprint
+ * of the texts of every Document, computed by the DB, with the one
+ * indexed, and only downloads and indexes the Documents that changed.
+ *
+ * The transcriptions are also indexed by trigrams, in a TrigramIndex,
+ * to search regular expressions: the trigrams that any match must have
+ * narrow the transcriptions where the expression is run (see
+ * searchRegex()). That index is rebuilt in memory, not saved.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class FullTextIndex {
+
+	/* Texts of a Document that are indexed */
+	public enum Field {
+		TRANSCRIPTION,
+		REGEST,
+		NOTE
+	}
+
+	/* Format of the index file */
+	private static final int MAGIC = 0x4D4D4654;
+	private static final int VERSION = 1;
+
+	/* Documents whose texts are downloaded at once when updating */
+	private static final int UPDATE_CHUNK = 200;
+
+	/* Hits returned by a search, at most */
+	public static final int MAX_HITS = 1000;
+
+	private static FullTextIndex instance;
+
+	/* Index state, guarded by this */
+	private final Map<Integer, IndexedDoc> docs = new HashMap<>();
+	private final List<String> terms = new ArrayList<>();
+	private final TreeMap<String, Integer> termIds = new TreeMap<>();
+	private final Map<Integer, Set<Integer>> postings = new HashMap<>();
+	private final TrigramIndex trigrams = new TrigramIndex();
+	private final File file;
+
+	private FullTextIndex(File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Returns the index of the corpus, read from its file the first time.
+	 */
+	public static synchronized FullTextIndex get() {
+		if (instance == null) {
+			instance = new FullTextIndex(new File(getFilePath()));
+			instance.load();
+		}
+		return instance;
+	}
+
+	private static String getFilePath() {
+		String name = "search.idx";
+		try {
+			name = DBUtils.readProperties().getProperty("search.index_file", name);
+		} catch (IOException e) {
+			System.out.println("IOException: could not read config.properties, "
+					+ "using default index file.");
+		}
+		return DBUtils.getCorpusFilePath(name);
+	}
+
+	/**
+	 * Returns the number of Documents indexed.
+	 */
+	public synchronized int size() {
+		return docs.size();
+	}
+
+	/**
+	 * Returns the text <field> of Document <docId> as indexed, or null if
+	 * it is not. For Notes, <noteId> tells which one.
+	 */
+	public synchronized String getText(int docId, Field field, int noteId) {
+		IndexedDoc doc = docs.get(docId);
+		if (doc != null) {
+			for (IndexedText text : doc.texts) {
+				if (text.field == field && text.noteId == noteId) {
+					return text.text;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Updates the index with the current texts of the DB, through <conn>,
+	 * and saves it to its file. Searches can go on while it runs, and
+	 * see each chunk of Documents as soon as it is indexed. Returns the
+	 * number of Documents indexed or removed.
+	 */
+	public int update(Connection conn) throws SQLException {
+		DocumentDao dao = new DocumentDao(conn);
+		Map<Integer, Long> fingerprints = dao.selectTextFingerprints();
+
+		List<Integer> changed = new ArrayList<>();
+		int removed = 0;
+		synchronized (this) {
+			for (Integer id : new ArrayList<>(docs.keySet())) {
+				if (!fingerprints.containsKey(id)) {
+					remove(id);
+					removed++;
+				}
+			}
+			for (Map.Entry<Integer, Long> entry : fingerprints.entrySet()) {
+				IndexedDoc doc = docs.get(entry.getKey());
+				if (doc == null || doc.fingerprint != entry.getValue()) {
+					changed.add(entry.getKey());
+				}
+			}
+		}
+
+		for (int i=0; i<changed.size(); i+=UPDATE_CHUNK) {
+			List<Integer> chunk = changed.subList(i,
+					Math.min(i + UPDATE_CHUNK, changed.size()));
+			List<Document> texts = dao.selectTexts(chunk);
+			synchronized (this) {
+				for (Document doc : texts) {
+					remove(doc.getId());
+					add(doc, fingerprints.get(doc.getId()));
+				}
+			}
+		}
+
+		if (removed > 0 || !changed.isEmpty()) {
+			save();
+		}
+		return removed + changed.size();
+	}
+
+	/**
+	 * Returns where <query> matches, in Documents that match all its
+	 * clauses, in order of Document. At most MAX_HITS are returned.
+	 */
+	public synchronized List<SearchHit> search(SearchQuery query) {
+		List<SearchHit> hits = new ArrayList<>();
+		if (query.isEmpty()) {
+			return hits;
+		}
+
+		/* Terms allowed at each position of each clause */
+		List<List<Set<Integer>>> allowed = new ArrayList<>();
+		for (SearchQuery.Clause clause : query.getClauses()) {
+			List<Set<Integer>> positions = new ArrayList<>();
+			for (int i=0; i<clause.size(); i++) {
+				Set<Integer> ids = matchingTerms(clause.getTerm(i),
+						clause.isPrefix(i));
+				if (ids.isEmpty()) {
+					return hits;
+				}
+				positions.add(ids);
+			}
+			allowed.add(positions);
+		}
+
+		/* Documents that have every term of every clause */
+		Set<Integer> candidates = null;
+		for (List<Set<Integer>> positions : allowed) {
+			for (Set<Integer> ids : positions) {
+				Set<Integer> withTerm = new HashSet<>();
+				for (Integer id : ids) {
+					withTerm.addAll(postings.getOrDefault(id,
+							Collections.emptySet()));
+				}
+				if (candidates == null) {
+					candidates = withTerm;
+				} else {
+					candidates.retainAll(withTerm);
+				}
+			}
+		}
+
+		/* Check the order of the terms in each candidate */
+		for (Integer docId : new TreeSet<>(candidates)) {
+			List<SearchHit> docHits = new ArrayList<>();
+			boolean all = true;
+			for (List<Set<Integer>> positions : allowed) {
+				int before = docHits.size();
+				for (IndexedText text : docs.get(docId).texts) {
+					text.match(docId, positions, docHits);
+				}
+				if (docHits.size() == before) {
+					all = false;
+					break;
+				}
+			}
+			if (all) {
+				docHits.sort((a, b) -> a.getField() != b.getField()
+						? a.getField().compareTo(b.getField())
+						: a.getNoteId() != b.getNoteId()
+						? Integer.compare(a.getNoteId(), b.getNoteId())
+						: Integer.compare(a.getStart(), b.getStart()));
+				for (SearchHit hit : docHits) {
+					if (hits.size() == MAX_HITS) {
+						return hits;
+					}
+					hits.add(hit);
+				}
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns where regular expression <pattern> matches in the
+	 * transcriptions, in order of Document and offset. Only the Documents
+	 * that have the trigrams required by <pattern> are checked. The
+	 * offsets of the hits are those of the raw transcription, like the
+	 * coordinates of Transcriptions. At most MAX_HITS are returned.
+	 *
+	 * The texts of the candidates are taken under the lock of the index,
+	 * but matched outside it, so a slow expression doesn't hold back the
+	 * updates and the other searches. Matching stops when <monitor> is
+	 * canceled, returning the hits found until then.
+	 */
+	public List<SearchHit> searchRegex(Pattern pattern,
+			IProgressMonitor monitor) {
+		List<Integer> docIds = new ArrayList<>();
+		List<String> texts = new ArrayList<>();
+		synchronized (this) {
+			PostingList candidates = RegexPlanner.plan(pattern)
+					.evaluate(trigrams);
+			if (candidates == null) {
+				docIds.addAll(new TreeSet<>(docs.keySet()));
+			} else {
+				for (int i=0; i<candidates.size(); i++) {
+					docIds.add(candidates.get(i));
+				}
+			}
+			for (Integer docId : docIds) {
+				texts.add(getText(docId, Field.TRANSCRIPTION, 0));
+			}
+		}
+
+		List<SearchHit> hits = new ArrayList<>();
+		for (int i=0; i<docIds.size(); i++) {
+			if (monitor.isCanceled()) {
+				return hits;
+			}
+			int docId = docIds.get(i);
+			String text = texts.get(i);
+			if (text == null) {
+				continue;
+			}
+			Matcher matcher = pattern.matcher(text);
+			while (matcher.find()) {
+				/* Empty matches can't be shown */
+				if (matcher.end() > matcher.start()) {
+					if (hits.size() == MAX_HITS) {
+						return hits;
+					}
+					hits.add(new SearchHit(docId, Field.TRANSCRIPTION, 0, text,
+							matcher.start(), matcher.end()));
+				}
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * Returns the IDs of the terms equal to <term>, or starting with it if
+	 * <prefix> is true, that some Document still has.
+	 */
+	private Set<Integer> matchingTerms(String term, boolean prefix) {
+		Set<Integer> ids = new HashSet<>();
+		if (prefix) {
+			ids.addAll(termIds.subMap(term, term + Character.MAX_VALUE).values());
+		} else if (termIds.containsKey(term)) {
+			ids.add(termIds.get(term));
+		}
+		ids.retainAll(postings.keySet());
+		return ids;
+	}
+
+	private int termId(String term) {
+		Integer id = termIds.get(term);
+		if (id == null) {
+			id = terms.size();
+			terms.add(term);
+			termIds.put(term, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Indexes the texts of <doc>, with fingerprint <fingerprint>.
+	 */
+	private void add(Document doc, long fingerprint) {
+		IndexedDoc indexed = new IndexedDoc(fingerprint);
+		indexed.add(Field.TRANSCRIPTION, 0, doc.getTranscriptionText());
+		indexed.add(Field.REGEST, 0, doc.getRegestText());
+		for (Note note : doc.getNotes()) {
+			indexed.add(Field.NOTE, note.getId(), note.getText());
+		}
+		put(doc.getId(), indexed);
+	}
+
+	private void put(int docId, IndexedDoc indexed) {
+		docs.put(docId, indexed);
+		for (IndexedText text : indexed.texts) {
+			for (int term : text.terms) {
+				postings.computeIfAbsent(term, t -> new HashSet<>()).add(docId);
+			}
+			if (text.field == Field.TRANSCRIPTION) {
+				trigrams.add(docId, text.text);
+			}
+		}
+	}
+
+	private void remove(int docId) {
+		IndexedDoc indexed = docs.remove(docId);
+		if (indexed != null) {
+			for (IndexedText text : indexed.texts) {
+				for (int term : text.terms) {
+					Set<Integer> withTerm = postings.get(term);
+					if (withTerm != null) {
+						withTerm.remove(docId);
+						if (withTerm.isEmpty()) {
+							postings.remove(term);
+						}
+					}
+				}
+				if (text.field == Field.TRANSCRIPTION) {
+					trigrams.remove(docId, text.text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves the index to its file. It is written to a temporary file first,
+	 * so a failure doesn't leave a broken index behind. Terms no Document
+	 * has anymore are left out, and the rest numbered again.
+	 */
+	public synchronized void save() {
+		File tmp = new File(file.getPath() + ".tmp");
+		int[] saved = new int[terms.size()];
+		int savedCount = 0;
+		for (int i=0; i<terms.size(); i++) {
+			saved[i] = postings.containsKey(i) ? savedCount++ : -1;
+		}
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp))))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(savedCount);
+			for (int i=0; i<terms.size(); i++) {
+				if (saved[i] >= 0) {
+					out.writeUTF(terms.get(i));
+				}
+			}
+			out.writeInt(docs.size());
+			for (Map.Entry<Integer, IndexedDoc> entry : docs.entrySet()) {
+				out.writeInt(entry.getKey());
+				out.writeLong(entry.getValue().fingerprint);
+				out.writeInt(entry.getValue().texts.size());
+				for (IndexedText text : entry.getValue().texts) {
+					out.writeByte(text.field.ordinal());
+					out.writeInt(text.noteId);
+					writeString(out, text.text);
+					out.writeInt(text.terms.length);
+					for (int i=0; i<text.terms.length; i++) {
+						out.writeInt(saved[text.terms[i]]);
+						out.writeInt(text.starts[i]);
+						out.writeInt(text.ends[i]);
+					}
+				}
+			}
+		} catch (IOException e) {
+			System.out.println("IOException: could not save search index to "
+					+ tmp + ".");
+			e.printStackTrace();
+			return;
+		}
+		try {
+			Files.move(tmp.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			System.out.println("IOException: could not replace search index "
+					+ file + ".");
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads the index from its file, if there is one. If it can't be read,
+	 * the index starts empty and update() builds it again.
+	 */
+	private synchronized void load() {
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(
+				new BufferedInputStream(new FileInputStream(file))))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.out.println("Search index " + file
+						+ " has an old format, it will be built again.");
+				return;
+			}
+			int termCount = in.readInt();
+			for (int i=0; i<termCount; i++) {
+				termId(in.readUTF());
+			}
+			int docCount = in.readInt();
+			for (int i=0; i<docCount; i++) {
+				int docId = in.readInt();
+				IndexedDoc indexed = new IndexedDoc(in.readLong());
+				int textCount = in.readInt();
+				for (int j=0; j<textCount; j++) {
+					IndexedText text = new IndexedText(
+							Field.values()[in.readByte()], in.readInt(),
+							readString(in), in.readInt());
+					for (int k=0; k<text.terms.length; k++) {
+						text.terms[k] = in.readInt();
+						text.starts[k] = in.readInt();
+						text.ends[k] = in.readInt();
+					}
+					indexed.texts.add(text);
+				}
+				put(docId, indexed);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Could not read search index " + file
+					+ ", it will be built again.");
+			e.printStackTrace();
+			docs.clear();
+			terms.clear();
+			termIds.clear();
+			postings.clear();
+			trigrams.clear();
+		}
+	}
+
+	/* Unlike writeUTF(), these are not limited to 64KB */
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The indexed texts of a Document, and the fingerprint of the texts
+	 * in the DB when they were indexed.
+	 */
+	private class IndexedDoc {
+
+		private final long fingerprint;
+		private final List<IndexedText> texts = new ArrayList<>();
+
+		private IndexedDoc(long fingerprint) {
+			this.fingerprint = fingerprint;
+		}
+
+		private void add(Field field, int noteId, String text) {
+			if (text == null || text.isEmpty()) {
+				return;
+			}
+			List<Token> tokens = TextTokenizer.tokenize(text);
+			IndexedText indexed = new IndexedText(field, noteId, text,
+					tokens.size());
+			for (int i=0; i<tokens.size(); i++) {
+				indexed.terms[i] = termId(tokens.get(i).getTerm());
+				indexed.starts[i] = tokens.get(i).getStart();
+				indexed.ends[i] = tokens.get(i).getEnd();
+			}
+			texts.add(indexed);
+		}
+	}
+
+	/**
+	 * A text of a Document with its terms, in order, and their offsets.
+	 */
+	private static class IndexedText {
+
+		private final Field field;
+		private final int noteId;
+		private final String text;
+		private final int[] terms;
+		private final int[] starts;
+		private final int[] ends;
+
+		private IndexedText(Field field, int noteId, String text, int size) {
+			this.field = field;
+			this.noteId = noteId;
+			this.text = text;
+			this.terms = new int[size];
+			this.starts = new int[size];
+			this.ends = new int[size];
+		}
+
+		/**
+		 * Adds to <hits> every place of this text, of Document <docId>,
+		 * where a term of each set of <positions> appears in a row.
+		 */
+		private void match(int docId, List<Set<Integer>> positions,
+				List<SearchHit> hits) {
+			int size = positions.size();
+			for (int i=0; i+size<=terms.length; i++) {
+				boolean found = true;
+				for (int j=0; j<size && found; j++) {
+					found = positions.get(j).contains(terms[i + j]);
+				}
+				if (found) {
+					hits.add(new SearchHit(docId, field, noteId, text,
+							starts[i], ends[i + size - 1]));
+				}
+			}
+		}
+	}
+}
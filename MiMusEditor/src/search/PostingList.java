@@ -0,0 +1,114 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of Document IDs, kept in an int array, as the postings
+ * of a TrigramIndex. Intersections and unions merge the arrays in order,
+ * without boxing the IDs.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class PostingList {
+
+	private int[] ids;
+	private int size;
+
+	public PostingList() {
+		this(new int[4], 0);
+	}
+
+	private PostingList(int[] ids, int size) {
+		this.ids = ids;
+		this.size = size;
+	}
+
+	/**
+	 * Adds <id>, if it is not in the list yet. IDs added in increasing
+	 * order are appended at once.
+	 */
+	public void add(int id) {
+		if (size > 0 && ids[size - 1] < id) {
+			insert(size, id);
+			return;
+		}
+		int pos = Arrays.binarySearch(ids, 0, size, id);
+		if (pos < 0) {
+			insert(-pos - 1, id);
+		}
+	}
+
+	private void insert(int pos, int id) {
+		if (size == ids.length) {
+			ids = Arrays.copyOf(ids, size * 2);
+		}
+		System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+		ids[pos] = id;
+		size++;
+	}
+
+	public void remove(int id) {
+		int pos = Arrays.binarySearch(ids, 0, size, id);
+		if (pos >= 0) {
+			System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+			size--;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int get(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * Returns the IDs in both <a> and <b>.
+	 */
+	public static PostingList intersect(PostingList a, PostingList b) {
+		int[] result = new int[Math.min(a.size, b.size)];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.size && j < b.size) {
+			if (a.ids[i] < b.ids[j]) {
+				i++;
+			} else if (a.ids[i] > b.ids[j]) {
+				j++;
+			} else {
+				result[n++] = a.ids[i];
+				i++;
+				j++;
+			}
+		}
+		return new PostingList(result, n);
+	}
+
+	/**
+	 * Returns the IDs in <a>, <b> or both.
+	 */
+	public static PostingList union(PostingList a, PostingList b) {
+		int[] result = new int[a.size + b.size];
+		int n = 0;
+		int i = 0;
+		int j = 0;
+		while (i < a.size || j < b.size) {
+			if (j == b.size || (i < a.size && a.ids[i] < b.ids[j])) {
+				result[n++] = a.ids[i++];
+			} else if (i == a.size || a.ids[i] > b.ids[j]) {
+				result[n++] = b.ids[j++];
+			} else {
+				result[n++] = a.ids[i];
+				i++;
+				j++;
+			}
+		}
+		return new PostingList(result, n);
+	}
+}
@@ -0,0 +1,481 @@
+package search;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Plans the search of a regular expression in a TrigramIndex: it reads
+ * the expression and returns a TrigramQuery that every text matching it
+ * meets, so only the Documents that meet the query need to be checked
+ * with the expression itself.
+ *
+ * Each part of the expression is described by the set of strings it can
+ * match exactly, while they are few, or otherwise by a TrigramQuery.
+ * Case is ignored, as it is by the TrigramIndex.
+ * For instance, "ju[gc]l[ae]r" can only match "juglar", "jugler",
+ * "juclar" or "jucler", so a text must have all trigrams of one of them.
+ * Parts that can match too many strings, like ".", "[a-z]" or "\w*", require no
+ * trigrams. Anything it does not understand requires no trigrams either,
+ * so the plan may let through texts that do not match, but never leaves
+ * out one that does.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class RegexPlanner {
+
+	/* Strings a part of an expression may match, at most, to keep them */
+	private static final int MAX_EXACT = 16;
+
+	/* Characters of a class, at most, to expand it */
+	private static final int MAX_CLASS = 8;
+
+	private final String regex;
+	private int pos;
+
+	private RegexPlanner(String regex) {
+		this.regex = regex;
+	}
+
+	/**
+	 * Returns the TrigramQuery that every text matching <pattern> meets.
+	 */
+	public static TrigramQuery plan(Pattern pattern) {
+		if ((pattern.flags() & Pattern.LITERAL) != 0) {
+			return TrigramQuery.forString(pattern.pattern());
+		}
+		if ((pattern.flags() & (Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+			return TrigramQuery.ALL;
+		}
+		RegexPlanner planner = new RegexPlanner(pattern.pattern());
+		try {
+			Info info = planner.alternation();
+			if (planner.pos < planner.regex.length()) {
+				return TrigramQuery.ALL;
+			}
+			return info.query();
+		} catch (Unplannable e) {
+			return TrigramQuery.ALL;
+		}
+	}
+
+	/* alternation := concatenation ('|' concatenation)* */
+	private Info alternation() {
+		Info info = concatenation();
+		while (peek('|')) {
+			pos++;
+			info = Info.alternate(info, concatenation());
+		}
+		return info;
+	}
+
+	/* 
+	 * concatenation := repetition*
+	 * 
+	 * Consecutive parts with exact strings are joined while they are few.
+	 * When a part can match too many strings, the parts before it are
+	 * required on their own, and those after it start a new run, so
+	 * "[^x]juglar" still requires the trigrams of "juglar".
+	 */
+	private Info concatenation() {
+		TrigramQuery done = TrigramQuery.ALL;
+		boolean closed = false;
+		Info run = Info.empty();
+		while (pos < regex.length() && !peek('|') && !peek(')')) {
+			Info next = repetition();
+			if (run.exact != null && next.exact != null 
+					&& run.exact.size() * next.exact.size() <= MAX_EXACT) {
+				run = Info.concat(run, next);
+			} else {
+				done = TrigramQuery.and(done, run.query());
+				closed = true;
+				if (next.exact != null) {
+					run = next;
+				} else {
+					done = TrigramQuery.and(done, next.query());
+					run = Info.empty();
+				}
+			}
+		}
+		if (!closed) {
+			return run;
+		}
+		return new Info(null, TrigramQuery.and(done, run.query()));
+	}
+
+	/* repetition := atom quantifier* */
+	private Info repetition() {
+		Info info = atom();
+		while (pos < regex.length()) {
+			char c = regex.charAt(pos);
+			int min;
+			int max;
+			if (c == '*') {
+				min = 0;
+				max = -1;
+				pos++;
+			} else if (c == '+') {
+				min = 1;
+				max = -1;
+				pos++;
+			} else if (c == '?') {
+				min = 0;
+				max = 1;
+				pos++;
+			} else if (c == '{') {
+				int close = regex.indexOf('}', pos);
+				if (close < 0) {
+					throw new Unplannable();
+				}
+				String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+				if (bounds.length > 2) {
+					throw new Unplannable();
+				}
+				min = bound(bounds[0]);
+				max = bounds.length == 1 ? min : bounds[1].trim().isEmpty()
+						? -1 : bound(bounds[1]);
+				pos = close + 1;
+			} else {
+				break;
+			}
+			/* Lazy and possessive quantifiers match the same strings */
+			if (peek('?') || peek('+')) {
+				pos++;
+			}
+			info = Info.repeat(info, min, max);
+		}
+		return info;
+	}
+
+	private Info atom() {
+		char c = next();
+		switch (c) {
+		case '(':
+			return group();
+		case '[':
+			Set<String> chars = charClass();
+			return chars == null ? Info.any() : Info.exact(chars);
+		case '\\':
+			return escape();
+		case '.':
+			return Info.any();
+		case '^':
+		case '$':
+			return Info.empty();
+		case '*':
+		case '+':
+		case '?':
+		case '{':
+			throw new Unplannable();
+		default:
+			return Info.exact(single(c));
+		}
+	}
+
+	/* Reads a group, after its "(" */
+	private Info group() {
+		boolean lookaround = false;
+		if (peek('?')) {
+			pos++;
+			char kind = current();
+			if (kind == ':' || kind == '>') {
+				pos++;
+			} else if (kind == '=' || kind == '!') {
+				pos++;
+				lookaround = true;
+			} else if (kind == '<') {
+				pos++;
+				if (peek('=') || peek('!')) {
+					pos++;
+					lookaround = true;
+				} else {
+					/* Named group */
+					pos = regex.indexOf('>', pos) + 1;
+					if (pos == 0) {
+						throw new Unplannable();
+					}
+				}
+			} else {
+				/* Flags, like (?i) or (?i:...), or comments mode (?x) */
+				while (Character.isLetter(current()) || peek('-')) {
+					if (peek('x')) {
+						throw new Unplannable();
+					}
+					pos++;
+				}
+				if (peek(')')) {
+					pos++;
+					return Info.empty();
+				}
+				expect(':');
+			}
+		}
+		Info info = alternation();
+		expect(')');
+		/* Lookarounds don't consume characters */
+		return lookaround ? Info.empty() : info;
+	}
+
+	/* 
+	 * Reads a character class, after its "[", into its characters, or
+	 * null if it matches too many to expand it, like [^a] or [a-z]: then
+	 * it can match any character, but the rest is still planned.
+	 */
+	private Set<String> charClass() {
+		boolean tooMany = false;
+		if (peek('^')) {
+			pos++;
+			tooMany = true;
+		}
+		Set<String> chars = new HashSet<>();
+		boolean first = true;
+		while (first || !peek(']')) {
+			first = false;
+			char c = next();
+			if (c == '[' || (c == '&' && peek('&'))) {
+				throw new Unplannable();
+			}
+			if (c == '\\') {
+				if ("dDsSwWhHvV".indexOf(current()) >= 0) {
+					/* Classes like \w within the class */
+					pos++;
+					tooMany = true;
+					continue;
+				}
+				c = escapedLiteral(next());
+			}
+			if (peek('-') && pos + 1 < regex.length()
+					&& regex.charAt(pos + 1) != ']') {
+				pos++;
+				char to = next();
+				if (to == '\\') {
+					to = escapedLiteral(next());
+				}
+				if (to - c >= MAX_CLASS) {
+					tooMany = true;
+				} else {
+					for (char r=c; r<=to; r++) {
+						chars.add(String.valueOf(r));
+					}
+				}
+			} else {
+				chars.add(String.valueOf(c));
+			}
+			if (chars.size() > MAX_CLASS) {
+				tooMany = true;
+			}
+		}
+		expect(']');
+		return tooMany ? null : chars;
+	}
+
+	/* Reads an escape, after its "\" */
+	private Info escape() {
+		char c = next();
+		switch (c) {
+		case 'b':
+		case 'B':
+		case 'A':
+		case 'z':
+		case 'Z':
+		case 'G':
+			return Info.empty();
+		case 'Q':
+			int end = regex.indexOf("\\E", pos);
+			String quoted = regex.substring(pos, end < 0 ? regex.length() : end);
+			pos = end < 0 ? regex.length() : end + 2;
+			Set<String> exact = new HashSet<>();
+			exact.add(quoted);
+			return Info.exact(exact);
+		case 'p':
+		case 'P':
+			if (peek('{')) {
+				pos = regex.indexOf('}', pos) + 1;
+				if (pos == 0) {
+					throw new Unplannable();
+				}
+			} else {
+				next();
+			}
+			return Info.any();
+		case 'x':
+		case 'u':
+		case 'c':
+		case 'k':
+		case 'N':
+			/* Codes of characters and backreferences by name */
+			throw new Unplannable();
+		default:
+			if (Character.isDigit(c)) {
+				/* Octal codes and backreferences */
+				throw new Unplannable();
+			} else if (Character.isLetter(c) && "tnrfae".indexOf(c) < 0) {
+				/* Classes like \w or \s */
+				return Info.any();
+			}
+			return Info.exact(single(escapedLiteral(c)));
+		}
+	}
+
+	/* The character meant by escape "\<c>", if it is a literal one */
+	private static char escapedLiteral(char c) {
+		switch (c) {
+		case 't':
+			return '\t';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 'f':
+			return '\f';
+		case 'a':
+			return '\u0007';
+		case 'e':
+			return '\u001B';
+		default:
+			if (Character.isLetterOrDigit(c)) {
+				throw new Unplannable();
+			}
+			return c;
+		}
+	}
+
+	private static Set<String> single(char c) {
+		Set<String> exact = new HashSet<>();
+		exact.add(String.valueOf(c));
+		return exact;
+	}
+
+	/* The character at <pos>, which must be there */
+	private char current() {
+		if (pos >= regex.length()) {
+			throw new Unplannable();
+		}
+		return regex.charAt(pos);
+	}
+
+	/* Reads the character at <pos>, which must be there */
+	private char next() {
+		char c = current();
+		pos++;
+		return c;
+	}
+
+	/* Reads bound <s> of a quantifier like {2,5} */
+	private static int bound(String s) {
+		try {
+			return Integer.parseInt(s.trim());
+		} catch (NumberFormatException e) {
+			throw new Unplannable();
+		}
+	}
+
+	private boolean peek(char c) {
+		return pos < regex.length() && regex.charAt(pos) == c;
+	}
+
+	private void expect(char c) {
+		if (!peek(c)) {
+			throw new Unplannable();
+		}
+		pos++;
+	}
+
+	/**
+	 * Thrown when the expression can't be planned, because it uses
+	 * something the planner doesn't read, or is not well formed. Then
+	 * the expression requires no trigrams.
+	 */
+	private static class Unplannable extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private Unplannable() {
+			/* Thrown for control flow, so no stack trace is needed */
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * What is known about the strings a part of an expression matches:
+	 * either all of them, or a TrigramQuery they all meet.
+	 */
+	private static class Info {
+
+		private final Set<String> exact;
+		private final TrigramQuery match;
+
+		private Info(Set<String> exact, TrigramQuery match) {
+			this.exact = exact;
+			this.match = match;
+		}
+
+		private static Info exact(Set<String> exact) {
+			return new Info(exact, null);
+		}
+
+		private static Info empty() {
+			Set<String> exact = new HashSet<>();
+			exact.add("");
+			return exact(exact);
+		}
+
+		private static Info any() {
+			return new Info(null, TrigramQuery.ALL);
+		}
+
+		/**
+		 * Returns the TrigramQuery met by every string matched.
+		 */
+		private TrigramQuery query() {
+			if (exact == null) {
+				return match;
+			}
+			TrigramQuery query = null;
+			for (String s : exact) {
+				TrigramQuery q = TrigramQuery.forString(s);
+				query = query == null ? q : TrigramQuery.or(query, q);
+			}
+			return query == null ? TrigramQuery.ALL : query;
+		}
+
+		private static Info concat(Info a, Info b) {
+			if (a.exact != null && b.exact != null
+					&& a.exact.size() * b.exact.size() <= MAX_EXACT) {
+				Set<String> cross = new HashSet<>();
+				for (String s : a.exact) {
+					for (String t : b.exact) {
+						cross.add(s + t);
+					}
+				}
+				return exact(cross);
+			}
+			return new Info(null, TrigramQuery.and(a.query(), b.query()));
+		}
+
+		private static Info alternate(Info a, Info b) {
+			if (a.exact != null && b.exact != null
+					&& a.exact.size() + b.exact.size() <= MAX_EXACT) {
+				Set<String> union = new HashSet<>(a.exact);
+				union.addAll(b.exact);
+				return exact(union);
+			}
+			return new Info(null, TrigramQuery.or(a.query(), b.query()));
+		}
+
+		private static Info repeat(Info a, int min, int max) {
+			if (min == 0 && max == 1 && a.exact != null) {
+				Set<String> optional = new HashSet<>(a.exact);
+				optional.add("");
+				return exact(optional);
+			} else if (min == 1 && max == 1) {
+				return a;
+			} else if (min >= 1) {
+				/* At least one repetition is there */
+				return new Info(null, a.query());
+			}
+			return any();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package search;
+
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * A match of a search in the text of a Document: which text, and the
+ * offsets of the match in it, with some context around to show it.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class SearchHit {
+
+	/* Characters of context shown at each side of the match */
+	public static final int CONTEXT = 40;
+
+	private final int documentId;
+	private final FullTextIndex.Field field;
+	private final int noteId;
+	private final int start;
+	private final int end;
+	private final String context;
+
+	/**
+	 * Creates the hit of characters <start> to <end> of <text>, which is
+	 * field <field> of Document <documentId>, or its Note <noteId>.
+	 */
+	public SearchHit(int documentId, FullTextIndex.Field field, int noteId,
+			String text, int start, int end) {
+		this.documentId = documentId;
+		this.field = field;
+		this.noteId = noteId;
+		this.start = start;
+		this.end = end;
+		int from = Math.max(0, start - CONTEXT);
+		int to = Math.min(text.length(), end + CONTEXT);
+		this.context = (from > 0 ? "..." : "")
+				+ text.substring(from, to).replaceAll("\\s+", " ")
+				+ (to < text.length() ? "..." : "");
+	}
+
+	public int getDocumentId() {
+		return documentId;
+	}
+
+	public FullTextIndex.Field getField() {
+		return field;
+	}
+
+	/**
+	 * Returns the ID of the Note matched, or 0 if the match is not in a
+	 * Note.
+	 */
+	public int getNoteId() {
+		return noteId;
+	}
+
+	/**
+	 * Returns the offset of the first character matched.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the offset after the last character matched.
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Returns the offsets of the match as coordinates of the text, like
+	 * those of a Transcription: x is the start and y the end.
+	 */
+	public Point getCoords() {
+		return new Point(start, end);
+	}
+
+	/**
+	 * Returns the match with the text around it, in a single line.
+	 */
+	public String getContext() {
+		return context;
+	}
+}
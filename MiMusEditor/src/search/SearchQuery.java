@@ -0,0 +1,111 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import search.TextTokenizer.Token;
+
+/**
+ * A query to the FullTextIndex. It is written as words separated by
+ * spaces, all of which must appear in a Document for it to match:
+ *
+ * - A word ending in "*" matches any term starting with it: "flor*".
+ * - Words between double quotes must appear together and in that
+ *   order: "\"centum florenos\"". Any of them may end in "*" too.
+ *
+ * Words are normalized like the indexed texts (see TextTokenizer), so
+ * "Iohannes" also matches "johannes".
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class SearchQuery {
+
+	private final List<Clause> clauses;
+
+	private SearchQuery(List<Clause> clauses) {
+		this.clauses = clauses;
+	}
+
+	/**
+	 * Parses query <text>. Returns a query without clauses if <text> has
+	 * no words.
+	 */
+	public static SearchQuery parse(String text) {
+		List<Clause> clauses = new ArrayList<>();
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (Character.isWhitespace(c)) {
+				i++;
+			} else if (c == '"') {
+				/* Phrase, up to the closing quote or the end */
+				int close = text.indexOf('"', i + 1);
+				int end = close < 0 ? text.length() : close;
+				Clause clause = new Clause();
+				for (String word : text.substring(i + 1, end).trim().split("\\s+")) {
+					clause.addWord(word);
+				}
+				addClause(clauses, clause);
+				i = end + 1;
+			} else {
+				int end = i;
+				while (end < text.length() && !Character.isWhitespace(text.charAt(end))
+						&& text.charAt(end) != '"') {
+					end++;
+				}
+				Clause clause = new Clause();
+				clause.addWord(text.substring(i, end));
+				addClause(clauses, clause);
+				i = end;
+			}
+		}
+		return new SearchQuery(clauses);
+	}
+
+	private static void addClause(List<Clause> clauses, Clause clause) {
+		if (!clause.terms.isEmpty()) {
+			clauses.add(clause);
+		}
+	}
+
+	public List<Clause> getClauses() {
+		return clauses;
+	}
+
+	public boolean isEmpty() {
+		return clauses.isEmpty();
+	}
+
+	/**
+	 * A part of a query that must appear in a Document: a sequence of
+	 * terms, each of which may be a prefix. A single word can make more
+	 * than one term, e.g. "d’or" is "d" followed by "or".
+	 */
+	public static class Clause {
+
+		private final List<String> terms = new ArrayList<>();
+		private final List<Boolean> prefixes = new ArrayList<>();
+
+		private void addWord(String word) {
+			boolean prefix = word.endsWith("*");
+			List<Token> tokens = TextTokenizer.tokenize(word);
+			for (int i=0; i<tokens.size(); i++) {
+				terms.add(tokens.get(i).getTerm());
+				prefixes.add(prefix && i == tokens.size() - 1);
+			}
+		}
+
+		public int size() {
+			return terms.size();
+		}
+
+		public String getTerm(int i) {
+			return terms.get(i);
+		}
+
+		public boolean isPrefix(int i) {
+			return prefixes.get(i);
+		}
+	}
+}
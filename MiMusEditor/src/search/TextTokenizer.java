@@ -0,0 +1,134 @@
+package search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits the texts of MiMus Documents into words, and normalizes each
+ * word into the term it is indexed and searched by, so that spelling
+ * variants of medieval Catalan and Latin match each other:
+ *
+ * - Case and diacritics are ignored: "Dominus" = "dominus", "ç" = "c".
+ * - "u" and "v" are the same letter, and so are "i" and "j".
+ * - The middle dot of "l·l" is dropped.
+ *
+ * Markup of the transcriptions (e.g. "{curs}", "{/curs}", "{nota1}") is
+ * not part of any word, and apostrophes separate words ("d’or" is "d"
+ * and "or"). Each word keeps its offsets in the original text, so matches
+ * can be shown where they are.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class TextTokenizer {
+
+	private TextTokenizer() {}
+
+	/**
+	 * Returns the words of <text>, normalized, with their offsets.
+	 */
+	public static List<Token> tokenize(String text) {
+		List<Token> tokens = new ArrayList<>();
+		if (text == null) {
+			return tokens;
+		}
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i);
+			if (c == '{') {
+				/* Markup, up to its closing brace */
+				int close = text.indexOf('}', i);
+				i = close < 0 ? text.length() : close + 1;
+			} else if (Character.isLetterOrDigit(c)) {
+				int start = i;
+				while (i < text.length() && isWordChar(text, i)) {
+					i++;
+				}
+				String term = normalize(text.substring(start, i));
+				if (!term.isEmpty()) {
+					tokens.add(new Token(term, start, i));
+				}
+			} else {
+				i++;
+			}
+		}
+		return tokens;
+	}
+
+	/**
+	 * Returns true if the character at <i> in <text> belongs to a word:
+	 * letters, digits, and the middle dot between two letters.
+	 */
+	private static boolean isWordChar(String text, int i) {
+		char c = text.charAt(i);
+		if (Character.isLetterOrDigit(c)) {
+			return true;
+		}
+		return c == '·' && i + 1 < text.length()
+				&& Character.isLetter(text.charAt(i + 1));
+	}
+
+	/**
+	 * Returns the term of <word>: lower case, without diacritics nor
+	 * middle dots, with "v" as "u" and "j" as "i".
+	 */
+	public static String normalize(String word) {
+		String decomposed = Normalizer.normalize(
+				word.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+		StringBuilder sb = new StringBuilder(decomposed.length());
+		for (int i=0; i<decomposed.length(); i++) {
+			char c = decomposed.charAt(i);
+			if (Character.getType(c) == Character.NON_SPACING_MARK
+					|| c == '·') {
+				continue;
+			}
+			if (c == 'v') {
+				c = 'u';
+			} else if (c == 'j') {
+				c = 'i';
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A word of a text: its term and where it is in the text.
+	 */
+	public static class Token {
+
+		private final String term;
+		private final int start;
+		private final int end;
+
+		public Token(String term, int start, int end) {
+			this.term = term;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String getTerm() {
+			return term;
+		}
+
+		/**
+		 * Returns the offset of the first character of the word.
+		 */
+		public int getStart() {
+			return start;
+		}
+
+		/**
+		 * Returns the offset after the last character of the word.
+		 */
+		public int getEnd() {
+			return end;
+		}
+
+		public String toString() {
+			return term + "[" + start + "," + end + ")";
+		}
+	}
+}
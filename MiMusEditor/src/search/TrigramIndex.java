@@ -0,0 +1,85 @@
+package search;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of the trigrams (sequences of 3 characters) of a set of texts,
+ * one per Document. Each trigram maps to the PostingList of Documents
+ * whose text has it, so the Documents that may match a regular
+ * expression can be found without running it on every text (see
+ * RegexPlanner).
+ *
+ * Trigrams are taken from the raw text, markup included, with case
+ * folded, so they serve case insensitive expressions too.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class TrigramIndex {
+
+	private final Map<Long, PostingList> postings = new HashMap<>();
+
+	/**
+	 * Indexes <text> as the text of Document <docId>.
+	 */
+	public void add(int docId, String text) {
+		for (long trigram : trigrams(text)) {
+			postings.computeIfAbsent(trigram, t -> new PostingList()).add(docId);
+		}
+	}
+
+	/**
+	 * Removes Document <docId>, indexed with text <text>.
+	 */
+	public void remove(int docId, String text) {
+		for (long trigram : trigrams(text)) {
+			PostingList list = postings.get(trigram);
+			if (list != null) {
+				list.remove(docId);
+				if (list.isEmpty()) {
+					postings.remove(trigram);
+				}
+			}
+		}
+	}
+
+	public void clear() {
+		postings.clear();
+	}
+
+	/**
+	 * Returns the Documents whose text has <trigram>.
+	 */
+	public PostingList get(long trigram) {
+		PostingList list = postings.get(trigram);
+		return list == null ? new PostingList() : list;
+	}
+
+	/**
+	 * Returns the distinct trigrams of <text>.
+	 */
+	public static Set<Long> trigrams(String text) {
+		Set<Long> trigrams = new HashSet<>();
+		for (int i=0; i+3<=text.length(); i++) {
+			trigrams.add(trigram(text.charAt(i), text.charAt(i + 1),
+					text.charAt(i + 2)));
+		}
+		return trigrams;
+	}
+
+	/**
+	 * Returns the key of the trigram of characters <a>, <b> and <c>, the
+	 * same for any case of them.
+	 */
+	public static long trigram(char a, char b, char c) {
+		return ((long) fold(a) << 32) | ((long) fold(b) << 16) | fold(c);
+	}
+
+	/* Through upper case first, so e.g. the long "ſ" folds like "s" */
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+}
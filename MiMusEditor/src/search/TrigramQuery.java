@@ -0,0 +1,127 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A condition on the trigrams of a text, which any text matching some
+ * regular expression meets: trigrams that must appear, combined with
+ * AND and OR. ALL is met by any text, when nothing can be required.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class TrigramQuery {
+
+	public enum Op {
+		ALL,
+		TRIGRAM,
+		AND,
+		OR
+	}
+
+	public static final TrigramQuery ALL = new TrigramQuery(Op.ALL, 0,
+			new ArrayList<>());
+
+	private final Op op;
+	private final long trigram;
+	private final List<TrigramQuery> children;
+
+	private TrigramQuery(Op op, long trigram, List<TrigramQuery> children) {
+		this.op = op;
+		this.trigram = trigram;
+		this.children = children;
+	}
+
+	/**
+	 * Returns the condition of having every trigram of <s>, which is ALL
+	 * if <s> is shorter than a trigram.
+	 */
+	public static TrigramQuery forString(String s) {
+		TrigramQuery query = ALL;
+		for (int i=0; i+3<=s.length(); i++) {
+			query = and(query, new TrigramQuery(Op.TRIGRAM, TrigramIndex.trigram(
+					s.charAt(i), s.charAt(i + 1), s.charAt(i + 2)), new ArrayList<>()));
+		}
+		return query;
+	}
+
+	public static TrigramQuery and(TrigramQuery a, TrigramQuery b) {
+		if (a.op == Op.ALL) {
+			return b;
+		} else if (b.op == Op.ALL) {
+			return a;
+		}
+		return combine(Op.AND, a, b);
+	}
+
+	public static TrigramQuery or(TrigramQuery a, TrigramQuery b) {
+		if (a.op == Op.ALL || b.op == Op.ALL) {
+			return ALL;
+		}
+		return combine(Op.OR, a, b);
+	}
+
+	/* Nested conditions of the same Op are flattened */
+	private static TrigramQuery combine(Op op, TrigramQuery a, TrigramQuery b) {
+		List<TrigramQuery> children = new ArrayList<>();
+		for (TrigramQuery q : new TrigramQuery[] {a, b}) {
+			if (q.op == op) {
+				children.addAll(q.children);
+			} else {
+				children.add(q);
+			}
+		}
+		return new TrigramQuery(op, 0, children);
+	}
+
+	public boolean isAll() {
+		return op == Op.ALL;
+	}
+
+	/**
+	 * Returns the Documents of <index> that meet the condition, or null if
+	 * it is ALL and every Document does.
+	 */
+	public PostingList evaluate(TrigramIndex index) {
+		switch (op) {
+		case TRIGRAM:
+			return index.get(trigram);
+		case AND:
+			PostingList and = null;
+			for (TrigramQuery child : children) {
+				PostingList list = child.evaluate(index);
+				and = and == null ? list : PostingList.intersect(and, list);
+				if (and.isEmpty()) {
+					break;
+				}
+			}
+			return and;
+		case OR:
+			PostingList or = new PostingList();
+			for (TrigramQuery child : children) {
+				or = PostingList.union(or, child.evaluate(index));
+			}
+			return or;
+		default:	// ALL
+			return null;
+		}
+	}
+
+	public String toString() {
+		switch (op) {
+		case TRIGRAM:
+			return "\"" + (char) (trigram >> 32) + (char) (trigram >> 16 & 0xFFFF)
+					+ (char) (trigram & 0xFFFF) + "\"";
+		case AND:
+		case OR:
+			List<String> parts = new ArrayList<>();
+			for (TrigramQuery child : children) {
+				parts.add(child.toString());
+			}
+			return "(" + String.join(" " + op + " ", parts) + ")";
+		default:
+			return "ALL";
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package server;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import org.eclipse.swt.graphics.Point;
+
+import model.Artista;
+import model.Bibliography;
+import model.Casa;
+import model.Document;
+import model.Entity;
+import model.EntityInstance;
+import model.Lloc;
+import model.MiMusReference;
+import model.Promotor;
+import model.Relation;
+import model.Transcription;
+import persistence.AnyRelationDao;
+import persistence.ArtistaDao;
+import persistence.BibliographyDao;
+import persistence.CasaDao;
+import persistence.DaoNotImplementedException;
+import persistence.DocumentDao;
+import persistence.InstanceDao;
+import persistence.LlocDao;
+import persistence.PromotorDao;
+import persistence.ReferenceDao;
+import persistence.ReferenceData;
+import persistence.ResideixADao;
+import persistence.ServeixADao;
+import persistence.TeCasaDao;
+import persistence.TranscriptionDao;
+import util.InstrumentedConnection;
+import util.QueryLog;
+import util.QueryLog.ShapeStats;
+
+/**
+ * Script to benchmark the DAOs on the queries the UI runs most. It creates
+ * a scratch schema from sql/create_db.sql, seeds it with a synthetic
+ * corpus (documents, entities, instances, transcriptions, relations and
+ * references) and times:
+ *
+ * - DocumentDao.selectAll, as DocumentsView does.
+ * - InstanceDao.select, AnyRelationDao.select, TranscriptionDao.select
+ * and ReferenceDao.select of a Document, as the Editor does.
+ * - EntityDao.insert, as the dialogs of the entity views do.
+ *
+ * For each, it reports latency percentiles and the statements and rows
+ * per operation, measured with an InstrumentedConnection, so an N+1
+ * pattern shows up as a statement count growing with the data.
+ *
+ * It needs a MySQL server where the configured user can create schemas,
+ * set in config.properties: bench.host (localhost by default), bench.user
+ * and bench.pass (admin.user and admin.pass by default), and bench.schema
+ * (mimus_bench by default). The schema is dropped and created again on
+ * each run, so it must never be the MiMus one.
+ *
+ * Usage: DaoBenchmark [documents, 1000 by default] [samples, 200 by default]
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class DaoBenchmark {
+
+	private static final int DOCUMENTS = 1000;
+	private static final int SAMPLES = 200;
+	private static final int WARMUP = 20;
+	private static final int SELECT_ALL_SAMPLES = 10;
+	private static final int CHUNK_SIZE = 500;
+
+	/* Shapes listed per benchmark, the most executed first */
+	private static final int TOP_SHAPES = 3;
+
+	/* DAOs print several lines per row, which would bury the report */
+	private static final PrintStream CONSOLE = System.out;
+	private static final PrintStream SILENT = new PrintStream(new OutputStream() {
+		@Override
+		public void write(int b) {}
+	});
+
+	private final Connection conn;
+	private final QueryLog log;
+	private final Random random;
+	private final List<Operation> results;
+
+	private DaoBenchmark(Connection conn, QueryLog log) {
+		this.conn = conn;
+		this.log = log;
+		this.random = new Random(42);
+		this.results = new ArrayList<>();
+	}
+
+	public static void main(String[] args) {
+		int documents = DOCUMENTS;
+		int samples = SAMPLES;
+		try {
+			if (args.length > 0) documents = Integer.parseInt(args[0]);
+			if (args.length > 1) samples = Integer.parseInt(args[1]);
+		} catch (NumberFormatException e) {
+			System.out.println("Usage: DaoBenchmark [documents] [samples]");
+			return;
+		}
+
+		Properties prop = new Properties();
+		try (InputStream is = new FileInputStream("config.properties")) {
+			prop.load(is);
+		} catch (IOException e) {
+			System.out.println(e.toString());
+		}
+		String schema = prop.getProperty("bench.schema", "mimus_bench");
+		if (!schema.matches("\\w+") || schema.equalsIgnoreCase("mimus")) {
+			System.out.println("Error: bench.schema must be a scratch schema, not "
+					+ schema);
+			return;
+		}
+
+		try (Connection physical = DriverManager.getConnection(
+				"jdbc:mysql://"
+				+ prop.getProperty("bench.host", "localhost")
+				+ ":3306/"
+				+ "?useUnicode=true&characterEncoding=UTF-8"
+				+ "&useJDBCCompliantTimezoneShift=true"
+				+ "&useLegacyDatetimeCode=false"
+				+ "&serverTimezone=UTC"
+				+ "&rewriteBatchedStatements=true",
+				prop.getProperty("bench.user", prop.getProperty("admin.user")),
+				prop.getProperty("bench.pass", prop.getProperty("admin.pass")))) {
+			createSchema(physical, schema);
+			ReferenceData.invalidate();
+
+			QueryLog log = new QueryLog();
+			DaoBenchmark bench = new DaoBenchmark(
+					InstrumentedConnection.wrap(physical, log), log);
+			System.out.println("Seeding " + documents + " documents into "
+					+ schema + "...");
+			bench.seed(documents);
+			bench.run(samples);
+			bench.report();
+		} catch (SQLException | IOException | DaoNotImplementedException e) {
+			System.setOut(CONSOLE);
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Creates <schema> from scratch on <conn> with the statements of
+	 * sql/create_db.sql, applied to <schema> instead of the MiMus one.
+	 */
+	private static void createSchema(Connection conn, String schema)
+			throws IOException, SQLException {
+		String script = new String(Files.readAllBytes(
+				Paths.get("sql", "create_db.sql")), StandardCharsets.UTF_8);
+		StringBuilder noComments = new StringBuilder();
+		for (String line : script.split("\n")) {
+			if (!line.trim().startsWith("--")) {
+				noComments.append(line).append('\n');
+			}
+		}
+		Statement stmt = conn.createStatement();
+		stmt.executeUpdate("DROP SCHEMA IF EXISTS " + schema);
+		for (String sql : noComments.toString().split(";")) {
+			sql = sql.trim();
+			if (sql.isEmpty()) {
+				continue;
+			}
+			if (sql.startsWith("CREATE SCHEMA") || sql.startsWith("USE")
+					|| sql.startsWith("ALTER SCHEMA")) {
+				sql = sql.replaceFirst("\\bmimus\\b", schema);
+			}
+			stmt.execute(sql);
+		}
+	}
+
+	/**
+	 * Seeds the schema with <documents> synthetic Documents, one Entity of
+	 * each type every few Documents, and a few instances, transcriptions,
+	 * relations and references per Document.
+	 */
+	private void seed(int documents)
+			throws IOException, SQLException, DaoNotImplementedException {
+		System.setOut(SILENT);
+		try {
+			SyntheticCorpus corpus = new SyntheticCorpus(42);
+			List<Document> docs = new ArrayList<>();
+			DocumentDao documentDao = new DocumentDao(conn);
+			conn.setAutoCommit(false);
+			for (int i=0; i<documents; i++) {
+				int id = SyntheticCorpus.FIRST_ID + i;
+				docs.add(new MiMusEntryReader().read(
+						new StringReader(corpus.document(id)), id + ".txt"));
+				if (docs.size() == CHUNK_SIZE || i == documents-1) {
+					documentDao.insertBatch(docs);
+					conn.commit();
+					docs.clear();
+				}
+			}
+			conn.setAutoCommit(true);
+
+			for (int i=0; i<documents/5+1; i++) {
+				new ArtistaDao(conn).insert(newArtista(i));
+			}
+			for (int i=0; i<documents/10+1; i++) {
+				new PromotorDao(conn).insert(new Promotor(0, 0, "Promotor " + i,
+						"Nom", "Cognom", "", "", 1, ""));
+				new CasaDao(conn).insert(new Casa(0, 0, "Casa " + i, "", ""));
+				new LlocDao(conn).insert(new Lloc(0, 0, "Lloc " + i, 0, 0));
+			}
+			BibliographyDao biblioDao = new BibliographyDao(conn);
+			for (int i=0; i<documents/20+1; i++) {
+				biblioDao.insert(new Bibliography(
+						new String[] {"Autor " + i, "", "", ""},
+						new String[] {"", "", "", "", "", ""},
+						String.valueOf(1900 + i % 120), "", "Títol " + i, "", "",
+						"", "", "", "", "Autor " + i + " " + (1900 + i % 120), 0));
+			}
+
+			List<Artista> artistes = new ArtistaDao(conn).selectAll();
+			List<Promotor> promotors = new PromotorDao(conn).selectAll();
+			List<Casa> cases = new CasaDao(conn).selectAll();
+			List<Lloc> llocs = new LlocDao(conn).selectAll();
+			List<Bibliography> biblios = biblioDao.selectAll();
+			List<Entity> entities = new ArrayList<>();
+			entities.addAll(artistes);
+			entities.addAll(promotors);
+			entities.addAll(cases);
+			entities.addAll(llocs);
+
+			for (Document doc : new DocumentDao(conn).selectAll()) {
+				seedDocument(doc, entities, artistes, promotors, cases, llocs,
+						biblios);
+			}
+		} finally {
+			System.setOut(CONSOLE);
+		}
+	}
+
+	/**
+	 * Annotates <doc> with entities, transcriptions, relations and
+	 * references chosen at random among the given ones.
+	 */
+	private void seedDocument(Document doc, List<Entity> entities,
+			List<Artista> artistes, List<Promotor> promotors, List<Casa> cases,
+			List<Lloc> llocs, List<Bibliography> biblios) throws SQLException {
+		InstanceDao instanceDao = new InstanceDao(conn);
+		TranscriptionDao transcriptionDao = new TranscriptionDao(conn);
+		List<Entity> chosen = new ArrayList<>();
+		int instances = 2 + random.nextInt(5);
+		for (int i=0; i<instances; i++) {
+			Entity ent = pick(entities);
+			if (chosen.contains(ent)) {
+				continue;	// Instances are unique per entity and document
+			}
+			chosen.add(ent);
+			EntityInstance inst = new EntityInstance(ent, doc);
+			inst.setId(instanceDao.insert(inst));
+			int transcriptions = 1 + random.nextInt(2);
+			for (int j=0; j<transcriptions; j++) {
+				int from = random.nextInt(200);
+				transcriptionDao.insert(new Transcription(inst, "paraula", "paraula",
+						new Point(from, from + 7)));
+			}
+		}
+
+		int relations = random.nextInt(4);
+		for (int i=0; i<relations; i++) {
+			switch (random.nextInt(3)) {
+			case 0:
+				new ServeixADao(conn).insert(new Relation(doc, pick(artistes),
+						pick(promotors), "serveix_a", 0, 0));
+				break;
+			case 1:
+				new ResideixADao(conn).insert(new Relation(doc, pick(artistes),
+						pick(llocs), "resideix_a", 0, 0));
+				break;
+			default:
+				new TeCasaDao(conn).insert(new Relation(doc, pick(promotors),
+						pick(cases), "te_casa", 0, 0));
+			}
+		}
+
+		ReferenceDao referenceDao = new ReferenceDao(conn);
+		int references = random.nextInt(3);
+		for (int i=0; i<references; i++) {
+			referenceDao.insert(new MiMusReference(pick(biblios), doc, null,
+					"p. " + (1 + random.nextInt(300)), random.nextInt(3), 0));
+		}
+	}
+
+	/**
+	 * Runs the benchmarks, each over <samples> Documents or insertions.
+	 */
+	private void run(int samples) throws SQLException, DaoNotImplementedException {
+		System.setOut(SILENT);
+		try {
+			List<Document> all = new DocumentDao(conn).selectAll();
+			List<Document> docs = new ArrayList<>();
+			for (int i=0; i<samples; i++) {
+				docs.add(pick(all));
+			}
+
+			measure("DocumentDao.selectAll", SELECT_ALL_SAMPLES,
+					i -> new DocumentDao(conn).selectAll());
+			measure("InstanceDao.select", samples,
+					i -> new InstanceDao(conn).select(docs.get(i)));
+			measure("AnyRelationDao.select", samples,
+					i -> new AnyRelationDao(conn).select(docs.get(i)));
+			measure("TranscriptionDao.select", samples,
+					i -> new TranscriptionDao(conn).select(docs.get(i)));
+			measure("ReferenceDao.select", samples,
+					i -> new ReferenceDao(conn).select(docs.get(i)));
+			measure("EntityDao.insert", samples,
+					i -> new ArtistaDao(conn).insert(newArtista(i)));
+		} finally {
+			System.setOut(CONSOLE);
+		}
+	}
+
+	/**
+	 * Times <ops> calls of <call>, after a few unmeasured ones to warm
+	 * up the JVM and the DB caches.
+	 */
+	private void measure(String name, int ops, Call call)
+			throws SQLException, DaoNotImplementedException {
+		for (int i=0; i<Math.min(WARMUP, ops); i++) {
+			call.run(i);
+		}
+		Operation op = new Operation(name, ops);
+		log.reset();
+		for (int i=0; i<ops; i++) {
+			long start = System.nanoTime();
+			call.run(i);
+			op.latencies[i] = System.nanoTime() - start;
+		}
+		op.statements = log.getStatementCount();
+		op.rows = log.getRowCount();
+		op.shapes = log.getShapes();
+		results.add(op);
+	}
+
+	private void report() {
+		System.out.println(String.format("%-24s %6s %9s %9s %9s %9s %9s %9s",
+				"Benchmark", "ops", "p50 ms", "p90 ms", "p99 ms", "max ms",
+				"stmts/op", "rows/op"));
+		for (Operation op : results) {
+			long[] sorted = op.latencies.clone();
+			Arrays.sort(sorted);
+			System.out.println(String.format(
+					"%-24s %6d %9.2f %9.2f %9.2f %9.2f %9.1f %9.1f",
+					op.name, sorted.length, percentile(sorted, 50),
+					percentile(sorted, 90), percentile(sorted, 99),
+					sorted[sorted.length-1] / 1e6,
+					(double) op.statements / sorted.length,
+					(double) op.rows / sorted.length));
+			for (int i=0; i<Math.min(TOP_SHAPES, op.shapes.size()); i++) {
+				ShapeStats shape = op.shapes.get(i);
+				System.out.println(String.format("    %7.1f x  %s",
+						(double) shape.getCount() / sorted.length, shape.getShape()));
+			}
+		}
+	}
+
+	/**
+	 * Returns the <p>th percentile of <sorted> nanoseconds, in millis.
+	 */
+	private static double percentile(long[] sorted, int p) {
+		int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+		return sorted[Math.max(0, idx)] / 1e6;
+	}
+
+	private <T> T pick(List<T> list) {
+		return list.get(random.nextInt(list.size()));
+	}
+
+	private static Artista newArtista(int i) {
+		return new Artista(0, 0, "Artista " + i, "", "Nom", "Cognom " + i, "", "",
+				1, 0, "", "");
+	}
+
+	/**
+	 * A call to a DAO, the <i>th of its benchmark.
+	 */
+	private interface Call {
+		void run(int i) throws SQLException, DaoNotImplementedException;
+	}
+
+	/**
+	 * Measures of one benchmark.
+	 */
+	private static class Operation {
+
+		private final String name;
+		private final long[] latencies;
+		private int statements;
+		private long rows;
+		private List<ShapeStats> shapes;
+
+		private Operation(String name, int ops) {
+			this.name = name;
+			this.latencies = new long[ops];
+		}
+	}
+}
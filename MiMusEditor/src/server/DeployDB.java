@@ -7,20 +7,32 @@ import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
-
-import model.Document;
-import persistence.DocumentDao;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Script to deploy the MiMus server. It populates the MiMus DB
- * with all MiMus documents in txt format found in directory "txt".
+ * with all MiMus documents in txt format found in directory "txt",
+ * through an ImportPipeline.
+ * 
+ * With argument --incremental, only the files that are new or have
+ * changed since the last import are imported, updating their Documents
+ * if they already exist. Otherwise, all files are inserted.
  * 
  * @author Javier Beltrán Jorba
  *
  */
 public class DeployDB {
+	
+	/* Default settings of the import, overridable in config.properties */
+	private static final int QUEUE_SIZE = 64;
+	private static final int CHUNK_SIZE = 100;
 
 	public static void main(String[] args) {
 		try {
@@ -43,34 +55,60 @@ public class DeployDB {
 					+ "&autoReconnect=true&failOverReadOnly=false&maxReconnects=10"
 					+ "&useJDBCCompliantTimezoneShift=true"
 					+ "&useLegacyDatetimeCode=false"
-					+ "&serverTimezone=UTC",
+					+ "&serverTimezone=UTC"
+					+ "&rewriteBatchedStatements=true",
 					prop.getProperty("admin.user"), prop.getProperty("admin.pass"));
 			
 			/* Reads all txt files in txt folder */
-			MiMusEntryReader reader = new MiMusEntryReader();
 			File txtPath = new File("txt/");
 			File[] files = txtPath.listFiles();
 			Arrays.sort(files);
+			List<File> txtFiles = new ArrayList<>();
 			for (File f: files) {
-				String fName = f.getName();
-				if (fName.endsWith(".txt")) {
-					try {
-						/* Transform txt to Document, and insert to DB */
-						Document doc = reader.read(f.getAbsolutePath());
-						if (new DocumentDao(conn).insert(doc) > 0) {
-							System.out.println("Inserted " + fName);
-						} else {
-							System.out.println("Could not insert " + fName);
-						}
-					} catch(NumberFormatException e) {
-						System.out.println("Error: unexpected filename " + fName);
-					}
+				if (f.getName().endsWith(".txt")) {
+					txtFiles.add(f);
 				} else {
-					System.out.println("Error: unexpected filename " + fName);
+					System.out.println("Error: unexpected filename " + f.getName());
+				}
+			}
+			
+			/* Files imported before but no longer in txt folder */
+			ImportManifest manifest = ImportManifest.load(conn);
+			Set<String> present = new HashSet<>();
+			for (File f : txtFiles) {
+				present.add(f.getName());
+			}
+			for (Map.Entry<String, Integer> entry : 
+					new TreeMap<>(manifest.getDocumentIds()).entrySet()) {
+				if (!present.contains(entry.getKey())) {
+					System.out.println("Removed: " + entry.getKey() 
+							+ " (document " + entry.getValue() 
+							+ " is kept in the DB)");
 				}
 			}
+			
+			/* Parse in parallel, insert in batches */
+			boolean incremental = Arrays.asList(args).contains("--incremental");
+			ImportPipeline pipeline = new ImportPipeline(conn, manifest, incremental,
+					getIntProperty(prop, "import.parsers", 
+							Runtime.getRuntime().availableProcessors()),
+					getIntProperty(prop, "import.queue_size", QUEUE_SIZE),
+					getIntProperty(prop, "import.chunk_size", CHUNK_SIZE));
+			int imported = pipeline.run(txtFiles);
+			System.out.println("Imported " + imported + " of " 
+					+ txtFiles.size() + " documents.");
+		} catch (InterruptedException e) {
+			System.out.println("Import interrupted.");
 		} catch (SQLException e1) {
 			e1.printStackTrace();
 		}
 	}
+	
+	private static int getIntProperty(Properties prop, String key, int def) {
+		try {
+			return Integer.parseInt(prop.getProperty(key, String.valueOf(def)));
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
 }
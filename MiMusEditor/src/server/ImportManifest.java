@@ -0,0 +1,129 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * ImportManifest keeps track of the txt files imported to the DB in table
+ * import_manifest: the name of each file, the ID of its Document, the
+ * SHA-256 hash of its content and when it was imported. With it, a new
+ * import can tell which files are new, changed, unchanged or removed
+ * since the last one.
+ *
+ * The manifest is read once, when the import starts, and not changed in
+ * memory afterwards, so it can be consulted from any thread.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ImportManifest {
+
+	private final Connection conn;
+
+	/* Hashes of the files in the manifest, by file name */
+	private final Map<String, String> hashes;
+
+	/* Document IDs of the files in the manifest, by file name */
+	private final Map<String, Integer> documentIds;
+
+	private ImportManifest(Connection conn) {
+		this.conn = conn;
+		this.hashes = new HashMap<>();
+		this.documentIds = new HashMap<>();
+	}
+
+	/**
+	 * Reads the manifest from the DB through Connection <conn>, creating
+	 * its table if the DB was created before it existed.
+	 */
+	public static ImportManifest load(Connection conn) throws SQLException {
+		ImportManifest manifest = new ImportManifest(conn);
+		Statement stmt = conn.createStatement();
+		stmt.executeUpdate("CREATE TABLE IF NOT EXISTS import_manifest ("
+				+ "file_name varchar(255) NOT NULL, "
+				+ "document_id bigint(20) NOT NULL, "
+				+ "content_hash char(64) NOT NULL, "
+				+ "imported_at timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+				+ "PRIMARY KEY (file_name))");
+		ResultSet rs = stmt.executeQuery(
+				"SELECT file_name, document_id, content_hash FROM import_manifest");
+		while (rs.next()) {
+			manifest.hashes.put(rs.getString("file_name"),
+					rs.getString("content_hash"));
+			manifest.documentIds.put(rs.getString("file_name"),
+					rs.getInt("document_id"));
+		}
+		return manifest;
+	}
+
+	/**
+	 * Returns true if file <fileName> was imported with content hash
+	 * <hash>, i.e. it has not changed since.
+	 */
+	public boolean isUnchanged(String fileName, String hash) {
+		return hash.equals(hashes.get(fileName));
+	}
+
+	/**
+	 * Returns true if file <fileName> was imported before, whatever its
+	 * content was.
+	 */
+	public boolean contains(String fileName) {
+		return hashes.containsKey(fileName);
+	}
+
+	/**
+	 * Returns the names of the files in the manifest, mapped to the ID of
+	 * their Document.
+	 */
+	public Map<String, Integer> getDocumentIds() {
+		return documentIds;
+	}
+
+	/**
+	 * Records that file <fileName>, with content hash <hash>, has been
+	 * imported as Document <documentId>. It doesn't commit, so it can be
+	 * part of the transaction that imports the Document.
+	 */
+	public void record(String fileName, int documentId, String hash)
+			throws SQLException {
+		String sql = "INSERT INTO import_manifest "
+				+ "(file_name, document_id, content_hash, imported_at) "
+				+ "VALUES (?,?,?,CURRENT_TIMESTAMP) "
+				+ "ON DUPLICATE KEY UPDATE document_id=VALUES(document_id), "
+				+ "content_hash=VALUES(content_hash), imported_at=CURRENT_TIMESTAMP";
+		PreparedStatement stmt = conn.prepareStatement(sql);
+		stmt.setString(1, fileName);
+		stmt.setInt(2, documentId);
+		stmt.setString(3, hash);
+		stmt.executeUpdate();
+	}
+
+	/**
+	 * Returns the SHA-256 hash of the content of file <f>, in hexadecimal.
+	 */
+	public static String hash(File f) throws IOException {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] bytes = digest.digest(Files.readAllBytes(f.toPath()));
+			StringBuilder sb = new StringBuilder(64);
+			for (byte b : bytes) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			/* Every Java platform is required to support SHA-256 */
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Document;
+import persistence.DocumentDao;
+
+/**
+ * Pipeline to import MiMus txt documents into the DB in bulk. It has two
+ * stages connected by a bounded queue:
+ *
+ * - Parse: txt files are read into Documents by a pool of threads, one
+ * per core by default.
+ * - Write: a single thread takes the parsed Documents from the queue and
+ * inserts them in chunks, each chunk with JDBC batches in one transaction.
+ * If a chunk fails, it is rolled back and its Documents are inserted one
+ * by one, so only the faulty ones are lost.
+ *
+ * The queue is bounded so parsing cannot run far ahead of the DB and fill
+ * the memory. At the end, throughput and failures of each stage are
+ * reported.
+ *
+ * Each imported file is recorded in the ImportManifest, in the same
+ * transaction as its Document. In incremental mode, files whose content
+ * hash matches the manifest are skipped before parsing, and the rest are
+ * upserted, so the import can be repeated to sync only what changed.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ImportPipeline {
+
+	/* Marks the end of the queue, after the last parsed file */
+	private static final ParsedFile END = new ParsedFile(null, null, null);
+
+	private final Connection conn;
+	private final ImportManifest manifest;
+	private final boolean incremental;
+	private final int parsers;
+	private final int chunkSize;
+	private final BlockingQueue<ParsedFile> queue;
+
+	private final StageStats parseStats;
+	private final StageStats writeStats;
+
+	/**
+	 * Creates a pipeline that inserts on Connection <conn> and records
+	 * files in <manifest>, with <parsers> parsing threads, a queue of
+	 * <queueCapacity> Documents between the stages, and transactions of
+	 * <chunkSize> Documents. If <incremental>, only new or changed files
+	 * are imported, and Documents already in the DB are updated.
+	 */
+	public ImportPipeline(Connection conn, ImportManifest manifest, 
+			boolean incremental, int parsers, int queueCapacity, int chunkSize) {
+		this.conn = conn;
+		this.manifest = manifest;
+		this.incremental = incremental;
+		this.parsers = parsers;
+		this.chunkSize = chunkSize;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.parseStats = new StageStats("Parse");
+		this.writeStats = new StageStats("Write");
+	}
+
+	/**
+	 * Imports all txt files in <files>, blocking until the last one has
+	 * been written. Returns the number of Documents inserted.
+	 */
+	public int run(List<File> files) throws SQLException, InterruptedException {
+		long start = System.nanoTime();
+		ExecutorService pool = Executors.newFixedThreadPool(parsers);
+		for (File f : files) {
+			pool.execute(() -> parse(f));
+		}
+		pool.shutdown();
+
+		/* Closes the queue when all files are parsed */
+		Thread closer = new Thread(() -> {
+			try {
+				pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				queue.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "MiMus import closer");
+		closer.setDaemon(true);
+		closer.start();
+
+		try {
+			write();
+		} finally {
+			pool.shutdownNow();
+			closer.interrupt();
+		}
+
+		long elapsed = System.nanoTime() - start;
+		System.out.println(parseStats.report(elapsed));
+		System.out.println(writeStats.report(elapsed));
+		return writeStats.done.get();
+	}
+
+	/**
+	 * Parse stage: reads txt file <f> and queues its Document, unless the
+	 * import is incremental and the file has not changed.
+	 */
+	private void parse(File f) {
+		long start = System.nanoTime();
+		try {
+			String hash = ImportManifest.hash(f);
+			if (incremental && manifest.isUnchanged(f.getName(), hash)) {
+				parseStats.skipped();
+				return;
+			}
+			Document doc = new MiMusEntryReader().read(f.toPath());
+			parseStats.done(System.nanoTime() - start);
+			queue.put(new ParsedFile(f, hash, doc));
+		} catch (IOException e) {
+			parseStats.failed(System.nanoTime() - start);
+			System.out.println("Could not read " + f.getName() + ": " + e);
+		} catch (NumberFormatException e) {
+			parseStats.failed(System.nanoTime() - start);
+			System.out.println("Error: unexpected filename " + f.getName());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (RuntimeException e) {
+			parseStats.failed(System.nanoTime() - start);
+			System.out.println("Could not parse " + f.getName() + ": " + e);
+		}
+	}
+
+	/**
+	 * Write stage: takes Documents from the queue until its end, and
+	 * inserts them in chunks of <chunkSize>.
+	 */
+	private void write() throws SQLException, InterruptedException {
+		DocumentDao dao = new DocumentDao(conn);
+		boolean autoCommit = conn.getAutoCommit();
+		conn.setAutoCommit(false);
+		try {
+			List<ParsedFile> chunk = new ArrayList<>(chunkSize);
+			ParsedFile parsed = queue.take();
+			while (parsed != END) {
+				chunk.add(parsed);
+				if (chunk.size() == chunkSize) {
+					writeChunk(dao, chunk);
+					chunk.clear();
+				}
+				parsed = queue.take();
+			}
+			if (!chunk.isEmpty()) {
+				writeChunk(dao, chunk);
+			}
+		} finally {
+			conn.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Inserts <chunk> in one transaction. If it fails, it is rolled back
+	 * and its Documents are retried in a transaction each.
+	 */
+	private void writeChunk(DocumentDao dao, List<ParsedFile> chunk)
+			throws SQLException {
+		long start = System.nanoTime();
+		try {
+			writeFiles(dao, chunk);
+			conn.commit();
+			writeStats.done(System.nanoTime() - start, chunk.size());
+			System.out.println("Imported " + chunk.size() + " documents, up to "
+					+ chunk.get(chunk.size()-1).doc.getIdStr());
+			return;
+		} catch (SQLException e) {
+			conn.rollback();
+			System.out.println("Chunk failed (" + e.getMessage()
+					+ "), retrying its documents one by one.");
+		}
+		for (ParsedFile parsed : chunk) {
+			long docStart = System.nanoTime();
+			try {
+				writeFiles(dao, Collections.singletonList(parsed));
+				conn.commit();
+				writeStats.done(System.nanoTime() - docStart, 1);
+			} catch (SQLException e) {
+				conn.rollback();
+				writeStats.failed(System.nanoTime() - docStart);
+				System.out.println("Could not import " + parsed.file.getName() 
+						+ ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes the Documents of <files> and records them in the manifest,
+	 * without committing.
+	 */
+	private void writeFiles(DocumentDao dao, List<ParsedFile> files)
+			throws SQLException {
+		List<Document> docs = new ArrayList<>(files.size());
+		for (ParsedFile parsed : files) {
+			docs.add(parsed.doc);
+		}
+		if (incremental) {
+			dao.upsertBatch(docs);
+		} else {
+			dao.insertBatch(docs);
+		}
+		for (ParsedFile parsed : files) {
+			manifest.record(parsed.file.getName(), parsed.doc.getId(), parsed.hash);
+		}
+	}
+
+	/**
+	 * A txt file parsed into a Document, with the hash of its content.
+	 */
+	private static class ParsedFile {
+
+		private final File file;
+		private final String hash;
+		private final Document doc;
+
+		private ParsedFile(File file, String hash, Document doc) {
+			this.file = file;
+			this.hash = hash;
+			this.doc = doc;
+		}
+	}
+
+	/**
+	 * Counters of a stage of the pipeline, safe to update from any thread.
+	 */
+	private static class StageStats {
+
+		private final String name;
+		private final AtomicInteger done = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final AtomicLong busyNanos = new AtomicLong();
+
+		private StageStats(String name) {
+			this.name = name;
+		}
+
+		private void done(long nanos) {
+			done(nanos, 1);
+		}
+
+		private void done(long nanos, int docs) {
+			done.addAndGet(docs);
+			busyNanos.addAndGet(nanos);
+		}
+
+		private void skipped() {
+			skipped.incrementAndGet();
+		}
+
+		private void failed(long nanos) {
+			failed.incrementAndGet();
+			busyNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * Summary of the stage, with its throughput over the <elapsedNanos>
+		 * of the whole import, and the time its threads were busy.
+		 */
+		private String report(long elapsedNanos) {
+			double seconds = elapsedNanos / 1e9;
+			return String.format("%s: %d documents, %d failed, %d unchanged, "
+					+ "%.1f docs/s, busy %.1f s of %.1f s", name, done.get(), 
+					failed.get(), skipped.get(), done.get() / seconds, 
+					busyNanos.get() / 1e9, seconds);
+		}
+	}
+}
@@ -1,12 +1,18 @@
 package server;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Map;
 
 import model.Document;
 import model.MiMusDate;
@@ -34,201 +40,292 @@ public class MiMusEntryReader {
 			"Edition","Register","Citation","Transcription","Notes","NotesData",
 			"NotesSignatura"};
 	
+	/* Index of each header in STARTERS, to dispatch a line with one lookup */
+	private static final Map<String, Integer> HEADERS = new HashMap<>();
+	static {
+		for (int j=0; j<STARTERS.length; j++) {
+			HEADERS.put(STARTERS[j], j);
+		}
+	}
+	
+	/* Headers that delimit the sections spanning several lines */
+	private static final int REGEST = 9;
+	private static final int AFTER_REGEST = 10;
+	private static final int TRANSCRIPTION = 25;
+	private static final int NOTES = 26;
+	private static final int NOTES_DATA = 27;
+	private static final int NOTES_SIGNATURA = 28;
+	
+	/* Longest header, e.g. "b2:" */
+	private static final int MAX_HEADER_LENGTH = 3;
+	
 	/**
 	 * Reads a MiMus txt document from a <path> and returns a MiMus
 	 * Document object with all information from the txt transferred to
 	 * the model.
 	 */
 	public Document read(String path) {
-		/* Read lines of text file with Java 8 Streams */
-		List<String> lines = new ArrayList<>();
-		try (Stream<String> stream = Files.lines(Paths.get(path))) {
-			lines = stream.collect(Collectors.toList());
+		return read(Paths.get(path));
+	}
+	
+	/**
+	 * Reads a MiMus txt document from file <path>, which is memory-mapped
+	 * and decoded at once instead of being copied line by line.
+	 */
+	public Document read(Path path) {
+		CharSequence text = "";
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			text = StandardCharsets.UTF_8.decode(buffer);
 		} catch (IOException e) {
 			e.printStackTrace();
 			System.out.println("Could not read MiMus document.");
 		}
-		
+		return parse(text, path.getFileName().toString());
+	}
+	
+	/**
+	 * Reads a MiMus txt document from <in>. Its ID is taken from
+	 * <fileName>, as if it had been read from a file with that name.
+	 */
+	public Document read(Reader in, String fileName) throws IOException {
+		StringBuilder text = new StringBuilder();
+		char[] buffer = new char[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			text.append(buffer, 0, n);
+		}
+		return parse(text, fileName);
+	}
+	
+	/**
+	 * Parses <text> in a single pass. Each line is dispatched to its field
+	 * by looking up its header, and the sections spanning several lines
+	 * (regest, transcription and notes) are accumulated as they go, so no
+	 * line is kept or visited twice.
+	 */
+	private Document parse(CharSequence text, String fileName) {
 		Document entry = new Document();
 		MiMusDate date = new MiMusDate();
 		MiMusLibraryIdentifier ident1 = new MiMusLibraryIdentifier();
 		MiMusLibraryIdentifier ident2 = new MiMusLibraryIdentifier();
-		String editions = "";
-		String registers = "";
-		String citations = "";
+		String[] refs = {"", "", ""};	// Editions, registers and citations
 		List<Note> notes = new ArrayList<>();
-		int regestIdx = -1;
-		int transcriptionIdx = -1;
-		int notesIdx = -1;
-		for (int i=0; i<lines.size(); i++) {
-			if (lines.get(i).length()>=2) {		// Prevents from empty lines
-				String content = lines.get(i).substring(lines.get(i).indexOf(':')+1).trim();
-				String start = lines.get(i).substring(0, lines.get(i).indexOf(':')+1);
-				for (int j=0; j<STARTERS.length; j++) {
-					if (start.equals(STARTERS[j])) {
-						try {
-							switch (j) {
-							case 0:
-								entry.setNumbering(content);
-								break;
-							case 1:
-								date.setYear1(content);
-								break;
-							case 2:
-								date.setYear2(content);
-								date.setInterval(true);
-								break;
-							case 3:
-								date.setMonth1(content);
-								break;
-							case 4:
-								date.setMonth2(content);
-								date.setInterval(true);
-								break;
-							case 5:
-								date.setDay1(content);
-								break;
-							case 6:
-								date.setDay2(content);
-								date.setInterval(true);
-								break;
-							case 7:
-								entry.setPlace1(content);
-								break;
-							case 8:
-								entry.setPlace2(content);
-								break;
-							case 9:
-								regestIdx = i;
-							case 10:
-								ident1.setArchive(content);
-								break;
-							case 11:
-								ident1.setSeries(content);
-								break;
-							case 12:
-								ident1.setSubseries1(content);
-								break;
-							case 13:
-								ident1.setSubseries2(content);
-								break;
-							case 14:
-								ident1.setNumber(content);
-								break;
-							case 15:
-								ident1.setPage(content);
-								break;
-							case 16:
-								ident2.setArchive(content);
-								break;
-							case 17:
-								ident2.setSeries(content);
-								break;
-							case 18:
-								ident2.setSubseries1(content);
-								break;
-							case 19:
-								ident2.setSubseries2(content);
-								break;
-							case 20:
-								ident2.setNumber(content);
-								break;
-							case 21:
-								ident2.setPage(content);
-								break;
-							case 22:
-								editions = content;
-								break;
-							case 23:
-								registers = content;
-								break;
-							case 24:
-								citations = content;
-								break;
-							case 25:
-								transcriptionIdx = i;
-								break;
-							case 26:
-								notesIdx = i;
-								break;
-							case 27:
-								if (notesIdx==-1) {
-									notesIdx = i;
-									break;
-								}
-							case 28:
-								if (notesIdx==-1) {
-									notesIdx = i;
-									break;
-								}
-							}
-						} catch (NumberFormatException e) {
-							System.out.println("Could not read field " + FIELD_NAMES[j] + " properly, this field will be empty.");
-						}
+		StringBuilder regest = new StringBuilder();
+		StringBuilder transcription = new StringBuilder();
+		
+		/* Sections are read from their last header until the next section */
+		boolean inRegest = false;
+		boolean inTranscription = false;
+		boolean inNotes = false;
+		
+		int length = text.length();
+		int start = 0;
+		while (start < length) {
+			int end = lineEnd(text, start);
+			
+			int header = -1;
+			if (end - start >= 2) {		// Prevents from empty lines
+				int colon = indexOf(text, ':', start, end);
+				if (colon >= 0 && colon - start < MAX_HEADER_LENGTH) {
+					Integer j = HEADERS.get(text.subSequence(start, colon+1).toString());
+					if (j != null) {
+						header = j;
+						String content = text.subSequence(colon+1, end).toString().trim();
+						readField(header, content, entry, date, ident1, ident2, refs);
 					}
 				}
 			}
-		}
-		entry.setDate(date);
-		entry.setLibrary(ident1);
-		entry.setLibrary2(ident2);
-		entry.setEditions(editions);
-		entry.setRegisters(registers);
-		entry.setCitations(citations);
-		
-		String regest = "";
-		for (int i=regestIdx; i<lines.size(); i++) {
-			if (lines.get(i).startsWith(STARTERS[9])) {
-				regest += lines.get(i).substring(3) + "\n";
-			} else if (lines.get(i).startsWith(STARTERS[10])) {
-				break;
-			} else {
-				regest +=lines.get(i) + "\n";
+			
+			if (header == REGEST) {
+				regest.setLength(0);
+				regest.append(text, Math.min(start+3, end), end).append('\n');
+				inRegest = true;
+			} else if (inRegest) {
+				if (header == AFTER_REGEST) {
+					inRegest = false;
+				} else {
+					regest.append(text, start, end).append('\n');
+				}
 			}
-		}
-		entry.setRegestText(regest.trim());
-		
-		String transcription = "";
-		for (int i=transcriptionIdx; i<lines.size(); i++) {
-			if (lines.get(i).startsWith(STARTERS[25])) {
-				transcription += lines.get(i).substring(2) + "\n";
-			} else if (lines.get(i).startsWith(STARTERS[26]) 
-					|| lines.get(i).startsWith(STARTERS[27])
-					|| lines.get(i).startsWith(STARTERS[28])) {
-				/* Terminate if notes (q: / r: / s:) show up */
-				break;
-			} else {
-				transcription +=lines.get(i) + "\n";
+			
+			if (header == TRANSCRIPTION) {
+				transcription.setLength(0);
+				transcription.append(text, start+2, end).append('\n');
+				inTranscription = true;
+			} else if (inTranscription) {
+				if (isNotesHeader(header)) {
+					/* Terminate if notes (q: / r: / s:) show up */
+					inTranscription = false;
+				} else {
+					transcription.append(text, start, end).append('\n');
+				}
 			}
-		}
-		entry.setTranscriptionText(transcription.trim());
-		
-		/* Notes (q, r, s) just as a single note containing all text */
-		if (notesIdx!=-1) {
-			for (int i=notesIdx; i<lines.size(); i++) {
-				if (lines.get(i).startsWith(STARTERS[26])
-						|| lines.get(i).startsWith(STARTERS[27])
-						|| lines.get(i).startsWith(STARTERS[28])) {
-					notes.add(toNote(lines.get(i).substring(2), entry));
+			
+			/* Notes (q, r, s) start at the last q:, or else the first r: or s: */
+			if (header == NOTES || (isNotesHeader(header) && !inNotes)) {
+				notes.clear();
+				inNotes = true;
+			}
+			if (inNotes) {
+				String line = text.subSequence(start, end).toString();
+				if (isNotesHeader(header)) {
+					notes.add(toNote(line.substring(2), entry));
 				} else {
-					notes.add(toNote(lines.get(i), entry));
+					notes.add(toNote(line, entry));
 				}
 			}
+			
+			/* Skip the line terminator, \r\n counts as one */
+			start = end + 1;
+			if (end + 1 < length && text.charAt(end) == '\r' 
+					&& text.charAt(end + 1) == '\n') {
+				start++;
+			}
 		}
+		entry.setDate(date);
+		entry.setLibrary(ident1);
+		entry.setLibrary2(ident2);
+		entry.setEditions(refs[0]);
+		entry.setRegisters(refs[1]);
+		entry.setCitations(refs[2]);
+		entry.setRegestText(regest.toString().trim());
+		entry.setTranscriptionText(transcription.toString().trim());
 		entry.setNotes(notes);
 		
 		entry.setStateAnnotIdx(0);
 		entry.setStateRevIdx(0);
 		entry.setLanguage(1);
 		
-		/* Read ID from path */
-		String[] parts = path.split("/");
-		String idStr = parts[parts.length-1].split("\\.")[0];	// This is regex, need to escape point
+		/* Read ID from file name */
+		String idStr = fileName.split("\\.")[0];	// This is regex, need to escape point
 		entry.setId(Integer.parseInt(idStr));
 		
 		return entry;
 	}
 	
+	/**
+	 * Sets the field of header number <j>, i.e. STARTERS[j], with its
+	 * <content>. Fields of editions, registers and citations are stored
+	 * in <refs>.
+	 */
+	private void readField(int j, String content, Document entry, MiMusDate date,
+			MiMusLibraryIdentifier ident1, MiMusLibraryIdentifier ident2, 
+			String[] refs) {
+		try {
+			switch (j) {
+			case 0:
+				entry.setNumbering(content);
+				break;
+			case 1:
+				date.setYear1(content);
+				break;
+			case 2:
+				date.setYear2(content);
+				date.setInterval(true);
+				break;
+			case 3:
+				date.setMonth1(content);
+				break;
+			case 4:
+				date.setMonth2(content);
+				date.setInterval(true);
+				break;
+			case 5:
+				date.setDay1(content);
+				break;
+			case 6:
+				date.setDay2(content);
+				date.setInterval(true);
+				break;
+			case 7:
+				entry.setPlace1(content);
+				break;
+			case 8:
+				entry.setPlace2(content);
+				break;
+			case 9:
+				/* Regest text is accumulated by parse() */
+			case 10:
+				ident1.setArchive(content);
+				break;
+			case 11:
+				ident1.setSeries(content);
+				break;
+			case 12:
+				ident1.setSubseries1(content);
+				break;
+			case 13:
+				ident1.setSubseries2(content);
+				break;
+			case 14:
+				ident1.setNumber(content);
+				break;
+			case 15:
+				ident1.setPage(content);
+				break;
+			case 16:
+				ident2.setArchive(content);
+				break;
+			case 17:
+				ident2.setSeries(content);
+				break;
+			case 18:
+				ident2.setSubseries1(content);
+				break;
+			case 19:
+				ident2.setSubseries2(content);
+				break;
+			case 20:
+				ident2.setNumber(content);
+				break;
+			case 21:
+				ident2.setPage(content);
+				break;
+			case 22:
+				refs[0] = content;
+				break;
+			case 23:
+				refs[1] = content;
+				break;
+			case 24:
+				refs[2] = content;
+				break;
+			default:
+				/* Transcription and notes are accumulated by parse() */
+				break;
+			}
+		} catch (NumberFormatException e) {
+			System.out.println("Could not read field " + FIELD_NAMES[j] + " properly, this field will be empty.");
+		}
+	}
+	
+	private static boolean isNotesHeader(int header) {
+		return header == NOTES || header == NOTES_DATA || header == NOTES_SIGNATURA;
+	}
+	
+	/**
+	 * Returns the index where the line starting at <start> of <text> ends,
+	 * i.e. of its \n, \r or \r\n terminator, or the length of <text>.
+	 */
+	private static int lineEnd(CharSequence text, int start) {
+		int end = start;
+		while (end < text.length() && text.charAt(end) != '\n' 
+				&& text.charAt(end) != '\r') {
+			end++;
+		}
+		return end;
+	}
+	
+	private static int indexOf(CharSequence text, char c, int from, int to) {
+		for (int i=from; i<to; i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
 	/**
 	 * Transforms a line of text inside the notes field into a
 	 * Note object, preprocessing its type prequalifier (e.g. {nota}).
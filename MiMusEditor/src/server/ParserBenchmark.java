@@ -0,0 +1,234 @@
+package server;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.swt.graphics.Point;
+
+import model.Document;
+import model.MiMusDate;
+import model.MiMusText;
+
+/**
+ * Script to benchmark the parser and the model on the hot paths of an
+ * import and of the Editor:
+ *
+ * - MiMusEntryReader.read, over the txt folder and over a synthetic
+ * corpus generated by SyntheticCorpus.
+ * - The String setters of MiMusDate, with the date fields of the corpus.
+ * - Document.getReadOnlyText.
+ * - The coordinate mapping of MiMusText, both ways.
+ *
+ * Each benchmark runs some warmup iterations, to let the JIT compile it,
+ * and then the measured ones. For each, it reports the throughput and the
+ * bytes allocated per operation and per second, measured on the running
+ * thread when the JVM supports it.
+ *
+ * Usage: ParserBenchmark [synthetic documents, 10000 by default]
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ParserBenchmark {
+
+	private static final int SYNTHETIC_DOCS = 10000;
+	private static final int WARMUP_ITERATIONS = 3;
+	private static final int MEASURED_ITERATIONS = 5;
+
+	/* Documents kept in memory for the model benchmarks */
+	private static final int MODEL_DOCS = 10000;
+
+	/* Results are accumulated here, so the JIT cannot drop the work */
+	private static volatile long sink;
+
+	public static void main(String[] args) {
+		int synthetic = SYNTHETIC_DOCS;
+		if (args.length > 0) {
+			try {
+				synthetic = Integer.parseInt(args[0]);
+			} catch (NumberFormatException e) {
+				System.out.println("Usage: ParserBenchmark [synthetic documents]");
+				return;
+			}
+		}
+
+		File syntheticDir = null;
+		try {
+			List<File> corpus = listTxt(new File("txt/"));
+			System.out.println("Generating " + synthetic + " synthetic documents...");
+			syntheticDir = Files.createTempDirectory("mimus-bench").toFile();
+			new SyntheticCorpus(42).write(syntheticDir, synthetic);
+			List<File> generated = listTxt(syntheticDir);
+
+			/* Inputs of the model benchmarks */
+			List<File> modelFiles = new ArrayList<>(corpus);
+			modelFiles.addAll(generated.subList(0,
+					Math.min(generated.size(), MODEL_DOCS)));
+			List<Document> docs = new ArrayList<>();
+			List<String[]> dates = new ArrayList<>();
+			for (File f : modelFiles) {
+				docs.add(new MiMusEntryReader().read(f.toPath()));
+				dates.add(readDateFields(f));
+			}
+
+			System.out.println(String.format("%-28s %10s %12s %12s %12s",
+					"Benchmark", "ops", "ops/s", "B/op", "MB/s alloc"));
+			run("read (txt folder)", corpus.size(), i ->
+					new MiMusEntryReader().read(corpus.get(i).toPath()).getId());
+			run("read (synthetic)", generated.size(), i ->
+					new MiMusEntryReader().read(generated.get(i).toPath()).getId());
+			run("MiMusDate String setters", dates.size(), i ->
+					setDate(dates.get(i)).toString().length());
+			run("getReadOnlyText", docs.size(), i ->
+					docs.get(i).getReadOnlyText().length());
+			run("MiMusText char to word", docs.size(), i -> {
+				MiMusText text = docs.get(i).getTranscription();
+				int length = text.getText().length();
+				Point p = text.fromCharToWordCoordinates(
+						new Point(length / 3, 2 * length / 3));
+				return p.x + p.y;
+			});
+			run("MiMusText word to char", docs.size(), i -> {
+				MiMusText text = docs.get(i).getTranscription();
+				int words = text.getWords().length;
+				Point p = text.fromWordToCharCoordinates(
+						new Point(words / 3, 2 * words / 3));
+				return p.x + p.y;
+			});
+		} catch (IOException e) {
+			System.out.println("Could not prepare the benchmark: " + e);
+		} finally {
+			if (syntheticDir != null) {
+				for (File f : syntheticDir.listFiles()) {
+					f.delete();
+				}
+				syntheticDir.delete();
+			}
+		}
+	}
+
+	/**
+	 * Runs benchmark <name>, whose iterations apply <op> to each of the
+	 * <ops> inputs, and prints its averages over the measured iterations.
+	 */
+	private static void run(String name, int ops, Operation op) {
+		if (ops == 0) {
+			System.out.println(String.format("%-28s %10s", name, "no input"));
+			return;
+		}
+		for (int it=0; it<WARMUP_ITERATIONS; it++) {
+			iterate(ops, op);
+		}
+		long bytesBefore = allocatedBytes();
+		long start = System.nanoTime();
+		for (int it=0; it<MEASURED_ITERATIONS; it++) {
+			iterate(ops, op);
+		}
+		long elapsed = System.nanoTime() - start;
+		long bytes = allocatedBytes() - bytesBefore;
+
+		double seconds = elapsed / 1e9;
+		long total = (long) ops * MEASURED_ITERATIONS;
+		String perOp = "n/a";
+		String rate = "n/a";
+		if (bytesBefore >= 0) {
+			perOp = String.valueOf(bytes / total);
+			rate = String.format("%.1f", bytes / seconds / (1024 * 1024));
+		}
+		System.out.println(String.format("%-28s %10d %12.0f %12s %12s",
+				name, total, total / seconds, perOp, rate));
+	}
+
+	private static void iterate(int ops, Operation op) {
+		long acc = 0;
+		for (int i=0; i<ops; i++) {
+			acc += op.apply(i);
+		}
+		sink += acc;
+	}
+
+	/**
+	 * Returns the bytes allocated so far by the current thread, or -1 if
+	 * the JVM cannot tell.
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean sunBean =
+					(com.sun.management.ThreadMXBean) bean;
+			if (sunBean.isThreadAllocatedMemorySupported()
+					&& sunBean.isThreadAllocatedMemoryEnabled()) {
+				return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	/* Date headers, in the order of the fields returned by readDateFields */
+	private static final String[] DATE_HEADERS = {"b: ", "c: ", "d: ",
+			"b2: ", "c2: ", "d2: "};
+
+	/**
+	 * Returns the raw values of the date fields of txt file <f>, null
+	 * where the field is missing.
+	 */
+	private static String[] readDateFields(File f) throws IOException {
+		String[] fields = new String[DATE_HEADERS.length];
+		for (String line : Files.readAllLines(f.toPath(), StandardCharsets.UTF_8)) {
+			for (int j=0; j<DATE_HEADERS.length; j++) {
+				if (line.startsWith(DATE_HEADERS[j])) {
+					fields[j] = line.substring(DATE_HEADERS[j].length()).trim();
+				}
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Builds a MiMusDate from the raw date <fields> through its String
+	 * setters, as the parser does.
+	 */
+	private static MiMusDate setDate(String[] fields) {
+		MiMusDate date = new MiMusDate();
+		try {
+			if (fields[0] != null) date.setYear1(fields[0]);
+			if (fields[1] != null) date.setMonth1(fields[1]);
+			if (fields[2] != null) date.setDay1(fields[2]);
+			if (fields[3] != null) date.setYear2(fields[3]);
+			if (fields[4] != null) date.setMonth2(fields[4]);
+			if (fields[5] != null) date.setDay2(fields[5]);
+		} catch (NumberFormatException e) {
+			/* Malformed fields are skipped, as the parser does */
+		}
+		return date;
+	}
+
+	private static List<File> listTxt(File dir) {
+		File[] files = dir.listFiles();
+		List<File> txtFiles = new ArrayList<>();
+		if (files == null) {
+			System.out.println("Error: directory " + dir + " not found");
+			return txtFiles;
+		}
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.getName().endsWith(".txt")) {
+				txtFiles.add(f);
+			}
+		}
+		return txtFiles;
+	}
+
+	/**
+	 * The work of one operation of a benchmark over its <i>th input.
+	 */
+	private interface Operation {
+		long apply(int i);
+	}
+}
@@ -0,0 +1,148 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generator of synthetic MiMus documents in the txt format read by
+ * MiMusEntryReader, to measure the parser and the model on corpora much
+ * larger than the real one. Documents are built from a fixed vocabulary
+ * and a seeded Random, so the same seed always gives the same corpus.
+ *
+ * The proportions of optional fields (hypothetical dates, intervals,
+ * second signatures, notes) roughly follow those of the txt folder.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class SyntheticCorpus {
+
+	/* First ID of the synthetic documents, far from the real ones */
+	public static final int FIRST_ID = 1000000;
+
+	private static final String[] MONTHS = {"gener", "febrer", "març", "abril",
+			"maig", "juny", "juliol", "agost", "setembre", "octubre", "novembre",
+			"desembre"};
+	private static final String[] PLACES = {"Barcelona", "València", "Saragossa",
+			"Perpinyà", "Girona", "Lleida", "Osca", "Tortosa", "Mallorca", "Vic"};
+	private static final String[] WORDS = {"rey", "senyor", "nostre", "de", "la",
+			"e", "en", "per", "gràcia", "Déu", "ministrer", "juglar", "trompador",
+			"sonar", "arpa", "lahut", "cort", "dinés", "sous", "florins", "data",
+			"letra", "manament", "Item", "a", "que", "ab", "dit", "nós", "vós",
+			"{ratllat}", "{/ratllat}", "mandavit", "Dominus", "rex", "Probata."};
+
+	private final Random random;
+
+	/**
+	 * Creates a generator whose documents are determined by <seed>.
+	 */
+	public SyntheticCorpus(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Writes <count> synthetic documents to directory <dir>, one txt file
+	 * per document named after its ID, as in folder "txt".
+	 */
+	public void write(File dir, int count) throws IOException {
+		dir.mkdirs();
+		for (int i=0; i<count; i++) {
+			int id = FIRST_ID + i;
+			try (BufferedWriter out = Files.newBufferedWriter(
+					new File(dir, id + ".txt").toPath(), StandardCharsets.UTF_8)) {
+				out.write(document(id));
+			}
+		}
+	}
+
+	/**
+	 * Returns the txt content of a new synthetic document.
+	 */
+	public String document(int id) {
+		StringBuilder sb = new StringBuilder(2048);
+		sb.append("a: ").append(roman(1 + random.nextInt(8))).append('.')
+				.append(id % 10000).append('\n');
+		line(sb, "b: ", hypothetical(String.valueOf(1350 + random.nextInt(100))));
+		line(sb, "c: ", hypothetical(MONTHS[random.nextInt(MONTHS.length)]));
+		if (random.nextInt(10) < 8) {
+			line(sb, "d: ", hypothetical(String.valueOf(1 + random.nextInt(28))));
+		}
+		if (random.nextInt(40) == 0) {
+			line(sb, "b2: ", String.valueOf(1400 + random.nextInt(50)));
+			line(sb, "c2: ", MONTHS[random.nextInt(MONTHS.length)]);
+		}
+		if (random.nextInt(10) < 8) {
+			line(sb, "e: ", PLACES[random.nextInt(PLACES.length)]);
+		}
+		line(sb, "f: ", sentence(10 + random.nextInt(40)));
+		line(sb, "g: ", "ACA");
+		line(sb, "h: ", "Cancelleria");
+		if (random.nextInt(4) == 0) {
+			line(sb, "i: ", "Cartes reials");
+		}
+		line(sb, "j: ", "reg.");
+		line(sb, "k: ", String.valueOf(1000 + random.nextInt(2000)));
+		line(sb, "l: ", "f. " + (1 + random.nextInt(300)) + "r");
+		if (random.nextInt(12) == 0) {
+			line(sb, "g2: ", "AHCB");
+			line(sb, "h2: ", "Consell");
+			line(sb, "j2: ", "reg.");
+			line(sb, "k2: ", String.valueOf(1 + random.nextInt(100)));
+			line(sb, "l2: ", "f. " + (1 + random.nextInt(300)) + "v");
+		}
+		if (random.nextBoolean()) {
+			line(sb, "m: ", "Autor " + (1900 + random.nextInt(120))
+					+ ", doc. " + random.nextInt(500) + ".");
+		}
+		if (random.nextInt(6) == 0) {
+			line(sb, "n: ", "Regest " + (1900 + random.nextInt(120)) + ".");
+		}
+		if (random.nextInt(5) == 0) {
+			line(sb, "o: ", "Cit. " + (1900 + random.nextInt(120)) + ".");
+		}
+		sb.append("p: ");
+		int paragraphs = 1 + random.nextInt(6);
+		for (int i=0; i<paragraphs; i++) {
+			sb.append(sentence(20 + random.nextInt(120))).append('\n');
+		}
+		if (random.nextInt(4) < 3) {
+			line(sb, "q: ", "{nota1} " + sentence(5 + random.nextInt(30)));
+		}
+		if (random.nextInt(20) == 0) {
+			line(sb, "r: ", sentence(5 + random.nextInt(15)));
+		}
+		if (random.nextInt(6) == 0) {
+			line(sb, "s: ", sentence(5 + random.nextInt(15)));
+		}
+		return sb.toString();
+	}
+
+	private void line(StringBuilder sb, String header, String value) {
+		sb.append(header).append(value).append('\n');
+	}
+
+	/* Encloses <value> in squared brackets in a few documents */
+	private String hypothetical(String value) {
+		return random.nextInt(15) == 0 ? "[" + value + "]" : value;
+	}
+
+	private String sentence(int words) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<words; i++) {
+			if (i > 0) {
+				sb.append(' ');
+			}
+			sb.append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return sb.append('.').toString();
+	}
+
+	private String roman(int n) {
+		String[] numerals = {"I", "II", "III", "IV", "V", "VI", "VII", "VIII"};
+		return numerals[n-1];
+	}
+}
@@ -0,0 +1,488 @@
+package ui;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.ITableColorProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.widgets.Display;
+
+import model.Unit;
+import persistence.CacheNotices;
+import util.DBUtils;
+
+/**
+ * Write-behind queue of the annotations of an Editor. Each gesture is
+ * applied to the model of the Editor at once, and its Write is queued to
+ * be made in the DB in the background, so annotating doesn't wait for
+ * the network.
+ *
+ * Writes are made in the order they were added, by a single Job, in
+ * batches of up to BATCH_SIZE writes in one transaction, with a
+ * Connection of its own. If the DB can't be reached, the batch is
+ * rolled back, marked as failed and tried again later, waiting longer
+ * each time. If the DB refuses a write, e.g. an annotation made twice
+ * or one the user has no permission for, the writes of the batch are
+ * made again one by one, so only the one refused is rejected and
+ * undone in the Editor. The caches of the session, like the UsageIndex,
+ * are told about the writes of a batch only once it is committed.
+ *
+ * Units waiting to be written are shown as saving in the tables of the
+ * Editor decorated by the queue, and as not saved if their write
+ * failed. Callbacks of the writes and <onChange> run in the UI thread.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class AnnotationQueue {
+
+	/* State of a Unit of the Editor with a write not made yet */
+	public enum State {
+		PENDING,
+		FAILED
+	}
+
+	private static final int BATCH_SIZE = 50;
+	private static final long DELAY = 200;			/* ms to gather a batch */
+	private static final long MIN_BACKOFF = 1000;	/* ms */
+	private static final long MAX_BACKOFF = 30000;	/* ms */
+
+	private final Display display;
+	private final Runnable onChange;
+	private final Job job;
+
+	/* Queue state, guarded by this */
+	private final LinkedList<Write> writes = new LinkedList<>();
+	private final Set<Write> failed = Collections.newSetFromMap(
+			new IdentityHashMap<>());
+	private SQLException lastError = null;
+	private long backoff = 0;
+	private int isolate = 0;	/* Writes left to make one by one */
+	private int attempts = 0;	/* Runs of the Job, to wait for the next */
+	private boolean closed = false;
+
+	/**
+	 * Makes the queue of an Editor called <name>, whose UI runs in
+	 * <display>. <onChange> is run whenever writes are made or fail.
+	 */
+	public AnnotationQueue(String name, Display display, Runnable onChange) {
+		this.display = display;
+		this.onChange = onChange;
+		this.job = new Job("Saving annotations of " + name) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				flushBatch();
+				synchronized (AnnotationQueue.this) {
+					attempts++;
+					AnnotationQueue.this.notifyAll();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+	}
+
+	/**
+	 * Queues <write>, whose change is already applied to the Editor.
+	 * It is made after all writes queued before it.
+	 */
+	public void add(Write write) {
+		synchronized (this) {
+			writes.add(write);
+			if (lastError != null) {
+				/* Waiting to retry, the write goes with the next attempt */
+				return;
+			}
+		}
+		job.schedule(DELAY);
+	}
+
+	/**
+	 * Returns the state of <element> of the Editor, if a write of it is
+	 * not made yet, or null if it is saved.
+	 */
+	public synchronized State getState(Object element) {
+		for (Write write : writes) {
+			if (write.unit == element) {
+				return failed.contains(write) ? State.FAILED : State.PENDING;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns whether all the writes queued are made.
+	 */
+	public synchronized boolean isIdle() {
+		return writes.isEmpty();
+	}
+
+	/**
+	 * Returns the number of writes not made yet.
+	 */
+	public synchronized int getPending() {
+		return writes.size();
+	}
+
+	/**
+	 * Returns the number of writes that failed and are waiting to be
+	 * tried again.
+	 */
+	public synchronized int getFailed() {
+		return failed.size();
+	}
+
+	/**
+	 * Returns the error of the last attempt, if it failed.
+	 */
+	public synchronized SQLException getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Makes the writes queued now, without waiting for the next attempt,
+	 * and waits until they are made. Returns whether they all were, so
+	 * false if the DB could not be reached: it returns as soon as an 
+	 * attempt fails, without waiting for the retries, or when <monitor>
+	 * is canceled. It blocks, so it must not run in the UI thread.
+	 */
+	public boolean flush(IProgressMonitor monitor) {
+		monitor.beginTask("Saving annotations", IProgressMonitor.UNKNOWN);
+		try {
+			while (!isIdle()) {
+				int attempt;
+				synchronized (this) {
+					attempt = attempts;
+				}
+				job.wakeUp();
+				job.schedule();
+				synchronized (this) {
+					while (attempts == attempt) {
+						if (monitor.isCanceled()) {
+							return false;
+						}
+						try {
+							wait(100);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return false;
+						}
+					}
+					if (lastError != null) {
+						return false;
+					}
+				}
+			}
+			return true;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Stops telling the Editor about the writes, e.g. when it is closed.
+	 * Writes queued are still made while the session is open.
+	 */
+	public synchronized void close() {
+		closed = true;
+	}
+
+	/**
+	 * Makes the Units of <tv> with writes not made yet shown as saving,
+	 * or as not saved if their write failed, on top of its label
+	 * provider, which must be an ITableLabelProvider.
+	 */
+	public void decorate(TableViewer tv) {
+		tv.setLabelProvider(new QueuedLabelProvider(
+				(ITableLabelProvider) tv.getLabelProvider()));
+	}
+
+	/**
+	 * Makes the next batch of writes, or the next write alone while
+	 * those of a batch refused are isolated. Runs in the Job thread.
+	 */
+	private void flushBatch() {
+		List<Write> batch;
+		synchronized (this) {
+			if (writes.isEmpty()) {
+				return;
+			}
+			int size = isolate > 0 ? 1 : Math.min(BATCH_SIZE, writes.size());
+			batch = new ArrayList<>(writes.subList(0, size));
+		}
+
+		boolean done = false;
+		SQLException error = null;
+		List<Runnable> notices;
+		/* Caches are told about the writes only once they are committed */
+		CacheNotices.collect();
+		try (Connection conn = DBUtils.connect()) {
+			conn.setAutoCommit(false);
+			try {
+				for (Write write : batch) {
+					write.run(conn);
+				}
+				conn.commit();
+				done = true;
+			} catch (SQLException e) {
+				error = e;
+				conn.rollback();
+			} finally {
+				conn.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			/* Could not connect, or the Connection was lost */
+			if (error == null) {
+				error = e;
+			}
+		} finally {
+			notices = CacheNotices.take();
+		}
+
+		if (done) {
+			committed(batch, notices);
+		} else {
+			for (Write write : batch) {
+				write.rolledBack();
+			}
+			if (isTransient(error)) {
+				failed(batch, error);
+			} else if (batch.size() > 1) {
+				/* Find which write was refused, making them one by one */
+				synchronized (this) {
+					isolate = batch.size();
+				}
+				job.schedule();
+			} else {
+				rejected(batch.get(0), error);
+			}
+		}
+	}
+
+	/**
+	 * Removes <batch> from the queue, once made, and tells the Editor,
+	 * and the caches with <notices>, given by the DAOs of its writes.
+	 */
+	private void committed(List<Write> batch, List<Runnable> notices) {
+		for (Runnable notice : notices) {
+			notice.run();
+		}
+		boolean more;
+		synchronized (this) {
+			writes.subList(0, batch.size()).clear();
+			failed.removeAll(batch);
+			lastError = null;
+			backoff = 0;
+			isolate = Math.max(0, isolate - batch.size());
+			more = !writes.isEmpty();
+		}
+		System.out.println("Saved " + batch.size() + " annotations.");
+		notifyEditor(() -> {
+			for (Write write : batch) {
+				write.committed();
+			}
+		});
+		if (more) {
+			job.schedule();
+		}
+	}
+
+	/**
+	 * Marks <batch> as failed because of <error>, which may go away,
+	 * and tries again later, waiting twice as long as the last time.
+	 */
+	private void failed(List<Write> batch, SQLException error) {
+		System.out.println("Could not save " + batch.size()
+				+ " annotations: " + error.getMessage());
+		long delay;
+		synchronized (this) {
+			if (closed && !DBUtils.isSessionOpen()) {
+				/* Nobody to retry for */
+				System.out.println("Discarding " + writes.size()
+						+ " annotations not saved.");
+				writes.clear();
+				failed.clear();
+				return;
+			}
+			failed.addAll(batch);
+			lastError = error;
+			backoff = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, backoff * 2));
+			delay = backoff;
+		}
+		notifyEditor(() -> {});
+		job.schedule(delay);
+	}
+
+	/**
+	 * Removes <write> from the queue, as the DB refused it with <error>,
+	 * and tells the Editor to undo it.
+	 */
+	private void rejected(Write write, SQLException error) {
+		System.out.println("Annotation refused: " + write.description
+				+ ": " + error.getMessage());
+		boolean more;
+		synchronized (this) {
+			writes.remove(write);
+			failed.remove(write);
+			isolate = Math.max(0, isolate - 1);
+			more = !writes.isEmpty();
+		}
+		notifyEditor(() -> write.rejected(error));
+		if (more) {
+			job.schedule();
+		}
+	}
+
+	/**
+	 * Runs <callback> and then <onChange> in the UI thread, unless the
+	 * Editor was closed.
+	 */
+	private void notifyEditor(Runnable callback) {
+		if (display.isDisposed()) {
+			return;
+		}
+		display.asyncExec(() -> {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+			}
+			callback.run();
+			onChange.run();
+		});
+	}
+
+	/**
+	 * Returns whether <error> may go away by trying again: the DB could
+	 * not be reached, or no Connection of the pool was free in time.
+	 * Anything else, e.g. access denied, is refused at once, so it
+	 * doesn't hold back the writes queued after it.
+	 */
+	private static boolean isTransient(SQLException error) {
+		if (error instanceof SQLTransientException
+				|| error instanceof SQLRecoverableException) {
+			return true;
+		}
+		String state = error.getSQLState();
+		return state != null && state.startsWith("08");
+	}
+
+	/**
+	 * A write to the DB of a change of <unit> made in the Editor.
+	 */
+	public abstract static class Write {
+
+		private final Unit unit;
+		private final String description;
+
+		/**
+		 * Makes the write of the change of <unit> described by
+		 * <description>, as shown in the log.
+		 */
+		public Write(Unit unit, String description) {
+			this.unit = unit;
+			this.description = description;
+		}
+
+		/**
+		 * Makes the change in the DB with <conn>, within a transaction
+		 * that may include other writes. Throws SQLException if it could
+		 * not be made. Runs in the Job thread.
+		 */
+		protected abstract void run(Connection conn) throws SQLException;
+
+		/**
+		 * Tells that the change was made. Runs in the UI thread.
+		 */
+		protected void committed() {}
+
+		/**
+		 * Tells that the DB refused the change with <error>, so it must
+		 * be undone in the Editor. Runs in the UI thread.
+		 */
+		protected abstract void rejected(SQLException error);
+
+		/**
+		 * Tells that the transaction of run() was rolled back, so what
+		 * it set in the Unit from the DB, e.g. IDs, is no longer valid.
+		 * Runs in the Job thread.
+		 */
+		protected void rolledBack() {}
+
+		public Unit getUnit() {
+			return unit;
+		}
+	}
+
+	/**
+	 * Label provider showing the state of the Units of the queue over
+	 * <base>, by the text of the first column and the color of the row.
+	 */
+	private class QueuedLabelProvider extends LabelProvider
+			implements ITableLabelProvider, ITableColorProvider {
+
+		private final ITableLabelProvider base;
+
+		public QueuedLabelProvider(ITableLabelProvider base) {
+			this.base = base;
+		}
+
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return base.getColumnImage(element, columnIndex);
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			String text = base.getColumnText(element, columnIndex);
+			if (columnIndex == 0) {
+				State state = getState(element);
+				if (state == State.PENDING) {
+					return text + " (saving...)";
+				} else if (state == State.FAILED) {
+					return text + " (not saved)";
+				}
+			}
+			return text;
+		}
+
+		@Override
+		public Color getForeground(Object element, int columnIndex) {
+			State state = getState(element);
+			if (state == State.PENDING) {
+				return display.getSystemColor(SWT.COLOR_DARK_GRAY);
+			} else if (state == State.FAILED) {
+				return display.getSystemColor(SWT.COLOR_RED);
+			}
+			return null;
+		}
+
+		@Override
+		public Color getBackground(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public void dispose() {
+			base.dispose();
+			super.dispose();
+		}
+	}
+}
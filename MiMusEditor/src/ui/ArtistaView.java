@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -43,11 +43,6 @@ public class ArtistaView extends EntityView<Artista> {
 	
 	public ArtistaView() {
 		super();
-		try {
-			setUnits(retrieveUnits());
-		} catch(SQLException e) {
-			e.printStackTrace();
-		}
 	}
 	
 	public String getViewName() {
@@ -187,14 +182,12 @@ public class ArtistaView extends EntityView<Artista> {
 						textObs.getText());
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new ArtistaDao().insert(art);
+					try (ArtistaDao dao = new ArtistaDao()) {
+						int id = dao.insert(art);
 						if (id>0) {
-							getUnits().clear();
-							getUnits().addAll(new ArtistaDao().selectAll());
+							unitInserted(art);
 							System.out.println("Artist created successfully.");
 							LabelPrinter.printInfo(label, "Artist added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert Artist into DB.");
 						}
@@ -213,15 +206,13 @@ public class ArtistaView extends EntityView<Artista> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (ArtistaDao dao = new ArtistaDao()) {
 						/* Recover ID from selection */
 						art.setSpecificId(getSelectedId());
-						new ArtistaDao().update(art);
-						getUnits().clear();
-						getUnits().addAll(new ArtistaDao().selectAll());
+						dao.update(art);
+						unitUpdated(art);
 						System.out.println("Artist updated successfully.");
 						LabelPrinter.printInfo(label, "Artist updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -246,12 +237,10 @@ public class ArtistaView extends EntityView<Artista> {
 					System.out.println("Could not remove Artist because none was selected.");
 					LabelPrinter.printError(label, "You must select an Artist in order to remove it.");
 				} else {
-					try {
-						new ArtistaDao().delete(art);
-						getUnits().clear();
-						getUnits().addAll(new ArtistaDao().selectAll());
+					try (ArtistaDao dao = new ArtistaDao()) {
+						dao.delete(art);
+						unitDeleted(art);
 						LabelPrinter.printInfo(label, "Artist deleted successfully.");
-						getTv().refresh();
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
 						System.out.println("Could not delete: entity in use.");
@@ -285,7 +274,7 @@ public class ArtistaView extends EntityView<Artista> {
 	}
 	
 	@Override
-	public List<Artista> retrieveUnits() throws SQLException {
-		return new ArtistaDao().selectAll();
+	protected ArtistaDao createDao(Connection conn) {
+		return new ArtistaDao(conn);
 	}
 }
@@ -1,5 +1,6 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
@@ -22,9 +23,8 @@ import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.eclipse.ui.forms.widgets.Section;
 import model.Bibliography;
-import model.Document;
 import persistence.BibliographyDao;
-import persistence.DocumentDao;
+import persistence.UsageIndex;
 import ui.table.BibliographyTableViewer;
 import util.LabelPrinter;
 
@@ -59,11 +59,6 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 	
 	public BiblioView() {
 		super();
-		try {
-			setUnits(retrieveUnits());
-		} catch(SQLException e) {
-			e.printStackTrace();
-		}
 	}
 	
 	@Override
@@ -260,14 +255,12 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 						0);
 				if (isStateAdd()) {
 					/* Add a new entity */
-					try {
-						int id = new BibliographyDao().insert(biblio);
+					try (BibliographyDao dao = new BibliographyDao()) {
+						int id = dao.insert(biblio);
 						if (id>0) {
 							biblio.setId(id);
-							getUnits().clear();
-							getUnits().addAll(new BibliographyDao().selectAll());
+							unitInserted(biblio);
 							LabelPrinter.printInfo(label, "Bibliography entry added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert entry into DB.");
 						}
@@ -283,17 +276,14 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 					}
 				} else {
 					/* Update values from selected unit */
-					try {
+					try (BibliographyDao dao = new BibliographyDao()) {
 						/* Recover ID from selection */
 						biblio.setId(getSelectedId());
-						new BibliographyDao().update(biblio);
-						getUnits().clear();
-						getUnits().addAll(
-								new BibliographyDao().selectAll());
+						dao.update(biblio);
+						unitUpdated(biblio);
 						System.out.println("Bibliography updated successfully.");
 						LabelPrinter.printInfo(label, 
 								"Bibliography updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -319,13 +309,11 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 					System.out.println("Could not remove bibEntry because it is the default entry (id=0).");
 					LabelPrinter.printError(label, "You cannot delete the default bibliography entry.");
 				} else {
-					try {
-						new BibliographyDao().delete(selectedEntry);
-						getUnits().clear();
-						getUnits().addAll(new BibliographyDao().selectAll());
+					try (BibliographyDao dao = new BibliographyDao()) {
+						dao.delete(selectedEntry);
+						unitDeleted(selectedEntry);
 						System.out.println("BibEntry removed successfully.");
 						LabelPrinter.printInfo(label, "Bibliography entry deleted successfully.");
-						getTv().refresh();
 						fullReference.setText(""); /* Clear full reference */
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
@@ -370,17 +358,17 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 	
 	@Override
 	protected void fillAnnotationsLabel(Bibliography unit) {
-		List<Document> docs = new ArrayList<>();
+		List<Integer> docIds = new ArrayList<>();
 		try {
-			docs = new DocumentDao()
-					.selectWhereBiblio(unit.getId());
+			docIds = UsageIndex.getDocumentIds(unit);
 		} catch (SQLException e) {
 			System.out.println("Could not retrieve documents where bibliography is.");
 			e.printStackTrace();
 		}
 		String ids = "";
-		for (Document doc : docs) {
-			ids += doc.getIdStr() + ", ";
+		for (int docId : docIds) {
+			/* Same format as Document.getIdStr() */
+			ids += String.format("%05d", docId) + ", ";
 		}
 		if (ids.length()>2) {
 			ids = ids.substring(0, ids.length()-2);
@@ -393,8 +381,9 @@ public class BiblioView extends DeclarativeView<Bibliography> {
 	@Override
 	public void setFocus() {}
 
-	public List<Bibliography> retrieveUnits() throws SQLException {
-		return new BibliographyDao().selectAll();
+	@Override
+	protected BibliographyDao createDao(Connection conn) {
+		return new BibliographyDao(conn);
 	}
 
 	@Override
@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -35,12 +35,6 @@ public class CasaView extends EntityView<Casa> {
 	
 	public CasaView() {
 		super();
-		try {
-			setUnits(new CasaDao().selectAll());
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load cases from DB.");
-		}
 	}
 	
 	@Override
@@ -116,14 +110,12 @@ public class CasaView extends EntityView<Casa> {
 						textCort.getText());
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new CasaDao().insert(casa);
+					try (CasaDao dao = new CasaDao()) {
+						int id = dao.insert(casa);
 						if (id>0) {
-							getUnits().clear();
-							getUnits().addAll(new CasaDao().selectAll());
+							unitInserted(casa);
 							System.out.println(getViewName() + " created successfully.");
 							LabelPrinter.printInfo(label, getViewName() + " created successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert Casa into DB.");
 						}
@@ -142,15 +134,13 @@ public class CasaView extends EntityView<Casa> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (CasaDao dao = new CasaDao()) {
 						/* Recover ID from selection */
 						casa.setSpecificId(getSelectedId());
-						new CasaDao().update(casa);
-						getUnits().clear();
-						getUnits().addAll(new CasaDao().selectAll());
+						dao.update(casa);
+						unitUpdated(casa);
 						System.out.println(getViewName() + " updated successfully.");
 						LabelPrinter.printInfo(label, getViewName() + " updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -175,11 +165,9 @@ public class CasaView extends EntityView<Casa> {
 					System.out.println("Could not remove " + getViewName() + " because none was selected.");
 					LabelPrinter.printError(label, "You must select a " + getViewName() + " in order to remove it.");
 				} else {
-					try {
-						new CasaDao().delete(casa);
-						getUnits().clear();
-						getUnits().addAll(new CasaDao().selectAll());
-						getTv().refresh();
+					try (CasaDao dao = new CasaDao()) {
+						dao.delete(casa);
+						unitDeleted(casa);
 						System.out.println(getViewName() + " removed successfully.");
 						LabelPrinter.printInfo(label, getViewName() + " removed successfully.");
 					} catch (SQLIntegrityConstraintViolationException e1) {
@@ -208,7 +196,7 @@ public class CasaView extends EntityView<Casa> {
 	}
 
 	@Override
-	public List<Casa> retrieveUnits() throws SQLException {
-		return new CasaDao().selectAll();
+	protected CasaDao createDao(Connection conn) {
+		return new CasaDao(conn);
 	}
 }
@@ -1,8 +1,21 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
 import org.eclipse.jface.viewers.TableViewer;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -13,12 +26,29 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.IViewPart;
+import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.eclipse.ui.part.ViewPart;
 
 import model.Entity;
+import model.HierarchicalUnit;
 import model.Unit;
+import persistence.ArtistaDao;
+import persistence.BibliographyDao;
+import persistence.CasaDao;
+import persistence.ChangeLog;
+import persistence.EntityDao;
+import persistence.GenereLiterariDao;
+import persistence.InstrumentDao;
+import persistence.LlocDao;
+import persistence.OficiDao;
+import persistence.PromotorDao;
+import persistence.UnitCatalog;
+import persistence.UnitDao;
+import persistence.UsageIndex;
+import util.DBUtils;
 
 /**
  * DeclarativeView is any Eclipse View of MiMus application that allows
@@ -34,6 +64,12 @@ import model.Unit;
  * update existing entities. Hence, sometimes we talk of a state of the
  * view, which can be ADD or EDIT.
  * 
+ * Views are created by the workbench when first shown, and their units
+ * are loaded then, in a background Job, from the UnitCatalog of their
+ * table. Loads run in a shared group of Jobs, as many at once as
+ * connections in the pool, so catalogs can be warmed up in parallel for
+ * views not shown yet.
+ * 
  * @author Javier Beltrán Jorba
  *
  * @param <E>
@@ -46,6 +82,37 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 	final int COMBO_FLAGS = SWT.DROP_DOWN | SWT.READ_ONLY;
 	final int BUTTON_FLAGS = SWT.PUSH | SWT.CENTER;
 	final int REFERENCE_FLAGS = SWT.MULTI | SWT.WRAP | SWT.VERTICAL;
+	
+	/* IDs of the DeclarativeViews and DAOs of the units they declare */
+	private static final String[] VIEW_IDS = {
+			"MiMusEditor.biblioView",
+			"MiMusEditor.artistaView",
+			"MiMusEditor.casaView",
+			"MiMusEditor.genereView",
+			"MiMusEditor.instrumentView",
+			"MiMusEditor.llocView",
+			"MiMusEditor.oficiView",
+			"MiMusEditor.promotorView"};
+	private static final List<Function<Connection, UnitDao<?>>> VIEW_DAOS = 
+			Arrays.asList(
+					BibliographyDao::new,
+					ArtistaDao::new,
+					CasaDao::new,
+					GenereLiterariDao::new,
+					InstrumentDao::new,
+					LlocDao::new,
+					OficiDao::new,
+					PromotorDao::new);
+	
+	/* 
+	 * Loads of units run at once, at most one per pooled connection but
+	 * one, left for the Editors and the UI. Made for the pool size set.
+	 */
+	private static JobGroup loads = null;
+	private static int loadsSize = 0;
+	
+	/* Family of the Jobs loading units, to wait for them all */
+	private static final Object LOADS_FAMILY = new Object();
 
 	/* Texts of state */
 	final String STATE_ADD = "Adding a new entity";
@@ -62,14 +129,17 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 	protected Label stateLabel;
 	protected Text annotationsText;
 	private List<U> units;
+	private Consumer<List<ChangeLog.Change>> changeListener;
+	private int loadCount = 0;	/* Only the last load is shown */
 	
 	/**
-	 * DeclarativeViews have associated a connection to the DB.
+	 * DeclarativeViews have no units until they are shown.
 	 */
 	public DeclarativeView() {
 		super();
 		setStateAdd(true);
 		setSelectedId(0);
+		setUnits(new ArrayList<>());
 	}
 
 	/**
@@ -92,17 +162,31 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 				refreshAction();
 			}
 		});
+		
+		/* Changes of other users are applied as they are polled */
+		String table = createDao(null).getTable();
+		changeListener = changes -> applyChanges(table, changes);
+		ChangeLog.addListener(changeListener);
+		
+		loadUnits();
 	}
 	
+	@Override
+	public void dispose() {
+		ChangeLog.removeListener(changeListener);
+		super.dispose();
+	}
+	
+	/**
+	 * Reads the units of this view from the DB again, discarding the
+	 * catalog of its table, and goes back to ADD mode.
+	 */
 	public void refreshAction() {
-		try {
-			setUnits(retrieveUnits());
-		} catch(SQLException e1) {
-			e1.printStackTrace();
-		}
+		/* Annotations may have been changed by other users too */
+		UsageIndex.invalidate();
+		UnitCatalog.invalidate(createDao(null).getTable());
+		loadUnits();
 		
-		tv.setInput(getUnits());
-		tv.refresh();
 		setStateAdd(true);
 		setSelectedId(0);
 		stateLabel.setText(STATE_ADD);
@@ -112,6 +196,147 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 		annotationsText.setText("");
 	}
 	
+	/**
+	 * Loads the units of this view in a background Job, and shows them
+	 * when they are read, unless another load started meanwhile.
+	 */
+	private void loadUnits() {
+		int load = ++loadCount;
+		Job job = new Job("Loading " + getViewName() + " units") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				long start = System.currentTimeMillis();
+				List<U> loaded;
+				try {
+					loaded = retrieveUnits();
+				} catch (SQLException e) {
+					System.out.println("Could not load " + getViewName() 
+							+ " units: " + e.getMessage());
+					loaded = new ArrayList<>();
+				}
+				System.out.println("Loaded " + loaded.size() + " " + getViewName()
+						+ " units in " + (System.currentTimeMillis() - start) + " ms.");
+				
+				List<U> result = loaded;
+				if (tv != null && !tv.getTable().isDisposed()) {
+					tv.getTable().getDisplay().asyncExec(() -> {
+						if (load == loadCount && !tv.getTable().isDisposed()) {
+							setUnits(result);
+							tv.setInput(result);
+							unitsLoaded();
+						}
+					});
+				}
+				return Status.OK_STATUS;
+			}
+			
+			@Override
+			public boolean belongsTo(Object family) {
+				return family == LOADS_FAMILY;
+			}
+		};
+		job.setJobGroup(getLoads());
+		job.schedule();
+	}
+	
+	/**
+	 * Called in the UI thread when the units loaded are shown, so views
+	 * can update what depends on data loaded with them.
+	 */
+	protected void unitsLoaded() {}
+	
+	/**
+	 * Refreshes the DeclarativeViews already created in <page>, so they
+	 * reflect the data visible by the user of the current session. If
+	 * <warmUp> is true, the catalogs of the views not created yet are
+	 * loaded too, in parallel, so they show their units at once when
+	 * opened. Views are not created nor shown.
+	 */
+	public static void refreshAll(IWorkbenchPage page, boolean warmUp) {
+		long start = System.currentTimeMillis();
+		for (int i=0; i<VIEW_IDS.length; i++) {
+			IViewPart view = page.findView(VIEW_IDS[i]);
+			if (view instanceof DeclarativeView) {
+				((DeclarativeView<?>) view).refreshAction();
+			} else if (warmUp) {
+				warmUp(VIEW_DAOS.get(i));
+			}
+		}
+		if (warmUp) {
+			whenLoaded(() -> System.out.println("Warm-up of declared units took " 
+					+ (System.currentTimeMillis() - start) + " ms."));
+		}
+	}
+	
+	/**
+	 * Runs <done> in a background Job once the loads of units scheduled
+	 * so far, by the views or the warm-up, are finished.
+	 */
+	public static void whenLoaded(Runnable done) {
+		Job job = new Job("Waiting for declared units") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					Job.getJobManager().join(LOADS_FAMILY, monitor);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return Status.CANCEL_STATUS;
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				}
+				done.run();
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+	
+	/**
+	 * Loads the catalog of the units of the DAOs made by <daoFactory> in
+	 * a background Job, if it is not loaded yet.
+	 */
+	private static void warmUp(Function<Connection, UnitDao<?>> daoFactory) {
+		Job job = new Job("Warming up declared units") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				long start = System.currentTimeMillis();
+				try (Connection conn = DBUtils.connect()) {
+					UnitDao<?> dao = daoFactory.apply(conn);
+					int size = UnitCatalog.get(dao).size();
+					System.out.println("Warmed up " + size + " units of " 
+							+ dao.getTable() + " in " 
+							+ (System.currentTimeMillis() - start) + " ms.");
+				} catch (SQLException e) {
+					System.out.println("Could not warm up units: " 
+							+ e.getMessage());
+				}
+				return Status.OK_STATUS;
+			}
+			
+			@Override
+			public boolean belongsTo(Object family) {
+				return family == LOADS_FAMILY;
+			}
+		};
+		job.setSystem(true);
+		job.setJobGroup(getLoads());
+		job.schedule();
+	}
+	
+	/**
+	 * Returns the JobGroup of the loads of units, sized for the pool of
+	 * connections set: all of its connections but one, and at least one.
+	 */
+	private static synchronized JobGroup getLoads() {
+		int size = Math.max(1, DBUtils.getPoolMaxSize() - 1);
+		if (loads == null || loadsSize != size) {
+			loads = new JobGroup("Loading declared units", size, 0);
+			loadsSize = size;
+		}
+		return loads;
+	}
+	
 	/**
 	 * Returns the entity name associated to this view. 
 	 */
@@ -203,9 +428,21 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 	protected abstract void fillAnnotationsLabel(U unit);
 	
 	/**
-	 * Downloads from DB the list of units declared in this view.
+	 * Returns the list of units declared in this view, from the catalog
+	 * of its table, which is read from the DB if it is not loaded yet.
+	 * It is called from a background Job.
 	 */
-	public abstract List<U> retrieveUnits() throws SQLException;
+	public List<U> retrieveUnits() throws SQLException {
+		try (Connection conn = DBUtils.connect()) {
+			return UnitCatalog.get(createDao(conn)).getAll();
+		}
+	}
+	
+	/**
+	 * Returns a DAO of the units declared in this view on Connection
+	 * <conn>, owned by the caller.
+	 */
+	protected abstract UnitDao<U> createDao(Connection conn);
 	
 	/**
 	 * Returns the list of units declared in this view, which is
@@ -222,6 +459,127 @@ public abstract class DeclarativeView<U extends Unit> extends ViewPart {
 		this.units = units;
 	}
 	
+	/**
+	 * Shows <unit>, just inserted in the DB with its IDs set, in the
+	 * table. Only its row is drawn, the table is not read again from the
+	 * DB: that is done by the Refresh button.
+	 */
+	protected void unitInserted(U unit) {
+		units.add(unit);
+		tv.add(unit);
+	}
+
+	/**
+	 * Shows <unit>, just updated in the DB, in the table in place of the
+	 * unit it updates, which is the one with the same ID.
+	 */
+	protected void unitUpdated(U unit) {
+		for (int i=0; i<units.size(); i++) {
+			U old = units.get(i);
+			if (keyOf(old) == keyOf(unit)) {
+				/* Updates of Entities don't know their common ID */
+				if (unit.getId() == 0) {
+					unit.setId(old.getId());
+				}
+				units.set(i, unit);
+				tv.remove(old);
+				tv.add(unit);	/* Added in its sorted position */
+				return;
+			}
+		}
+		unitInserted(unit);
+	}
+
+	/**
+	 * Removes <unit>, just deleted from the DB, from the table.
+	 */
+	protected void unitDeleted(U unit) {
+		units.remove(unit);
+		tv.remove(unit);
+	}
+
+	/**
+	 * Applies to the table the <changes> of other users to rows of
+	 * <table>, the table of this view: units deleted are removed and
+	 * units inserted or updated are read, all in one query for Entities.
+	 * Called from the thread that polls the ChangeLog.
+	 */
+	@SuppressWarnings("unchecked")
+	private void applyChanges(String table, List<ChangeLog.Change> changes) {
+		Set<Integer> saved = new LinkedHashSet<>();
+		Set<Integer> deleted = new LinkedHashSet<>();
+		for (ChangeLog.Change change : changes) {
+			if (!change.getTable().equals(table)) {
+				continue;
+			}
+			Integer id = change.getRowId();
+			if (change.getOperation() == ChangeLog.Operation.DELETE) {
+				saved.remove(id);
+				deleted.add(id);
+			} else {
+				deleted.remove(id);
+				saved.add(id);
+			}
+		}
+		if (saved.isEmpty() && deleted.isEmpty()) {
+			return;
+		}
+		
+		List<U> read = new ArrayList<>();
+		if (!saved.isEmpty()) {
+			try (Connection conn = DBUtils.connect()) {
+				UnitDao<U> dao = createDao(conn);
+				if (dao instanceof EntityDao) {
+					for (Entity ent : ((EntityDao<?>) dao)
+							.selectIn(saved, true).values()) {
+						read.add((U) ent);
+					}
+				} else {
+					for (int id : saved) {
+						U unit = dao.selectOne(id);
+						if (unit != null) {
+							read.add(unit);
+						}
+					}
+				}
+			} catch (SQLException e) {
+				System.out.println("Could not read changes of " + table + ".");
+				e.printStackTrace();
+				return;
+			}
+		}
+		
+		if (tv == null || tv.getTable().isDisposed()) {
+			return;
+		}
+		tv.getTable().getDisplay().asyncExec(() -> {
+			if (tv.getTable().isDisposed() || units == null) {
+				return;
+			}
+			for (int id : deleted) {
+				for (U unit : new ArrayList<>(units)) {
+					if (keyOf(unit) == id) {
+						unitDeleted(unit);
+					}
+				}
+			}
+			for (U unit : read) {
+				unitUpdated(unit);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the ID that identifies <unit> in its table: the specific
+	 * one for Entities, which is the one the views update by.
+	 */
+	private static int keyOf(Unit unit) {
+		if (unit instanceof HierarchicalUnit) {
+			return ((HierarchicalUnit) unit).getSpecificId();
+		}
+		return unit.getId();
+	}
+
 	/**
 	 * Given the table in the view, selects the row corresponding
 	 * to Entity <ent>.
@@ -2,17 +2,15 @@ package ui;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.eclipse.ui.part.ViewPart;
-import model.Document;
 import persistence.DocumentDao;
 import ui.table.DocumentsTableViewer;
 import util.DBUtils;
+import util.QueryMonitor;
 
 /**
  * Eclipse View that lists all Documents on MiMus database,
@@ -31,7 +29,7 @@ public class DocumentsView extends ViewPart {
 	}
 
 	/**
-	 * Draws the DocumentsView, which contains a List of documents
+	 * Draws the DocumentsView, which contains a table of documents
 	 * selectable to open their editor.
 	 */
 	@Override
@@ -41,15 +39,16 @@ public class DocumentsView extends ViewPart {
 		form.setText("Select a document");
 		form.getBody().setLayout(new GridLayout());
 		
-		List<Document> documents = new ArrayList<>();
-		
-		try {
-			Connection conn = DBUtils.connect();
-			documents = new DocumentDao(conn).selectAll();
+		/* Only the count: rows are downloaded as they are shown */
+		int count = 0;
+		QueryMonitor.begin("Open Documents View");
+		try (Connection conn = DBUtils.connect()) {
+			count = new DocumentDao(conn).count();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
-		setTv(new DocumentsTableViewer(form.getBody(), documents));
+		setTv(new DocumentsTableViewer(form.getBody(), count));
+		getTv().createTableViewer();
 	}
 
 	@Override
@@ -1,11 +1,19 @@
 package ui;
 
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.core.runtime.jobs.JobGroup;
+import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.CheckboxTableViewer;
 import org.eclipse.jface.viewers.IStructuredSelection;
@@ -28,17 +36,23 @@ import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
 import org.eclipse.ui.IEditorInput;
+import org.eclipse.ui.IEditorPart;
+import org.eclipse.ui.IEditorReference;
 import org.eclipse.ui.IEditorSite;
 import org.eclipse.ui.IViewPart;
+import org.eclipse.ui.ISaveablePart2;
+import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.forms.widgets.ExpandableComposite;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.eclipse.ui.forms.widgets.Section;
+import org.eclipse.ui.ide.IDE;
 import org.eclipse.ui.part.EditorPart;
 import model.Entity;
 import model.EntityInstance;
@@ -50,6 +64,7 @@ import model.Artista;
 import model.Bibliography;
 import model.Casa;
 import model.Document;
+import model.DocumentLoadException;
 import model.MiMusReference;
 import model.MiMusText;
 import model.Note;
@@ -63,6 +78,7 @@ import persistence.BibliographyDao;
 import persistence.CasaDao;
 import persistence.DocumentDao;
 import persistence.GenereLiterariDao;
+import persistence.IdentityMap;
 import persistence.InstanceDao;
 import persistence.InstrumentDao;
 import persistence.LlocDao;
@@ -76,6 +92,9 @@ import persistence.ServeixADao;
 import persistence.TeCasaDao;
 import persistence.TeOficiDao;
 import persistence.TranscriptionDao;
+import persistence.UnitCatalog;
+import persistence.UnitDao;
+import search.FullTextIndex;
 import ui.dialog.InstanceDialog;
 import ui.dialog.ReferenceDialog;
 import ui.dialog.RelationDialog;
@@ -86,6 +105,7 @@ import ui.table.RelationTableViewer;
 import ui.table.TranscriptionTableViewer;
 import util.DBUtils;
 import util.LabelPrinter;
+import util.QueryMonitor;
 import util.TextStyler;
 
 /**
@@ -98,10 +118,16 @@ import util.TextStyler;
  * in the Documents. It also allows for control for the state of the
  * annotation.
  * 
+ * Annotations are saved in the background by an AnnotationQueue, so
+ * the Editor is dirty while some are not saved yet. Saving it waits
+ * for them.
+ * 
  * @author Javier Beltrán Jorba
  *
  */
-public class Editor extends EditorPart {
+public class Editor extends EditorPart implements ISaveablePart2 {
+	
+	public static final String ID = "MiMusEditor.mimusEditor";
 	
 	private Connection conn;
 	private Document docEntry;
@@ -109,6 +135,8 @@ public class Editor extends EditorPart {
 	private MiMusText regest;
 	private Text regestText;
 	private StyledText transcriptionText;
+	private Text notesText;
+	private Map<Integer, Integer> noteOffsets = new HashMap<>();
 	private String docID;
 	private EntityTableViewer entityHelper;
 	private RelationTableViewer relationHelper;
@@ -123,6 +151,36 @@ public class Editor extends EditorPart {
 	private List<MiMusReference> references;
 	private List<Materia> allMateries;
 	
+	/* Units loaded for this Editor, so each is downloaded only once */
+	private IdentityMap loadedUnits = new IdentityMap();
+	
+	/* Sections loaded in the background, and their tables */
+	private Section sectEnt;
+	private Section sectRel;
+	private Section sectForms;
+	private Section sectMeta;
+	private Section sectRef;
+	private TableViewer entityTV;
+	private TableViewer relationTV;
+	private TableViewer transcriptionTV;
+	private TableViewer referenceTV;
+	private TextStyler transcriptionStyler;
+	private AnnotationQueue annotations;
+	private Label saveStatus;
+	
+	/* Jobs of the last load, and its number to discard older results */
+	private List<Job> sectionLoads = new ArrayList<>();
+	private int loadGeneration = 0;
+	
+	/* 
+	 * Group of the section loads of all Editors, which run at once up to
+	 * the connections of the pool but one, left for the UI. Made for the
+	 * pool size set.
+	 */
+	private static JobGroup loads = null;
+	private static int loadsSize = 0;
+	private static final String LOADING = " (loading...)";
+	
 	private FormToolkit toolkit;
 	private ScrolledForm form;
 	
@@ -140,7 +198,8 @@ public class Editor extends EditorPart {
 		setInput(input);
 		
 		try {
-			conn = DBUtils.connect();
+			/* Editor holds its Connection until it is closed */
+			conn = DBUtils.connectLongLived();
 		} catch (SQLException e) {
 			throw new PartInitException("Could not connect to SQL database");
 		}
@@ -171,6 +230,7 @@ public class Editor extends EditorPart {
 	private void updateDocument() {
 		try {
 			docEntry = new DocumentDao(conn).selectOne(docEntry.getId());
+			loadedUnits = new IdentityMap();
 		} catch (SQLException e) {
 			System.out.println("Couldn't download last version of Document.");
 			e.printStackTrace();
@@ -179,8 +239,23 @@ public class Editor extends EditorPart {
 
 	@Override
 	public void dispose() {
+		cancelSectionLoads();
+		
+		/* Annotations not saved yet are still saved, in the background */
+		if (annotations != null) {
+			annotations.close();
+		}
 		super.dispose();
 		toolkit.dispose();
+		
+		/* Give the Connection back to the session pool */
+		if (conn != null) {
+			try {
+				conn.close();
+			} catch (SQLException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 	
 	/**
@@ -199,6 +274,12 @@ public class Editor extends EditorPart {
 		Button refreshBtn = toolkit.createButton(
 				form.getBody(), "Refresh", SWT.PUSH | SWT.CENTER);
 		
+		/* Annotations are saved in background, this label tells how it goes */
+		saveStatus = toolkit.createLabel(form.getBody(), "");
+		saveStatus.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		annotations = new AnnotationQueue("Doc. " + docIdStr, 
+				parent.getDisplay(), this::annotationsChanged);
+		
 		/* SECTION STATUS OF THE DOCUMENT */
 		Section sectStatus = toolkit.createSection(form.getBody(), 
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
@@ -275,7 +356,7 @@ public class Editor extends EditorPart {
 		regestText.setLayoutData(regestData);
 		
 		/* SECTION ENTITIES */
-		Section sectEnt = toolkit.createSection(form.getBody(), 
+		sectEnt = toolkit.createSection(form.getBody(), 
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
 		sectEnt.setText("Entities at Regest");
 		Composite compEnt = toolkit.createComposite(sectEnt);
@@ -283,18 +364,12 @@ public class Editor extends EditorPart {
 		sectEnt.setClient(compEnt);
 		sectEnt.setExpanded(false);
 
-		/* Table of entities */
+		/* Table of entities, filled by loadSections() */
 		entityInstances = new ArrayList<>();
-		try {
-			entityInstances = new InstanceDao(conn).select(docEntry);
-		} catch (SQLException e1) {
-			e1.printStackTrace();
-			System.out.println("SQLException: could not retrieve instances.");
-		}
 		entityHelper = new EntityTableViewer(compEnt, 
 				entityInstances, regest);
-		TableViewer entityTV = entityHelper.createTableViewer();
-		entityTV.refresh();
+		entityTV = entityHelper.createTableViewer();
+		annotations.decorate(entityTV);
 		
 		/* Label of Regest entities */
 		Label regestLabel = toolkit.createLabel(compEnt, "");
@@ -340,7 +415,7 @@ public class Editor extends EditorPart {
 
 		
 		/* SECTION RELATIONS */
-		Section sectRel = toolkit.createSection(form.getBody(), 
+		sectRel = toolkit.createSection(form.getBody(), 
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
 		sectRel.setText("Relations between Entities");
 		Composite compRel = toolkit.createComposite(sectRel);
@@ -348,17 +423,11 @@ public class Editor extends EditorPart {
 		sectRel.setClient(compRel);
 		sectRel.setExpanded(false);
 		
-		/* Table of relations */
+		/* Table of relations, filled by loadSections() */
 		relations = new ArrayList<>();
-		try {
-			relations = new AnyRelationDao(conn).select(docEntry);
-		} catch (SQLException e) {
-			e.printStackTrace();
-			System.out.println("SQLException: could not retrieve relations.");
-		}
 		relationHelper = new RelationTableViewer(compRel, relations);
-		TableViewer relationTV = relationHelper.createTableViewer();
-		relationTV.refresh();
+		relationTV = relationHelper.createTableViewer();
+		annotations.decorate(relationTV);
 		
 		/* Label of Relations */
 		Label relationLabel = toolkit.createLabel(compRel, "");
@@ -403,11 +472,11 @@ public class Editor extends EditorPart {
 				SWT.BORDER | SWT.READ_ONLY | SWT.MULTI | SWT.WRAP);
 		transcriptionText.setText(docEntry.getTranscriptionText());
 		transcriptionText.setLayoutData(transcriptionData);
-		TextStyler transcriptionStyler = new TextStyler(transcriptionText);
+		transcriptionStyler = new TextStyler(transcriptionText);
 		
 		/* SECTION TRANSCRIPTION FORMS */
 		/* Transcription entities and its table */
-		Section sectForms = toolkit.createSection(form.getBody(),
+		sectForms = toolkit.createSection(form.getBody(),
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
 		sectForms.setText("Transcription forms");
 		Composite compForms = toolkit.createComposite(sectForms);
@@ -415,21 +484,12 @@ public class Editor extends EditorPart {
 		sectForms.setClient(compForms);
 		sectForms.setExpanded(false);
 		
+		/* Table of transcriptions, filled and painted by loadSections() */
 		transcriptions = new ArrayList<>();
-		try {
-			transcriptions = new TranscriptionDao(conn).select(docEntry);
-		} catch (SQLException e) {
-			System.out.println("SQLException: could not retrieve transcriptions.");
-		}
 		transcriptionHelper = new TranscriptionTableViewer(compForms,
 				transcriptions);
-		TableViewer transcriptionTV = transcriptionHelper.createTableViewer();
-		transcriptionTV.refresh();
-		
-		/* Paint transcriptions */
-		for (Transcription t: transcriptions) {
-			transcriptionStyler.addUpdate(t.getCoords().x, t.getCoords().y);
-		}
+		transcriptionTV = transcriptionHelper.createTableViewer();
+		annotations.decorate(transcriptionTV);
 		
 		/* Label of transcriptions */
 		Label transcriptionLabel = toolkit.createLabel(compForms, "");
@@ -467,7 +527,7 @@ public class Editor extends EditorPart {
 		
 		
 		/* SECTION METADATA */
-		Section sectMeta = toolkit.createSection(form.getBody(),
+		sectMeta = toolkit.createSection(form.getBody(),
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
 		sectMeta.setText("Metadata");
 		Composite compMeta = toolkit.createComposite(sectMeta);
@@ -514,18 +574,14 @@ public class Editor extends EditorPart {
 			}
 		});
 		
-		/* The checkbox list is filled with the entries from Materies table on DB */
+		/* 
+		 * The checkbox list is filled with the entries from Materies table 
+		 * on DB, and those already selected in Document checked, by 
+		 * loadSections().
+		 */
 		allMateries = new ArrayList<>();
-		try {
-			allMateries = new MateriaDao(conn).selectAll();
-		} catch (SQLException e1) {
-			System.out.println("Could not query DB to retrieve Materies");
-		}
 		materiesTV.setInput(allMateries);
 		
-		/* Check those Materies already selected in Document */
-		checkMateries();
-		
 		/* Button to save Llengua and Matèries to SQL */
 		Button saveMeta = new Button(compMeta, SWT.PUSH | SWT.CENTER);
 		saveMeta.setText("Save Llengua and Matèries to DB");
@@ -539,11 +595,15 @@ public class Editor extends EditorPart {
 		titleNotes.setText("Notes:");
 		titleNotes.setFont(fontTitle);
 		
+		/* Where each Note starts, to show search matches in them */
 		String notesStr = "";
 		for (Note note : docEntry.getNotes()) {
+			noteOffsets.put(note.getId(), notesStr.length());
 			notesStr += note.getText() + "\n\n";
 		}
-		Text notesText = new Text(form.getBody(), 
+		int trimmed = notesStr.indexOf(notesStr.trim());
+		noteOffsets.replaceAll((id, offset) -> offset - trimmed);
+		notesText = new Text(form.getBody(), 
 				SWT.BORDER | SWT.READ_ONLY | SWT.MULTI | SWT.WRAP);
 		notesText.setText(notesStr.trim());
 		GridData notesData = new GridData(GridData.FILL_HORIZONTAL);
@@ -552,7 +612,7 @@ public class Editor extends EditorPart {
 		
 		/* REFERENCES PART */
 		/* References section */
-		Section sectRef = toolkit.createSection(form.getBody(),  
+		sectRef = toolkit.createSection(form.getBody(),  
 				ExpandableComposite.TREE_NODE | ExpandableComposite.CLIENT_INDENT);
 		sectRef.setText("References in bibliography");
 		Composite compRef = toolkit.createComposite(sectRef);
@@ -567,24 +627,16 @@ public class Editor extends EditorPart {
 				SWT.MULTI | SWT.READ_ONLY | SWT.WRAP);
 		rawRefsText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
 		
-		/* Table of references. Requires bibliography and references */
+		/* 
+		 * Table of references. Requires bibliography and references,
+		 * both filled by loadSections().
+		 */
 		bibliography = new ArrayList<>();
-		try {
-			bibliography = new BibliographyDao(conn).selectAll();
-		} catch (SQLException e) {
-			System.out.println("SQLException: could not retrieve bibliography.");
-		}
 		references = new ArrayList<>();
-		try {
-			references = new ReferenceDao(conn).select(docEntry);
-		} catch (SQLException e) {
-			System.out.println("SQLException: could not retrieve references.");
-			e.printStackTrace();
-		}
 		referenceHelper = new ReferenceTableViewer(
 				compRef, references, bibliography, docEntry);
-		TableViewer referenceTV = referenceHelper.createTableViewer();
-		referenceTV.refresh();
+		referenceTV = referenceHelper.createTableViewer();
+		annotations.decorate(referenceTV);
 		
 		/* Label of references */
 		Label referenceLabel = toolkit.createLabel(compRef, "");
@@ -605,54 +657,19 @@ public class Editor extends EditorPart {
 		refreshBtn.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				updateDocument();
-				comboStateAnnot.select(docEntry.getStateAnnotIdx());
-				comboStateRev.select(docEntry.getStateRevIdx());
-				regestText.setText(docEntry.getRegestText());
-				transcriptionText.setText(docEntry.getTranscriptionText());
-				
-				try {
-					entityInstances = new InstanceDao(conn).select(docEntry);
-				} catch (SQLException e1) {
-					e1.printStackTrace();
-					System.out.println("SQLException: could not retrieve instances.");
-				}
-				try {
-					relations = new AnyRelationDao(conn).select(docEntry);
-				} catch (SQLException e2) {
-					e2.printStackTrace();
-					System.out.println("SQLException: could not retrieve relations.");
+				/* Annotations not saved yet would be lost in the reload */
+				if (!flushAnnotations()) {
+					LabelPrinter.printError(saveStatus, 
+							"Cannot refresh until all annotations are saved.");
+					return;
 				}
-				try {
-					transcriptions = new TranscriptionDao(conn).select(docEntry);
-				} catch (SQLException e3) {
-					System.out.println("SQLException: could not retrieve transcriptions.");
-					e3.printStackTrace();
-				}
-				try {
-					references = new ReferenceDao(conn).select(docEntry);
-				} catch (SQLException e4) {
-					System.out.println("SQLException: could not retrieve references.");
-					e4.printStackTrace();
-				}
-				allMateries = new ArrayList<>();
-				try {
-					allMateries = new MateriaDao(conn).selectAll();
-				} catch (SQLException e5) {
-					e5.printStackTrace();
-					System.out.println("Could not query DB to retrieve Materies");
-				}
-				entityTV.setInput(entityInstances);
-				entityTV.refresh();
-				relationTV.setInput(relations);
-				relationTV.refresh();
-				transcriptionTV.setInput(transcriptions);
-				transcriptionTV.refresh();
-				referenceTV.setInput(references);
-				referenceTV.refresh();
-				
-				selectLlengua();
-				checkMateries();
+				reloadDocument(() -> {
+					comboStateAnnot.select(docEntry.getStateAnnotIdx());
+					comboStateRev.select(docEntry.getStateRevIdx());
+					regestText.setText(docEntry.getRegestText());
+					transcriptionText.setText(docEntry.getTranscriptionText());
+					selectLlengua();
+				});
 			}
 		});
 		saveState.addSelectionListener(new SelectionAdapter() {
@@ -730,10 +747,10 @@ public class Editor extends EditorPart {
 		addArt.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Artista> artists = new ArrayList<>();
+				UnitCatalog<Artista> artists = new UnitCatalog<>(new ArrayList<>());
 				
 				try {
-					artists = new ArtistaDao(conn).selectAll();
+					artists = UnitCatalog.get(new ArtistaDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve Artists");
 				}
@@ -751,9 +768,9 @@ public class Editor extends EditorPart {
 		addInst.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Instrument> instruments = new ArrayList<>();
+				UnitCatalog<Instrument> instruments = new UnitCatalog<>(new ArrayList<>());
 				try {
-					instruments = new InstrumentDao(conn).selectAll();
+					instruments = UnitCatalog.get(new InstrumentDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve instruments");
 				}
@@ -771,9 +788,9 @@ public class Editor extends EditorPart {
 		addCasa.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Casa> cases = new ArrayList<>();
+				UnitCatalog<Casa> cases = new UnitCatalog<>(new ArrayList<>());
 				try {
-					cases = new CasaDao(conn).selectAll();
+					cases = UnitCatalog.get(new CasaDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve cases");
 				}
@@ -791,9 +808,9 @@ public class Editor extends EditorPart {
 		addProm.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Promotor> proms = new ArrayList<>();
+				UnitCatalog<Promotor> proms = new UnitCatalog<>(new ArrayList<>());
 				try {
-					proms = new PromotorDao(conn).selectAll();
+					proms = UnitCatalog.get(new PromotorDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve proms");
 				}
@@ -811,9 +828,9 @@ public class Editor extends EditorPart {
 		addOfici.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Ofici> oficis = new ArrayList<>();
+				UnitCatalog<Ofici> oficis = new UnitCatalog<>(new ArrayList<>());
 				try {
-					oficis = new OficiDao(conn).selectAll();
+					oficis = UnitCatalog.get(new OficiDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve oficis");
 				}
@@ -831,9 +848,9 @@ public class Editor extends EditorPart {
 		addLloc.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Lloc> llocs = new ArrayList<>();
+				UnitCatalog<Lloc> llocs = new UnitCatalog<>(new ArrayList<>());
 				try {
-					llocs = new LlocDao(conn).selectAll();
+					llocs = UnitCatalog.get(new LlocDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve llocs");
 				}
@@ -851,9 +868,9 @@ public class Editor extends EditorPart {
 		addGenere.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<GenereLiterari> generes = new ArrayList<>();
+				UnitCatalog<GenereLiterari> generes = new UnitCatalog<>(new ArrayList<>());
 				try {
-					generes = new GenereLiterariDao(conn).selectAll();
+					generes = UnitCatalog.get(new GenereLiterariDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve generes");
 				}
@@ -897,30 +914,33 @@ public class Editor extends EditorPart {
 						}
 					}
 					if (!used) {
-						/* OK case */
-						try {
-							new InstanceDao(conn).delete(ent);
-							entityInstances.remove(ent);
-							System.out.println("Removing entity - " 
-									+ entityInstances.size());
-							LabelPrinter.printInfo(regestLabel, 
-									"Entity deleted successfully.");
-							
-							entityTV.refresh();
-						} catch (SQLIntegrityConstraintViolationException e1) {
-							LabelPrinter.printError(regestLabel, 
-									"Cannot delete Entity Instance in use.");
-							System.out.println("Could not delete: entity in use.");
-						} catch (SQLException e2) {
-							if (e2.getSQLState().equals("42000")) {
-								System.out.println("Disconnected exception.");
-								LabelPrinter.printError(regestLabel, 
-										"You must be connected to perform changes to the DB.");
-							} else {
-								e2.printStackTrace();
-								System.out.println("SQLException: could not delete Instance.");
+						/* OK case, the Instance comes back if the DB refuses */
+						List<EntityInstance> entities = entityInstances;
+						entities.remove(ent);
+						annotations.add(new AnnotationQueue.Write(ent, 
+								"delete Entity " + ent) {
+							@Override
+							protected void run(Connection c) throws SQLException {
+								new InstanceDao(c).delete(ent);
 							}
-						}
+							@Override
+							protected void rejected(SQLException error) {
+								entities.add(ent);
+								if (error instanceof SQLIntegrityConstraintViolationException) {
+									LabelPrinter.printError(regestLabel, 
+											"Cannot delete Entity Instance in use.");
+								} else {
+									LabelPrinter.printError(regestLabel, 
+											rejection("Could not delete Entity", error));
+								}
+							}
+						});
+						System.out.println("Removing entity - " 
+								+ entities.size());
+						LabelPrinter.printInfo(regestLabel, 
+								"Entity deleted.");
+						
+						entityTV.refresh();
 					} else {
 						/* Entity in use in some relation of the document */
 						LabelPrinter.printError(regestLabel, 
@@ -1086,26 +1106,28 @@ public class Editor extends EditorPart {
 					LabelPrinter.printError(relationLabel, 
 							"You must select a relation to delete it.");
 				} else {
-					try {
-						/* OK case */
-						new AnyRelationDao(conn).delete(rel);
-						relations.remove(rel);
-						System.out.println("Removing relation - " 
-								+ relations.size());
-						LabelPrinter.printInfo(relationLabel, 
-								"Relation deleted successfully.");
-						
-						relationTV.refresh();
-					} catch (SQLException e1) {
-						if (e1.getSQLState().equals("42000")) {
-							System.out.println("Disconnected exception.");
+					/* OK case, the Relation comes back if the DB refuses */
+					List<Relation> rels = relations;
+					rels.remove(rel);
+					annotations.add(new AnnotationQueue.Write(rel, 
+							"delete Relation " + rel) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							new AnyRelationDao(c).delete(rel);
+						}
+						@Override
+						protected void rejected(SQLException error) {
+							rels.add(rel);
 							LabelPrinter.printError(relationLabel, 
-									"You must be connected to perform changes to the DB.");
-						} else {
-							System.out.println("SQLException: could not delete relation.");
-							e1.printStackTrace();
+									rejection("Could not delete Relation", error));
 						}
-					}
+					});
+					System.out.println("Removing relation - " 
+							+ rels.size());
+					LabelPrinter.printInfo(relationLabel, 
+							"Relation deleted.");
+					
+					relationTV.refresh();
 				}
 			}
 		});
@@ -1192,29 +1214,33 @@ public class Editor extends EditorPart {
 					LabelPrinter.printError(transcriptionLabel, 
 							"You must select a transcription to delete it.");
 				} else {
-					/* OK case */
-					try {
-						new TranscriptionDao(conn).delete(trans);
-						transcriptions.remove(trans);
-						
-						/* Undo colour in text */
-						Point charCoords = trans.getCoords();
-						transcriptionStyler.deleteUpdate(charCoords.x, charCoords.y);
-						
-						System.out.println("Removing lemma - " 
-								+ transcriptions.size());
-						LabelPrinter.printInfo(transcriptionLabel, 
-								"Transcription deleted successfully.");
-						transcriptionTV.refresh();
-					} catch (SQLException e1) {
-						if (e1.getSQLState().equals("42000")) {
-							System.out.println("Disconnected exception.");
+					/* OK case, the form comes back if the DB refuses */
+					List<Transcription> forms = transcriptions;
+					forms.remove(trans);
+					
+					/* Undo colour in text */
+					Point charCoords = trans.getCoords();
+					transcriptionStyler.deleteUpdate(charCoords.x, charCoords.y);
+					
+					annotations.add(new AnnotationQueue.Write(trans, 
+							"delete Transcription " + trans) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							new TranscriptionDao(c).delete(trans);
+						}
+						@Override
+						protected void rejected(SQLException error) {
+							forms.add(trans);
+							transcriptionStyler.addUpdate(charCoords.x, charCoords.y);
 							LabelPrinter.printError(transcriptionLabel, 
-									"You must be connected to perform changes to the DB.");
-						} else {
-							System.out.println("SQLException: could not delete trans.");
+									rejection("Could not delete Transcription", error));
 						}
-					}
+					});
+					System.out.println("Removing lemma - " 
+							+ forms.size());
+					LabelPrinter.printInfo(transcriptionLabel, 
+							"Transcription deleted.");
+					transcriptionTV.refresh();
 				}
 			}
 		});
@@ -1223,10 +1249,10 @@ public class Editor extends EditorPart {
 		addRef.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				List<Bibliography> biblio = new ArrayList<>();
+				UnitCatalog<Bibliography> biblio = new UnitCatalog<>(new ArrayList<>());
 				
 				try {
-					biblio = new BibliographyDao(conn).selectAll();
+					biblio = UnitCatalog.get(new BibliographyDao(conn));
 				} catch (SQLException e1) {
 					System.out.println("SQLException: could not retrieve Artists");
 				}
@@ -1250,28 +1276,334 @@ public class Editor extends EditorPart {
 					LabelPrinter.printError(referenceLabel, 
 							"You must select a reference to delete it.");
 				} else {
-					try {
-						new ReferenceDao(conn).delete(ref);
-						references.remove(ref);
-						
-						LabelPrinter.printInfo(referenceLabel, 
-								"Reference deleted successfully.");
-						System.out.println("Removing Reference " + ref.toString());
-						
-						referenceTV.refresh();
-					} catch (SQLException e1) {
-						if (e1.getSQLState().equals("42000")) {
-							System.out.println("Disconnected exception.");
+					/* OK case, the Reference comes back if the DB refuses */
+					List<MiMusReference> refs = references;
+					refs.remove(ref);
+					annotations.add(new AnnotationQueue.Write(ref, 
+							"delete Reference " + ref) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							new ReferenceDao(c).delete(ref);
+						}
+						@Override
+						protected void rejected(SQLException error) {
+							refs.add(ref);
 							LabelPrinter.printError(referenceLabel, 
-									"You must be connected to perform changes to the DB.");
-						} else {
-							System.out.println("SQLException: could not delete ref");
-							e1.printStackTrace();
+									rejection("Could not delete Reference", error));
 						}
-					}
+					});
+					
+					LabelPrinter.printInfo(referenceLabel, 
+							"Reference deleted.");
+					System.out.println("Removing Reference " + ref.toString());
+					
+					referenceTV.refresh();
 				}
 			}
 		});
+		
+		loadSections();
+	}
+	
+	/**
+	 * Downloads the Document again in a background Job, shows its fields
+	 * with <showFields>, in the UI thread, and then loads its sections, 
+	 * as loadSections() does. If it can't be downloaded, the Document 
+	 * already shown is kept.
+	 */
+	private void reloadDocument(Runnable showFields) {
+		cancelSectionLoads();
+		int generation = loadGeneration;
+		Display display = form.getDisplay();
+		int id = docEntry.getId();
+		Job job = new Job("Loading Doc. " + docIdStr) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				Document doc = null;
+				try (Connection c = DBUtils.connect()) {
+					doc = new DocumentDao(c).selectOne(id);
+					
+					/* Parts shown, so they aren't loaded by the UI thread */
+					doc.getRegestText();
+					doc.getLanguage();
+				} catch (SQLException | DocumentLoadException e) {
+					System.out.println("Couldn't download last version of Document.");
+					e.printStackTrace();
+					doc = null;
+				}
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				Document result = doc;
+				if (!display.isDisposed()) {
+					display.asyncExec(() -> {
+						if (form.isDisposed() || generation != loadGeneration) {
+							return;
+						}
+						if (result != null) {
+							docEntry = result;
+							loadedUnits = new IdentityMap();
+							showFields.run();
+						}
+						loadSections();
+					});
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		sectionLoads.add(job);
+		job.schedule();
+	}
+	
+	/**
+	 * Downloads the annotations of the Document (entities, relations,
+	 * transcriptions, references) and the Materies in background Jobs, 
+	 * so the Editor is shown at once and each section is filled as soon 
+	 * as its own data arrives. Each section has its own Job, with its
+	 * own Connection borrowed from the session pool, so they are all 
+	 * downloaded at once; the Jobs of all Editors share a JobGroup that
+	 * keeps them from taking every Connection of the pool. Until then, 
+	 * the section is disabled and marked as loading. A previous load 
+	 * still running is cancelled, and its results discarded.
+	 */
+	private void loadSections() {
+		cancelSectionLoads();
+		int generation = loadGeneration;
+		Display display = form.getDisplay();
+		Document doc = docEntry;
+		IdentityMap units = loadedUnits;
+		List<SectionLoad<?>> loads = new ArrayList<>();
+		
+		/* Transcriptions point to entities, so they reuse those loaded */
+		loads.add(new SectionLoad<List<Object>>("Entities and forms", 
+				generation, display, sectEnt, sectForms) {
+			@Override
+			protected List<Object> load(Connection c) throws SQLException {
+				List<Object> data = new ArrayList<>();
+				data.add(share(new InstanceDao(c), units).select(doc));
+				data.add(share(new TranscriptionDao(c), units).select(doc));
+				return data;
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			protected void show(List<Object> data) {
+				entityInstances = (List<EntityInstance>) data.get(0);
+				entityTV.setInput(entityInstances);
+				entityTV.refresh();
+				transcriptions = (List<Transcription>) data.get(1);
+				transcriptionTV.setInput(transcriptions);
+				transcriptionTV.refresh();
+				
+				/* Paint transcriptions */
+				transcriptionStyler.clear();
+				for (Transcription t: transcriptions) {
+					transcriptionStyler.add(t.getCoords().x, t.getCoords().y);
+				}
+				transcriptionStyler.update();
+			}
+		});
+		loads.add(new SectionLoad<List<Relation>>("Relations", 
+				generation, display, sectRel) {
+			@Override
+			protected List<Relation> load(Connection c) throws SQLException {
+				return share(new AnyRelationDao(c), units).select(doc);
+			}
+			@Override
+			protected void show(List<Relation> data) {
+				relations = data;
+				relationTV.setInput(relations);
+				relationTV.refresh();
+			}
+		});
+		loads.add(new SectionLoad<List<Object>>("References", 
+				generation, display, sectRef) {
+			@Override
+			protected List<Object> load(Connection c) throws SQLException {
+				List<Object> data = new ArrayList<>();
+				data.add(new BibliographyDao(c).selectAll());
+				data.add(share(new ReferenceDao(c), units).select(doc));
+				return data;
+			}
+			@SuppressWarnings("unchecked")
+			@Override
+			protected void show(List<Object> data) {
+				bibliography = (List<Bibliography>) data.get(0);
+				references = (List<MiMusReference>) data.get(1);
+				referenceHelper.setBibEntries(bibliography);
+				referenceTV.setInput(references);
+				referenceTV.refresh();
+			}
+		});
+		loads.add(new SectionLoad<List<Materia>>("Materies", 
+				generation, display, sectMeta) {
+			@Override
+			protected List<Materia> load(Connection c) throws SQLException {
+				return new MateriaDao(c).selectAll();
+			}
+			@Override
+			protected void show(List<Materia> data) {
+				allMateries = data;
+				materiesTV.setInput(allMateries);
+				
+				/* Check those Materies already selected in Document */
+				checkMateries();
+			}
+		});
+		JobGroup group = getLoads();
+		for (SectionLoad<?> load : loads) {
+			Job job = new Job("Loading " + load.name + " of Doc. " + docIdStr) {
+				@Override
+				protected IStatus run(IProgressMonitor monitor) {
+					if (monitor.isCanceled()) {
+						return Status.CANCEL_STATUS;
+					}
+					try (Connection c = DBUtils.connect()) {
+						load.run(c);
+					} catch (SQLException e) {
+						System.out.println("SQLException: could not load " 
+								+ load.name + " of Doc. " + docIdStr + ".");
+						e.printStackTrace();
+						
+						/* Enable the section, empty */
+						load.fail();
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			job.setJobGroup(group);
+			sectionLoads.add(job);
+			job.schedule();
+		}
+	}
+	
+	/**
+	 * Cancels the Jobs of the last call to loadSections() or 
+	 * reloadDocument(), if they are still running, and makes sure their 
+	 * results are not shown.
+	 */
+	private void cancelSectionLoads() {
+		loadGeneration++;
+		for (Job job : sectionLoads) {
+			job.cancel();
+		}
+		sectionLoads.clear();
+	}
+	
+	/**
+	 * Returns the JobGroup of the section loads, sized for the pool of
+	 * connections set: all of its connections but one, and at least one.
+	 */
+	private static synchronized JobGroup getLoads() {
+		int size = Math.max(1, DBUtils.getPoolMaxSize() - 1);
+		if (loads == null || loadsSize != size) {
+			loads = new JobGroup("Loading Documents", size, 0);
+			loadsSize = size;
+		}
+		return loads;
+	}
+	
+	/**
+	 * Makes <dao> share the Units already loaded by this Editor, <units>,
+	 * so annotations pointing to the same Document or Entity don't 
+	 * download it again, even from different Jobs. Returns <dao>.
+	 */
+	private static <D extends UnitDao<?>> D share(D dao, IdentityMap units) {
+		dao.setIdentityMap(units);
+		return dao;
+	}
+	
+	/**
+	 * Download of the data of some sections of the Editor, run by its
+	 * Job of loadSections(), which shows it in the UI thread. Sections
+	 * are disabled and titled as loading until it is shown.
+	 * 
+	 * @param <T> Type of the data downloaded.
+	 */
+	private abstract class SectionLoad<T> {
+		
+		private final String name;
+		private final int generation;
+		private final Display display;
+		private final Section[] sections;
+		private final String[] titles;
+		
+		public SectionLoad(String name, int generation, Display display, 
+				Section... sections) {
+			this.name = name;
+			this.generation = generation;
+			this.display = display;
+			this.sections = sections;
+			this.titles = new String[sections.length];
+			for (int i=0; i<sections.length; i++) {
+				String title = sections[i].getText();
+				if (title.endsWith(LOADING)) {
+					title = title.substring(0, title.length() - LOADING.length());
+				}
+				titles[i] = title;
+				sections[i].setText(title + LOADING);
+				sections[i].getClient().setEnabled(false);
+			}
+		}
+		
+		/**
+		 * Downloads the data of the sections using <conn>. Runs in the 
+		 * Job thread, so it must not touch the UI.
+		 */
+		protected abstract T load(Connection conn) throws SQLException;
+		
+		/**
+		 * Shows <data> in the sections. Runs in the UI thread.
+		 */
+		protected abstract void show(T data);
+		
+		/**
+		 * Downloads the data with <conn> and has it shown. If it fails, 
+		 * the sections are left empty. Runs in the Job thread.
+		 */
+		public void run(Connection conn) {
+			T data = null;
+			try {
+				data = load(conn);
+			} catch (SQLException e) {
+				System.out.println("SQLException: could not retrieve " 
+						+ name + " of Doc. " + docIdStr + ".");
+				e.printStackTrace();
+			}
+			T result = data;
+			if (!display.isDisposed()) {
+				display.asyncExec(() -> finish(result));
+			}
+		}
+		
+		/**
+		 * Leaves the sections empty, as their data could not be 
+		 * downloaded. Runs in the Job thread.
+		 */
+		public void fail() {
+			if (!display.isDisposed()) {
+				display.asyncExec(() -> finish(null));
+			}
+		}
+		
+		/**
+		 * Shows <data> unless the Editor was closed or loaded again, and
+		 * enables the sections. Sections of a failed load are left empty.
+		 */
+		private void finish(T data) {
+			if (form.isDisposed() || generation != loadGeneration) {
+				return;
+			}
+			if (data != null) {
+				show(data);
+			}
+			for (int i=0; i<sections.length; i++) {
+				sections[i].setText(titles[i]);
+				sections[i].getClient().setEnabled(true);
+			}
+			form.reflow(true);
+		}
 	}
 	
 	/**
@@ -1307,7 +1639,7 @@ public class Editor extends EditorPart {
 	/**
 	 * When a button for adding entities is pressed, an InstanceDialog
 	 * is opened to the user. This method processes its result and
-	 * performs the insertion to the DB when it's the case.
+	 * queues the insertion to the DB when it's the case.
 	 */
 	private void runDialog(InstanceDialog<? extends Entity> dialog, 
 			List<EntityInstance> entities, Label label) {
@@ -1315,36 +1647,55 @@ public class Editor extends EditorPart {
 		if (dialogResult == Window.OK) {
 			Entity added = dialog.getUnit();
 			if (added != null) {
+				/* 
+				 * The unique constraint of the DB is checked here too, as 
+				 * the insertion is made later.
+				 */
+				for (EntityInstance other : entities) {
+					if (other.getItsEntity().getId() == added.getId()) {
+						System.out.println("Cannot insert same Instance twice.");
+						LabelPrinter.printError(label, 
+								"Cannot add the same entity twice.");
+						return;
+					}
+				}
+				
+				/* OK case, the Instance is removed if the DB refuses it */
 				EntityInstance inst = new EntityInstance(
 						added, docEntry);
-				try {
-					int id = new InstanceDao(conn).insert(inst);
-					if (id>0) {
-						/* OK case */
+				entities.add(inst);
+				annotations.add(new AnnotationQueue.Write(inst, 
+						"add Entity " + added) {
+					@Override
+					protected void run(Connection c) throws SQLException {
+						int id = new InstanceDao(c).insert(inst);
+						if (id <= 0) {
+							throw new SQLException(
+									"DAO: could not insert Instance.", "HY000");
+						}
 						inst.setId(id);
-						entities.add(inst);
-						System.out.println("Adding selected Entity - " 
-								+ entities.size());
-						LabelPrinter.printInfo(label, 
-								"Entity added successfully.");
-					} else {
-						System.out.println("DAO: could not insert Instance.");
 					}
-				} catch (SQLIntegrityConstraintViolationException e1) {
-					/* Unique constraint violated when inserting same entity */
-					System.out.println("Cannot insert same Instance twice.");
-					LabelPrinter.printError(label, 
-							"Cannot add the same entity twice.");
-				} catch (SQLException e2) {
-					if (e2.getSQLState().equals("42000")) {
-						System.out.println("Disconnected exception.");
-						LabelPrinter.printError(label, 
-								"You must be connected to perform changes to the DB.");
-					} else {
-						e2.printStackTrace();
-						System.out.println("SQLException: could not insert Instance.");
+					@Override
+					protected void rolledBack() {
+						inst.setId(0);
 					}
-				}
+					@Override
+					protected void rejected(SQLException error) {
+						entities.remove(inst);
+						if (error instanceof SQLIntegrityConstraintViolationException) {
+							/* Unique constraint violated when inserting same entity */
+							LabelPrinter.printError(label, 
+									"Cannot add the same entity twice.");
+						} else {
+							LabelPrinter.printError(label, 
+									rejection("Could not add Entity", error));
+						}
+					}
+				});
+				System.out.println("Adding selected Entity - " 
+						+ entities.size());
+				LabelPrinter.printInfo(label, 
+						"Entity added.");
 			} else {
 				/* No entities declared, nothing could be selected */
 				System.out.println("No Entity added - " 
@@ -1364,7 +1715,7 @@ public class Editor extends EditorPart {
 	/**
 	 * When a button for adding transcriptions is pressed,
 	 * a TranscriptionDialog is opened to the user. This method 
-	 * processes its result and performs the insertion to the DB 
+	 * processes its result and queues the insertion to the DB 
 	 * when it's the case.
 	 */
 	private void runTranscriptionDialog(TranscriptionDialog dialog, 
@@ -1397,28 +1748,35 @@ public class Editor extends EditorPart {
 					/* Selected entity has been marked in this document */
 					Transcription trans = new Transcription(
 							inst, selectedText, form, charCoords);
-					try {
-						int id = new TranscriptionDao(conn).insert(trans);
-						if (id>0) {
-							/* OK case */
+					
+					/* OK case, the form is removed if the DB refuses it */
+					transcriptions.add(trans);
+					styler.addUpdate(charCoords.x, charCoords.y);
+					annotations.add(new AnnotationQueue.Write(trans, 
+							"add Transcription " + form) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							int id = new TranscriptionDao(c).insert(trans);
+							if (id <= 0) {
+								throw new SQLException(
+										"DAO: could not insert transcription.", "HY000");
+							}
 							trans.setId(id);
-							transcriptions.add(trans);
-							LabelPrinter.printInfo(label, 
-									"Lemma added successfully.");
-							styler.addUpdate(charCoords.x, charCoords.y);
-						} else {
-							System.out.println("DAO: could not insert transcription.");
 						}
-					} catch (SQLException e) {
-						if (e.getSQLState().equals("42000")) {
-							System.out.println("Disconnected exception.");
+						@Override
+						protected void rolledBack() {
+							trans.setId(0);
+						}
+						@Override
+						protected void rejected(SQLException error) {
+							transcriptions.remove(trans);
+							styler.deleteUpdate(charCoords.x, charCoords.y);
 							LabelPrinter.printError(label, 
-									"You must be connected to perform changes to the DB.");
-						} else {
-							e.printStackTrace();
-							System.out.println("SQLException: could not insert transcription.");
+									rejection("Could not add Transcription", error));
 						}
-					}
+					});
+					LabelPrinter.printInfo(label, 
+							"Lemma added.");
 				} else {
 					/* User pressed OK but selected nothing */
 					System.out.println("No Transcription added - " 
@@ -1445,7 +1803,7 @@ public class Editor extends EditorPart {
 	/**
 	 * When a button for adding relations is pressed, a RelationDialog
 	 * is opened to the user. This method processes its result and
-	 * performs the insertion to the DB when it's the case.
+	 * queues the insertion to the DB when it's the case.
 	 */
 	private void runRelationDialog(RelationDialog dialog,
 			List<Relation> relations, Label label) {
@@ -1458,57 +1816,61 @@ public class Editor extends EditorPart {
 				Relation rel = new Relation(docEntry,
 						instance1, instance2, "",
 						0, 0);
-				try {
-					String type1 = dialog.getEntityType1();
-					String type2 = dialog.getEntityType2();
-					RelationDao dao = null;
-					if (type1.equals("Artista") && type2.equals("Ofici")) {
-						dao = new TeOficiDao(conn);
-					} else if (type1.equals("Promotor") && type2.equals("Casa")) {
-						dao = new TeCasaDao(conn);
-					} else if (type1.equals("Artista") && type2.equals("Promotor")) {
-						dao = new ServeixADao(conn);
-					} else if (type1.equals("Artista") && type2.equals("Lloc")) {
-						dao = new ResideixADao(conn);
-					}
+				String type1 = dialog.getEntityType1();
+				String type2 = dialog.getEntityType2();
+				RelationDao dao = null;
+				if (type1.equals("Artista") && type2.equals("Ofici")) {
+					dao = new TeOficiDao(conn);
+				} else if (type1.equals("Promotor") && type2.equals("Casa")) {
+					dao = new TeCasaDao(conn);
+				} else if (type1.equals("Artista") && type2.equals("Promotor")) {
+					dao = new ServeixADao(conn);
+				} else if (type1.equals("Artista") && type2.equals("Lloc")) {
+					dao = new ResideixADao(conn);
+				}
+				
+				if (dao != null) {
+					dialog.setRelType(dao.getTable());
+					rel.setType(dialog.getRelType());
 					
-					if (dao != null) {
-						dialog.setRelType(dao.getTable());
-						rel.setType(dialog.getRelType());
-						try {
-							int id = dao.insert(rel);
-							if (id>0) {
-								/* OK case */
-								relations.clear();
-								relations.addAll(new AnyRelationDao(getConnection())
-										.select(docEntry));
-								
-								System.out.println("Adding selected Relation - " 
-										+ relations.size());
-								LabelPrinter.printInfo(label, 
-										"Relation added successfully.");
+					/* OK case, the Relation is removed if the DB refuses it */
+					RelationDao relDao = dao;
+					relations.add(rel);
+					annotations.add(new AnnotationQueue.Write(rel, 
+							"add Relation " + rel) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							/* The DAO of the type, with the Connection of the queue */
+							relDao.setConnection(c);
+							if (relDao.insert(rel) <= 0) {
+								throw new SQLException(
+										"DAO: could not add relation.", "HY000");
+							}
+						}
+						@Override
+						protected void rolledBack() {
+							rel.setId(0);
+							rel.setSpecificId(0);
+						}
+						@Override
+						protected void rejected(SQLException error) {
+							relations.remove(rel);
+							if (error instanceof SQLIntegrityConstraintViolationException) {
+								/* Unique constraint violated */
+								LabelPrinter.printError(label, 
+										"Cannot add the same relation twice.");
 							} else {
-								System.out.println("DAO: could not add relation.");
+								LabelPrinter.printError(label, 
+										rejection("Could not add Relation", error));
 							}
-						} catch (SQLIntegrityConstraintViolationException e1) {
-							/* Unique constraint violated */
-							System.out.println(
-									"Cannot add the same relation twice.");
-							LabelPrinter.printError(label, 
-									"Cannot add the same relation twice.");
 						}
-					} else {
-						System.out.println("Error: unknown relation in dialog.");
-					}
-				} catch (SQLException e2) {
-					if (e2.getSQLState().equals("42000")) {
-						System.out.println("Disconnected exception.");
-						LabelPrinter.printError(label, 
-								"You must be connected to perform changes to the DB.");
-					} else {
-						System.out.println("SQLException: could not add relation.");
-						e2.printStackTrace();
-					}
+					});
+					System.out.println("Adding selected Relation - " 
+							+ relations.size());
+					LabelPrinter.printInfo(label, 
+							"Relation added.");
+				} else {
+					System.out.println("Error: unknown relation in dialog.");
 				}
 			} else {
 				/* No instances selected by the user */
@@ -1529,7 +1891,7 @@ public class Editor extends EditorPart {
 	/**
 	 * When a button for adding references is pressed, a ReferenceDialog
 	 * is opened to the user. This method processes its result and
-	 * performs the insertion to the DB when it's the case.
+	 * queues the insertion to the DB when it's the case.
 	 */
 	private void runReferenceDialog(ReferenceDialog dialog,
 			List<Bibliography> bibliography, Label label) {
@@ -1548,33 +1910,42 @@ public class Editor extends EditorPart {
 					String pages = dialog.getPages();
 					MiMusReference ref = new MiMusReference(added, docEntry,
 							note, pages, type, 0);
-					try {
-						int id = new ReferenceDao(conn).insert(ref);
-						if (id>0) {
-							/* OK case */
+					
+					/* OK case, the Reference is removed if the DB refuses it */
+					List<MiMusReference> refs = references;
+					refs.add(ref);
+					annotations.add(new AnnotationQueue.Write(ref, 
+							"add Reference " + ref) {
+						@Override
+						protected void run(Connection c) throws SQLException {
+							int id = new ReferenceDao(c).insert(ref);
+							if (id <= 0) {
+								throw new SQLException(
+										"DAO: could not insert reference", "HY000");
+							}
 							ref.setId(id);
-							references.add(ref);
-							
-							System.out.println("Adding selected Reference - " 
-									+ references.size());
-							LabelPrinter.printInfo(label, 
-									"Reference added successfully.");
-						} else {
-							System.out.println("DAO: could not insert reference");
 						}
-					} catch (SQLIntegrityConstraintViolationException e1) {
-						LabelPrinter.printError(label, 
-								"Cannot insert same Reference twice.");
-						System.out.println("Cannot insert same Reference twice.");
-					} catch (SQLException e2) {
-						if (e2.getSQLState().equals("42000")) {
-							System.out.println("Disconnected exception.");
-							LabelPrinter.printError(label, 
-									"You must be connected to perform changes to the DB.");
-						} else {
-							System.out.println("SQLException: could not insert reference");
+						@Override
+						protected void rolledBack() {
+							ref.setId(0);
 						}
-					}
+						@Override
+						protected void rejected(SQLException error) {
+							refs.remove(ref);
+							if (error instanceof SQLIntegrityConstraintViolationException) {
+								LabelPrinter.printError(label, 
+										"Cannot insert same Reference twice.");
+							} else {
+								LabelPrinter.printError(label, 
+										rejection("Could not add Reference", error));
+							}
+						}
+					});
+					
+					System.out.println("Adding selected Reference - " 
+							+ refs.size());
+					LabelPrinter.printInfo(label, 
+							"Reference added.");
 				}
 			} else {
 				/* No bibliography declared, nothing could be selected */
@@ -1596,9 +1967,51 @@ public class Editor extends EditorPart {
 		return conn;
 	}
 	
+	/**
+	 * Tells how the saving of the annotations goes, and shows which
+	 * ones are not saved yet. Run by the AnnotationQueue when writes
+	 * are made or fail.
+	 */
+	private void annotationsChanged() {
+		if (form.isDisposed()) {
+			return;
+		}
+		int pending = annotations.getPending();
+		int failed = annotations.getFailed();
+		if (failed > 0) {
+			LabelPrinter.printError(saveStatus, failed 
+					+ " annotations not saved, the DB can't be reached. "
+					+ "Retrying...");
+		} else if (pending > 0) {
+			LabelPrinter.printInfo(saveStatus, 
+					"Saving " + pending + " annotations...");
+		} else {
+			LabelPrinter.printInfo(saveStatus, "All annotations saved.");
+		}
+		entityTV.refresh();
+		relationTV.refresh();
+		transcriptionTV.refresh();
+		referenceTV.refresh();
+		firePropertyChange(IEditorPart.PROP_DIRTY);
+	}
+	
+	/**
+	 * Returns the message telling that <what> was refused by the DB
+	 * with <error>.
+	 */
+	private static String rejection(String what, SQLException error) {
+		if ("42000".equals(error.getSQLState())) {
+			return "You must be connected to perform changes to the DB.";
+		}
+		return what + ": " + error.getMessage();
+	}
+	
+	/**
+	 * The Editor is dirty while some annotations are not saved yet.
+	 */
 	@Override
 	public boolean isDirty() {
-		return false;
+		return annotations != null && !annotations.isIdle();
 	}
 
 	@Override
@@ -1606,8 +2019,117 @@ public class Editor extends EditorPart {
 		form.setFocus();
 	}
 	
+	/**
+	 * Tells Eclipse to open an Editor with <document> as input, or brings
+	 * to front the one already open with it, and returns it. Returns null
+	 * if it could not be opened. Open Documents are compared by ID, as
+	 * the same Document may come in another object from other views.
+	 */
+	public static Editor open(Document document) {
+		IWorkbenchPage page = PlatformUI.getWorkbench()
+				.getActiveWorkbenchWindow().getActivePage();
+		try {
+			for (IEditorReference ref : page.getEditorReferences()) {
+				if (ID.equals(ref.getId())
+						&& ref.getEditorInput() instanceof Document
+						&& ((Document) ref.getEditorInput()).getId()
+						== document.getId()) {
+					IEditorPart editor = ref.getEditor(true);
+					page.activate(editor);
+					return editor instanceof Editor ? (Editor) editor : null;
+				}
+			}
+			QueryMonitor.begin("Open Editor Doc. " + document.getIdStr());
+			IEditorPart editor = IDE.openEditor(page, document, ID);
+			return editor instanceof Editor ? (Editor) editor : null;
+		} catch (PartInitException e) {
+			e.printStackTrace();
+			System.out.println("Cannot open editor from document.");
+			return null;
+		}
+	}
+	
+	/**
+	 * Marks the matches of a search in the transcription, at coordinates
+	 * <coords> like those of Transcriptions, over their highlights.
+	 */
+	public void highlightMatches(List<Point> coords) {
+		transcriptionStyler.setMarks(coords);
+	}
+	
+	/**
+	 * Selects characters <start> to <end> of text <field> of the Document,
+	 * or of its Note <noteId>, and scrolls the Editor to show them.
+	 */
+	public void showMatch(FullTextIndex.Field field, int noteId, 
+			int start, int end) {
+		switch (field) {
+		case TRANSCRIPTION:
+			transcriptionText.setSelection(start, end);
+			transcriptionText.showSelection();
+			form.showControl(transcriptionText);
+			break;
+		case REGEST:
+			regestText.setSelection(start, end);
+			regestText.showSelection();
+			form.showControl(regestText);
+			break;
+		case NOTE:
+			Integer offset = noteOffsets.get(noteId);
+			if (offset != null) {
+				notesText.setSelection(offset + start, offset + end);
+				notesText.showSelection();
+				form.showControl(notesText);
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Saves the annotations not saved yet, waiting for them. If they
+	 * can't be saved, e.g. when disconnected, the save is cancelled.
+	 */
+	@Override
+	public void doSave(IProgressMonitor monitor) {
+		if (!flushAnnotations()) {
+			annotationsChanged();
+			monitor.setCanceled(true);
+		}
+	}
+	
+	/**
+	 * On closing, annotations not saved yet are saved without asking.
+	 * Only if they can't be, the user is asked, and they are still 
+	 * retried in background unless the Editor is kept open.
+	 */
 	@Override
-	public void doSave(IProgressMonitor monitor) {}
+	public int promptToSaveOnClose() {
+		if (annotations == null || flushAnnotations()) {
+			return NO;
+		}
+		return DEFAULT;
+	}
+	
+	/**
+	 * Saves the annotations not saved yet, waiting for them in a dialog
+	 * the user can cancel, so the workbench is not frozen while the DB 
+	 * can't be reached. Returns whether they all were saved.
+	 */
+	private boolean flushAnnotations() {
+		if (annotations.isIdle()) {
+			return true;
+		}
+		boolean[] saved = {false};
+		try {
+			new ProgressMonitorDialog(getSite().getShell()).run(true, true, 
+					monitor -> saved[0] = annotations.flush(monitor));
+		} catch (InvocationTargetException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			/* Cancelled by the user */
+		}
+		return saved[0];
+	}
 	
 	@Override
 	public void doSaveAs() {}
@@ -8,9 +8,8 @@ import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 
-import model.Document;
 import model.Entity;
-import persistence.DocumentDao;
+import persistence.UsageIndex;
 
 public abstract class EntityView<E extends Entity> extends DeclarativeView<E> {
 	
@@ -20,21 +19,19 @@ public abstract class EntityView<E extends Entity> extends DeclarativeView<E> {
 
 	protected abstract void fillFieldsFromSelection(E unit);
 
-	public abstract List<E> retrieveUnits() throws SQLException;
-	
 	@Override
 	protected void fillAnnotationsLabel(E unit) {
-		List<Document> docs = new ArrayList<>();
+		List<Integer> docIds = new ArrayList<>();
 		try {
-			docs = new DocumentDao()
-					.selectWhereEntity(unit.getId());
+			docIds = UsageIndex.getDocumentIds(unit);
 		} catch (SQLException e) {
 			System.out.println("Could not retrieve documents where entity is.");
 			e.printStackTrace();
 		}
 		String ids = "";
-		for (Document doc : docs) {
-			ids += doc.getIdStr() + ", ";
+		for (int docId : docIds) {
+			/* Same format as Document.getIdStr() */
+			ids += String.format("%05d", docId) + ", ";
 		}
 		if (ids.length()>2) {
 			ids = ids.substring(0, ids.length()-2);
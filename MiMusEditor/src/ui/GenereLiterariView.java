@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -36,12 +36,6 @@ public class GenereLiterariView extends EntityView<GenereLiterari> {
 	
 	public GenereLiterariView() {
 		super();
-		try {
-			setUnits(new GenereLiterariDao().selectAll());
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load generes from DB.");
-		}
 	}
 	
 	@Override
@@ -121,15 +115,12 @@ public class GenereLiterariView extends EntityView<GenereLiterari> {
 						textDefinicio.getText());
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new GenereLiterariDao().insert(gen);
+					try (GenereLiterariDao dao = new GenereLiterariDao()) {
+						int id = dao.insert(gen);
 						if (id>0) {
-							getUnits().clear();
-							getUnits().addAll(
-									new GenereLiterariDao().selectAll());
+							unitInserted(gen);
 							System.out.println("Genere created successfully.");
 							LabelPrinter.printInfo(label, "Genere added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert Genere into DB.");
 						}
@@ -148,16 +139,13 @@ public class GenereLiterariView extends EntityView<GenereLiterari> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (GenereLiterariDao dao = new GenereLiterariDao()) {
 						/* Recover ID from selection*/
 						gen.setSpecificId(getSelectedId());
-						new GenereLiterariDao().update(gen);
-						getUnits().clear();
-						getUnits().addAll(
-								new GenereLiterariDao().selectAll());
+						dao.update(gen);
+						unitUpdated(gen);
 						System.out.println("Genere updated successfully.");
 						LabelPrinter.printInfo(label, "Genere updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -182,13 +170,10 @@ public class GenereLiterariView extends EntityView<GenereLiterari> {
 					System.out.println("Could not remove Genere because none was selected.");
 					LabelPrinter.printError(label, "You must select an Genere in order to remove it.");
 				} else {
-					try {
-						new GenereLiterariDao().delete(gen);
-						getUnits().clear();
-						getUnits().addAll(
-								new GenereLiterariDao().selectAll());
+					try (GenereLiterariDao dao = new GenereLiterariDao()) {
+						dao.delete(gen);
+						unitDeleted(gen);
 						LabelPrinter.printInfo(label, "Genere deleted successfully.");
-						getTv().refresh();
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
 						System.out.println("Could not delete: entity in use.");
@@ -221,7 +206,7 @@ public class GenereLiterariView extends EntityView<GenereLiterari> {
 	}
 
 	@Override
-	public List<GenereLiterari> retrieveUnits() throws SQLException {
-		return new GenereLiterariDao().selectAll();
+	protected GenereLiterariDao createDao(Connection conn) {
+		return new GenereLiterariDao(conn);
 	}
 }
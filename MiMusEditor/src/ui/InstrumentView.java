@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -37,13 +37,6 @@ public class InstrumentView extends EntityView<Instrument> {
 	
 	public InstrumentView() {
 		super();
-		
-		try {
-			setUnits(new InstrumentDao().selectAll());
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load instruments from DB.");
-		}
 	}
 	
 	@Override
@@ -151,13 +144,11 @@ public class InstrumentView extends EntityView<Instrument> {
 							textPart.getText());
 					if (isStateAdd()) {
 						/* Add new entity */
-						try {
-							int id = new InstrumentDao().insert(inst);
+						try (InstrumentDao dao = new InstrumentDao()) {
+							int id = dao.insert(inst);
 							if (id>0) {
-								getUnits().clear();
-								getUnits().addAll(new InstrumentDao().selectAll());
+								unitInserted(inst);
 								LabelPrinter.printInfo(label, "Instrument added successfully.");
-								getTv().refresh();
 							} else {
 								System.out.println("DAO: Could not insert Instrument into DB.");
 							}
@@ -176,14 +167,12 @@ public class InstrumentView extends EntityView<Instrument> {
 						}
 					} else {
 						/* Update values from selected entity */
-						try {
+						try (InstrumentDao dao = new InstrumentDao()) {
 							/* Recover ID from selection */
 							inst.setSpecificId(getSelectedId());
-							new InstrumentDao().update(inst);
-							getUnits().clear();
-							getUnits().addAll(new InstrumentDao().selectAll());
+							dao.update(inst);
+							unitUpdated(inst);
 							LabelPrinter.printInfo(label, "Instrument updated successfully.");
-							getTv().refresh();
 						} catch (SQLException e2) {
 							if (e2.getSQLState().equals("42000")) {
 								System.out.println("Disconnected exception.");
@@ -208,10 +197,9 @@ public class InstrumentView extends EntityView<Instrument> {
 					System.out.println("Could not remove Instrument because none was selected.");
 					LabelPrinter.printError(label, "You must select an Instrument in order to remove it.");
 				} else {
-					try {
-						new InstrumentDao().delete(inst);
-						getUnits().clear();
-						getUnits().addAll(new InstrumentDao().selectAll());
+					try (InstrumentDao dao = new InstrumentDao()) {
+						dao.delete(inst);
+						unitDeleted(inst);
 						LabelPrinter.printInfo(label, "Instrument deleted successfully.");
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
@@ -226,7 +214,6 @@ public class InstrumentView extends EntityView<Instrument> {
 							System.out.println("Could not delete Instrument from DB.");
 						}
 					}
-					getTv().refresh();
 					System.out.println("Instrument removed successfully.");
 				}
 			}
@@ -244,7 +231,7 @@ public class InstrumentView extends EntityView<Instrument> {
 	}
 
 	@Override
-	public List<Instrument> retrieveUnits() throws SQLException {
-		return new InstrumentDao().selectAll();
+	protected InstrumentDao createDao(Connection conn) {
+		return new InstrumentDao(conn);
 	}
 }
@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
@@ -36,13 +36,6 @@ public class LlocView extends EntityView<Lloc> {
 	
 	public LlocView() {
 		super();
-		
-		try {
-			setUnits(new LlocDao().selectAll());
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load llocs from DB.");
-		}
 	}
 	
 	@Override
@@ -138,13 +131,11 @@ public class LlocView extends EntityView<Lloc> {
 						comboArea.getSelectionIndex());
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new LlocDao().insert(lloc);
+					try (LlocDao dao = new LlocDao()) {
+						int id = dao.insert(lloc);
 						if (id>0) {
-							getUnits().clear();
-							getUnits().addAll(new LlocDao().selectAll());
+							unitInserted(lloc);
 							LabelPrinter.printInfo(label, "Lloc added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert LLoc into DB.");
 						}
@@ -163,14 +154,12 @@ public class LlocView extends EntityView<Lloc> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (LlocDao dao = new LlocDao()) {
 						/* Recover ID from selection */
 						lloc.setSpecificId(getSelectedId());
-						new LlocDao().update(lloc);
-						getUnits().clear();
-						getUnits().addAll(new LlocDao().selectAll());
+						dao.update(lloc);
+						unitUpdated(lloc);
 						LabelPrinter.printInfo(label, "Lloc updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -195,12 +184,10 @@ public class LlocView extends EntityView<Lloc> {
 					System.out.println("Could not remove Lloc because none was selected.");
 					LabelPrinter.printError(label, "You must select a Lloc in order to remove it.");
 				} else {
-					try {
-						new LlocDao().delete(lloc);
-						getUnits().clear();
-						getUnits().addAll(new LlocDao().selectAll());
+					try (LlocDao dao = new LlocDao()) {
+						dao.delete(lloc);
+						unitDeleted(lloc);
 						LabelPrinter.printInfo(label, "Lloc deleted successfully.");
-						getTv().refresh();
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
 						System.out.println("Could not delete: entity in use.");
@@ -234,7 +221,7 @@ public class LlocView extends EntityView<Lloc> {
 	}
 
 	@Override
-	public List<Lloc> retrieveUnits() throws SQLException {
-		return new LlocDao().selectAll();
+	protected LlocDao createDao(Connection conn) {
+		return new LlocDao(conn);
 	}
 }
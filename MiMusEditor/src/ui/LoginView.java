@@ -13,16 +13,12 @@ import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Text;
-import org.eclipse.ui.IViewPart;
 import org.eclipse.ui.IWorkbenchPage;
-import org.eclipse.ui.PartInitException;
 import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 import org.eclipse.ui.part.ViewPart;
 
-import com.jcraft.jsch.JSchException;
-
 import util.DBUtils;
 import util.LabelPrinter;
 
@@ -64,6 +60,9 @@ public class LoginView extends ViewPart {
 		Button btn = toolkit.createButton(form.getBody(), "Connect", 
 				SWT.PUSH | SWT.CENTER);
 		
+		Button btnDisconnect = toolkit.createButton(form.getBody(), "Disconnect", 
+				SWT.PUSH | SWT.CENTER);
+		
 		Label resultText = toolkit.createLabel(form.getBody(), "");
 		resultText.setLayoutData(gd);
 		
@@ -79,61 +78,60 @@ public class LoginView extends ViewPart {
 					String oldUser = oldProp.getProperty("editor.user");
 					String oldPass = oldProp.getProperty("editor.pass");
 					
-					/* First, try connection */
+					/* First, try to open a session, which tests the connection */
 					try {
-						DBUtils.connect(user, pass, 
+						DBUtils.openSession(user, pass, 
 								oldProp.getProperty("host.name"));
 						
 						/* If successful, store values in config.properties */
 						DBUtils.writeProperties(user, pass);
 						
-						IWorkbenchPage page = PlatformUI.getWorkbench()
-								.getActiveWorkbenchWindow()
-								.getActivePage();
-							
-						/* Declarative views  refreshed to make sure disconnected */
-						IViewPart view = page.showView("MiMusEditor.biblioView");
-						((BiblioView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.artistaView");
-						((ArtistaView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.casaView");
-						((CasaView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.genereView");
-						((GenereLiterariView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.instrumentView");
-						((InstrumentView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.llocView");
-						((LlocView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.oficiView");
-						((OficiView) view).refreshAction();
-						
-						view = page.showView("MiMusEditor.promotorView");
-						((PromotorView) view).refreshAction();
+						/* Declarative views refreshed with the new session */
+						refreshDeclarativeViews(true);
 						
 						/* Update UI */
 						LabelPrinter.printInfo(resultText, 
 								"Authenticated: " + user);
-					} catch (SQLException | JSchException e1) {
+					} catch (SQLException e1) {
 						/* If failure, rewind to previous login data */
 						DBUtils.writeProperties(oldUser, oldPass);
 						
 						/* Update UI */
 						LabelPrinter.printError(resultText, 
 								"Authentication failed");
-					} catch (PartInitException e1) {
-						e1.printStackTrace();
 					}
 				} catch (IOException e2) {
 					LabelPrinter.printError(resultText, "Unknown error");
 				}
 			}
 		});
+		
+		btnDisconnect.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				/* Tear down the session, next one opens as disconnected user */
+				try {
+					DBUtils.writeProperties("disconnected", "disconnected");
+					DBUtils.closeSession();
+					refreshDeclarativeViews(false);
+					LabelPrinter.printInfo(resultText, "Disconnected");
+				} catch (IOException e1) {
+					LabelPrinter.printError(resultText, "Unknown error");
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Refreshes the declarative views already created, so they reflect
+	 * the data visible by the user of the current session. If <warmUp>
+	 * is true, the units of the rest are loaded in the background.
+	 */
+	private void refreshDeclarativeViews(boolean warmUp) {
+		IWorkbenchPage page = PlatformUI.getWorkbench()
+				.getActiveWorkbenchWindow()
+				.getActivePage();
+		DeclarativeView.refreshAll(page, warmUp);
 	}
 	
 	@Override
@@ -33,5 +33,6 @@ public class MiMusPerspectiveFactory implements IPerspectiveFactory {
 		right.addView("MiMusEditor.llocView");
 		right.addView("MiMusEditor.oficiView");
 		right.addView("MiMusEditor.promotorView");
+		right.addView("MiMusEditor.searchView");
 	}
 }
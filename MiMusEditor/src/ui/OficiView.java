@@ -1,7 +1,9 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.jface.viewers.IStructuredSelection;
@@ -20,7 +22,9 @@ import model.Ofici;
 import persistence.DaoNotImplementedException;
 import persistence.InstrumentDao;
 import persistence.OficiDao;
+import persistence.UnitCatalog;
 import ui.table.OficiTableViewer;
+import util.DBUtils;
 import util.LabelPrinter;
 
 /**
@@ -45,14 +49,7 @@ public class OficiView extends EntityView<Ofici> {
 	public OficiView() {
 		super();
 		comboInstrument = null;
-		
-		try {
-			setUnits(new OficiDao().selectAll());
-			insts = new InstrumentDao().selectAll();
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load oficis from DB.");
-		}
+		insts = new ArrayList<>();
 	}
 	
 	@Override
@@ -110,8 +107,8 @@ public class OficiView extends EntityView<Ofici> {
 						Ofici.ESPECIALITATS[comboEspecialitat.getSelectionIndex()]
 								.equals("artesà")) {
 					/* First, update list of instruments */
-					try {
-						insts = new InstrumentDao().selectAll();
+					try (InstrumentDao dao = new InstrumentDao()) {
+						insts = dao.selectAll();
 						String[] instNames = new String[insts.size()];
 						for (int i=0; i<instNames.length; i++) {
 							instNames[i] = ((Instrument) insts.get(i)).getLemma();
@@ -185,14 +182,12 @@ public class OficiView extends EntityView<Ofici> {
 						inst);
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new OficiDao().insert(ofici);
+					try (OficiDao dao = new OficiDao()) {
+						int id = dao.insert(ofici);
 						if (id>0) {
-							getUnits().clear();
-							getUnits().addAll(new OficiDao().selectAll());
+							unitInserted(ofici);
 							System.out.println("Ofici created successfully.");
 							LabelPrinter.printInfo(label, "Ofici added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert Artist into DB.");
 						}					
@@ -211,15 +206,13 @@ public class OficiView extends EntityView<Ofici> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (OficiDao dao = new OficiDao()) {
 						/* Recover ID from selection */
 						ofici.setSpecificId(getSelectedId());
-						new OficiDao().update(ofici);
-						getUnits().clear();
-						getUnits().addAll(new OficiDao().selectAll());
+						dao.update(ofici);
+						unitUpdated(ofici);
 						System.out.println("Ofici updated successfully.");
 						LabelPrinter.printInfo(label, "Ofici updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -246,11 +239,9 @@ public class OficiView extends EntityView<Ofici> {
 					LabelPrinter.printError(label, "You must select a " 
 							+ getViewName() + " in order to remove it.");
 				} else {
-					try {
-						new OficiDao().delete(ofici);
-						getUnits().clear();
-						getUnits().addAll(new OficiDao().selectAll());
-						getTv().refresh();
+					try (OficiDao dao = new OficiDao()) {
+						dao.delete(ofici);
+						unitDeleted(ofici);
 						System.out.println(getViewName() + " removed successfully.");
 						LabelPrinter.printInfo(label, "Ofici deleted successfully.");
 					} catch (SQLIntegrityConstraintViolationException e1) {
@@ -296,8 +287,33 @@ public class OficiView extends EntityView<Ofici> {
 		
 	}
 
+	/**
+	 * Returns the Oficis of the catalog, and loads the Instruments they
+	 * may be associated with along.
+	 */
 	@Override
 	public List<Ofici> retrieveUnits() throws SQLException {
-		return new OficiDao().selectAll();
+		try (Connection conn = DBUtils.connect()) {
+			insts = UnitCatalog.get(new InstrumentDao(conn)).getAll();
+			return UnitCatalog.get(new OficiDao(conn)).getAll();
+		}
+	}
+	
+	/**
+	 * Lists the Instruments loaded with the Oficis.
+	 */
+	@Override
+	protected void unitsLoaded() {
+		String[] instNames = new String[insts.size()];
+		for (int i=0; i<instNames.length; i++) {
+			instNames[i] = insts.get(i).getLemma();
+		}
+		comboInstrument.setItems(instNames);
+		comboInstrument.deselectAll();
+	}
+	
+	@Override
+	protected OficiDao createDao(Connection conn) {
+		return new OficiDao(conn);
 	}
 }
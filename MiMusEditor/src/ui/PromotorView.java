@@ -1,8 +1,8 @@
 package ui;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLIntegrityConstraintViolationException;
-import java.util.List;
 import org.eclipse.jface.viewers.IStructuredSelection;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
@@ -39,13 +39,6 @@ public class PromotorView extends EntityView<Promotor> {
 	
 	public PromotorView() {
 		super();
-		
-		try {
-			setUnits(new PromotorDao().selectAll());
-		} catch (SQLException e2) {
-			e2.printStackTrace();
-			System.out.println("Could not load promotors from DB.");
-		}
 	}
 	
 	@Override
@@ -158,14 +151,12 @@ public class PromotorView extends EntityView<Promotor> {
 						textObs.getText());
 				if (isStateAdd()) {
 					/* Add new entity */
-					try {
-						int id = new PromotorDao().insert(prom);
+					try (PromotorDao dao = new PromotorDao()) {
+						int id = dao.insert(prom);
 						if (id > 0) {
-							getUnits().clear();
-							getUnits().addAll(new PromotorDao().selectAll());
+							unitInserted(prom);
 							System.out.println("Promotor added successfully.");
 							LabelPrinter.printInfo(label, "Promotor added successfully.");
-							getTv().refresh();
 						} else {
 							System.out.println("DAO: Could not insert Promotor into DB.");
 						}
@@ -184,15 +175,13 @@ public class PromotorView extends EntityView<Promotor> {
 					}
 				} else {
 					/* Update values from selected entity */
-					try {
+					try (PromotorDao dao = new PromotorDao()) {
 						/* Recover ID from selection */
 						prom.setSpecificId(getSelectedId());
-						new PromotorDao().update(prom);
-						getUnits().clear();
-						getUnits().addAll(new PromotorDao().selectAll());
+						dao.update(prom);
+						unitUpdated(prom);
 						System.out.println("Promotor updated successfully.");
 						LabelPrinter.printInfo(label, "Promotor updated successfully.");
-						getTv().refresh();
 					} catch (SQLException e2) {
 						if (e2.getSQLState().equals("42000")) {
 							System.out.println("Disconnected exception.");
@@ -219,14 +208,12 @@ public class PromotorView extends EntityView<Promotor> {
 					LabelPrinter.printError(label, "You must select a " 
 							+ getViewName() + " in order to remove it.");
 				} else {
-					try {
-						new PromotorDao().delete(prom);
-						getUnits().clear();
-						getUnits().addAll(new PromotorDao().selectAll());
+					try (PromotorDao dao = new PromotorDao()) {
+						dao.delete(prom);
+						unitDeleted(prom);
 						System.out.println(getViewName() + " removed successfully.");
 						LabelPrinter.printInfo(label, getViewName() 
 								+ " removed successfully.");
-						getTv().refresh();
 					} catch (SQLIntegrityConstraintViolationException e1) {
 						LabelPrinter.printError(label, "Cannot delete Entity in use.");
 						System.out.println("Could not delete: entity in use.");
@@ -257,7 +244,7 @@ public class PromotorView extends EntityView<Promotor> {
 	}
 
 	@Override
-	public List<Promotor> retrieveUnits() throws SQLException {
-		return new PromotorDao().selectAll();
+	protected PromotorDao createDao(Connection conn) {
+		return new PromotorDao(conn);
 	}
 }
@@ -0,0 +1,150 @@
+package ui;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.FileDialog;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.ui.forms.widgets.FormToolkit;
+import org.eclipse.ui.forms.widgets.ScrolledForm;
+import org.eclipse.ui.part.ViewPart;
+
+import ui.table.QueryActionTableViewer;
+import ui.table.QueryShapeTableViewer;
+import util.LabelPrinter;
+import util.QueryMonitor;
+import util.QueryMonitor.Action;
+
+/**
+ * Eclipse View that shows the statements sent to the DB by each action
+ * of the user, as recorded by the QueryMonitor. Selecting an action
+ * lists its SQL shapes, with those that look like an N+1 pattern flagged.
+ * The actions can also be dumped to a text file.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class QueryMonitorView extends ViewPart {
+
+	private QueryActionTableViewer actionsHelper;
+	private QueryShapeTableViewer shapesHelper;
+	private Runnable listener;
+
+	public QueryMonitorView() {
+		super();
+	}
+
+	/**
+	 * Draws the view: the table of actions, the most recent first, the
+	 * table of shapes of the selected action, and control buttons.
+	 */
+	@Override
+	public void createPartControl(Composite parent) {
+		FormToolkit toolkit = new FormToolkit(parent.getDisplay());
+		ScrolledForm form = toolkit.createScrolledForm(parent);
+		form.setText("Queries per action");
+		form.getBody().setLayout(new GridLayout());
+
+		Composite buttons = toolkit.createComposite(form.getBody());
+		buttons.setLayout(new GridLayout(3, false));
+		Button btnRefresh = toolkit.createButton(buttons, "Refresh",
+				SWT.PUSH | SWT.CENTER);
+		Button btnClear = toolkit.createButton(buttons, "Clear",
+				SWT.PUSH | SWT.CENTER);
+		Button btnDump = toolkit.createButton(buttons, "Dump to file...",
+				SWT.PUSH | SWT.CENTER);
+		Label label = toolkit.createLabel(form.getBody(), "");
+		label.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		actionsHelper = new QueryActionTableViewer(form.getBody());
+		actionsHelper.createTableViewer();
+		shapesHelper = new QueryShapeTableViewer(form.getBody());
+		shapesHelper.createTableViewer();
+
+		actionsHelper.getTv().addSelectionChangedListener(event -> {
+			Action action = (Action)
+					((IStructuredSelection) event.getSelection()).getFirstElement();
+			if (action == null) {
+				shapesHelper.getTv().setInput(new ArrayList<>());
+			} else {
+				shapesHelper.getTv().setInput(action.getLog().getShapes());
+			}
+			shapesHelper.packColumns();
+		});
+
+		btnRefresh.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				refreshAction();
+			}
+		});
+
+		btnClear.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				QueryMonitor.clear();
+				refreshAction();
+			}
+		});
+
+		btnDump.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				FileDialog dialog = new FileDialog(parent.getShell(), SWT.SAVE);
+				dialog.setFileName("mimus_queries.txt");
+				String path = dialog.open();
+				if (path != null) {
+					try {
+						QueryMonitor.dump(path);
+						LabelPrinter.printInfo(label, "Dumped to " + path);
+					} catch (IOException e1) {
+						LabelPrinter.printError(label, "Could not write " + path);
+					}
+				}
+			}
+		});
+
+		/* Shows each action as it finishes */
+		listener = () -> {
+			if (!parent.isDisposed()) {
+				parent.getDisplay().asyncExec(() -> {
+					if (!parent.isDisposed()) {
+						refreshAction();
+					}
+				});
+			}
+		};
+		QueryMonitor.addListener(listener);
+		refreshAction();
+	}
+
+	/**
+	 * Shows the actions kept by the QueryMonitor, the most recent first.
+	 */
+	public void refreshAction() {
+		List<Action> actions = QueryMonitor.getActions();
+		Collections.reverse(actions);
+		actionsHelper.getTv().setInput(actions);
+		actionsHelper.packColumns();
+		shapesHelper.getTv().setInput(new ArrayList<>());
+	}
+
+	@Override
+	public void dispose() {
+		QueryMonitor.removeListener(listener);
+		super.dispose();
+	}
+
+	@Override
+	public void setFocus() {}
+}
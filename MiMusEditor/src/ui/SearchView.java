@@ -0,0 +1,266 @@
+package ui;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.jface.viewers.IStructuredSelection;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.forms.widgets.FormToolkit;
+import org.eclipse.ui.forms.widgets.ScrolledForm;
+import org.eclipse.ui.part.ViewPart;
+
+import model.Document;
+import persistence.DocumentDao;
+import search.FullTextIndex;
+import search.SearchHit;
+import search.SearchQuery;
+import ui.table.SearchHitTableViewer;
+import util.DBUtils;
+import util.LabelPrinter;
+
+/**
+ * Eclipse View to search words in the texts of all Documents: regests,
+ * transcriptions and Notes, with the FullTextIndex. Words ending in "*"
+ * match as prefixes, and words between quotes as a phrase. Selecting a
+ * hit opens its Document in the Editor, with the match selected. With
+ * Regex checked, the query is a regular expression to search in the
+ * transcriptions instead.
+ *
+ * The index is read from its local file and brought up to date with
+ * the DB when the view is opened, or with the Update button, in the
+ * background.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class SearchView extends ViewPart {
+
+	private Composite parent;
+	private Text queryText;
+	private Label label;
+	private SearchHitTableViewer hitsHelper;
+	private Job updateJob;
+
+	public SearchView() {
+		super();
+	}
+
+	/**
+	 * Draws the view: the query with its buttons, a label for messages
+	 * and the table of hits.
+	 */
+	@Override
+	public void createPartControl(Composite parent) {
+		this.parent = parent;
+		FormToolkit toolkit = new FormToolkit(parent.getDisplay());
+		ScrolledForm form = toolkit.createScrolledForm(parent);
+		form.setText("Search in texts");
+		form.getBody().setLayout(new GridLayout());
+
+		Composite controls = toolkit.createComposite(form.getBody());
+		controls.setLayout(new GridLayout(4, false));
+		controls.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		queryText = toolkit.createText(controls, "",
+				SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		queryText.setMessage("word prefix* \"a phrase\"");
+		queryText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		Button btnRegex = toolkit.createButton(controls, "Regex", SWT.CHECK);
+		btnRegex.setToolTipText("Search a regular expression in the "
+				+ "transcriptions, e.g. ju[gc]l[ae]r");
+		Button btnSearch = toolkit.createButton(controls, "Search",
+				SWT.PUSH | SWT.CENTER);
+		Button btnUpdate = toolkit.createButton(controls, "Update index",
+				SWT.PUSH | SWT.CENTER);
+		label = toolkit.createLabel(form.getBody(), "");
+		label.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		hitsHelper = new SearchHitTableViewer(form.getBody());
+		hitsHelper.createTableViewer();
+
+		/* Enter in the query searches too */
+		queryText.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent e) {
+				search(btnRegex.getSelection());
+			}
+		});
+
+		btnSearch.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				search(btnRegex.getSelection());
+			}
+		});
+
+		btnUpdate.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				updateIndex();
+			}
+		});
+
+		hitsHelper.getTv().addSelectionChangedListener(event -> {
+			SearchHit hit = (SearchHit)
+					((IStructuredSelection) event.getSelection()).getFirstElement();
+			if (hit != null) {
+				openHit(hit);
+			}
+		});
+
+		updateIndex();
+	}
+
+	/**
+	 * Updates the index in a background Job, unless it is already being
+	 * updated.
+	 */
+	private void updateIndex() {
+		if (updateJob != null) {
+			return;
+		}
+		LabelPrinter.printInfo(label, "Updating search index...");
+		updateJob = new Job("Updating search index") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				String msg;
+				boolean ok;
+				FullTextIndex index = FullTextIndex.get();
+				try (Connection conn = DBUtils.connect()) {
+					int changed = index.update(conn);
+					msg = index.size() + " Documents indexed, " + changed
+							+ " updated.";
+					ok = true;
+				} catch (SQLException e) {
+					e.printStackTrace();
+					msg = "Could not update the search index, "
+							+ "searching in " + index.size() + " Documents.";
+					ok = false;
+				}
+				finishUpdate(msg, ok);
+				return Status.OK_STATUS;
+			}
+		};
+		updateJob.setSystem(false);
+		updateJob.schedule();
+	}
+
+	private void finishUpdate(String msg, boolean ok) {
+		if (parent.isDisposed()) {
+			return;
+		}
+		parent.getDisplay().asyncExec(() -> {
+			updateJob = null;
+			if (!label.isDisposed()) {
+				if (ok) {
+					LabelPrinter.printInfo(label, msg);
+				} else {
+					LabelPrinter.printError(label, msg);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Searches the query in the index, in a background Job as the index
+	 * may still be loading, and shows the hits. If <regex> is true, the
+	 * query is a regular expression to search in the transcriptions.
+	 */
+	private void search(boolean regex) {
+		SearchQuery query = SearchQuery.parse(queryText.getText());
+		if (regex ? queryText.getText().trim().isEmpty() : query.isEmpty()) {
+			LabelPrinter.printError(label, "Nothing to search.");
+			return;
+		}
+		Pattern pattern = null;
+		if (regex) {
+			try {
+				pattern = Pattern.compile(queryText.getText().trim());
+			} catch (PatternSyntaxException e) {
+				LabelPrinter.printError(label, "Wrong regular expression: " 
+						+ e.getDescription());
+				return;
+			}
+		}
+		Pattern finalPattern = pattern;
+		Job job = new Job("Searching in texts") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				FullTextIndex index = FullTextIndex.get();
+				List<SearchHit> hits = finalPattern == null 
+						? index.search(query) 
+						: index.searchRegex(finalPattern, monitor);
+				if (monitor.isCanceled()) {
+					return Status.CANCEL_STATUS;
+				}
+				if (!parent.isDisposed()) {
+					parent.getDisplay().asyncExec(() -> showHits(hits));
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.schedule();
+	}
+
+	private void showHits(List<SearchHit> hits) {
+		if (parent.isDisposed()) {
+			return;
+		}
+		hitsHelper.getTv().setInput(hits);
+		hitsHelper.packColumns();
+		if (hits.size() == FullTextIndex.MAX_HITS) {
+			LabelPrinter.printInfo(label, "First " + hits.size() + " hits.");
+		} else {
+			LabelPrinter.printInfo(label, hits.size() + " hits.");
+		}
+	}
+
+	/**
+	 * Opens the Document of <hit> in the Editor, marks the matches in its
+	 * transcription and selects the match of <hit>.
+	 */
+	private void openHit(SearchHit hit) {
+		Document doc;
+		try (DocumentDao dao = new DocumentDao()) {
+			doc = dao.selectStub(hit.getDocumentId());
+		} catch (SQLException e) {
+			LabelPrinter.printError(label, "Could not connect to the DB.");
+			return;
+		}
+		Editor editor = Editor.open(doc);
+		if (editor != null) {
+			List<Point> coords = new ArrayList<>();
+			for (Object o : (List<?>) hitsHelper.getTv().getInput()) {
+				SearchHit other = (SearchHit) o;
+				if (other.getDocumentId() == hit.getDocumentId()
+						&& other.getField() == FullTextIndex.Field.TRANSCRIPTION) {
+					coords.add(other.getCoords());
+				}
+			}
+			editor.highlightMatches(coords);
+			editor.showMatch(hit.getField(), hit.getNoteId(),
+					hit.getStart(), hit.getEnd());
+		}
+	}
+
+	@Override
+	public void setFocus() {
+		queryText.setFocus();
+	}
+}
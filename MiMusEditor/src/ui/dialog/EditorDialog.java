@@ -1,18 +1,11 @@
 package ui.dialog;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.jface.dialogs.Dialog;
-import org.eclipse.jface.fieldassist.AutoCompleteField;
-import org.eclipse.jface.fieldassist.ComboContentAdapter;
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.ModifyEvent;
-import org.eclipse.swt.events.ModifyListener;
-import org.eclipse.swt.events.SelectionAdapter;
-import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Label;
@@ -21,6 +14,7 @@ import org.eclipse.ui.forms.widgets.FormToolkit;
 import org.eclipse.ui.forms.widgets.ScrolledForm;
 
 import model.Unit;
+import persistence.UnitCatalog;
 
 /**
  * EditorDialog is an Eclipse Dialog that allows users to select
@@ -40,6 +34,7 @@ public abstract class EditorDialog<U extends Unit> extends Dialog {
 
 	/* Model attributes */
 	private List<U> units;
+	private UnitCatalog<U> catalog;
 	private int selection;
 	private U unit;
 	
@@ -61,10 +56,19 @@ public abstract class EditorDialog<U extends Unit> extends Dialog {
 	}
 	
 	/**
-	 * Draws the Dialog, which contains a ComboBox with the elements
-	 * available for insertion and control buttons. This component has
-	 * autocomplete functionality: if the user starts writing, they
-	 * will find the options available starting by this text.
+	 * Creates a Dialog to select a unit of <catalog>, which is already
+	 * indexed, e.g. a catalog of the session.
+	 */
+	protected EditorDialog(UnitCatalog<U> catalog, Shell parentShell) {
+		this(new ArrayList<>(), parentShell);
+		this.catalog = catalog;
+	}
+	
+	/**
+	 * Draws the Dialog, which contains a UnitPicker with the elements
+	 * available for insertion and control buttons. If the user starts
+	 * writing, they will find the options with words starting by this
+	 * text.
 	 */
 	@Override
 	protected Control createDialogArea(Composite parent) {
@@ -75,50 +79,13 @@ public abstract class EditorDialog<U extends Unit> extends Dialog {
 		form.getBody().setLayout(new GridLayout());
 		
 		/* 
-		 * Create combo with artist string representations as values.
-		 * Combo has autocomplete properties when user inputs text.
-		 */
-		List<U> units = getUnitsUsed();
-		Combo combo = new Combo(form.getBody(), SWT.SINGLE | SWT.WRAP);
-		String[] artistNames = new String[units.size()];
-		for (int i=0; i<units.size(); i++) {
-			artistNames[i] = units.get(i).toString();
-		}
-		combo.setItems(artistNames);
-		combo.select(0);
-		new AutoCompleteField(combo, new ComboContentAdapter(), combo.getItems());
-		
-		/* Initialize stored values */
-		this.setSelection(0);
-		if (units.size()==0) {
-			this.setUnit(null);
-		} else {
-			this.setUnit(units.get(0));
-		}
-		
-		/* 
-		 * Listeners for combo selection. Two are needed:
-		 * 1. Modify Listener for the autocomplete. It does a binary search everytime
-		 * an input modification happens. It should be tested how that behaves when
-		 * the list of entities grows.
-		 * 2. Selection Listener for the classic drop-down menu selection.
-		 * Both ways store the selection in the class attributes that can be accessed
-		 * externally.
+		 * Picker of the units used, found by what the user types. It
+		 * stores the selection in the class attributes that can be
+		 * accessed externally.
 		 */
-		combo.addModifyListener(new ModifyListener() {
-			@Override
-			public void modifyText(ModifyEvent e) {
-				int idx = Arrays.binarySearch(artistNames, combo.getText());
-				if (idx>=0) {
-					EditorDialog.this.setSelection(idx);
-					EditorDialog.this.setUnit(units.get(getSelection()));
-				}
-			}});
-		combo.addSelectionListener(new SelectionAdapter() {
-			public void widgetSelected(SelectionEvent e) {
-				EditorDialog.this.setSelection(combo.getSelectionIndex());
-				EditorDialog.this.setUnit(units.get(getSelection()));
-			}
+		new UnitPicker<>(form.getBody(), getCatalogUsed(), picked -> {
+			EditorDialog.this.setSelection(picked == null ? -1 : 0);
+			EditorDialog.this.setUnit(picked);
 		});
 		
 		label = new Label(form.getBody(), SWT.VERTICAL);
@@ -132,8 +99,12 @@ public abstract class EditorDialog<U extends Unit> extends Dialog {
 	 */
 	public abstract String getDialogName();
 
+	/**
+	 * Returns the units passed to the Dialog, in order if they were
+	 * passed as a catalog.
+	 */
 	public List<U> getUnits() {
-		return units;
+		return catalog == null ? units : catalog.getAll();
 	}
 
 	public void setUnits(List<U> units) {
@@ -149,6 +120,14 @@ public abstract class EditorDialog<U extends Unit> extends Dialog {
 	 */
 	public abstract List<U> getUnitsUsed();
 	
+	/**
+	 * Returns the catalog of units available in the Dialog: the one
+	 * passed to it, or otherwise a new one of getUnitsUsed().
+	 */
+	protected UnitCatalog<U> getCatalogUsed() {
+		return catalog != null ? catalog : new UnitCatalog<>(getUnitsUsed());
+	}
+	
 	public int getSelection() {
 		return selection;
 	}
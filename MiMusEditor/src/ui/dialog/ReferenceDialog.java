@@ -1,8 +1,6 @@
 package ui.dialog;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import org.eclipse.swt.SWT;
@@ -18,6 +16,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
 import model.Bibliography;
 import model.Note;
+import persistence.UnitCatalog;
 
 /**
  * Implementation of EditorDialog for inserting References, i.e. for
@@ -36,7 +35,7 @@ public class ReferenceDialog extends EditorDialog<Bibliography> {
 	
 	private List<Note> notes;
 	
-	protected ReferenceDialog(List<Bibliography> units, List<Note> notes,
+	protected ReferenceDialog(UnitCatalog<Bibliography> units, List<Note> notes,
 			Shell parentShell) {
 		super(units, parentShell);
 		this.setType(-1);
@@ -50,15 +49,6 @@ public class ReferenceDialog extends EditorDialog<Bibliography> {
 			}
 		}
 		this.notes = filteredNotes;
-		
-		/* Dialog shows entities ordered alphabetically by lemma */
-		Collections.sort(units, new Comparator<Bibliography>() {
-			@Override
-			public int compare(Bibliography b1, Bibliography b2) {
-				return b1.getShortReference()
-						.compareTo(b2.getShortReference());
-			}
-		});
 	}
 
 	/**
@@ -1,20 +1,11 @@
 package ui.dialog;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
 
 import org.eclipse.jface.dialogs.Dialog;
-import org.eclipse.jface.fieldassist.AutoCompleteField;
-import org.eclipse.jface.fieldassist.ComboContentAdapter;
 import org.eclipse.swt.SWT;
-import org.eclipse.swt.events.ModifyEvent;
-import org.eclipse.swt.events.ModifyListener;
-import org.eclipse.swt.events.SelectionAdapter;
-import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridLayout;
-import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Label;
@@ -24,6 +15,7 @@ import org.eclipse.ui.forms.widgets.ScrolledForm;
 
 import model.Entity;
 import model.EntityInstance;
+import persistence.UnitCatalog;
 import util.LabelPrinter;
 
 /**
@@ -77,10 +69,10 @@ public class RelationDialog extends Dialog {
 	}
 
 	/**
-	 * Draws the Dialog, which contains two ComboBox components
-	 * for selection of the elements of the relation. These have
-	 * autocomplete functionality: when a user starts typing, the
-	 * list of options gets reduced accordingly to the text introduced.
+	 * Draws the Dialog, which contains two UnitPicker components
+	 * for selection of the elements of the relation. When a user starts
+	 * typing, the list of options gets reduced accordingly to the text
+	 * introduced.
 	 */
 	@Override
 	protected Control createDialogArea(Composite parent) {
@@ -101,88 +93,20 @@ public class RelationDialog extends Dialog {
 				entities2.add(thisEnt);
 		}
 		
-		/* Sort lists of entities by lemma */
-		Comparator<Entity> comp = new Comparator<Entity>() {
-			@Override
-			public int compare(Entity e1, Entity e2) {
-				return e1.getLemma().compareTo(e2.getLemma());
-			}
-		};
-		entities1.sort(comp);
-		entities2.sort(comp);
-		
-		/* Make 1st combo with entity strings */
-		String[] e1Names = new String[entities1.size()];
-		for (int i=0; i<entities1.size(); i++) {
-			e1Names[i] = entities1.get(i).toString();
-		}
-		Combo combo1 = new Combo(form.getBody(), SWT.SINGLE | SWT.WRAP);
-		combo1.setItems(e1Names);
-		combo1.select(0);
-		new AutoCompleteField(combo1, new ComboContentAdapter(), combo1.getItems());
-		
-		/* Make 2nd combo with entity strings */
-		String[] e2Names = new String[entities2.size()];
-		for (int i=0; i<entities2.size(); i++) {
-			e2Names[i] = entities2.get(i).toString();
-		}
-		Combo combo2 = new Combo(form.getBody(), SWT.SINGLE | SWT.WRAP);
-		combo2.setItems(e2Names);
-		combo2.select(0);
-		new AutoCompleteField(combo2, new ComboContentAdapter(), combo2.getItems());
-		
-		/* Initialize stored values */
-		this.setSelection1(0);
-		if (entities1.size()==0) {
-			this.setUnit1(null);
-		} else {
-			this.setUnit1(entities1.get(0));
-		}
-		this.setSelection2(0);
-		if (entities2.size()==0) {
-			this.setUnit2(null);
-		} else {
-			this.setUnit2(entities2.get(0));
-		}
-		
 		/* 
-		 * Listeners for combos selection. Two are needed:
-		 * 1. Modify Listener for the autocomplete. It does a binary search everytime
-		 * an input modification happens. It should be tested how that behaves when
-		 * the list of entities grows.
-		 * 2. Selection Listener for the classic drop-down menu selection.
-		 * Both ways store the selection in the class attributes that can be accessed
+		 * Pickers of entities of each type, shown by lemma. They store
+		 * the selections in the class attributes that can be accessed
 		 * externally.
 		 */
-		combo1.addModifyListener(new ModifyListener() {
-			@Override
-			public void modifyText(ModifyEvent e) {
-				int idx = Arrays.binarySearch(e1Names, combo1.getText());
-				if (idx>=0) {
-					RelationDialog.this.setSelection1(idx);
-					RelationDialog.this.setUnit1(entities1.get(getSelection1()));
-				}
-			}});
-		combo1.addSelectionListener(new SelectionAdapter() {
-			public void widgetSelected(SelectionEvent e) {
-				RelationDialog.this.setSelection1(combo1.getSelectionIndex());
-				RelationDialog.this.setUnit1(entities1.get(getSelection1()));
-			}
+		new UnitPicker<>(form.getBody(), new UnitCatalog<>(entities1), 
+				picked -> {
+			RelationDialog.this.setSelection1(picked == null ? -1 : 0);
+			RelationDialog.this.setUnit1(picked);
 		});
-		combo2.addModifyListener(new ModifyListener() {
-			@Override
-			public void modifyText(ModifyEvent e) {
-				int idx = Arrays.binarySearch(e2Names, combo2.getText());
-				if (idx>=0) {
-					RelationDialog.this.setSelection2(idx);
-					RelationDialog.this.setUnit2(entities2.get(getSelection2()));
-				}
-			}});
-		combo2.addSelectionListener(new SelectionAdapter() {
-			public void widgetSelected(SelectionEvent e) {
-				RelationDialog.this.setSelection2(combo2.getSelectionIndex());
-				RelationDialog.this.setUnit2(entities2.get(getSelection2()));
-			}
+		new UnitPicker<>(form.getBody(), new UnitCatalog<>(entities2), 
+				picked -> {
+			RelationDialog.this.setSelection2(picked == null ? -1 : 0);
+			RelationDialog.this.setUnit2(picked);
 		});
 		
 		Label label = new Label(form.getBody(), SWT.VERTICAL);
@@ -0,0 +1,91 @@
+package ui.dialog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Text;
+
+import model.Unit;
+import persistence.UnitCatalog;
+
+/**
+ * UnitPicker lets users pick a Unit of a UnitCatalog in a Dialog: a text
+ * field to type part of its name and the list of Units found by it,
+ * which is looked up in the catalog indexes at every keystroke. Only the
+ * first Units found are listed, so it stays responsive with catalogs of
+ * any size.
+ *
+ * The first Unit listed is picked until the user selects another one.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ * @param <U> the type of Unit being picked
+ */
+public class UnitPicker<U extends Unit> {
+
+	/* Units listed, at most */
+	private static final int MAX_SHOWN = 200;
+
+	private final UnitCatalog<U> catalog;
+	private final Consumer<U> onPick;
+	private final Text filter;
+	private final org.eclipse.swt.widgets.List list;
+	private List<U> shown = new ArrayList<>();
+
+	/**
+	 * Draws the picker in <parent>, listing Units of <catalog>. The Unit
+	 * picked is passed to <onPick>, or null if no Unit is found.
+	 */
+	public UnitPicker(Composite parent, UnitCatalog<U> catalog,
+			Consumer<U> onPick) {
+		this.catalog = catalog;
+		this.onPick = onPick;
+
+		filter = new Text(parent, SWT.SINGLE | SWT.BORDER | SWT.SEARCH);
+		filter.setMessage("Type to filter");
+		filter.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		list = new org.eclipse.swt.widgets.List(parent,
+				SWT.SINGLE | SWT.BORDER | SWT.V_SCROLL);
+		GridData listData = new GridData(GridData.FILL_BOTH);
+		listData.heightHint = 200;
+		listData.widthHint = 300;
+		list.setLayoutData(listData);
+
+		filter.addModifyListener(e -> refresh());
+		list.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				int idx = list.getSelectionIndex();
+				UnitPicker.this.onPick.accept(idx < 0 ? null : shown.get(idx));
+			}
+		});
+		refresh();
+	}
+
+	/**
+	 * Lists the Units found by the text typed, and picks the first.
+	 */
+	private void refresh() {
+		shown = catalog.find(filter.getText(), MAX_SHOWN);
+		String[] names = new String[shown.size()];
+		for (int i=0; i<shown.size(); i++) {
+			names[i] = shown.get(i).toString();
+		}
+		list.setItems(names);
+		if (shown.isEmpty()) {
+			onPick.accept(null);
+		} else {
+			list.select(0);
+			onPick.accept(shown.get(0));
+		}
+	}
+
+	public Text getFilter() {
+		return filter;
+	}
+}
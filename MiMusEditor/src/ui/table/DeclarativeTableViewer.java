@@ -1,16 +1,25 @@
 package ui.table;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.CellEditor;
+import org.eclipse.jface.viewers.ColumnLabelProvider;
 import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.TableViewerColumn;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.jface.viewers.ViewerComparator;
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 
 import model.Unit;
+import persistence.UsageIndex;
 
 /**
  * DeclarativeTableViewer is the MiMusTableViewer used in DeclarativeViews.
@@ -21,11 +30,19 @@ import model.Unit;
  * sorts the table elements based on a certain criterion. These objects must
  * be related to the DeclarativeTableViewer implementing method developProviders().
  * 
+ * After the columns of the implementation, a last column shows in how many
+ * Documents each element is used, as given by the UsageIndex, which reads
+ * them in the background: until they arrive, the column shows "...", or
+ * "?" if they could not be read. Clicking its header sorts the table by 
+ * it, and clicking again restores the order of the implementation.
+ * 
  * @author Javier Beltrán Jorba
  *
  */
 public abstract class DeclarativeTableViewer extends MiMusTableViewer {
 	
+	public static final String USAGE_COLUMN = "Documents";
+	
 	/* List of entities on the table */
 	protected List<? extends Unit> entities;
 	
@@ -56,12 +73,18 @@ public abstract class DeclarativeTableViewer extends MiMusTableViewer {
 			TableColumn col = new TableColumn(tv.getTable(), SWT.LEFT);
 			col.setText(h);
 		}
+		TableViewerColumn usageCol = new TableViewerColumn(tv, SWT.RIGHT);
+		usageCol.getColumn().setText(USAGE_COLUMN);
 		tv.setUseHashlookup(true);
-		tv.setColumnProperties(columnNames);
+		String[] properties = Arrays.copyOf(columnNames, columnNames.length + 1);
+		properties[columnNames.length] = USAGE_COLUMN;
+		tv.setColumnProperties(properties);
 		
-		tv.setCellEditors(developEditors());
+		/* Usage column is not editable */
+		tv.setCellEditors(Arrays.copyOf(developEditors(), columnNames.length + 1));
 		tv.setContentProvider(ArrayContentProvider.getInstance());
 		developProviders();
+		developUsageColumn(usageCol);
 		
 		tv.setInput(entities);
 		tv.getTable().setHeaderVisible(true);
@@ -70,6 +93,71 @@ public abstract class DeclarativeTableViewer extends MiMusTableViewer {
 		gd.heightHint = 150;
 		tv.getTable().setLayoutData(gd);
 		packColumns();
+		usageCol.getColumn().pack();
 		return tv;
 	}
+	
+	/**
+	 * Makes <usageCol> show the usage of each element, sortable, and 
+	 * redrawn whenever the UsageIndex is invalidated or read. It must be called
+	 * after developProviders(), which would replace its LabelProvider.
+	 */
+	private void developUsageColumn(TableViewerColumn usageCol) {
+		usageCol.setLabelProvider(new ColumnLabelProvider() {
+			@Override
+			public String getText(Object element) {
+				/* Redrawn by the listener when the counts are read */
+				int count = UsageIndex.getCount((Unit) element);
+				if (count == UsageIndex.LOADING) {
+					return "...";
+				} else if (count == UsageIndex.FAILED) {
+					return "?";
+				}
+				return count < 0 ? "" : String.valueOf(count);
+			}
+		});
+		
+		/* 
+		 * Most used first, ties in the order of the implementation. Counts
+		 * not read yet go last, until the listener sorts the table again.
+		 */
+		ViewerComparator defaultComparator = tv.getComparator();
+		ViewerComparator usageComparator = new ViewerComparator() {
+			@Override
+			public int compare(Viewer viewer, Object e1, Object e2) {
+				int result = Integer.compare(UsageIndex.getCount((Unit) e2), 
+						UsageIndex.getCount((Unit) e1));
+				if (result == 0 && defaultComparator != null) {
+					result = defaultComparator.compare(viewer, e1, e2);
+				}
+				return result;
+			}
+		};
+		Table table = tv.getTable();
+		usageCol.getColumn().addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				if (tv.getComparator() == usageComparator) {
+					tv.setComparator(defaultComparator);
+					table.setSortColumn(null);
+				} else {
+					tv.setComparator(usageComparator);
+					table.setSortColumn(usageCol.getColumn());
+					table.setSortDirection(SWT.DOWN);
+				}
+			}
+		});
+		
+		Runnable listener = () -> {
+			if (!table.isDisposed()) {
+				table.getDisplay().asyncExec(() -> {
+					if (!table.isDisposed()) {
+						tv.refresh();
+					}
+				});
+			}
+		};
+		UsageIndex.addListener(listener);
+		table.addDisposeListener(e -> UsageIndex.removeListener(listener));
+	}
 }
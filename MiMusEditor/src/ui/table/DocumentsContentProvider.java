@@ -0,0 +1,154 @@
+package ui.table;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jface.viewers.ILazyContentProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.jface.viewers.Viewer;
+import org.eclipse.swt.widgets.Table;
+
+import model.Document;
+import persistence.DocumentDao;
+import util.DBUtils;
+
+/**
+ * Lazy content provider for the virtual table of DocumentsView. Rows are
+ * downloaded from the DB as Document summaries, a page at a time, only
+ * when the table needs to show them. Only the last MAX_PAGES pages used
+ * are kept: the rows of older pages are cleared from the table, and
+ * downloaded again if they are shown again.
+ *
+ * Pages are selected by keyset: the first ID of each page is the next
+ * after the last ID of the previous one. When the user jumps to a page
+ * whose previous one is unknown, its key is looked up in the primary key.
+ * If there is no such key, the table has more rows than Documents, so
+ * its item count is reset to the current number of Documents.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class DocumentsContentProvider implements ILazyContentProvider {
+
+	public static final int PAGE_SIZE = 100;
+	public static final int MAX_PAGES = 5;
+
+	private TableViewer tv;
+
+	/* ID after which each page starts, for the pages known so far */
+	private Map<Integer, Integer> pageKeys = new HashMap<>();
+
+	/* Pages kept, the least recently used first */
+	private LinkedHashMap<Integer, List<Document>> pages =
+			new LinkedHashMap<>(16, 0.75f, true);
+
+	@Override
+	public void inputChanged(Viewer viewer, Object oldInput, Object newInput) {
+		tv = (TableViewer) viewer;
+		pageKeys.clear();
+		pages.clear();
+	}
+
+	/**
+	 * Shows in the table the Document at position <index>, downloading
+	 * its page if it is not kept.
+	 */
+	@Override
+	public void updateElement(int index) {
+		int pageIdx = index / PAGE_SIZE;
+		List<Document> page = getPage(pageIdx);
+		int offset = index % PAGE_SIZE;
+		if (offset < page.size()) {
+			tv.replace(page.get(offset), index);
+		}
+	}
+
+	/**
+	 * Returns page <pageIdx>, downloading it if it is not kept. If the
+	 * download fails, it returns an empty page, so the rows are left
+	 * blank and requested again later.
+	 */
+	private List<Document> getPage(int pageIdx) {
+		List<Document> page = pages.get(pageIdx);
+		if (page != null) {
+			return page;
+		}
+		try (Connection conn = DBUtils.connect()) {
+			DocumentDao dao = new DocumentDao(conn);
+			Integer key = pageKeys.get(pageIdx);
+			if (key == null) {
+				if (pageIdx == 0) {
+					key = Integer.MIN_VALUE;
+				} else {
+					/* Page starts right after the last row of the previous */
+					key = dao.selectIdAt(pageIdx * PAGE_SIZE - 1);
+					if (key < 0) {
+						/* Past the end: Documents were deleted since counted */
+						resetItemCount(dao.count());
+						return new ArrayList<>();
+					}
+					pageKeys.put(pageIdx, key);
+				}
+			}
+			page = dao.selectSummaries(key, PAGE_SIZE);
+		} catch (SQLException e) {
+			System.out.println("SQLException: could not retrieve Documents.");
+			e.printStackTrace();
+			return new ArrayList<>();
+		}
+		if (!page.isEmpty()) {
+			pageKeys.put(pageIdx + 1, page.get(page.size()-1).getId());
+		}
+		pages.put(pageIdx, page);
+		evictPages();
+		return page;
+	}
+
+	/**
+	 * Sets the number of rows of the table to <count>. It is deferred, as
+	 * this runs while the table is asking for a row.
+	 */
+	private void resetItemCount(int count) {
+		Table table = tv.getTable();
+		table.getDisplay().asyncExec(() -> {
+			if (!table.isDisposed()) {
+				tv.setItemCount(count);
+			}
+		});
+	}
+
+	/**
+	 * Forgets the least recently used pages over MAX_PAGES, and clears
+	 * their rows in the table. Clearing is deferred, as this runs while
+	 * the table is asking for a row.
+	 */
+	private void evictPages() {
+		Iterator<Integer> it = pages.keySet().iterator();
+		while (pages.size() > MAX_PAGES && it.hasNext()) {
+			int pageIdx = it.next();
+			it.remove();
+			Table table = tv.getTable();
+			table.getDisplay().asyncExec(() -> {
+				if (!table.isDisposed() && !pages.containsKey(pageIdx)) {
+					int start = pageIdx * PAGE_SIZE;
+					int end = Math.min(start + PAGE_SIZE, table.getItemCount()) - 1;
+					if (start <= end) {
+						table.clear(start, end);
+					}
+				}
+			});
+		}
+	}
+
+	@Override
+	public void dispose() {
+		pageKeys.clear();
+		pages.clear();
+	}
+}
@@ -1,69 +1,116 @@
 package ui.table;
 
-import java.util.List;
-
-import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.ISelectionChangedListener;
 import org.eclipse.jface.viewers.IStructuredSelection;
-import org.eclipse.jface.viewers.ListViewer;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
 import org.eclipse.jface.viewers.SelectionChangedEvent;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.widgets.Composite;
-import org.eclipse.ui.IWorkbenchPage;
-import org.eclipse.ui.PartInitException;
-import org.eclipse.ui.PlatformUI;
-import org.eclipse.ui.ide.IDE;
+import org.eclipse.swt.widgets.TableColumn;
 
 import model.Document;
+import model.DocumentLoadException;
+import ui.Editor;
 
 /**
- * TableViewer for DocumentsView. It is a 1-column table, effectively
- * a list. It shows all Documents in MiMus DB and, when one is selected,
- * it is opened in the MiMus Editor.
- * 
+ * TableViewer for DocumentsView. It shows all Documents in MiMus DB
+ * and, when one is selected, it is opened in the MiMus Editor.
+ *
+ * The table is virtual: only the rows shown are downloaded, as Document
+ * summaries, by a DocumentsContentProvider. This way it opens at once
+ * and keeps only a few pages in memory, regardless of the corpus size.
+ *
  * @author Javier Beltrán Jorba
  *
  */
-public class DocumentsTableViewer {
-		
-	private ListViewer tv;
-	private List<Document> documents;
-	
-	public DocumentsTableViewer(Composite parent, List<Document> documents) {
-		tv = new ListViewer(parent);
-		tv.setContentProvider(ArrayContentProvider.getInstance());
-		tv.setInput(documents);
+public class DocumentsTableViewer extends MiMusTableViewer {
+
+	private int documentCount;
+
+	public DocumentsTableViewer(Composite parent, int documentCount) {
+		super(parent);
+		this.documentCount = documentCount;
+		String[] aux = {"Document", "Numeració", "Data", "Anotació", "Revisió"};
+		this.columnNames = aux;
+	}
+
+	@Override
+	public TableViewer createTableViewer() {
+		tv = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION
+				| SWT.V_SCROLL | SWT.VIRTUAL);
+		for (String h: columnNames) {
+			TableColumn col = new TableColumn(tv.getTable(), SWT.LEFT);
+			col.setText(h);
+			col.setWidth(120);
+		}
+		tv.setUseHashlookup(true);
+		tv.setContentProvider(new DocumentsContentProvider());
+		tv.setLabelProvider(new DocumentLabelProvider());
+		tv.setInput(documentCount);
+		tv.setItemCount(documentCount);
+		tv.getTable().setHeaderVisible(true);
+		tv.getTable().setLinesVisible(true);
 		
+		/* 
+		 * Bounded height, or the form would grow the table to fit all rows
+		 * and all of them would be downloaded
+		 */
+		GridData gd = new GridData(SWT.FILL, SWT.FILL, true, true);
+		gd.heightHint = 500;
+		tv.getTable().setLayoutData(gd);
+
 		/* Listener that opens the Document in Editor */
 		tv.addSelectionChangedListener(new ISelectionChangedListener() {
 			public void selectionChanged(SelectionChangedEvent event) {
 				/* From UI selection to Document */
-				IStructuredSelection selection = 
+				IStructuredSelection selection =
 						(IStructuredSelection)event.getSelection();
 				Document document = (Document) selection.getFirstElement();
-				if (document != null) {	
-					/* Tells Eclipse to open MiMusEditor with Document as input */
-					IWorkbenchPage page = PlatformUI.getWorkbench()
-							.getActiveWorkbenchWindow().getActivePage();
-
-					try {
-						IDE.openEditor(page, document, "MiMusEditor.mimusEditor");
-					} catch (PartInitException e) {
-						e.printStackTrace();
-						System.out.println("Cannot open editor from document.");
-					}
+				if (document != null) {
+					Editor.open(document);
 				} else {
 					System.out.println("Tried opening editor but nothing was selected.");
 				}
 			}
 		}
 		);
+		return tv;
 	}
 
-	public List<Document> getDocuments() {
-		return documents;
-	}
-	
-	public void setDocuments(List<Document> documents) {
-		this.documents = documents;
+	class DocumentLabelProvider extends LabelProvider
+			implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			Document doc = (Document) element;
+			if (columnIndex == 0) {
+				return doc.getIdStr();
+			}
+			try {
+				switch (columnIndex) {
+				case 1:
+					return doc.getNumbering() == null ? "" : doc.getNumbering();
+				case 2:
+					return doc.getDate().toString();
+				case 3:
+					return doc.getStateAnnotStr();
+				case 4:
+					return doc.getStateRevStr();
+				default:	// Shouldn't reach here
+					return "";
+				}
+			} catch (DocumentLoadException e) {
+				/* Tried again when the table is refreshed */
+				return "(not loaded)";
+			}
+		}
 	}
 }
@@ -0,0 +1,82 @@
+package ui.table;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.TableColumn;
+
+import util.QueryLog;
+import util.QueryMonitor.Action;
+
+/**
+ * TableViewer for the actions of the user in QueryMonitorView, with the
+ * totals of the statements each one executed.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class QueryActionTableViewer extends MiMusTableViewer {
+
+	public QueryActionTableViewer(Composite parent) {
+		super(parent);
+		String[] aux = {"Time", "Action", "Statements", "Shapes", "Rows",
+				"ms", "N+1"};
+		this.columnNames = aux;
+	}
+
+	@Override
+	public TableViewer createTableViewer() {
+		tv = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION | SWT.V_SCROLL);
+		for (String h: columnNames) {
+			TableColumn col = new TableColumn(tv.getTable(), SWT.LEFT);
+			col.setText(h);
+		}
+		tv.setContentProvider(ArrayContentProvider.getInstance());
+		tv.setLabelProvider(new ActionLabelProvider());
+		tv.getTable().setHeaderVisible(true);
+		tv.getTable().setLinesVisible(true);
+		GridData gd = new GridData(SWT.FILL, SWT.FILL, true, true);
+		gd.heightHint = 200;
+		tv.getTable().setLayoutData(gd);
+		packColumns();
+		return tv;
+	}
+
+	class ActionLabelProvider extends LabelProvider
+			implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			Action action = (Action) element;
+			QueryLog log = action.getLog();
+			switch (columnIndex) {
+			case 0:
+				return action.getStartTime();
+			case 1:
+				return action.getName();
+			case 2:
+				return String.valueOf(log.getStatementCount());
+			case 3:
+				return String.valueOf(log.getShapes().size());
+			case 4:
+				return String.valueOf(log.getRowCount());
+			case 5:
+				return String.format("%.1f", log.getNanos() / 1e6);
+			case 6:		// Number of suspect shapes, blank if none
+				int suspects = log.getSuspectCount();
+				return suspects > 0 ? String.valueOf(suspects) : "";
+			default:	// Shouldn't reach here
+				return "";
+			}
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package ui.table;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.TableColumn;
+
+import util.QueryLog.ShapeStats;
+
+/**
+ * TableViewer for the SQL shapes executed by an action in
+ * QueryMonitorView. Shapes that look like an N+1 pattern are flagged.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class QueryShapeTableViewer extends MiMusTableViewer {
+
+	public QueryShapeTableViewer(Composite parent) {
+		super(parent);
+		String[] aux = {"N+1", "Count", "Identical", "Rows", "ms", "SQL"};
+		this.columnNames = aux;
+	}
+
+	@Override
+	public TableViewer createTableViewer() {
+		tv = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION
+				| SWT.V_SCROLL | SWT.H_SCROLL);
+		for (String h: columnNames) {
+			TableColumn col = new TableColumn(tv.getTable(), SWT.LEFT);
+			col.setText(h);
+		}
+		tv.setContentProvider(ArrayContentProvider.getInstance());
+		tv.setLabelProvider(new ShapeLabelProvider());
+		tv.getTable().setHeaderVisible(true);
+		tv.getTable().setLinesVisible(true);
+		GridData gd = new GridData(SWT.FILL, SWT.FILL, true, true);
+		gd.heightHint = 200;
+		tv.getTable().setLayoutData(gd);
+		packColumns();
+		return tv;
+	}
+
+	class ShapeLabelProvider extends LabelProvider
+			implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			ShapeStats shape = (ShapeStats) element;
+			switch (columnIndex) {
+			case 0:
+				return shape.isSuspect() ? "!" : "";
+			case 1:
+				return String.valueOf(shape.getCount());
+			case 2:		// Executions repeating the exact same SQL
+				return String.valueOf(shape.getRepeats());
+			case 3:
+				return String.valueOf(shape.getRows());
+			case 4:
+				return String.format("%.1f", shape.getNanos() / 1e6);
+			case 5:
+				return shape.getShape();
+			default:	// Shouldn't reach here
+				return "";
+			}
+		}
+	}
+}
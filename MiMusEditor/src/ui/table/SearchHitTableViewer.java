@@ -0,0 +1,77 @@
+package ui.table;
+
+import org.eclipse.jface.viewers.ArrayContentProvider;
+import org.eclipse.jface.viewers.ITableLabelProvider;
+import org.eclipse.jface.viewers.LabelProvider;
+import org.eclipse.jface.viewers.TableViewer;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.TableColumn;
+
+import search.SearchHit;
+
+/**
+ * TableViewer for the hits of a search in SearchView: the Document and
+ * text where each one is, and the match with some context.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class SearchHitTableViewer extends MiMusTableViewer {
+
+	public SearchHitTableViewer(Composite parent) {
+		super(parent);
+		String[] aux = {"Document", "Field", "Context"};
+		this.columnNames = aux;
+	}
+
+	@Override
+	public TableViewer createTableViewer() {
+		tv = new TableViewer(parent, SWT.SINGLE | SWT.FULL_SELECTION | SWT.V_SCROLL);
+		for (String h: columnNames) {
+			TableColumn col = new TableColumn(tv.getTable(), SWT.LEFT);
+			col.setText(h);
+		}
+		tv.setContentProvider(ArrayContentProvider.getInstance());
+		tv.setLabelProvider(new HitLabelProvider());
+		tv.getTable().setHeaderVisible(true);
+		tv.getTable().setLinesVisible(true);
+		GridData gd = new GridData(SWT.FILL, SWT.FILL, true, true);
+		gd.heightHint = 400;
+		tv.getTable().setLayoutData(gd);
+		packColumns();
+		return tv;
+	}
+
+	class HitLabelProvider extends LabelProvider
+			implements ITableLabelProvider {
+		@Override
+		public Image getColumnImage(Object element, int columnIndex) {
+			return null;
+		}
+
+		@Override
+		public String getColumnText(Object element, int columnIndex) {
+			SearchHit hit = (SearchHit) element;
+			switch (columnIndex) {
+			case 0:
+				return String.format("%05d", hit.getDocumentId());
+			case 1:
+				switch (hit.getField()) {
+				case TRANSCRIPTION:
+					return "Transcription";
+				case REGEST:
+					return "Regest";
+				default:
+					return "Note";
+				}
+			case 2:
+				return hit.getContext();
+			default:	// Shouldn't reach here
+				return "";
+			}
+		}
+	}
+}
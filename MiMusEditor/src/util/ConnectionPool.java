@@ -0,0 +1,357 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * A ConnectionPool keeps a bounded set of open Connections to the MiMus
+ * DB for one user session, so DAOs can borrow them instead of opening a
+ * new Connection (and paying the TCP and authentication handshake) on
+ * every action of the user.
+ *
+ * Connections handed out by the pool are wrappers of the physical ones:
+ * calling close() on them returns the physical Connection to the pool
+ * instead of closing it. The pool also takes care of:
+ *
+ * - Validation on borrow: a Connection that has been idle for a while
+ * is checked with isValid() before lending it, and discarded if broken.
+ * - Idle eviction: Connections unused for longer than <maxIdleMillis>
+ * are closed by a background task.
+ * - Leak detection: tracked Connections held for longer than
+ * <leakThresholdMillis> are reported once, with the stack trace of the
+ * code that borrowed them.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class ConnectionPool {
+
+	/* Idle Connections are only validated if unused for this long */
+	private static final long VALIDATION_INTERVAL_MILLIS = 5000;
+	private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+	private static final long HOUSEKEEPING_PERIOD_MILLIS = 30000;
+
+	/* Login data of the session */
+	private final String user;
+	private final String pass;
+	private final String host;
+
+	/* Pool settings */
+	private final int maxSize;
+	private final long maxIdleMillis;
+	private final long leakThresholdMillis;
+	private final long borrowTimeoutMillis;
+
+	/* Pool state, guarded by this */
+	private final Deque<PooledConnection> idle;
+	private final Set<PooledConnection> borrowed;
+	private int opening;
+	private boolean closed;
+
+	private final ScheduledExecutorService housekeeper;
+
+	public ConnectionPool(String user, String pass, String host, int maxSize,
+			long maxIdleMillis, long leakThresholdMillis, long borrowTimeoutMillis) {
+		this.user = user;
+		this.pass = pass;
+		this.host = host;
+		this.maxSize = maxSize;
+		this.maxIdleMillis = maxIdleMillis;
+		this.leakThresholdMillis = leakThresholdMillis;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.idle = new ArrayDeque<>();
+		this.borrowed = new HashSet<>();
+		this.opening = 0;
+		this.closed = false;
+
+		/* Daemon thread, so it never keeps the workbench from exiting */
+		this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "MiMus connection pool housekeeper");
+			t.setDaemon(true);
+			return t;
+		});
+		this.housekeeper.scheduleWithFixedDelay(this::housekeeping,
+				HOUSEKEEPING_PERIOD_MILLIS, HOUSEKEEPING_PERIOD_MILLIS,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Borrows a Connection from the pool, opening a new one if none is
+	 * idle and the pool has not reached <maxSize>. Otherwise, it waits
+	 * until a Connection is returned or <borrowTimeoutMillis> passes.
+	 * If <tracked> is false, the Connection is expected to be held for
+	 * a long time and leak detection ignores it.
+	 */
+	public Connection borrow(boolean tracked) throws SQLException {
+		long deadline = System.currentTimeMillis() + borrowTimeoutMillis;
+		while (true) {
+			PooledConnection candidate = null;
+			synchronized (this) {
+				while (candidate == null) {
+					if (closed) {
+						throw new SQLException("Connection pool is closed.");
+					}
+					if (!idle.isEmpty()) {
+						candidate = idle.pollFirst();
+					} else if (borrowed.size() + opening < maxSize) {
+						opening++;
+						break;
+					} else {
+						long wait = deadline - System.currentTimeMillis();
+						if (wait <= 0) {
+							throw new SQLTransientConnectionException(
+									"Timed out waiting for a connection, pool of " 
+									+ maxSize + " exhausted.");
+						}
+						try {
+							wait(wait);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new SQLException("Interrupted waiting for a connection.");
+						}
+					}
+				}
+			}
+
+			if (candidate == null) {
+				/* A slot was reserved: open the physical connection unlocked */
+				return lend(open(), tracked);
+			}
+			if (isUsable(candidate)) {
+				return lend(candidate, tracked);
+			}
+			discard(candidate);
+		}
+	}
+
+	/**
+	 * Opens a new physical Connection for a slot already reserved
+	 * in <opening>.
+	 */
+	private PooledConnection open() throws SQLException {
+		try {
+			return new PooledConnection(DBUtils.connect(user, pass, host));
+		} catch (JSchException e) {
+			throw new SQLException(e);
+		} finally {
+			synchronized (this) {
+				opening--;
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Validates Connections that have been idle for longer than
+	 * VALIDATION_INTERVAL_MILLIS, which costs a round trip.
+	 */
+	private boolean isUsable(PooledConnection pc) {
+		if (System.currentTimeMillis() - pc.lastUsed < VALIDATION_INTERVAL_MILLIS) {
+			return true;
+		}
+		try {
+			return pc.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private synchronized Connection lend(PooledConnection pc, boolean tracked)
+			throws SQLException {
+		if (closed) {
+			closeQuietly(pc.physical);
+			throw new SQLException("Connection pool is closed.");
+		}
+		pc.borrowedAt = System.currentTimeMillis();
+		pc.borrowSite = tracked ? new Throwable("Connection borrowed here") : null;
+		pc.leakReported = false;
+		borrowed.add(pc);
+		return pc.newHandle();
+	}
+
+	/**
+	 * Gets back a Connection from a borrower. Pending transactions are
+	 * rolled back so the next borrower always finds it in auto-commit
+	 * mode. Broken Connections are closed instead of reused.
+	 */
+	private void release(PooledConnection pc) {
+		boolean reusable = true;
+		try {
+			if (!pc.physical.getAutoCommit()) {
+				pc.physical.rollback();
+				pc.physical.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			reusable = false;
+		}
+		synchronized (this) {
+			borrowed.remove(pc);
+			pc.lastUsed = System.currentTimeMillis();
+			if (reusable && !closed) {
+				/* LIFO keeps the most recently used connections warm */
+				idle.addFirst(pc);
+				pc = null;
+			}
+			notifyAll();
+		}
+		if (pc != null) {
+			closeQuietly(pc.physical);
+		}
+	}
+
+	private void discard(PooledConnection pc) {
+		closeQuietly(pc.physical);
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Periodic task that evicts idle Connections and reports leaks.
+	 */
+	private void housekeeping() {
+		List<PooledConnection> evicted = new ArrayList<>();
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			Iterator<PooledConnection> it = idle.iterator();
+			while (it.hasNext()) {
+				PooledConnection pc = it.next();
+				if (now - pc.lastUsed > maxIdleMillis) {
+					it.remove();
+					evicted.add(pc);
+				}
+			}
+			for (PooledConnection pc : borrowed) {
+				if (pc.borrowSite != null && !pc.leakReported
+						&& now - pc.borrowedAt > leakThresholdMillis) {
+					pc.leakReported = true;
+					System.out.println("Possible connection leak: connection held for "
+							+ (now - pc.borrowedAt) + " ms.");
+					pc.borrowSite.printStackTrace(System.out);
+				}
+			}
+		}
+		for (PooledConnection pc : evicted) {
+			closeQuietly(pc.physical);
+		}
+	}
+
+	/**
+	 * Closes the pool and all its idle Connections. Connections still
+	 * borrowed are closed when their borrowers return them.
+	 */
+	public void shutdown() {
+		List<PooledConnection> toClose;
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<>(idle);
+			idle.clear();
+			notifyAll();
+		}
+		housekeeper.shutdownNow();
+		for (PooledConnection pc : toClose) {
+			closeQuietly(pc.physical);
+		}
+	}
+
+	public String getUser() {
+		return user;
+	}
+
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	public synchronized int getBorrowedCount() {
+		return borrowed.size();
+	}
+
+	private static void closeQuietly(Connection conn) {
+		try {
+			conn.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Physical Connection managed by the pool, plus its bookkeeping.
+	 */
+	private class PooledConnection {
+
+		private final Connection physical;
+		private long lastUsed;
+		private long borrowedAt;
+		private Throwable borrowSite;
+		private boolean leakReported;
+
+		private PooledConnection(Connection physical) {
+			this.physical = physical;
+			this.lastUsed = System.currentTimeMillis();
+		}
+
+		/**
+		 * Returns a new wrapper of the physical Connection for one
+		 * borrower. After close(), the wrapper becomes unusable, so a
+		 * stale reference can't interfere with the next borrower.
+		 */
+		private Connection newHandle() {
+			InvocationHandler handler = new InvocationHandler() {
+				private boolean released = false;
+
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args)
+						throws Throwable {
+					String name = method.getName();
+					if (method.getDeclaringClass() == Object.class) {
+						/* Handles compare by identity, like the physical ones */
+						if (name.equals("equals")) {
+							return proxy == args[0];
+						} else if (name.equals("hashCode")) {
+							return System.identityHashCode(proxy);
+						}
+						return "Pooled " + physical.toString();
+					}
+					if (name.equals("close")) {
+						if (!released) {
+							released = true;
+							release(PooledConnection.this);
+						}
+						return null;
+					}
+					if (name.equals("isClosed")) {
+						return released || physical.isClosed();
+					}
+					if (released) {
+						throw new SQLException("Connection already returned to the pool.");
+					}
+					try {
+						return method.invoke(physical, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				}
+			};
+			return (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(),
+					new Class<?>[] {Connection.class}, handler);
+		}
+	}
+}
@@ -15,6 +15,12 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 
+import persistence.ChangeLog;
+import persistence.LocalReplica;
+import persistence.ReferenceData;
+import persistence.UnitCatalog;
+import persistence.UsageIndex;
+
 /**
  * This class encapsulates functionality to connect to the MiMus DB.
  * It picks the login data from config.properties file.
@@ -24,26 +30,202 @@ import org.eclipse.core.resources.ResourcesPlugin;
  */
 public class DBUtils {
 	
+	/* 
+	 * Default settings of the session pool, overridable in config.properties.
+	 * The size covers an Editor loading and saving, the declarative views
+	 * loading, the polling of changes and a read of the UI at once.
+	 */
+	private static final int POOL_MAX_SIZE = 8;
+	private static final long POOL_MAX_IDLE_MILLIS = 5 * 60 * 1000;
+	private static final long POOL_LEAK_THRESHOLD_MILLIS = 60 * 1000;
+	private static final long POOL_BORROW_TIMEOUT_MILLIS = 10 * 1000;
+	
+	/* Pool of the current session, null when no session is open */
+	private static ConnectionPool pool = null;
+	
+	/* Held while a session is opened, so only one pool is made at once */
+	private static final Object openLock = new Object();
+	
 	/**
-	 * Returns an open Connection to the MiMus DB using SQL connector.
-	 * User and password are read from editor.user and editor.pass fields
-	 * in config.properties.
+	 * Returns a Connection to the MiMus DB borrowed from the pool of the
+	 * current session. It must be closed when no longer needed, which
+	 * returns it to the pool. If no session is open yet, one is opened
+	 * with the user and password stored in config.properties.
+	 * 
+	 * The statements executed through it are recorded in the QueryMonitor,
+	 * under the action of the user going on.
 	 */
 	public static Connection connect() throws SQLException {
+		return InstrumentedConnection.wrap(getPool().borrow(true), 
+				QueryMonitor::current);
+	}
+	
+	/**
+	 * Like connect(), but for Connections meant to be held for a long
+	 * time (e.g. during the whole life of an Editor), which leak
+	 * detection must not report. It must be closed as well.
+	 */
+	public static Connection connectLongLived() throws SQLException {
+		return InstrumentedConnection.wrap(getPool().borrow(false), 
+				QueryMonitor::current);
+	}
+	
+	/**
+	 * Like connect(), but its statements are not recorded in the 
+	 * QueryMonitor. Used by background work that runs on its own, e.g.
+	 * polling changes, so it isn't counted in the action of the user.
+	 */
+	public static Connection connectUnmonitored() throws SQLException {
+		return getPool().borrow(true);
+	}
+	
+	/**
+	 * Opens a new session for user <user> with password <pass> on host
+	 * <host>, i.e. a new pool of connections. The credentials are tested
+	 * before replacing the current session, so if they are wrong an
+	 * exception is thrown and the current session stays open.
+	 */
+	public static void openSession(String user, String pass, String host) 
+			throws SQLException {
+		synchronized (openLock) {
+			openSessionLocked(user, pass, host);
+		}
+	}
+	
+	private static void openSessionLocked(String user, String pass, 
+			String host) throws SQLException {
+		Properties prop = new Properties();
+		try {
+			prop = readProperties();
+		} catch (IOException e) {
+			System.out.println("Could not read pool settings, using defaults.");
+		}
+		QueryMonitor.setDumpFile(prop.getProperty("monitor.dump_file"));
+		ConnectionPool newPool = new ConnectionPool(user, pass, host,
+				getIntProperty(prop, "pool.max_size", POOL_MAX_SIZE),
+				getLongProperty(prop, "pool.max_idle_ms", POOL_MAX_IDLE_MILLIS),
+				getLongProperty(prop, "pool.leak_threshold_ms", 
+						POOL_LEAK_THRESHOLD_MILLIS),
+				getLongProperty(prop, "pool.borrow_timeout_ms", 
+						POOL_BORROW_TIMEOUT_MILLIS));
 		try {
-			Properties prop = readProperties();
-			return connect(prop.getProperty("editor.user"), 
-					prop.getProperty("editor.pass"),
-					prop.getProperty("host.name"));
-		} catch(IOException | JSchException e) {
-			e.printStackTrace();
-			throw new SQLException();
+			/* Borrowing the first connection tests the credentials */
+			newPool.borrow(true).close();
+		} catch (SQLException e) {
+			newPool.shutdown();
+			throw e;
 		}
+		
+		ConnectionPool oldPool;
+		synchronized (DBUtils.class) {
+			oldPool = pool;
+			pool = newPool;
+		}
+		if (oldPool != null) {
+			oldPool.shutdown();
+		}
+		/* Lookup tables and usage may differ between hosts, read them again */
+		ReferenceData.invalidate();
+		UsageIndex.invalidate();
+		UnitCatalog.invalidate();
+		ChangeLog.invalidate();
+		LocalReplica.invalidate();
 	}
 	
 	/**
-	 * Returns an open Connection to the MiMus DB using SQL connector.
-	 * User and password are passed as parameters.
+	 * Closes the current session and its pool of connections, if any.
+	 */
+	public static void closeSession() {
+		ConnectionPool oldPool;
+		synchronized (DBUtils.class) {
+			oldPool = pool;
+			pool = null;
+		}
+		if (oldPool != null) {
+			oldPool.shutdown();
+		}
+		ReferenceData.invalidate();
+		UsageIndex.invalidate();
+		UnitCatalog.invalidate();
+		ChangeLog.invalidate();
+		LocalReplica.invalidate();
+	}
+	
+	/**
+	 * Returns the maximum number of Connections of the session pool, as
+	 * set in config.properties, so background work can leave some free.
+	 */
+	public static int getPoolMaxSize() {
+		try {
+			return Math.max(1, getIntProperty(readProperties(), 
+					"pool.max_size", POOL_MAX_SIZE));
+		} catch (IOException e) {
+			return POOL_MAX_SIZE;
+		}
+	}
+	
+	/**
+	 * Returns true if a session is open, without opening one.
+	 */
+	public static synchronized boolean isSessionOpen() {
+		return pool != null;
+	}
+	
+	/**
+	 * Returns the pool of the current session, opening the session from
+	 * config.properties if there is none.
+	 */
+	private static ConnectionPool getPool() throws SQLException {
+		synchronized (DBUtils.class) {
+			if (pool != null) {
+				return pool;
+			}
+		}
+		synchronized (openLock) {
+			/* Another thread may have opened it while this one waited */
+			synchronized (DBUtils.class) {
+				if (pool != null) {
+					return pool;
+				}
+			}
+			try {
+				Properties prop = readProperties();
+				openSessionLocked(prop.getProperty("editor.user"), 
+						prop.getProperty("editor.pass"),
+						prop.getProperty("host.name"));
+			} catch(IOException e) {
+				e.printStackTrace();
+				throw new SQLException();
+			}
+		}
+		synchronized (DBUtils.class) {
+			if (pool == null) {
+				throw new SQLException("Session closed while opening it.");
+			}
+			return pool;
+		}
+	}
+	
+	private static int getIntProperty(Properties prop, String key, int def) {
+		try {
+			return Integer.parseInt(prop.getProperty(key, String.valueOf(def)));
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+	
+	private static long getLongProperty(Properties prop, String key, long def) {
+		try {
+			return Long.parseLong(prop.getProperty(key, String.valueOf(def)));
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+	
+	/**
+	 * Returns a new physical Connection to the MiMus DB using SQL connector.
+	 * User and password are passed as parameters. The application borrows
+	 * connections through connect(); this is used by the session pool.
 	 */
 	public static Connection connect(String user, String pass, String host)
 			throws SQLException, JSchException {
@@ -112,9 +294,17 @@ public class DBUtils {
 	}
 	
 	private static String getPath() {
+		return getCorpusFilePath("config.properties");
+	}
+	
+	/**
+	 * Returns the location in the file system of file <name> of the
+	 * MiMusCorpus project, where the local files of the editor are kept.
+	 */
+	public static String getCorpusFilePath(String name) {
 		IWorkspaceRoot workspace = ResourcesPlugin.getWorkspace().getRoot();
 		IProject corpus = workspace.getProject("MiMusCorpus");
-		IFile file = corpus.getFile("config.properties");
+		IFile file = corpus.getFile(name);
 		return file.getLocation().toString();
 	}
 }
@@ -0,0 +1,166 @@
+package util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.function.Supplier;
+
+/**
+ * Wraps Connections so every statement executed through them, and every
+ * row fetched from their results, is recorded in a QueryLog. The wrappers
+ * are transparent to DAOs: Statements, PreparedStatements and ResultSets
+ * obtained from an instrumented Connection are instrumented as well.
+ *
+ * The QueryLog may be given by a Supplier, which is asked on every
+ * statement and row, so the same Connection can record into the log of
+ * whatever action is going on (see QueryMonitor).
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class InstrumentedConnection {
+
+	private InstrumentedConnection() {}
+
+	/**
+	 * Returns a Connection that behaves like <conn> and records its
+	 * statements in <log>.
+	 */
+	public static Connection wrap(Connection conn, QueryLog log) {
+		return wrap(conn, () -> log);
+	}
+
+	/**
+	 * Returns a Connection that behaves like <conn> and records its
+	 * statements in the QueryLog given by <log> at the time.
+	 */
+	public static Connection wrap(Connection conn, Supplier<QueryLog> log) {
+		return proxy(Connection.class, conn, (method, args, result, state) -> {
+			String name = method.getName();
+			if (result instanceof Statement) {
+				String sql = name.startsWith("prepare") ? (String) args[0] : null;
+				return wrapStatement((Statement) result, sql, log);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Wraps <stmt>, whose SQL is <preparedSql> if it is a prepared one.
+	 */
+	private static Statement wrapStatement(Statement stmt, String preparedSql,
+			Supplier<QueryLog> log) {
+		Class<? extends Statement> type = Statement.class;
+		if (stmt instanceof CallableStatement) {
+			type = CallableStatement.class;
+		} else if (stmt instanceof PreparedStatement) {
+			type = PreparedStatement.class;
+		}
+		/* SQL of the last execution, for the rows of its results */
+		String[] lastSql = {preparedSql};
+		return proxy(type, stmt, new Interceptor() {
+			@Override
+			public Object before(Method method, Object[] args) {
+				if (method.getName().startsWith("execute")) {
+					boolean prepared = true;
+					if (args != null && args.length > 0 && args[0] instanceof String) {
+						lastSql[0] = (String) args[0];
+						prepared = false;
+					}
+					return new long[] {System.nanoTime(), prepared ? 1 : 0};
+				}
+				return null;
+			}
+
+			@Override
+			public Object after(Method method, Object[] args, Object result,
+					Object start) {
+				if (start != null && lastSql[0] != null) {
+					long[] execution = (long[]) start;
+					log.get().executed(lastSql[0], execution[1] == 1,
+							System.nanoTime() - execution[0]);
+				}
+				if (result instanceof ResultSet && lastSql[0] != null) {
+					return wrapResultSet((ResultSet) result, lastSql[0], log);
+				}
+				return result;
+			}
+		});
+	}
+
+	private static ResultSet wrapResultSet(ResultSet rs, String sql,
+			Supplier<QueryLog> log) {
+		return proxy(ResultSet.class, rs, new Interceptor() {
+			@Override
+			public Object before(Method method, Object[] args) {
+				return method.getName().equals("next") ? System.nanoTime() : null;
+			}
+
+			@Override
+			public Object after(Method method, Object[] args, Object result,
+					Object start) {
+				if (start != null) {
+					log.get().fetched(sql, Boolean.TRUE.equals(result) ? 1 : 0,
+							System.nanoTime() - (Long) start);
+				}
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * Returns a proxy of <target> as <type>, which delegates every call to
+	 * it through <interceptor>.
+	 */
+	private static <T> T proxy(Class<T> type, Object target, Interceptor interceptor) {
+		InvocationHandler handler = new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+				if (method.getDeclaringClass() == Object.class) {
+					if (method.getName().equals("equals")) {
+						return proxy == args[0];
+					} else if (method.getName().equals("hashCode")) {
+						return System.identityHashCode(proxy);
+					}
+					return "Instrumented " + target.toString();
+				}
+				Object state = interceptor.before(method, args);
+				Object result;
+				try {
+					result = method.invoke(target, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+				return interceptor.after(method, args, result, state);
+			}
+		};
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] {type}, handler));
+	}
+
+	/**
+	 * Hooks around each call delegated by a proxy.
+	 */
+	private interface Interceptor {
+
+		/**
+		 * Called before <method>, returns a state passed to after().
+		 */
+		default Object before(Method method, Object[] args) {
+			return null;
+		}
+
+		/**
+		 * Called after <method> returned <result>, returns what the
+		 * proxy returns instead.
+		 */
+		Object after(Method method, Object[] args, Object result, Object state);
+	}
+}
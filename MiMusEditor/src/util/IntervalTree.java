@@ -0,0 +1,263 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interval tree of ranges of characters of a text, [start, end), each
+ * with a value, e.g. the highlights of a transcription with their font.
+ *
+ * It is a balanced (AVL) binary search tree ordered by start and end,
+ * where each node also knows the largest end below it, so the intervals
+ * overlapping a range are found without visiting those that end before
+ * or start after it. Intervals can be repeated: each node keeps the
+ * values of all the intervals with its start and end.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ * @param <V> the type of the values of the intervals
+ */
+public class IntervalTree<V> {
+
+	private Node<V> root = null;
+	private int size = 0;
+
+	/**
+	 * Adds interval [<start>, <end>) with <value>. Empty intervals are
+	 * ignored, as they contain no character.
+	 */
+	public void add(int start, int end, V value) {
+		if (start < end) {
+			root = add(root, start, end, value);
+			size++;
+		}
+	}
+
+	/**
+	 * Removes an interval [<start>, <end>), the last added if there are
+	 * several. Returns whether there was any.
+	 */
+	public boolean remove(int start, int end) {
+		int before = size;
+		root = remove(root, start, end);
+		return size < before;
+	}
+
+	public void clear() {
+		root = null;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the intervals that share some character with range
+	 * [<from>, <to>), in order of start.
+	 */
+	public List<Interval<V>> overlapping(int from, int to) {
+		List<Interval<V>> found = new ArrayList<>();
+		overlapping(root, from, to, found);
+		return found;
+	}
+
+	/**
+	 * Returns the lowest start and the highest end of the intervals, or
+	 * null if there are none.
+	 */
+	public Interval<V> getBounds() {
+		if (root == null) {
+			return null;
+		}
+		Node<V> first = root;
+		while (first.left != null) {
+			first = first.left;
+		}
+		return new Interval<>(first.start, root.maxEnd, null);
+	}
+
+	private static <V> Node<V> add(Node<V> node, int start, int end, V value) {
+		if (node == null) {
+			return new Node<>(start, end, value);
+		}
+		int cmp = compare(start, end, node);
+		if (cmp == 0) {
+			node.values.add(value);
+			return node;
+		} else if (cmp < 0) {
+			node.left = add(node.left, start, end, value);
+		} else {
+			node.right = add(node.right, start, end, value);
+		}
+		return balance(node);
+	}
+
+	private Node<V> remove(Node<V> node, int start, int end) {
+		if (node == null) {
+			return null;
+		}
+		int cmp = compare(start, end, node);
+		if (cmp < 0) {
+			node.left = remove(node.left, start, end);
+		} else if (cmp > 0) {
+			node.right = remove(node.right, start, end);
+		} else {
+			size--;
+			node.values.remove(node.values.size() - 1);
+			if (!node.values.isEmpty()) {
+				return node;
+			}
+			if (node.left == null) {
+				return node.right;
+			}
+			if (node.right == null) {
+				return node.left;
+			}
+			/* Replace by the next node, taken out of the right subtree */
+			Node<V> next = node.right;
+			while (next.left != null) {
+				next = next.left;
+			}
+			next.right = removeFirst(node.right);
+			next.left = node.left;
+			node = next;
+		}
+		return balance(node);
+	}
+
+	private static <V> Node<V> removeFirst(Node<V> node) {
+		if (node.left == null) {
+			return node.right;
+		}
+		node.left = removeFirst(node.left);
+		return balance(node);
+	}
+
+	private static <V> void overlapping(Node<V> node, int from, int to,
+			List<Interval<V>> found) {
+		if (node == null || node.maxEnd <= from) {
+			/* Everything below ends before the range */
+			return;
+		}
+		overlapping(node.left, from, to, found);
+		if (node.start < to) {
+			if (node.end > from) {
+				for (V value : node.values) {
+					found.add(new Interval<>(node.start, node.end, value));
+				}
+			}
+			overlapping(node.right, from, to, found);
+		}
+	}
+
+	private static int compare(int start, int end, Node<?> node) {
+		if (start != node.start) {
+			return Integer.compare(start, node.start);
+		}
+		return Integer.compare(end, node.end);
+	}
+
+	private static int height(Node<?> node) {
+		return node == null ? 0 : node.height;
+	}
+
+	/**
+	 * Updates the height and max end of <node> from its children.
+	 */
+	private static void fix(Node<?> node) {
+		node.height = 1 + Math.max(height(node.left), height(node.right));
+		node.maxEnd = node.end;
+		if (node.left != null) {
+			node.maxEnd = Math.max(node.maxEnd, node.left.maxEnd);
+		}
+		if (node.right != null) {
+			node.maxEnd = Math.max(node.maxEnd, node.right.maxEnd);
+		}
+	}
+
+	private static <V> Node<V> rotateRight(Node<V> node) {
+		Node<V> left = node.left;
+		node.left = left.right;
+		left.right = node;
+		fix(node);
+		fix(left);
+		return left;
+	}
+
+	private static <V> Node<V> rotateLeft(Node<V> node) {
+		Node<V> right = node.right;
+		node.right = right.left;
+		right.left = node;
+		fix(node);
+		fix(right);
+		return right;
+	}
+
+	/**
+	 * Restores the AVL property at <node>, whose children differ in
+	 * height by 2 at most, and returns the root of its subtree.
+	 */
+	private static <V> Node<V> balance(Node<V> node) {
+		fix(node);
+		int diff = height(node.left) - height(node.right);
+		if (diff > 1) {
+			if (height(node.left.left) < height(node.left.right)) {
+				node.left = rotateLeft(node.left);
+			}
+			return rotateRight(node);
+		} else if (diff < -1) {
+			if (height(node.right.right) < height(node.right.left)) {
+				node.right = rotateRight(node.right);
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+	 * An interval [<start>, <end>) with its value.
+	 */
+	public static class Interval<V> {
+
+		private final int start;
+		private final int end;
+		private final V value;
+
+		public Interval(int start, int end, V value) {
+			this.start = start;
+			this.end = end;
+			this.value = value;
+		}
+
+		public int getStart() {
+			return start;
+		}
+
+		public int getEnd() {
+			return end;
+		}
+
+		public V getValue() {
+			return value;
+		}
+	}
+
+	private static class Node<V> {
+
+		private final int start;
+		private final int end;
+		private final List<V> values = new ArrayList<>(1);
+		private int maxEnd;
+		private int height = 1;
+		private Node<V> left;
+		private Node<V> right;
+
+		private Node(int start, int end, V value) {
+			this.start = start;
+			this.end = end;
+			this.maxEnd = end;
+			values.add(value);
+		}
+	}
+}
@@ -1,76 +1,132 @@
 package util;
 
 import java.io.IOException;
+import java.sql.SQLException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
 import org.eclipse.ui.IStartup;
-import org.eclipse.ui.IViewPart;
-import org.eclipse.ui.IWorkbenchPage;
-import org.eclipse.ui.PartInitException;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 
-import ui.BiblioView;
-import ui.ArtistaView;
-import ui.CasaView;
-import ui.GenereLiterariView;
-import ui.InstrumentView;
-import ui.LlocView;
-import ui.OficiView;
-import ui.PromotorView;
+import persistence.ChangeLog;
+import persistence.LocalReplica;
+import ui.DeclarativeView;
 
 /**
  * MiMusStartup is code executed at startup of the plugin, and it
  * prepares the environment to work properly with the plugin.
  * 
- * Currently its only use is to rewrite the config.properties file
- * to the disconnected user. This allows that the application is
- * disconnected from the DB at startup, for security.
+ * It rewrites the config.properties file to the disconnected user.
+ * This allows that the application is disconnected from the DB at
+ * startup, for security. Views are not opened nor loaded here: each
+ * loads its data when first shown. It also makes every push button
+ * clicked by the user begin a new action in the QueryMonitor, and polls
+ * the ChangeLog in the background while a session is open, so caches,
+ * views and the LocalReplica see the changes of other users.
+ * 
+ * The time startup took is logged once the views already created have
+ * loaded their data again, in the background.
  * 
  * @author Javier Beltrán Jorba
  *
  */
 public class MiMusStartup implements IStartup {
 
+	/* Milliseconds between polls of the ChangeLog */
+	private static final long POLL_INTERVAL = 10000;
+
 	/**
 	 * Startup code of the plugin goes here.
 	 */
 	@Override
 	public void earlyStartup() {
+		long start = System.currentTimeMillis();
+		Display display = PlatformUI.getWorkbench().getDisplay();
+		display.asyncExec(() -> 
+				display.addFilter(SWT.Selection, event -> beginAction(event)));
+		schedulePolling();
+		
 		try {
 			DBUtils.writeProperties("disconnected", "disconnected");
+			DBUtils.closeSession();
 			System.out.println("Resetted user properties.");
 			
-			IWorkbenchPage page = PlatformUI.getWorkbench()
-				.getActiveWorkbenchWindow()
-				.getActivePage();
-			
-			/* Force that all views are refreshed to make sure disconnected */
-			IViewPart view = page.showView("MiMusEditor.biblioView");
-			((BiblioView) view).refreshAction();
-
-			view = page.showView("MiMusEditor.artistaView");
-			((ArtistaView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.casaView");
-			((CasaView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.genereView");
-			((GenereLiterariView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.instrumentView");
-			((InstrumentView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.llocView");
-			((LlocView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.oficiView");
-			((OficiView) view).refreshAction();
-			
-			view = page.showView("MiMusEditor.promotorView");
-			((PromotorView) view).refreshAction();
+			/* Views already created must not show the last user's data */
+			display.syncExec(() -> {
+				IWorkbenchWindow window = PlatformUI.getWorkbench()
+					.getActiveWorkbenchWindow();
+				if (window != null && window.getActivePage() != null) {
+					DeclarativeView.refreshAll(window.getActivePage(), false);
+				}
+			});
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (PartInitException e) {
-			e.printStackTrace();
 		}
+		DeclarativeView.whenLoaded(() -> System.out.println("MiMus startup took " 
+				+ (System.currentTimeMillis() - start) + " ms."));
+	}
+	
+	/**
+	 * Polls the ChangeLog every POLL_INTERVAL in a background Job, and
+	 * pulls the changes into the LocalReplica, if it is enabled. It does
+	 * not open a session: nothing is polled while disconnected. Both use
+	 * connections not recorded by the QueryMonitor, so polling doesn't
+	 * count in the action of the user.
+	 */
+	private void schedulePolling() {
+		Job job = new Job("Polling changes of other users") {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				if (DBUtils.isSessionOpen()) {
+					try {
+						ChangeLog.poll();
+					} catch (SQLException e) {
+						System.out.println("Could not poll changes: " 
+								+ e.getMessage());
+					}
+					try {
+						LocalReplica.update();
+					} catch (SQLException e) {
+						System.out.println("Could not update local replica: " 
+								+ e.getMessage());
+					}
+				}
+				schedule(POLL_INTERVAL);
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule(POLL_INTERVAL);
+	}
+	
+	/**
+	 * Begins a new action in the QueryMonitor if <event> is the click of
+	 * a push button, named after the button and the part it belongs to,
+	 * e.g. "Artista View: Refresh".
+	 */
+	private void beginAction(Event event) {
+		if (!(event.widget instanceof Button) 
+				|| (event.widget.getStyle() & SWT.PUSH) == 0) {
+			return;
+		}
+		String name = ((Button) event.widget).getText();
+		IWorkbenchWindow window = PlatformUI.getWorkbench()
+				.getActiveWorkbenchWindow();
+		if (window != null && window.getActivePage() != null) {
+			IWorkbenchPart part = window.getActivePage().getActivePart();
+			if (part != null) {
+				name = part.getTitle() + ": " + name;
+			}
+		}
+		QueryMonitor.begin(name);
 	}
 
 }
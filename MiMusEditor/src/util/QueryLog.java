@@ -0,0 +1,243 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A QueryLog accumulates the statements executed through the Connections
+ * wrapped by InstrumentedConnection: how many were executed, how many rows
+ * they returned and how long they took, both in total and per SQL shape.
+ *
+ * The shape of a statement is its SQL with literals replaced by "?", so
+ * "SELECT * FROM artista WHERE id=3" and "... WHERE id=4" count as the
+ * same query executed twice. A shape executed once per row of another
+ * query is the signature of an N+1 access pattern, so shapes executed
+ * many times, or with exactly the same SQL more than once, are flagged
+ * as suspects.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class QueryLog {
+
+	/* Executions of a shape from which it is an N+1 suspect */
+	public static final int N_PLUS_ONE_THRESHOLD = 10;
+
+	/* Stats of each shape, in order of first execution */
+	private final Map<String, ShapeStats> shapes;
+
+	public QueryLog() {
+		shapes = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Records one execution of statement <sql>, which took <nanos>. If
+	 * it is <prepared>, <sql> has placeholders instead of values, so it
+	 * can't tell whether it repeats an identical query.
+	 */
+	public synchronized void executed(String sql, boolean prepared, long nanos) {
+		ShapeStats stats = getStats(sql);
+		stats.count++;
+		stats.nanos += nanos;
+		if (!prepared && stats.seen != null && !stats.seen.add(sql)) {
+			stats.repeats++;
+		}
+	}
+
+	/**
+	 * Records that <rows> rows of the result of statement <sql> were
+	 * fetched, taking <nanos>.
+	 */
+	public synchronized void fetched(String sql, int rows, long nanos) {
+		ShapeStats stats = getStats(sql);
+		stats.rows += rows;
+		stats.nanos += nanos;
+	}
+
+	private ShapeStats getStats(String sql) {
+		return shapes.computeIfAbsent(shape(sql), ShapeStats::new);
+	}
+
+	/**
+	 * Forgets all statements recorded so far.
+	 */
+	public synchronized void reset() {
+		shapes.clear();
+	}
+
+	public synchronized int getStatementCount() {
+		int count = 0;
+		for (ShapeStats stats : shapes.values()) {
+			count += stats.count;
+		}
+		return count;
+	}
+
+	public synchronized long getRowCount() {
+		long rows = 0;
+		for (ShapeStats stats : shapes.values()) {
+			rows += stats.rows;
+		}
+		return rows;
+	}
+
+	public synchronized long getNanos() {
+		long nanos = 0;
+		for (ShapeStats stats : shapes.values()) {
+			nanos += stats.nanos;
+		}
+		return nanos;
+	}
+
+	/**
+	 * Forgets the SQL of the statements, keeping their stats. It must be
+	 * called when nothing else is going to be recorded, to save memory.
+	 */
+	public synchronized void seal() {
+		for (ShapeStats stats : shapes.values()) {
+			stats.seen = null;
+		}
+	}
+
+	/**
+	 * Returns the number of shapes that are N+1 suspects.
+	 */
+	public synchronized int getSuspectCount() {
+		int count = 0;
+		for (ShapeStats stats : shapes.values()) {
+			if (stats.isSuspect()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a copy of the stats of each shape, the most executed first.
+	 */
+	public synchronized List<ShapeStats> getShapes() {
+		List<ShapeStats> copy = new ArrayList<>();
+		for (ShapeStats stats : shapes.values()) {
+			copy.add(stats.copy());
+		}
+		Collections.sort(copy, (a, b) -> Integer.compare(b.count, a.count));
+		return copy;
+	}
+
+	/**
+	 * Returns the shape of statement <sql>: its numeric and string
+	 * literals replaced by "?", lists of them collapsed to one, and its
+	 * whitespace normalized.
+	 */
+	public static String shape(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+		int i = 0;
+		while (i < sql.length()) {
+			char c = sql.charAt(i);
+			if (c == '\'' || c == '"') {
+				/* String literal, quotes are escaped by doubling them */
+				int j = i + 1;
+				while (j < sql.length()) {
+					if (sql.charAt(j) == c) {
+						if (j + 1 < sql.length() && sql.charAt(j + 1) == c) {
+							j++;
+						} else {
+							break;
+						}
+					} else if (sql.charAt(j) == '\\') {
+						j++;
+					}
+					j++;
+				}
+				sb.append('?');
+				i = j + 1;
+			} else if (Character.isDigit(c) && (sb.length() == 0
+					|| !Character.isLetterOrDigit(sb.charAt(sb.length()-1))
+					&& sb.charAt(sb.length()-1) != '_')) {
+				/* Numeric literal, not part of a name like "lib1_arxiu" */
+				int j = i;
+				while (j < sql.length() && (Character.isDigit(sql.charAt(j))
+						|| sql.charAt(j) == '.')) {
+					j++;
+				}
+				sb.append('?');
+				i = j;
+			} else if (Character.isWhitespace(c)) {
+				if (sb.length() > 0 && sb.charAt(sb.length()-1) != ' ') {
+					sb.append(' ');
+				}
+				i++;
+			} else {
+				sb.append(c);
+				i++;
+			}
+		}
+		return sb.toString().trim().replaceAll("\\?( ?, ?\\?)+", "?");
+	}
+
+	/**
+	 * Counters of one SQL shape.
+	 */
+	public static class ShapeStats {
+
+		private final String shape;
+		private int count;
+		private long rows;
+		private long nanos;
+		private int repeats;
+
+		/* Exact SQL executed so far, to detect identical repeats */
+		private Set<String> seen = new HashSet<>();
+
+		private ShapeStats(String shape) {
+			this.shape = shape;
+		}
+
+		private ShapeStats copy() {
+			ShapeStats copy = new ShapeStats(shape);
+			copy.count = count;
+			copy.rows = rows;
+			copy.nanos = nanos;
+			copy.repeats = repeats;
+			copy.seen = null;
+			return copy;
+		}
+
+		/**
+		 * Returns true if this shape looks like an N+1 pattern: executed
+		 * too many times, or with the very same SQL more than once.
+		 */
+		public boolean isSuspect() {
+			return count >= N_PLUS_ONE_THRESHOLD || repeats > 0;
+		}
+
+		public String getShape() {
+			return shape;
+		}
+
+		public int getCount() {
+			return count;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		/**
+		 * Returns how many executions repeated the exact SQL of a
+		 * previous one.
+		 */
+		public int getRepeats() {
+			return repeats;
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package util;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+import util.QueryLog.ShapeStats;
+
+/**
+ * QueryMonitor attributes the statements sent to the DB to the logical
+ * action of the user that caused them (e.g. "Open Editor", "Refresh",
+ * "Add Artista"), so it is possible to tell which click is hammering the
+ * DB and with what queries.
+ *
+ * There is one current action at a time: it begins when the user starts
+ * a new one, and every statement executed through the Connections of
+ * DBUtils is recorded in its QueryLog until the next action begins. The
+ * last MAX_ACTIONS actions that executed any statement are kept, and can
+ * be browsed in QueryMonitorView or dumped to a file. If a dump file is
+ * set, every action is also appended to it when it finishes.
+ *
+ * @author Javier Beltrán Jorba
+ *
+ */
+public class QueryMonitor {
+
+	/* Finished actions kept in memory */
+	public static final int MAX_ACTIONS = 200;
+
+	private static final SimpleDateFormat TIME_FORMAT =
+			new SimpleDateFormat("HH:mm:ss.SSS");
+
+	/* Monitor state, guarded by QueryMonitor.class */
+	private static Action current = new Action("Startup");
+	private static final Deque<Action> finished = new ArrayDeque<>();
+	private static final List<Runnable> listeners = new ArrayList<>();
+	private static String dumpFile = null;
+
+	private QueryMonitor() {}
+
+	/**
+	 * Finishes the current action and begins a new one named <name>.
+	 */
+	public static void begin(String name) {
+		Action previous;
+		List<Runnable> toNotify;
+		synchronized (QueryMonitor.class) {
+			previous = current;
+			current = new Action(name);
+			previous.getLog().seal();
+			if (previous.getLog().getStatementCount() == 0) {
+				return;	// Nothing to show
+			}
+			finished.addLast(previous);
+			if (finished.size() > MAX_ACTIONS) {
+				finished.removeFirst();
+			}
+			toNotify = new ArrayList<>(listeners);
+		}
+		appendToDumpFile(previous);
+		for (Runnable listener : toNotify) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Returns the QueryLog of the current action.
+	 */
+	public static synchronized QueryLog current() {
+		return current.getLog();
+	}
+
+	/**
+	 * Returns the actions kept, the oldest first, including the current
+	 * one if it executed any statement.
+	 */
+	public static synchronized List<Action> getActions() {
+		List<Action> actions = new ArrayList<>(finished);
+		if (current.getLog().getStatementCount() > 0) {
+			actions.add(current);
+		}
+		return actions;
+	}
+
+	/**
+	 * Forgets all finished actions.
+	 */
+	public static synchronized void clear() {
+		finished.clear();
+	}
+
+	/**
+	 * Registers <listener> to be run whenever an action finishes, from
+	 * the thread that begins the next one.
+	 */
+	public static synchronized void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	public static synchronized void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Sets file <path> to append every action to when it finishes, or
+	 * none if <path> is null or empty.
+	 */
+	public static synchronized void setDumpFile(String path) {
+		dumpFile = (path == null || path.trim().isEmpty()) ? null : path.trim();
+	}
+
+	/**
+	 * Writes all the actions kept to file <path>, replacing it.
+	 */
+	public static void dump(String path) throws IOException {
+		try (PrintWriter out = new PrintWriter(new FileWriter(path))) {
+			for (Action action : getActions()) {
+				write(out, action);
+			}
+		}
+	}
+
+	private static void appendToDumpFile(Action action) {
+		String path;
+		synchronized (QueryMonitor.class) {
+			path = dumpFile;
+		}
+		if (path != null) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(path, true))) {
+				write(out, action);
+			} catch (IOException e) {
+				System.out.println("Could not append to query dump file " + path);
+			}
+		}
+	}
+
+	/**
+	 * Writes a report of <action> with <out>: its totals, and each of its
+	 * shapes, the N+1 suspects marked with "!".
+	 */
+	private static void write(Writer out, Action action) throws IOException {
+		QueryLog log = action.getLog();
+		out.write(String.format("%s %s: %d statements, %d shapes, %d rows, %.1f ms, "
+				+ "%d N+1 suspects%n", action.getStartTime(), action.getName(),
+				log.getStatementCount(), log.getShapes().size(), log.getRowCount(),
+				log.getNanos() / 1e6, log.getSuspectCount()));
+		for (ShapeStats shape : log.getShapes()) {
+			out.write(String.format("  %s %6d x %6d rows %9.1f ms  %s%n",
+					shape.isSuspect() ? "!" : " ", shape.getCount(),
+					shape.getRows(), shape.getNanos() / 1e6, shape.getShape()));
+		}
+		out.write(System.lineSeparator());
+	}
+
+	/**
+	 * An action of the user and the statements it caused.
+	 */
+	public static class Action {
+
+		private final String name;
+		private final long startMillis;
+		private final QueryLog log;
+
+		private Action(String name) {
+			this.name = name;
+			this.startMillis = System.currentTimeMillis();
+			this.log = new QueryLog();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		/**
+		 * Returns the time the action began, formatted as HH:mm:ss.SSS.
+		 */
+		public String getStartTime() {
+			synchronized (TIME_FORMAT) {
+				return TIME_FORMAT.format(new Date(startMillis));
+			}
+		}
+
+		public QueryLog getLog() {
+			return log;
+		}
+	}
+}
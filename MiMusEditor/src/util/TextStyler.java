@@ -2,12 +2,19 @@ package util;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+import org.eclipse.jface.resource.ColorRegistry;
+import org.eclipse.jface.resource.JFaceResources;
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.custom.StyleRange;
 import org.eclipse.swt.custom.StyledText;
 import org.eclipse.swt.graphics.Color;
-import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.RGB;
+
+import util.IntervalTree.Interval;
 
 /**
  * A TextStyler helps managing the styles of the Text elements in the
@@ -15,102 +22,237 @@ import org.eclipse.swt.widgets.Display;
  * highlighting of every part of the text associated with an entity,
  * ensuring a style that is robust to the changes happening when
  * the user modifies the lists of entities.
- * 
- * This robustness is achieved by a two-stage functionality: first, a
- * list of current styles is modified with the addition or removal of
- * a highlight; then, the whole StyledText SWT element is refreshed
- * and the current highlights are re-painted. That's why the methods
- * distinguish between add and addUpdate, or delete and deleteUpdate.
- * 
- * This allows for a correct presentation when entities overlap with
- * each other, where the removal of an entity would otherwise remove
- * the style of an entity inscribed in its range.
- * 
+ *
+ * Highlights are kept in an IntervalTree, so those around a change are
+ * found without going through all of them. The text is painted with the
+ * minimal runs of style that result from them: overlapping highlights
+ * are merged into one run, so the removal of an entity doesn't remove
+ * the style of an entity inscribed in its range. Only the region of the
+ * text changed is painted again, with a single replaceStyleRanges(). As
+ * before, add and delete only change the highlights, and addUpdate,
+ * deleteUpdate and update also paint them.
+ *
+ * Besides, matches of a search can be marked in another colour, over
+ * the highlights, with setMarks().
+ *
+ * Colours are shared by all TextStylers through the ColorRegistry of
+ * JFace, which disposes them with the Display.
+ *
  * @author Javier Beltrán Jorba
  *
  */
 public class TextStyler {
-	
-	private StyledText text;
-	private List<StyleRange> styles;
-	
+
+	private static final String HIGHLIGHT_COLOR = "util.TextStyler.highlight";
+	private static final String MARK_COLOR = "util.TextStyler.mark";
+
+	/* Counters of the sweep in runs(), by position */
+	private static final int HIGHLIGHTS = 0;
+	private static final int MARKS = 1;
+	private static final int BOLDS = 2;
+	private static final int ITALICS = 3;
+
+	private final StyledText text;
+	private final IntervalTree<Integer> highlights = new IntervalTree<>();
+	private final IntervalTree<Integer> marks = new IntervalTree<>();
+	private final Color highlightColor;
+	private final Color markColor;
+
 	public TextStyler(StyledText text) {
 		this.text = text;
-		this.styles = new ArrayList<>();
+		ColorRegistry colors = JFaceResources.getColorRegistry();
+		if (!colors.hasValueFor(HIGHLIGHT_COLOR)) {
+			colors.put(HIGHLIGHT_COLOR, new RGB(255, 255, 153));
+		}
+		if (!colors.hasValueFor(MARK_COLOR)) {
+			colors.put(MARK_COLOR, new RGB(255, 204, 102));
+		}
+		this.highlightColor = colors.get(HIGHLIGHT_COLOR);
+		this.markColor = colors.get(MARK_COLOR);
 	}
-	
+
 	/**
 	 * Refresh SWT StyledText element with current styles.
 	 */
 	public void update() {
-		text.setStyleRange(new StyleRange(0, text.getText().length(), null, null));
-		for (StyleRange style: styles) {
-			text.setStyleRange(style);
+		paint(0, text.getCharCount());
+	}
+
+	/**
+	 * Marks the matches of a search at coordinates <coords>, replacing the
+	 * previous ones, and updates the text where they were and are.
+	 */
+	public void setMarks(List<Point> coords) {
+		Interval<Integer> before = marks.getBounds();
+		marks.clear();
+		int length = text.getCharCount();
+		for (Point p : coords) {
+			if (p.x >= 0 && p.y <= length && p.x < p.y) {
+				marks.add(p.x, p.y, SWT.BOLD);
+			}
+		}
+		Interval<Integer> after = marks.getBounds();
+		if (before == null) {
+			before = after;
+		} else if (after == null) {
+			after = before;
+		}
+		if (before != null) {
+			paint(Math.min(before.getStart(), after.getStart()),
+					Math.max(before.getEnd(), after.getEnd()));
 		}
 	}
-	
+
 	/**
 	 * Adds highlight between coordinates <from> and <to>, using default font.
 	 */
 	public void add(int from, int to) {
 		add(from, to, SWT.NORMAL);
 	}
-	
+
 	/**
 	 * Adds highlight between coordinates <from> and <to>, using a certain <font>.
 	 */
 	public void add(int from, int to, int font) {
-		styles.add(new StyleRange(from, to-from, null, new Color(Display.getCurrent(), 255, 255, 153), font));
+		highlights.add(from, to, font);
 	}
-	
+
 	/**
 	 * Adds highlight between coordinates <from> and <to>, and updates the text so
 	 * the changes are viewed immediately.
 	 */
 	public void addUpdate(int from, int to) {
 		add(from, to);
-		update();
+		paint(from, to);
 	}
-	
+
 	/**
 	 * Deletes highlight between <from> and <to>.
 	 */
 	public void delete(int from, int to) {
-		int toDelete = -1;
-		/* First, only find element to delete */
-		for (int i=0; toDelete==-1 && i<styles.size(); i++) {
-			if (styles.get(i).start==from && styles.get(i).length==to-from) {
-				toDelete = i;
-			}
-		}
-		
-		/* Then, delete such element after loop */
-		if (toDelete>=0) {
-			styles.remove(toDelete);
-		}
+		highlights.remove(from, to);
 	}
-	
+
 	/**
 	 * Deletes highlight between <from> and <to>, and updates the text so the
 	 * changes are viewed immediately.
 	 */
 	public void deleteUpdate(int from, int to) {
 		delete(from, to);
-		update();
+		paint(from, to);
 	}
-	
-	/* Getters and setters */
-	
-	public StyledText getText() {
-		return text;
+
+	/**
+	 * Deletes all highlights, e.g. to add those of the text again. Marks
+	 * are kept.
+	 */
+	public void clear() {
+		highlights.clear();
 	}
-	public void setText(StyledText text) {
-		this.text = text;
+
+	/**
+	 * Paints the styles of characters <from> to <to> of the text again,
+	 * replacing those it had.
+	 */
+	private void paint(int from, int to) {
+		from = Math.max(0, from);
+		to = Math.min(text.getCharCount(), to);
+		if (from >= to) {
+			return;
+		}
+		List<StyleRange> runs = runs(from, to);
+		text.replaceStyleRanges(from, to - from,
+				runs.toArray(new StyleRange[runs.size()]));
 	}
-	public List<StyleRange> getStyles() {
-		return styles;
+
+	/**
+	 * Returns the minimal runs of style of characters <from> to <to>:
+	 * the ranges, in order, where the highlights and marks over each
+	 * character are the same, merged if they look the same. Characters
+	 * with no style have no run.
+	 */
+	private List<StyleRange> runs(int from, int to) {
+		/* Where the highlights and marks start and end, with their fonts */
+		TreeMap<Integer, int[]> changes = new TreeMap<>();
+		changes.put(from, new int[4]);
+		changes.put(to, new int[4]);
+		addChanges(changes, highlights.overlapping(from, to), HIGHLIGHTS,
+				from, to);
+		addChanges(changes, marks.overlapping(from, to), MARKS, from, to);
+
+		/* Sweep the range, keeping how many of each apply */
+		List<StyleRange> runs = new ArrayList<>();
+		int[] count = new int[4];
+		Integer start = null;
+		for (Map.Entry<Integer, int[]> change : changes.entrySet()) {
+			if (start != null && start < change.getKey()) {
+				addRun(runs, start, change.getKey(), count);
+			}
+			for (int i=0; i<count.length; i++) {
+				count[i] += change.getValue()[i];
+			}
+			start = change.getKey();
+		}
+		return runs;
 	}
-	public void setStyles(List<StyleRange> styles) {
-		this.styles = styles;
+
+	/**
+	 * Adds to <changes> the starts and ends of <intervals> within <from>
+	 * and <to>, counted as <kind>, and with their font.
+	 */
+	private static void addChanges(TreeMap<Integer, int[]> changes,
+			List<Interval<Integer>> intervals, int kind, int from, int to) {
+		for (Interval<Integer> interval : intervals) {
+			int font = interval.getValue();
+			int[] starts = changes.computeIfAbsent(
+					Math.max(from, interval.getStart()), p -> new int[4]);
+			int[] ends = changes.computeIfAbsent(
+					Math.min(to, interval.getEnd()), p -> new int[4]);
+			starts[kind]++;
+			ends[kind]--;
+			if ((font & SWT.BOLD) != 0) {
+				starts[BOLDS]++;
+				ends[BOLDS]--;
+			}
+			if ((font & SWT.ITALIC) != 0) {
+				starts[ITALICS]++;
+				ends[ITALICS]--;
+			}
+		}
+	}
+
+	/**
+	 * Adds to <runs> the run of characters <start> to <end>, styled as
+	 * <count> says, or extends the last run if it looks the same.
+	 */
+	private void addRun(List<StyleRange> runs, int start, int end,
+			int[] count) {
+		Color background = null;
+		if (count[MARKS] > 0) {
+			background = markColor;
+		} else if (count[HIGHLIGHTS] > 0) {
+			background = highlightColor;
+		}
+		int font = (count[BOLDS] > 0 ? SWT.BOLD : SWT.NORMAL)
+				| (count[ITALICS] > 0 ? SWT.ITALIC : SWT.NORMAL);
+		if (background == null && font == SWT.NORMAL) {
+			return;
+		}
+		if (!runs.isEmpty()) {
+			StyleRange last = runs.get(runs.size() - 1);
+			if (last.start + last.length == start
+					&& last.background == background
+					&& last.fontStyle == font) {
+				last.length += end - start;
+				return;
+			}
+		}
+		runs.add(new StyleRange(start, end - start, null, background, font));
+	}
+
+	/* Getters */
+
+	public StyledText getText() {
+		return text;
 	}
 }